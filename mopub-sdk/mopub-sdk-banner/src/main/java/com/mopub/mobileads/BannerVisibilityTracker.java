@@ -1,8 +1,6 @@
 package com.mopub.mobileads;
 
 import android.content.Context;
-import android.graphics.Rect;
-import android.os.Handler;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -10,24 +8,19 @@ import android.view.View;
 import android.view.ViewTreeObserver;
 
 import com.mopub.common.Preconditions;
+import com.mopub.common.VisibilityEngine;
 import com.mopub.common.VisibleForTesting;
-import com.mopub.common.logging.MoPubLog;
 import com.mopub.common.util.Dips;
-import com.mopub.common.util.Views;
 
 import java.lang.ref.WeakReference;
 
-import static android.view.ViewTreeObserver.OnPreDrawListener;
-
 /**
  * Tracks banner views to determine when they become visible, where visibility is determined by
  * whether a minimum number of dips have been visible for a minimum duration, where both values are
- * configured by the AdServer via headers.
+ * configured by the AdServer via headers. Visibility is checked in the passes of the shared
+ * {@link VisibilityEngine}.
  */
-class BannerVisibilityTracker {
-    // Time interval to use for throttling visibility checks.
-    private static final int VISIBILITY_THROTTLE_MILLIS = 100;
-
+class BannerVisibilityTracker implements VisibilityEngine.Client {
     /**
      * Callback when visibility conditions are satisfied.
      */
@@ -35,7 +28,9 @@ class BannerVisibilityTracker {
         void onVisibilityChanged();
     }
 
-    @NonNull @VisibleForTesting final OnPreDrawListener mOnPreDrawListener;
+    /**
+     * View tree whose draws trigger visibility passes for this tracker.
+     */
     @NonNull @VisibleForTesting WeakReference<ViewTreeObserver> mWeakViewTreeObserver;
 
     /**
@@ -58,20 +53,7 @@ class BannerVisibilityTracker {
      */
     @Nullable private BannerVisibilityTrackerListener mBannerVisibilityTrackerListener;
 
-    /**
-     * Runnable to run on each visibility loop.
-     */
-    @NonNull private final BannerVisibilityRunnable mVisibilityRunnable;
-
-    /**
-     * Handler for visibility.
-     */
-    @NonNull private final Handler mVisibilityHandler;
-
-    /**
-     * Whether the visibility runnable is scheduled.
-     */
-    private boolean mIsVisibilityScheduled;
+    @NonNull private final VisibilityEngine mVisibilityEngine;
 
     /**
      * Whether the imp tracker has been fired already.
@@ -84,49 +66,31 @@ class BannerVisibilityTracker {
             @NonNull final View trackedView,
             final int minVisibleDips,
             final int minVisibleMillis) {
+        this(context, rootView, trackedView, minVisibleDips, minVisibleMillis,
+                VisibilityEngine.getInstance());
+    }
+
+    @VisibleForTesting
+    BannerVisibilityTracker(@NonNull final Context context,
+            @NonNull final View rootView,
+            @NonNull final View trackedView,
+            final int minVisibleDips,
+            final int minVisibleMillis,
+            @NonNull final VisibilityEngine visibilityEngine) {
         Preconditions.checkNotNull(rootView);
         Preconditions.checkNotNull(trackedView);
+        Preconditions.checkNotNull(visibilityEngine);
 
         mRootView = rootView;
         mTrackedView = trackedView;
+        mVisibilityEngine = visibilityEngine;
 
-        mVisibilityChecker = new BannerVisibilityChecker(minVisibleDips, minVisibleMillis);
-        mVisibilityHandler = new Handler();
-        mVisibilityRunnable = new BannerVisibilityRunnable();
+        mVisibilityChecker = new BannerVisibilityChecker(minVisibleDips, minVisibleMillis,
+                visibilityEngine);
 
-        mOnPreDrawListener = new OnPreDrawListener() {
-            @Override
-            public boolean onPreDraw() {
-                scheduleVisibilityCheck();
-                return true;
-            }
-        };
-
-        mWeakViewTreeObserver = new WeakReference<ViewTreeObserver>(null);
-        setViewTreeObserver(context, mTrackedView);
-    }
-
-    private void setViewTreeObserver(@Nullable final Context context, @Nullable final View view) {
-        final ViewTreeObserver originalViewTreeObserver = mWeakViewTreeObserver.get();
-        if (originalViewTreeObserver != null && originalViewTreeObserver.isAlive()) {
-            return;
-        }
-
-        final View rootView = Views.getTopmostView(context, view);
-        if (rootView == null) {
-            MoPubLog.d("Unable to set Visibility Tracker due to no available root view.");
-            return;
-        }
-
-        final ViewTreeObserver viewTreeObserver = rootView.getViewTreeObserver();
-        if (!viewTreeObserver.isAlive()) {
-            MoPubLog.w("Visibility Tracker was unable to track views because the"
-                    + " root view tree observer was not alive");
-            return;
-        }
-
-        mWeakViewTreeObserver = new WeakReference<>(viewTreeObserver);
-        viewTreeObserver.addOnPreDrawListener(mOnPreDrawListener);
+        mVisibilityEngine.addClient(this);
+        mWeakViewTreeObserver = new WeakReference<>(
+                mVisibilityEngine.addPreDrawHook(context, mTrackedView));
     }
 
     @Nullable
@@ -145,25 +109,14 @@ class BannerVisibilityTracker {
      * Destroy the visibility tracker, preventing it from future use.
      */
     void destroy() {
-        mVisibilityHandler.removeMessages(0);
-        mIsVisibilityScheduled = false;
-        final ViewTreeObserver viewTreeObserver = mWeakViewTreeObserver.get();
-        if (viewTreeObserver != null && viewTreeObserver.isAlive()) {
-            viewTreeObserver.removeOnPreDrawListener(mOnPreDrawListener);
-        }
+        mVisibilityEngine.removeClient(this);
+        mVisibilityEngine.removePreDrawHook(mWeakViewTreeObserver.get());
         mWeakViewTreeObserver.clear();
         mBannerVisibilityTrackerListener = null;
     }
 
     void scheduleVisibilityCheck() {
-        // Tracking this directly instead of calling hasMessages directly because we measured that
-        // this led to slightly better performance.
-        if (mIsVisibilityScheduled) {
-            return;
-        }
-
-        mIsVisibilityScheduled = true;
-        mVisibilityHandler.postDelayed(mVisibilityRunnable, VISIBILITY_THROTTLE_MILLIS);
+        mVisibilityEngine.scheduleVisibilityCheck();
     }
 
     @NonNull
@@ -173,17 +126,10 @@ class BannerVisibilityTracker {
         return mVisibilityChecker;
     }
 
-    @NonNull
-    @Deprecated
-    @VisibleForTesting
-    Handler getVisibilityHandler() {
-        return mVisibilityHandler;
-    }
-
     @Deprecated
     @VisibleForTesting
     boolean isVisibilityScheduled() {
-        return mIsVisibilityScheduled;
+        return mVisibilityEngine.isVisibilityScheduled();
     }
 
     @Deprecated
@@ -192,35 +138,31 @@ class BannerVisibilityTracker {
         return mIsImpTrackerFired;
     }
 
-    class BannerVisibilityRunnable implements Runnable {
-        @Override
-        public void run() {
-            if (mIsImpTrackerFired) {
-                return;
-            }
-
-            mIsVisibilityScheduled = false;
+    @Override
+    public void onVisibilityCheck() {
+        if (mIsImpTrackerFired) {
+            return;
+        }
 
-            // If the view meets the dips count requirement for visibility, then also check the
-            // duration requirement for visibility.
-            if (mVisibilityChecker.isVisible(mRootView, mTrackedView)) {
-                // Start the timer for duration requirement if it hasn't already.
-                if (!mVisibilityChecker.hasBeenVisibleYet()) {
-                    mVisibilityChecker.setStartTimeMillis();
-                }
+        // If the view meets the dips count requirement for visibility, then also check the
+        // duration requirement for visibility.
+        if (mVisibilityChecker.isVisible(mRootView, mTrackedView)) {
+            // Start the timer for duration requirement if it hasn't already.
+            if (!mVisibilityChecker.hasBeenVisibleYet()) {
+                mVisibilityChecker.setStartTimeMillis();
+            }
 
-                if (mVisibilityChecker.hasRequiredTimeElapsed()) {
-                    if (mBannerVisibilityTrackerListener != null) {
-                        mBannerVisibilityTrackerListener.onVisibilityChanged();
-                        mIsImpTrackerFired = true;
-                    }
+            if (mVisibilityChecker.hasRequiredTimeElapsed()) {
+                if (mBannerVisibilityTrackerListener != null) {
+                    mBannerVisibilityTrackerListener.onVisibilityChanged();
+                    mIsImpTrackerFired = true;
                 }
             }
+        }
 
-            // If visibility requirements are not met, check again later.
-            if (!mIsImpTrackerFired) {
-                scheduleVisibilityCheck();
-            }
+        // If visibility requirements are not met, check again later.
+        if (!mIsImpTrackerFired) {
+            scheduleVisibilityCheck();
         }
     }
 
@@ -228,13 +170,13 @@ class BannerVisibilityTracker {
         private int mMinVisibleDips;
         private int mMinVisibleMillis;
         private long mStartTimeMillis = Long.MIN_VALUE;
+        @NonNull private final VisibilityEngine mVisibilityEngine;
 
-        // A rect to use for hit testing. Create this once to avoid excess garbage collection
-        private final Rect mClipRect = new Rect();
-
-        BannerVisibilityChecker(final int minVisibleDips, final int minVisibleMillis) {
+        BannerVisibilityChecker(final int minVisibleDips, final int minVisibleMillis,
+                @NonNull final VisibilityEngine visibilityEngine) {
             mMinVisibleDips = minVisibleDips;
             mMinVisibleMillis = minVisibleMillis;
+            mVisibilityEngine = visibilityEngine;
         }
 
         boolean hasBeenVisibleYet() {
@@ -260,30 +202,17 @@ class BannerVisibilityTracker {
          * Whether the visible dips count requirement is met.
          */
         boolean isVisible(@Nullable final View rootView, @Nullable final View view) {
-            // ListView & GridView both call detachFromParent() for views that can be recycled for
-            // new data. This is one of the rare instances where a view will have a null parent for
-            // an extended period of time and will not be the main window.
-            // view.getGlobalVisibleRect() doesn't check that case, so if the view has visibility
-            // of View.VISIBLE but its group has no parent it is likely in the recycle bin of a
-            // ListView / GridView and not on screen.
-            if (view == null || view.getVisibility() != View.VISIBLE || rootView.getParent() == null) {
-                return false;
-            }
-
-            // If either width or height is non-positive, the view cannot be visible.
-            if (view.getWidth() <= 0 || view.getHeight() <= 0) {
-                return false;
-            }
-
-            // View completely clipped by its parents
-            if (!view.getGlobalVisibleRect(mClipRect)) {
+            final VisibilityEngine.ViewMeasurement measurement =
+                    mVisibilityEngine.getMeasurement(rootView, view);
+            // Not attached, not shown, empty or completely clipped by its parents
+            if (measurement == null || !measurement.isOnScreen()) {
                 return false;
             }
 
             // Calculate area of view not clipped by any of its parents
-            final int widthInDips = Dips.pixelsToIntDips((float) mClipRect.width(),
+            final int widthInDips = Dips.pixelsToIntDips((float) measurement.getVisibleWidth(),
                     view.getContext());
-            final int heightInDips = Dips.pixelsToIntDips((float) mClipRect.height(),
+            final int heightInDips = Dips.pixelsToIntDips((float) measurement.getVisibleHeight(),
                     view.getContext());
             final long visibleViewAreaInDips = (long) (widthInDips * heightInDips);
 
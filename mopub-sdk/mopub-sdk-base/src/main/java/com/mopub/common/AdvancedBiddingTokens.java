@@ -21,7 +21,7 @@ public class AdvancedBiddingTokens implements AdvancedBiddersInitializedListener
 
     private static final String TOKEN_KEY = "token";
 
-    @NonNull private List<MoPubAdvancedBidder> mAdvancedBidders;
+    @NonNull private volatile List<MoPubAdvancedBidder> mAdvancedBidders;
     @Nullable private final SdkInitializationListener mSdkInitializationListener;
 
     public AdvancedBiddingTokens(@Nullable final SdkInitializationListener sdkInitializationListener) {
@@ -33,7 +33,10 @@ public class AdvancedBiddingTokens implements AdvancedBiddersInitializedListener
             @NonNull final List<Class<? extends MoPubAdvancedBidder>> advancedBidderClasses) {
         Preconditions.checkNotNull(advancedBidderClasses);
 
-        new AdvancedBiddersInitializationAsyncTask(advancedBidderClasses, this).execute();
+        // Run on the thread pool rather than the serial executor, so that the bidders are created
+        // at the same time as the other initialization stages.
+        new AdvancedBiddersInitializationAsyncTask(advancedBidderClasses, this)
+                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
     @Nullable
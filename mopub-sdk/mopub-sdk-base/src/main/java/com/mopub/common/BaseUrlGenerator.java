@@ -3,11 +3,16 @@ package com.mopub.common;
 import android.graphics.Point;
 import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
 import com.mopub.network.Networking;
 import com.mopub.network.PlayServicesUrlRewriter;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public abstract class BaseUrlGenerator {
 
     /**
@@ -66,6 +71,11 @@ public abstract class BaseUrlGenerator {
 
     private StringBuilder mStringBuilder;
     private boolean mFirstParam;
+    /**
+     * The unencoded parameters of the url being built, so that requests sending them in the body
+     * do not have to parse them out of the url again.
+     */
+    private Map<String, String> mParams;
 
     public abstract String generateUrlString(String serverHostname);
 
@@ -73,12 +83,24 @@ public abstract class BaseUrlGenerator {
         mStringBuilder = new StringBuilder(Networking.getScheme()).append("://")
                 .append(serverHostname).append(handlerType);
         mFirstParam = true;
+        mParams = new LinkedHashMap<String, String>();
     }
 
     protected String getFinalUrlString() {
         return mStringBuilder.toString();
     }
 
+    /**
+     * Gets the unencoded parameters of the last generated url, with repeated keys joined by
+     * commas. Pass them to the request for that url so it does not parse them out of the url.
+     *
+     * @return The parameters, or {@code null} if no url was generated yet.
+     */
+    @Nullable
+    public Map<String, String> getGeneratedParams() {
+        return mParams == null ? null : Collections.unmodifiableMap(mParams);
+    }
+
     protected void addParam(String key, String value) {
         if (TextUtils.isEmpty(value)) {
             return;
@@ -88,6 +110,7 @@ public abstract class BaseUrlGenerator {
         mStringBuilder.append(key);
         mStringBuilder.append("=");
         mStringBuilder.append(Uri.encode(value));
+        putParam(key, value);
     }
 
     protected void addParam(String key, Boolean value) {
@@ -99,6 +122,13 @@ public abstract class BaseUrlGenerator {
         mStringBuilder.append(key);
         mStringBuilder.append("=");
         mStringBuilder.append(value ? "1" : "0");
+        putParam(key, value ? "1" : "0");
+    }
+
+    private void putParam(final String key, final String value) {
+        // Repeated keys are joined the same way MoPubRequestUtils joins repeated query parameters
+        final String previousValue = mParams.get(key);
+        mParams.put(key, previousValue == null ? value : previousValue + "," + value);
     }
 
     private String getParamDelimiter() {
@@ -4,19 +4,31 @@ import android.content.Context;
 import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 
 import com.mopub.common.logging.MoPubLog;
 import com.mopub.common.util.DeviceUtils;
 import com.mopub.common.util.Streams;
 import com.mopub.common.util.Utils;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static com.mopub.common.DiskLruCache.open;
 
@@ -33,6 +45,27 @@ public class CacheService {
 
     private static DiskLruCache sDiskLruCache;
 
+    /**
+     * Entries waiting to be written by the write-behind queue, keyed by their un-hashed key. Reads
+     * consult this first so callers always see their own writes.
+     */
+    @NonNull private static final Map<String, byte[]> sPendingWrites =
+            new LinkedHashMap<String, byte[]>();
+    private static boolean sIsWriteBehindScheduled;
+    /**
+     * Held for every write to the disk cache, including the write-behind batches, so that a
+     * synchronous write to a key can never be overwritten by an older queued value for it.
+     * Always taken before {@link #sPendingWrites}.
+     */
+    @NonNull private static final Object sDiskWriteLock = new Object();
+
+    /**
+     * Drains {@link #sPendingWrites} on a single background thread so queued writes are applied
+     * in order.
+     */
+    @NonNull private static final Executor sWriteBehindExecutor = new ThreadPoolExecutor(0, 1,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
     public static boolean initializeDiskCache(final Context context) {
         if (context == null) {
             return false;
@@ -84,6 +117,10 @@ public class CacheService {
             return false;
         }
 
+        if (getPendingWrite(key) != null) {
+            return true;
+        }
+
         try {
             final DiskLruCache.Snapshot snapshot = sDiskLruCache.get(createValidDiskCacheKey(key));
             return snapshot != null;
@@ -112,6 +149,11 @@ public class CacheService {
             return null;
         }
 
+        final byte[] pendingWrite = getPendingWrite(key);
+        if (pendingWrite != null) {
+            return Arrays.copyOf(pendingWrite, pendingWrite.length);
+        }
+
         byte[] bytes = null;
         DiskLruCache.Snapshot snapshot = null;
         try {
@@ -120,16 +162,9 @@ public class CacheService {
                 return null;
             }
 
-            final InputStream in = snapshot.getInputStream(DISK_CACHE_INDEX);
-            if (in != null) {
-                bytes = new byte[(int) snapshot.getLength(0)];
-                final BufferedInputStream buffIn = new BufferedInputStream(in);
-                try {
-                    Streams.readStream(buffIn, bytes);
-                } finally {
-                    Streams.closeStream(buffIn);
-                }
-            }
+            final byte[] content = new byte[(int) snapshot.getLength(DISK_CACHE_INDEX)];
+            readFully(snapshot.getChannel(DISK_CACHE_INDEX), 0, ByteBuffer.wrap(content));
+            bytes = content;
         } catch (Exception e) {
             MoPubLog.d("Unable to get from DiskLruCache", e);
         } finally {
@@ -141,6 +176,107 @@ public class CacheService {
         return bytes;
     }
 
+    /**
+     * Returns the length in bytes of the cached entry, or -1 if there is no such entry.
+     */
+    public static long getLengthDiskCache(final String key) {
+        if (sDiskLruCache == null) {
+            return -1;
+        }
+
+        final byte[] pendingWrite = getPendingWrite(key);
+        if (pendingWrite != null) {
+            return pendingWrite.length;
+        }
+
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = sDiskLruCache.get(createValidDiskCacheKey(key));
+            return snapshot == null ? -1 : snapshot.getLength(DISK_CACHE_INDEX);
+        } catch (Exception e) {
+            MoPubLog.d("Unable to get length from DiskLruCache", e);
+            return -1;
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a range of a cached entry into the given array without loading the whole entry.
+     *
+     * @param key      The cache key.
+     * @param position The offset in the cached entry to start reading from.
+     * @param dst      The array to read into.
+     * @param offset   The offset in {@code dst} to start writing at.
+     * @param length   The maximum number of bytes to read.
+     * @return The number of bytes read, or -1 if the entry is missing or {@code position} is past
+     * its end.
+     */
+    public static int readFromDiskCache(final String key, final long position,
+            @NonNull final byte[] dst, final int offset, final int length) {
+        Preconditions.checkNotNull(dst);
+
+        return readFromDiskCache(key, position, ByteBuffer.wrap(dst, offset, length));
+    }
+
+    /**
+     * Reads a range of a cached entry into the remaining space of {@code dst} without loading the
+     * whole entry. The position of {@code dst} is advanced by the number of bytes read.
+     *
+     * @return The number of bytes read, or -1 if the entry is missing or {@code position} is past
+     * its end.
+     */
+    public static int readFromDiskCache(final String key, final long position,
+            @NonNull final ByteBuffer dst) {
+        Preconditions.checkNotNull(dst);
+
+        if (sDiskLruCache == null) {
+            return -1;
+        }
+
+        final byte[] pendingWrite = getPendingWrite(key);
+        if (pendingWrite != null) {
+            if (position >= pendingWrite.length) {
+                return -1;
+            }
+            final int length = (int) Math.min(dst.remaining(), pendingWrite.length - position);
+            dst.put(pendingWrite, (int) position, length);
+            return length;
+        }
+
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = sDiskLruCache.get(createValidDiskCacheKey(key));
+            if (snapshot == null || position >= snapshot.getLength(DISK_CACHE_INDEX)) {
+                return -1;
+            }
+
+            return readFully(snapshot.getChannel(DISK_CACHE_INDEX), position, dst);
+        } catch (Exception e) {
+            MoPubLog.d("Unable to read from DiskLruCache", e);
+            return -1;
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
+    private static int readFully(@NonNull final FileChannel channel, final long position,
+            @NonNull final ByteBuffer dst) throws IOException {
+        int totalRead = 0;
+        while (dst.hasRemaining()) {
+            final int read = channel.read(dst, position + totalRead);
+            if (read == -1) {
+                break;
+            }
+            totalRead += read;
+        }
+        return totalRead;
+    }
+
     public static void getFromDiskCacheAsync(final String key, final DiskLruCacheGetListener diskLruCacheGetListener) {
         new DiskLruCacheGetTask(key, diskLruCacheGetListener).execute();
     }
@@ -154,6 +290,13 @@ public class CacheService {
             return false;
         }
 
+        synchronized (sDiskWriteLock) {
+            discardPendingWrites(Collections.singleton(key));
+            return putToDiskCacheLocked(key, content);
+        }
+    }
+
+    private static boolean putToDiskCacheLocked(final String key, final InputStream content) {
         DiskLruCache.Editor editor = null;
         try {
             editor = sDiskLruCache.edit(createValidDiskCacheKey(key));
@@ -163,30 +306,238 @@ public class CacheService {
                 return false;
             }
 
-            final OutputStream outputStream =
-                    new BufferedOutputStream(editor.newOutputStream(DISK_CACHE_INDEX));
-            Streams.copyContent(content, outputStream);
-            outputStream.flush();
-            outputStream.close();
-
-            sDiskLruCache.flush();
+            writeToEditor(editor, content);
+            // Committing flushes the journal, so there is no need to flush it separately
             editor.commit();
         } catch (Exception e) {
             MoPubLog.d("Unable to put to DiskLruCache", e);
+            abortQuietly(editor);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the entry for {@code key}, if there is one.
+     *
+     * @return true if an entry was removed.
+     */
+    public static boolean removeFromDiskCache(final String key) {
+        if (sDiskLruCache == null) {
+            return false;
+        }
+
+        synchronized (sDiskWriteLock) {
+            discardPendingWrites(Collections.singleton(key));
+
             try {
+                return sDiskLruCache.remove(createValidDiskCacheKey(key));
+            } catch (Exception e) {
+                MoPubLog.d("Unable to remove from DiskLruCache", e);
+                return false;
+            }
+        }
+    }
+
+    public static void putToDiskCacheAsync(final String key, final byte[] content) {
+        edit().put(key, content).commitAsync();
+    }
+
+    /**
+     * Starts a batch of writes that are committed to the disk cache together.
+     */
+    @NonNull
+    public static Batch edit() {
+        return new Batch();
+    }
+
+    /**
+     * A set of entries that are written to the disk cache together. The journal is appended to
+     * and flushed once for the whole batch instead of once per entry.
+     */
+    public static class Batch {
+        @NonNull private final Map<String, byte[]> mEntries = new LinkedHashMap<String, byte[]>();
+
+        private Batch() {
+        }
+
+        /**
+         * Adds an entry to this batch. A later put for the same key replaces the earlier one.
+         */
+        @NonNull
+        public Batch put(final String key, @NonNull final byte[] content) {
+            Preconditions.checkNotNull(content);
+
+            mEntries.put(key, content);
+            return this;
+        }
+
+        /**
+         * Writes every entry in this batch on the calling thread. Queued asynchronous writes to
+         * the same keys are discarded, so they can't replace these entries later.
+         *
+         * @return true if every entry was written.
+         */
+        public boolean commit() {
+            if (sDiskLruCache == null) {
+                return false;
+            }
+
+            synchronized (sDiskWriteLock) {
+                discardPendingWrites(mEntries.keySet());
+                return putAllToDiskCache(mEntries);
+            }
+        }
+
+        /**
+         * Hands every entry in this batch to the write-behind queue. Queued entries are
+         * immediately visible to reads from this class and are coalesced with other queued
+         * writes into as few journal flushes as possible.
+         */
+        public void commitAsync() {
+            if (sDiskLruCache == null || mEntries.isEmpty()) {
+                return;
+            }
+
+            synchronized (sPendingWrites) {
+                sPendingWrites.putAll(mEntries);
+                if (sIsWriteBehindScheduled) {
+                    return;
+                }
+                sIsWriteBehindScheduled = true;
+            }
+            sWriteBehindExecutor.execute(new WriteBehindRunnable());
+        }
+    }
+
+    private static boolean putAllToDiskCache(@NonNull final Map<String, byte[]> entries) {
+        if (sDiskLruCache == null) {
+            return false;
+        }
+
+        boolean success = true;
+        final Map<String, byte[]> validEntries = new LinkedHashMap<String, byte[]>();
+        for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            final String diskCacheKey = createValidDiskCacheKey(entry.getKey());
+            if (TextUtils.isEmpty(diskCacheKey)) {
+                MoPubLog.d("Unable to put to DiskLruCache with invalid key: " + entry.getKey());
+                success = false;
+            } else {
+                validEntries.put(diskCacheKey, entry.getValue());
+            }
+        }
+
+        final DiskLruCache.Editor[] editors;
+        try {
+            editors = sDiskLruCache.editAll(
+                    validEntries.keySet().toArray(new String[validEntries.size()]));
+        } catch (Exception e) {
+            MoPubLog.d("Unable to put to DiskLruCache", e);
+            return false;
+        }
+
+        int i = 0;
+        for (final byte[] content : validEntries.values()) {
+            final DiskLruCache.Editor editor = editors[i];
+            if (editor == null) {
+                // another edit is in progress
+                success = false;
+            } else {
+                try {
+                    writeToEditor(editor, new ByteArrayInputStream(content));
+                } catch (Exception e) {
+                    MoPubLog.d("Unable to put to DiskLruCache", e);
+                    abortQuietly(editor);
+                    editors[i] = null;
+                    success = false;
+                }
+            }
+            i++;
+        }
+
+        try {
+            sDiskLruCache.commitAll(editors);
+        } catch (Exception e) {
+            MoPubLog.d("Unable to put to DiskLruCache", e);
+            for (final DiskLruCache.Editor editor : editors) {
                 if (editor != null) {
-                    editor.abort();
+                    editor.abortUnlessCommitted();
                 }
-            } catch (IOException ignore) {
-                // ignore
             }
             return false;
         }
-        return true;
+        return success;
     }
 
-    public static void putToDiskCacheAsync(final String key, final byte[] content) {
-        new DiskLruCachePutTask(key, content).execute();
+    private static void writeToEditor(@NonNull final DiskLruCache.Editor editor,
+            final InputStream content) throws IOException {
+        final OutputStream outputStream =
+                new BufferedOutputStream(editor.newOutputStream(DISK_CACHE_INDEX));
+        try {
+            Streams.copyContent(content, outputStream);
+            outputStream.flush();
+        } finally {
+            Streams.closeStream(outputStream);
+        }
+    }
+
+    private static void abortQuietly(@Nullable final DiskLruCache.Editor editor) {
+        try {
+            if (editor != null) {
+                editor.abort();
+            }
+        } catch (IOException ignore) {
+            // ignore
+        }
+    }
+
+    private static void discardPendingWrites(@NonNull final Collection<String> keys) {
+        synchronized (sPendingWrites) {
+            sPendingWrites.keySet().removeAll(keys);
+        }
+    }
+
+    @Nullable
+    private static byte[] getPendingWrite(final String key) {
+        synchronized (sPendingWrites) {
+            return sPendingWrites.get(key);
+        }
+    }
+
+    /**
+     * Writes everything currently in {@link #sPendingWrites} as one batch, repeating until no
+     * more writes have been queued.
+     */
+    private static class WriteBehindRunnable implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (sDiskWriteLock) {
+                    final Map<String, byte[]> batch;
+                    synchronized (sPendingWrites) {
+                        if (sPendingWrites.isEmpty()) {
+                            sIsWriteBehindScheduled = false;
+                            return;
+                        }
+                        batch = new LinkedHashMap<String, byte[]>(sPendingWrites);
+                    }
+
+                    putAllToDiskCache(batch);
+
+                    synchronized (sPendingWrites) {
+                        final Iterator<Map.Entry<String, byte[]>> iterator =
+                                sPendingWrites.entrySet().iterator();
+                        while (iterator.hasNext()) {
+                            final Map.Entry<String, byte[]> entry = iterator.next();
+                            // Only drop entries that have not been replaced while this batch ran
+                            if (batch.get(entry.getKey()) == entry.getValue()) {
+                                iterator.remove();
+                            }
+                        }
+                    }
+                }
+            }
+        }
     }
 
     private static class DiskLruCacheGetTask extends AsyncTask<Void, Void, byte[]> {
@@ -223,26 +574,13 @@ public class CacheService {
         }
     }
 
-    private static class DiskLruCachePutTask extends AsyncTask<Void, Void, Void> {
-        private final String mKey;
-        private final byte[] mContent;
-
-        DiskLruCachePutTask(final String key, final byte[] content) {
-            mKey = key;
-            mContent = content;
-        }
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            CacheService.putToDiskCache(mKey, mContent);
-            return null;
-        }
-    }
-
     // Testing
     @Deprecated
     @VisibleForTesting
     public static void clearAndNullCaches() {
+        synchronized (sPendingWrites) {
+            sPendingWrites.clear();
+        }
         if (sDiskLruCache != null) {
             try {
                 sDiskLruCache.delete();
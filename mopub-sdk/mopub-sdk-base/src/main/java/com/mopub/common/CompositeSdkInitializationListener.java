@@ -4,6 +4,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Aggregates sdk initialization listeners so that the listener only fires once everything is done.
@@ -11,7 +12,8 @@ import android.support.annotation.NonNull;
 class CompositeSdkInitializationListener implements SdkInitializationListener {
 
     @NonNull private final SdkInitializationListener mSdkInitializationListener;
-    private int mTimes;
+    // Counted down from the main thread and from initialization background threads
+    @NonNull private final AtomicInteger mTimes;
 
     /**
      * Don't fire onInitializationFinished until the requisite number of times of
@@ -25,13 +27,12 @@ class CompositeSdkInitializationListener implements SdkInitializationListener {
         Preconditions.checkNotNull(sdkInitializationListener);
 
         mSdkInitializationListener = sdkInitializationListener;
-        mTimes = times;
+        mTimes = new AtomicInteger(times);
     }
 
     @Override
     public void onInitializationFinished() {
-        mTimes--;
-        if (mTimes <= 0) {
+        if (mTimes.decrementAndGet() <= 0) {
             new Handler(Looper.getMainLooper()).post(new Runnable() {
                 @Override
                 public void run() {
@@ -32,6 +32,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -452,7 +453,45 @@ public final class DiskLruCache implements Closeable {
     return edit(key, ANY_SEQUENCE_NUMBER);
   }
 
+  /**
+   * Returns an editor for each of {@code keys}, in order. An element is null
+   * if another edit is in progress for that key. Unlike calling
+   * {@link #edit(String)} once per key, the journal is flushed only once for
+   * the whole batch.
+   */
+  public synchronized Editor[] editAll(String... keys) throws IOException {
+    Editor[] editors = new Editor[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      editors[i] = edit(keys[i], ANY_SEQUENCE_NUMBER, false);
+    }
+    // Flush the journal before creating files to prevent file leaks.
+    journalWriter.flush();
+    return editors;
+  }
+
+  /**
+   * Commits each non-null editor in {@code editors} so it is visible to
+   * readers, flushing the journal once for the whole batch.
+   */
+  public synchronized void commitAll(Editor... editors) throws IOException {
+    checkNotClosed();
+    for (Editor editor : editors) {
+      if (editor != null) {
+        editor.commit(false);
+      }
+    }
+    journalWriter.flush();
+    if (size > maxSize || journalRebuildRequired()) {
+      executorService.submit(cleanupCallable);
+    }
+  }
+
   private synchronized Editor edit(String key, long expectedSequenceNumber) throws IOException {
+    return edit(key, expectedSequenceNumber, true);
+  }
+
+  private synchronized Editor edit(String key, long expectedSequenceNumber, boolean flushJournal)
+      throws IOException {
     checkNotClosed();
     validateKey(key);
     Entry entry = lruEntries.get(key);
@@ -470,9 +509,11 @@ public final class DiskLruCache implements Closeable {
     Editor editor = new Editor(entry);
     entry.currentEditor = editor;
 
-    // Flush the journal before creating files to prevent file leaks.
     journalWriter.write(DIRTY + ' ' + key + '\n');
-    journalWriter.flush();
+    if (flushJournal) {
+      // Flush the journal before creating files to prevent file leaks.
+      journalWriter.flush();
+    }
     return editor;
   }
 
@@ -508,6 +549,11 @@ public final class DiskLruCache implements Closeable {
   }
 
   private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+    completeEdit(editor, success, true);
+  }
+
+  private synchronized void completeEdit(Editor editor, boolean success, boolean flushJournal)
+      throws IOException {
     Entry entry = editor.entry;
     if (entry.currentEditor != editor) {
       throw new IllegalStateException();
@@ -555,6 +601,9 @@ public final class DiskLruCache implements Closeable {
       lruEntries.remove(entry.key);
       journalWriter.write(REMOVE + ' ' + entry.key + '\n');
     }
+    if (!flushJournal) {
+      return;
+    }
     journalWriter.flush();
 
     if (size > maxSize || journalRebuildRequired()) {
@@ -695,6 +744,15 @@ public final class DiskLruCache implements Closeable {
       return ins[index];
     }
 
+    /**
+     * Returns a channel over the value for {@code index}. Positional reads on
+     * the channel do not disturb the stream returned by
+     * {@link #getInputStream(int)}. The channel is closed with this snapshot.
+     */
+    public FileChannel getChannel(int index) {
+      return ((FileInputStream) ins[index]).getChannel();
+    }
+
     /** Returns the string value for {@code index}. */
     public String getString(int index) throws IOException {
       return inputStreamToString(getInputStream(index));
@@ -809,11 +867,15 @@ public final class DiskLruCache implements Closeable {
      * edit lock so another edit may be started on the same key.
      */
     public void commit() throws IOException {
+      commit(true);
+    }
+
+    private void commit(boolean flushJournal) throws IOException {
       if (hasErrors) {
-        completeEdit(this, false);
+        completeEdit(this, false, flushJournal);
         remove(entry.key); // The previous entry is stale.
       } else {
-        completeEdit(this, true);
+        completeEdit(this, true, flushJournal);
       }
       committed = true;
     }
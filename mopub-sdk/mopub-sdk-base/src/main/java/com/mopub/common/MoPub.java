@@ -9,9 +9,12 @@ import android.support.annotation.Nullable;
 import com.mopub.common.logging.MoPubLog;
 import com.mopub.common.privacy.PersonalInfoManager;
 import com.mopub.common.util.Reflection;
+import com.mopub.network.AdLoader;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.mopub.common.ExternalViewabilitySessionManager.ViewabilityVendor;
 
@@ -70,7 +73,8 @@ public class MoPub {
     private static boolean sSdkInitialized = false;
     private static boolean sSdkInitializing = false;
     private static AdvancedBiddingTokens sAdvancedBiddingTokens;
-    private static PersonalInfoManager sPersonalInfoManager;
+    private static volatile PersonalInfoManager sPersonalInfoManager;
+    @NonNull private static final List<Runnable> sPendingAdRequests = new ArrayList<Runnable>();
 
     @NonNull
     public static LocationAwareness getLocationAwareness() {
@@ -139,16 +143,34 @@ public class MoPub {
         return sAdvancedBiddingEnabled;
     }
 
+    /**
+     * Requests the next page of an ad unit's waterfall while the last ad of the current page is
+     * still loading, so that running out of a page does not cost a round trip. Off by default.
+     */
+    public static void setWaterfallPrefetchEnabled(final boolean waterfallPrefetchEnabled) {
+        AdLoader.setWaterfallPrefetchEnabled(waterfallPrefetchEnabled);
+    }
+
+    public static boolean isWaterfallPrefetchEnabled() {
+        return AdLoader.isWaterfallPrefetchEnabled();
+    }
+
     /**
      * Initializes the MoPub SDK. Call this before making any rewarded ads or advanced bidding
      * requests. This will do the rewarded video custom event initialization any number of times,
      * but the SDK itself can only be initialized once, and the rewarded ads module can only be
      * initialized once.
      *
+     * Ads requested before initialization finishes are sent once it does. The
+     * {@link PersonalInfoManager} is available from {@link #getPersonalInformationManager()} as
+     * soon as this returns.
+     *
      * @param context                   Recommended to be an activity context.
      *                                  Rewarded ads initialization requires an Activity.
      * @param sdkConfiguration          Configuration data to initialize the SDK.
-     * @param sdkInitializationListener Callback for when SDK initialization finishes.
+     * @param sdkInitializationListener Callback for when SDK initialization finishes. Implement
+     *                                  {@link SdkInitializationListener.StageListener} to also
+     *                                  receive the duration of each initialization stage.
      */
     public static void initializeSdk(@NonNull final Context context,
             @NonNull final SdkConfiguration sdkConfiguration,
@@ -185,21 +207,55 @@ public class MoPub {
             public void onInitializationFinished() {
                 sSdkInitializing = false;
                 sSdkInitialized = true;
+                runPendingAdRequests();
                 if (sdkInitializationListener != null) {
                     sdkInitializationListener.onInitializationFinished();
                 }
             }
         };
         final SdkInitializationListener compositeSdkInitializationListener =
-                new CompositeSdkInitializationListener(internalSdkInitializationListener, 2);
+                new CompositeSdkInitializationListener(internalSdkInitializationListener,
+                        SdkInitializationPipeline.INITIALIZATION_STEP_COUNT);
 
-        sPersonalInfoManager = new PersonalInfoManager(context, sdkConfiguration.getAdUnitId(),
-                compositeSdkInitializationListener);
+        final SdkInitializationPipeline pipeline = new SdkInitializationPipeline(context,
+                sdkConfiguration, compositeSdkInitializationListener,
+                sdkInitializationListener instanceof SdkInitializationListener.StageListener
+                        ? (SdkInitializationListener.StageListener) sdkInitializationListener
+                        : null);
+        sAdvancedBiddingTokens = pipeline.start();
+    }
 
-        ClientMetadata.getInstance(context);
+    /**
+     * Ad requests carry the consent state and advanced bidding tokens, and are not sent until the
+     * SDK is initialized. An ad request started while the SDK is initializing is held back and
+     * run on the main thread once initialization finishes. Must be called on the main thread.
+     *
+     * @param adRequest Starts the ad request.
+     * @return true if the request was held back, false if it can be made right away.
+     */
+    public static boolean queueAdRequestUntilInitialized(@NonNull final Runnable adRequest) {
+        Preconditions.checkNotNull(adRequest);
 
-        sAdvancedBiddingTokens = new AdvancedBiddingTokens(compositeSdkInitializationListener);
-        sAdvancedBiddingTokens.addAdvancedBidders(sdkConfiguration.getAdvancedBidders());
+        if (!sSdkInitializing) {
+            return false;
+        }
+        MoPubLog.d("Ad request will be made once MoPub SDK initialization finishes.");
+        sPendingAdRequests.add(adRequest);
+        return true;
+    }
+
+    private static void runPendingAdRequests() {
+        final List<Runnable> adRequests = new ArrayList<Runnable>(sPendingAdRequests);
+        sPendingAdRequests.clear();
+        for (final Runnable adRequest : adRequests) {
+            adRequest.run();
+        }
+    }
+
+    static void onPersonalInfoManagerCreated(@NonNull final PersonalInfoManager personalInfoManager) {
+        Preconditions.checkNotNull(personalInfoManager);
+
+        sPersonalInfoManager = personalInfoManager;
     }
 
     /**
@@ -348,6 +404,8 @@ public class MoPub {
         sAdvancedBiddingTokens = null;
         sPersonalInfoManager = null;
         sSdkInitialized = false;
+        sSdkInitializing = false;
+        sPendingAdRequests.clear();
     }
 
     @Deprecated
@@ -1,6 +1,7 @@
 package com.mopub.common;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.mopub.common.logging.MoPubLog;
 import com.mopub.network.Networking;
@@ -12,10 +13,14 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.util.Locale;
+
+import javax.net.ssl.HttpsURLConnection;
 
 public abstract class MoPubHttpUrlConnection extends HttpURLConnection {
     private static final int CONNECT_TIMEOUT = 10000;
     private static final int READ_TIMEOUT = 10000;
+    private static final String MOPUB_DOMAIN = "mopub.com";
 
     private MoPubHttpUrlConnection(URL url) {
         super(url);
@@ -45,10 +50,28 @@ public abstract class MoPubHttpUrlConnection extends HttpURLConnection {
         urlConnection.setRequestProperty("user-agent", Networking.getCachedUserAgent());
         urlConnection.setConnectTimeout(CONNECT_TIMEOUT);
         urlConnection.setReadTimeout(READ_TIMEOUT);
+        // Connections to MoPub use the same socket factory as the request queue so pooled
+        // connections and TLS sessions are shared with it. Other hosts, such as VAST redirects
+        // and video CDNs, keep the platform's default factory.
+        if (urlConnection instanceof HttpsURLConnection
+                && isMoPubHost(urlConnection.getURL().getHost())) {
+            ((HttpsURLConnection) urlConnection).setSSLSocketFactory(
+                    Networking.getSslSocketFactory());
+            Networking.getConnectionPoolMetrics().onRequest();
+        }
 
         return urlConnection;
     }
 
+    @VisibleForTesting
+    static boolean isMoPubHost(@Nullable final String host) {
+        if (host == null) {
+            return false;
+        }
+        final String lowerCaseHost = host.toLowerCase(Locale.US);
+        return lowerCaseHost.equals(MOPUB_DOMAIN) || lowerCaseHost.endsWith("." + MOPUB_DOMAIN);
+    }
+
     /**
      * This method constructs a properly encoded and valid URI adhering to legal characters for
      * each component. See Android docs on these classes for reference.
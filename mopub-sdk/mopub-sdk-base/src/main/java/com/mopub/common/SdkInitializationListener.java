@@ -1,11 +1,33 @@
 package com.mopub.common;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
 
 /**
  * Called when Sdk initialization completes from
  * {@link MoPub#initializeSdk(Context, SdkConfiguration, SdkInitializationListener)}
  */
 public interface SdkInitializationListener {
+    /**
+     * The steps of Sdk initialization.
+     */
+    enum Stage {
+        /** Reading device, app and network information. Runs on the calling thread. */
+        CLIENT_METADATA,
+        /** Creating the PersonalInfoManager. Runs on the calling thread after CLIENT_METADATA. */
+        PERSONAL_INFO,
+        /** Creating the advanced bidders. Runs on a background thread. */
+        ADVANCED_BIDDERS
+    }
+
+    /**
+     * Implement this instead of {@link SdkInitializationListener} to also be told how long each
+     * {@link Stage} took. Stages are reported on the main thread as they finish, always before
+     * {@link #onInitializationFinished()}.
+     */
+    interface StageListener extends SdkInitializationListener {
+        void onInitializationStageFinished(@NonNull Stage stage, long durationMillis);
+    }
+
     void onInitializationFinished();
 }
@@ -0,0 +1,108 @@
+package com.mopub.common;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.mopub.common.SdkInitializationListener.Stage;
+import com.mopub.common.SdkInitializationListener.StageListener;
+import com.mopub.common.logging.MoPubLog;
+import com.mopub.common.privacy.PersonalInfoManager;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Runs the stages of {@link MoPub#initializeSdk} and times them. {@link ClientMetadata} and the
+ * {@link PersonalInfoManager} are created on the calling thread, since publishers use
+ * {@link MoPub#getPersonalInformationManager()} right after initializeSdk returns and both start
+ * AsyncTasks of their own. Their network work, the advertising id refresh and the consent sync,
+ * already runs in the background. Advanced bidders are instantiated by reflection on the thread
+ * pool.
+ */
+class SdkInitializationPipeline {
+    /**
+     * Number of times the listener given to the pipeline is called: once when the advanced
+     * bidders are created and once when the PersonalInfoManager has seen the first advertising id
+     * refresh.
+     */
+    static final int INITIALIZATION_STEP_COUNT = 2;
+
+    @NonNull private final Context mAppContext;
+    @NonNull private final SdkConfiguration mSdkConfiguration;
+    @NonNull private final SdkInitializationListener mInitializationListener;
+    @Nullable private final StageListener mStageListener;
+    @NonNull private final Map<Stage, Long> mStageDurationsMillis;
+    private long mStartTimeMillis;
+
+    /**
+     * @param initializationListener Called {@link #INITIALIZATION_STEP_COUNT} times, usually
+     *                               through a {@link CompositeSdkInitializationListener}.
+     * @param stageListener          Told how long each stage took, if not null.
+     */
+    SdkInitializationPipeline(@NonNull final Context context,
+            @NonNull final SdkConfiguration sdkConfiguration,
+            @NonNull final SdkInitializationListener initializationListener,
+            @Nullable final StageListener stageListener) {
+        Preconditions.checkNotNull(context);
+        Preconditions.checkNotNull(sdkConfiguration);
+        Preconditions.checkNotNull(initializationListener);
+
+        mAppContext = context.getApplicationContext();
+        mSdkConfiguration = sdkConfiguration;
+        mInitializationListener = initializationListener;
+        mStageListener = stageListener;
+        mStageDurationsMillis = new EnumMap<Stage, Long>(Stage.class);
+    }
+
+    /**
+     * Starts all stages. Must be called on the main thread. The CLIENT_METADATA and PERSONAL_INFO
+     * stages are done and the PersonalInfoManager is handed to {@link MoPub} before this returns.
+     *
+     * @return the advanced bidding tokens, which are filled in once the ADVANCED_BIDDERS stage is
+     * done
+     */
+    @NonNull
+    AdvancedBiddingTokens start() {
+        mStartTimeMillis = SystemClock.elapsedRealtime();
+
+        ClientMetadata.getInstance(mAppContext);
+        final long clientMetadataFinishedMillis = SystemClock.elapsedRealtime();
+        onStageFinished(Stage.CLIENT_METADATA, clientMetadataFinishedMillis - mStartTimeMillis);
+
+        // The PersonalInfoManager listens to the MoPubIdentifier created with the ClientMetadata
+        MoPub.onPersonalInfoManagerCreated(new PersonalInfoManager(mAppContext,
+                mSdkConfiguration.getAdUnitId(), mInitializationListener));
+        onStageFinished(Stage.PERSONAL_INFO,
+                SystemClock.elapsedRealtime() - clientMetadataFinishedMillis);
+
+        final AdvancedBiddingTokens advancedBiddingTokens = new AdvancedBiddingTokens(
+                new SdkInitializationListener() {
+                    @Override
+                    public void onInitializationFinished() {
+                        onStageFinished(Stage.ADVANCED_BIDDERS,
+                                SystemClock.elapsedRealtime() - mStartTimeMillis);
+                        mInitializationListener.onInitializationFinished();
+                    }
+                });
+        advancedBiddingTokens.addAdvancedBidders(mSdkConfiguration.getAdvancedBidders());
+        return advancedBiddingTokens;
+    }
+
+    /**
+     * @return how long the stage took, or null if it has not finished yet
+     */
+    @Nullable
+    Long getStageDurationMillis(@NonNull final Stage stage) {
+        return mStageDurationsMillis.get(stage);
+    }
+
+    private void onStageFinished(@NonNull final Stage stage, final long durationMillis) {
+        mStageDurationsMillis.put(stage, durationMillis);
+        MoPubLog.d("MoPub SDK initialization stage " + stage + " took " + durationMillis + " ms");
+        if (mStageListener != null) {
+            mStageListener.onInitializationStageFinished(stage, durationMillis);
+        }
+    }
+}
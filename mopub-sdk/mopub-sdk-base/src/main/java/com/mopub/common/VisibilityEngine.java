@@ -0,0 +1,404 @@
+package com.mopub.common;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.mopub.common.logging.MoPubLog;
+import com.mopub.common.util.Views;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static android.view.ViewTreeObserver.OnPreDrawListener;
+
+/**
+ * Process-wide visibility checks shared by every visibility and impression tracker. Each window
+ * gets a single pre-draw listener no matter how many trackers watch it, and draws are coalesced
+ * into at most one visibility pass every {@link #VISIBILITY_THROTTLE_MILLIS}. During a pass each
+ * view's visible rect is computed once and every threshold asked about that view is answered from
+ * the same {@link ViewMeasurement}. Measurements are reused from pass to pass, so a pass over
+ * views that are already known allocates nothing.
+ *
+ * The engine only holds weak references to its clients. Must be used on the main thread.
+ */
+public class VisibilityEngine {
+    // Time interval to use for throttling visibility checks.
+    @VisibleForTesting static final int VISIBILITY_THROTTLE_MILLIS = 100;
+
+    /**
+     * Called once per visibility pass. Clients query views with
+     * {@link #getMeasurement(View, View)} or {@link #isVisible(View, View, int, Integer)}.
+     */
+    public interface Client {
+        void onVisibilityCheck();
+    }
+
+    /**
+     * How much of a view was on screen when it was last measured. Only valid until the next
+     * pass, since the same instance is reused for the view.
+     */
+    public static class ViewMeasurement {
+        private final Rect mClipRect = new Rect();
+        private long mPass = -1;
+        private boolean mIsOnScreen;
+        private long mTotalArea;
+
+        void measure(@NonNull final View view, final long pass) {
+            mPass = pass;
+            mTotalArea = (long) view.getHeight() * view.getWidth();
+            mIsOnScreen = view.getVisibility() == View.VISIBLE
+                    && mTotalArea > 0
+                    && view.getGlobalVisibleRect(mClipRect);
+        }
+
+        public boolean isOnScreen() {
+            return mIsOnScreen;
+        }
+
+        public int getVisibleWidth() {
+            return mIsOnScreen ? mClipRect.width() : 0;
+        }
+
+        public int getVisibleHeight() {
+            return mIsOnScreen ? mClipRect.height() : 0;
+        }
+
+        public long getVisibleArea() {
+            // The cast is to avoid int overflow for large views.
+            return mIsOnScreen ? (long) mClipRect.height() * mClipRect.width() : 0;
+        }
+
+        public long getTotalArea() {
+            return mTotalArea;
+        }
+
+        /**
+         * Whether the view is at least certain amount visible. If the min pixel amount is set,
+         * use that. Otherwise, use the min percentage visible.
+         */
+        public boolean isVisible(final int minPercentageViewed,
+                @Nullable final Integer minVisiblePx) {
+            if (!mIsOnScreen) {
+                return false;
+            }
+
+            final long visibleViewArea = getVisibleArea();
+            if (minVisiblePx != null && minVisiblePx > 0) {
+                return visibleViewArea >= minVisiblePx;
+            }
+
+            return 100 * visibleViewArea >= minPercentageViewed * mTotalArea;
+        }
+    }
+
+    @Nullable private static volatile VisibilityEngine sInstance;
+
+    @NonNull private final OnPreDrawListener mOnPreDrawListener;
+
+    // Clients are held weakly so that a tracker that is never destroyed can still be collected.
+    @NonNull private final ArrayList<WeakReference<Client>> mClients;
+    // Copy of the clients for the current pass, since clients may come and go during a pass.
+    @NonNull private final ArrayList<Client> mPassClients;
+    // Number of trackers relying on the pre-draw listener of each view tree
+    @NonNull private final Map<ViewTreeObserver, Integer> mPreDrawHooks;
+    @NonNull private final Map<View, ViewMeasurement> mMeasurements;
+    // Used for measurements made outside of a pass, which are not cached
+    @NonNull private final ViewMeasurement mScratchMeasurement;
+    @NonNull private final Handler mVisibilityHandler;
+    @NonNull private final Runnable mVisibilityRunnable;
+
+    private boolean mIsVisibilityScheduled;
+    private boolean mIsInPass;
+    private long mPassCount;
+    private long mMeasuredViewCount;
+    private int mLastPassMeasuredViewCount;
+    private long mLastPassTimeNanos;
+    private long mTotalPassTimeNanos;
+
+    @NonNull
+    public static VisibilityEngine getInstance() {
+        VisibilityEngine engine = sInstance;
+        if (engine == null) {
+            synchronized (VisibilityEngine.class) {
+                engine = sInstance;
+                if (engine == null) {
+                    engine = new VisibilityEngine(new Handler(Looper.getMainLooper()));
+                    sInstance = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    @VisibleForTesting
+    public VisibilityEngine(@NonNull final Handler visibilityHandler) {
+        Preconditions.checkNotNull(visibilityHandler);
+
+        mVisibilityHandler = visibilityHandler;
+        mClients = new ArrayList<WeakReference<Client>>();
+        mPassClients = new ArrayList<Client>();
+        mPreDrawHooks = new WeakHashMap<ViewTreeObserver, Integer>();
+        mMeasurements = new WeakHashMap<View, ViewMeasurement>();
+        mScratchMeasurement = new ViewMeasurement();
+
+        mVisibilityRunnable = new Runnable() {
+            @Override
+            public void run() {
+                runVisibilityPass();
+            }
+        };
+
+        mOnPreDrawListener = new OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                scheduleVisibilityCheck();
+                return true;
+            }
+        };
+    }
+
+    public void addClient(@NonNull final Client client) {
+        Preconditions.checkNotNull(client);
+
+        if (indexOfClient(client) < 0) {
+            mClients.add(new WeakReference<Client>(client));
+        }
+    }
+
+    public void removeClient(@NonNull final Client client) {
+        Preconditions.checkNotNull(client);
+
+        final int index = indexOfClient(client);
+        if (index >= 0) {
+            mClients.remove(index);
+        }
+        if (mClients.isEmpty()) {
+            mVisibilityHandler.removeMessages(0);
+            mIsVisibilityScheduled = false;
+            mMeasurements.clear();
+        }
+    }
+
+    /**
+     * Makes draws of the window containing the given view trigger visibility passes. Every call
+     * that returns a view tree observer must be balanced by {@link #removePreDrawHook}.
+     *
+     * @return the view tree observer now listened to, or null if there is no live window yet
+     */
+    @Nullable
+    public ViewTreeObserver addPreDrawHook(@Nullable final Context context,
+            @Nullable final View view) {
+        final View rootView = Views.getTopmostView(context, view);
+        if (rootView == null) {
+            MoPubLog.d("Unable to set Visibility Tracker due to no available root view.");
+            return null;
+        }
+
+        final ViewTreeObserver viewTreeObserver = rootView.getViewTreeObserver();
+        if (!viewTreeObserver.isAlive()) {
+            MoPubLog.w("Visibility Tracker was unable to track views because the"
+                    + " root view tree observer was not alive");
+            return null;
+        }
+
+        final Integer hookCount = mPreDrawHooks.get(viewTreeObserver);
+        if (hookCount == null) {
+            viewTreeObserver.addOnPreDrawListener(mOnPreDrawListener);
+            mPreDrawHooks.put(viewTreeObserver, 1);
+        } else {
+            mPreDrawHooks.put(viewTreeObserver, hookCount + 1);
+        }
+        return viewTreeObserver;
+    }
+
+    public void removePreDrawHook(@Nullable final ViewTreeObserver viewTreeObserver) {
+        if (viewTreeObserver == null) {
+            return;
+        }
+
+        final Integer hookCount = mPreDrawHooks.get(viewTreeObserver);
+        if (hookCount == null) {
+            return;
+        }
+
+        if (hookCount > 1) {
+            mPreDrawHooks.put(viewTreeObserver, hookCount - 1);
+            return;
+        }
+
+        mPreDrawHooks.remove(viewTreeObserver);
+        if (viewTreeObserver.isAlive()) {
+            viewTreeObserver.removeOnPreDrawListener(mOnPreDrawListener);
+        }
+    }
+
+    /**
+     * Schedules a visibility pass, unless one is already scheduled. Clients waiting on a view to
+     * stay visible for some time call this to be checked again even when nothing is drawn.
+     */
+    public void scheduleVisibilityCheck() {
+        // Tracking this directly instead of calling hasMessages directly because we measured that
+        // this led to slightly better performance.
+        if (mIsVisibilityScheduled) {
+            return;
+        }
+
+        mIsVisibilityScheduled = true;
+        mVisibilityHandler.postDelayed(mVisibilityRunnable, VISIBILITY_THROTTLE_MILLIS);
+    }
+
+    public boolean isVisibilityScheduled() {
+        return mIsVisibilityScheduled;
+    }
+
+    /**
+     * Measures the view, at most once per pass.
+     *
+     * @return the measurement, or null if the view is not attached to the window. The
+     * measurement must not be held on to after the current pass.
+     */
+    @Nullable
+    public ViewMeasurement getMeasurement(@Nullable final View rootView,
+            @Nullable final View view) {
+        // ListView & GridView both call detachFromParent() for views that can be recycled for
+        // new data. This is one of the rare instances where a view will have a null parent for
+        // an extended period of time and will not be the main window.
+        // view.getGlobalVisibleRect() doesn't check that case, so if the view has visibility
+        // of View.VISIBLE but its group has no parent it is likely in the recycle bin of a
+        // ListView / GridView and not on screen.
+        if (view == null || rootView == null || rootView.getParent() == null) {
+            return null;
+        }
+
+        if (!mIsInPass) {
+            mScratchMeasurement.measure(view, -1);
+            return mScratchMeasurement;
+        }
+
+        ViewMeasurement measurement = mMeasurements.get(view);
+        if (measurement == null) {
+            measurement = new ViewMeasurement();
+            mMeasurements.put(view, measurement);
+        }
+        if (measurement.mPass != mPassCount) {
+            measurement.measure(view, mPassCount);
+            mLastPassMeasuredViewCount++;
+        }
+        return measurement;
+    }
+
+    /**
+     * Whether the view is at least certain amount visible. If the min pixel amount is set,
+     * use that. Otherwise, use the min percentage visible.
+     */
+    public boolean isVisible(@Nullable final View rootView, @Nullable final View view,
+            final int minPercentageViewed, @Nullable final Integer minVisiblePx) {
+        final ViewMeasurement measurement = getMeasurement(rootView, view);
+        return measurement != null && measurement.isVisible(minPercentageViewed, minVisiblePx);
+    }
+
+    /**
+     * Drops the cached measurement of a view that is no longer tracked.
+     */
+    public void forgetView(@Nullable final View view) {
+        if (view != null) {
+            mMeasurements.remove(view);
+        }
+    }
+
+    @VisibleForTesting
+    public void runVisibilityPass() {
+        mIsVisibilityScheduled = false;
+
+        final long startNanos = System.nanoTime();
+        mPassCount++;
+        mLastPassMeasuredViewCount = 0;
+        mIsInPass = true;
+        try {
+            for (int i = mClients.size() - 1; i >= 0; i--) {
+                final Client client = mClients.get(i).get();
+                if (client == null) {
+                    mClients.remove(i);
+                } else {
+                    mPassClients.add(client);
+                }
+            }
+
+            for (int i = mPassClients.size() - 1; i >= 0; i--) {
+                final Client client = mPassClients.get(i);
+                // Skip clients removed earlier in this pass
+                if (indexOfClient(client) >= 0) {
+                    client.onVisibilityCheck();
+                }
+            }
+        } finally {
+            mPassClients.clear();
+            mIsInPass = false;
+        }
+
+        mLastPassTimeNanos = System.nanoTime() - startNanos;
+        mTotalPassTimeNanos += mLastPassTimeNanos;
+        mMeasuredViewCount += mLastPassMeasuredViewCount;
+    }
+
+    @NonNull
+    @Deprecated
+    @VisibleForTesting
+    public OnPreDrawListener getOnPreDrawListener() {
+        return mOnPreDrawListener;
+    }
+
+    private int indexOfClient(@NonNull final Client client) {
+        for (int i = 0; i < mClients.size(); i++) {
+            if (mClients.get(i).get() == client) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getPassCount() {
+        return mPassCount;
+    }
+
+    /**
+     * Views measured in the last pass. A view checked by several trackers counts once.
+     */
+    public int getLastPassMeasuredViewCount() {
+        return mLastPassMeasuredViewCount;
+    }
+
+    public long getLastPassTimeMicros() {
+        return mLastPassTimeNanos / 1000;
+    }
+
+    public long getAveragePassTimeMicros() {
+        if (mPassCount == 0) {
+            return 0;
+        }
+        return mTotalPassTimeNanos / mPassCount / 1000;
+    }
+
+    public long getAverageMeasuredViewCount() {
+        if (mPassCount == 0) {
+            return 0;
+        }
+        return mMeasuredViewCount / mPassCount;
+    }
+
+    @Override
+    public String toString() {
+        return "visibility passes: " + getPassCount()
+                + ", average pass: " + getAveragePassTimeMicros() + "us"
+                + ", last pass: " + getLastPassTimeMicros() + "us"
+                + ", average views measured: " + getAverageMeasuredViewCount();
+    }
+}
@@ -94,14 +94,15 @@ public class ConsentDialogController implements ConsentDialogRequest.Listener {
         mExtListener = listener;
         mRequestInFlight = true;
 
+        final ConsentDialogUrlGenerator urlGenerator = new ConsentDialogUrlGenerator(mAppContext,
+                personalInfoData.getAdUnitId(), personalInfoData.getConsentStatus().getValue())
+                .withGdprApplies(gdprApplies)
+                .withConsentedPrivacyPolicyVersion(personalInfoData.getConsentedPrivacyPolicyVersion())
+                .withConsentedVendorListVersion(personalInfoData.getConsentedVendorListVersion())
+                .withForceGdprApplies(personalInfoData.isForceGdprApplies());
         ConsentDialogRequest consentDialogRequest = new ConsentDialogRequest(mAppContext,
-                new ConsentDialogUrlGenerator(mAppContext, personalInfoData.getAdUnitId(),
-                        personalInfoData.getConsentStatus().getValue())
-                        .withGdprApplies(gdprApplies)
-                        .withConsentedPrivacyPolicyVersion(personalInfoData.getConsentedPrivacyPolicyVersion())
-                        .withConsentedVendorListVersion(personalInfoData.getConsentedVendorListVersion())
-                        .withForceGdprApplies(personalInfoData.isForceGdprApplies())
-                        .generateUrlString(Constants.HOST), this);
+                urlGenerator.generateUrlString(Constants.HOST),
+                urlGenerator.getGeneratedParams(), this);
         Networking.getRequestQueue(mAppContext).add(consentDialogRequest);
     }
 
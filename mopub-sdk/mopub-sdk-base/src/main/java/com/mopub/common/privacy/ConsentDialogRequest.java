@@ -15,6 +15,8 @@ import com.mopub.volley.toolbox.HttpHeaderParser;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Map;
+
 class ConsentDialogRequest extends MoPubRequest<ConsentDialogResponse> {
     private static final String HTML_KEY = "dialog_html";
 
@@ -26,7 +28,12 @@ class ConsentDialogRequest extends MoPubRequest<ConsentDialogResponse> {
     private Listener mListener;
 
     ConsentDialogRequest(@NonNull Context context, @NonNull String url, @Nullable Listener listener) {
-        super(context, url, listener);
+        this(context, url, null, listener);
+    }
+
+    ConsentDialogRequest(@NonNull Context context, @NonNull String url,
+            @Nullable Map<String, String> generatedParams, @Nullable Listener listener) {
+        super(context, url, generatedParams, listener);
 
         mListener = listener;
 
@@ -418,9 +418,9 @@ public class PersonalInfoManager {
             syncUrlGenerator.withForceGdprAppliesChanged(true);
         }
 
-        final SyncRequest syncRequest = new SyncRequest(mAppContext,
-                syncUrlGenerator.generateUrlString(
-                        Constants.HOST), mSyncRequestListener);
+        final String syncUrl = syncUrlGenerator.generateUrlString(Constants.HOST);
+        final SyncRequest syncRequest = new SyncRequest(mAppContext, syncUrl,
+                syncUrlGenerator.getGeneratedParams(), mSyncRequestListener);
         Networking.getRequestQueue(mAppContext).add(syncRequest);
     }
 
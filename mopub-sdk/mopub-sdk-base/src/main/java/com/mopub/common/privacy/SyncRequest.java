@@ -6,6 +6,7 @@ import android.support.annotation.Nullable;
 
 import com.mopub.network.MoPubNetworkError;
 import com.mopub.network.MoPubRequest;
+import com.mopub.network.RequestLane;
 import com.mopub.volley.DefaultRetryPolicy;
 import com.mopub.volley.NetworkResponse;
 import com.mopub.volley.Response;
@@ -14,6 +15,8 @@ import com.mopub.volley.toolbox.HttpHeaderParser;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Map;
+
 public class SyncRequest extends MoPubRequest<SyncResponse> {
 
     public interface Listener extends Response.ErrorListener {
@@ -25,7 +28,14 @@ public class SyncRequest extends MoPubRequest<SyncResponse> {
     public SyncRequest(@NonNull final Context context,
             @NonNull final String url,
             @Nullable final Listener listener) {
-        super(context, url, listener);
+        this(context, url, null, listener);
+    }
+
+    public SyncRequest(@NonNull final Context context,
+            @NonNull final String url,
+            @Nullable final Map<String, String> generatedParams,
+            @Nullable final Listener listener) {
+        super(context, url, generatedParams, listener);
 
         mListener = listener;
 
@@ -37,6 +47,11 @@ public class SyncRequest extends MoPubRequest<SyncResponse> {
         setShouldCache(false);
     }
 
+    @Override
+    public Priority getPriority() {
+        return RequestLane.BACKGROUND.getPriority();
+    }
+
     @Override
     protected Response<SyncResponse> parseNetworkResponse(final NetworkResponse networkResponse) {
         final SyncResponse.Builder builder = new SyncResponse.Builder();
@@ -242,11 +242,32 @@ public class AdViewController {
             return;
         }
 
+        if (MoPub.queueAdRequestUntilInitialized(new Runnable() {
+            @Override
+            public void run() {
+                if (!mIsDestroyed) {
+                    internalLoadAd();
+                }
+            }
+        })) {
+            return;
+        }
+
         String adUrl = generateAdUrl();
-        loadNonJavascript(adUrl, null);
+        loadNonJavascript(adUrl,
+                mUrlGenerator == null ? null : mUrlGenerator.getGeneratedParams(), null);
     }
 
     void loadNonJavascript(@Nullable final String url, @Nullable final MoPubError moPubError) {
+        loadNonJavascript(url, null, moPubError);
+    }
+
+    /**
+     * @param generatedParams The parameters the url generator put into {@code url}, or null
+     */
+    void loadNonJavascript(@Nullable final String url,
+            @Nullable final Map<String, String> generatedParams,
+            @Nullable final MoPubError moPubError) {
         if (url == null) {
             adDidFail(MoPubErrorCode.NO_FILL);
             return;
@@ -263,7 +284,7 @@ public class AdViewController {
             return;
         }
 
-        fetchAd(url, moPubError);
+        fetchAd(url, generatedParams, moPubError);
     }
 
     @Deprecated
@@ -500,6 +521,11 @@ public class AdViewController {
     }
 
     void fetchAd(@NonNull String url, @Nullable final MoPubError moPubError) {
+        fetchAd(url, null, moPubError);
+    }
+
+    void fetchAd(@NonNull String url, @Nullable final Map<String, String> generatedParams,
+            @Nullable final MoPubError moPubError) {
         MoPubView moPubView = getMoPubView();
         if (moPubView == null || mContext == null) {
             MoPubLog.d("Can't load an ad in this ad view because it was destroyed.");
@@ -509,7 +535,8 @@ public class AdViewController {
 
         synchronized (this) {
             if (mAdLoader == null || !mAdLoader.hasMoreAds()) {
-                mAdLoader = new AdLoader(url, moPubView.getAdFormat(), mAdUnitId, mContext, mAdListener);
+                mAdLoader = new AdLoader(url, generatedParams, moPubView.getAdFormat(), mAdUnitId,
+                        mContext, mAdListener);
             }
         }
         mActiveRequest = mAdLoader.loadNextAd(moPubError);
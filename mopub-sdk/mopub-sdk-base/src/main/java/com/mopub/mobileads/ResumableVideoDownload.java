@@ -0,0 +1,534 @@
+package com.mopub.mobileads;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.mopub.common.CacheService;
+import com.mopub.common.MoPubHttpUrlConnection;
+import com.mopub.common.Preconditions;
+import com.mopub.common.VisibleForTesting;
+import com.mopub.common.logging.MoPubLog;
+import com.mopub.common.util.Streams;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads one video into {@link CacheService} in fixed-size chunks so that an interrupted or
+ * cancelled download can be resumed with an HTTP Range request instead of starting over. Each
+ * chunk is its own cache entry, and the total length and validator (ETag or Last-Modified) of the
+ * file are kept in a small state entry. Once every chunk is on disk, they are joined into the
+ * regular entry for the video URL and the partial entries are removed.
+ *
+ * When more than one parallel chunk is allowed, the file is fetched as several concurrent range
+ * requests after a first request for chunk 0 has confirmed that the server supports ranges.
+ */
+class ResumableVideoDownload {
+
+    interface CancellationSignal {
+        boolean isCancelled();
+    }
+
+    @VisibleForTesting static final int CHUNK_SIZE = 1024 * 1024; // 1 MiB
+    @VisibleForTesting static final String CHUNK_KEY_PREFIX = "videochunk-";
+    @VisibleForTesting static final String STATE_KEY_PREFIX = "videostate-";
+
+    private static final String RANGE = "Range";
+    private static final String IF_RANGE = "If-Range";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final int HTTP_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+    private static final int UNKNOWN_LENGTH = -1;
+
+    // Matches "bytes 0-1023/4096" and captures the total length
+    private static final Pattern CONTENT_RANGE_TOTAL_PATTERN =
+            Pattern.compile("bytes\\s+\\d+-\\d+/(\\d+)");
+
+    private static final int MAX_PARALLEL_CHUNKS = 4;
+    @NonNull private static final ExecutorService sChunkExecutor;
+
+    static {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_CHUNKS,
+                MAX_PARALLEL_CHUNKS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        sChunkExecutor = executor;
+    }
+
+    @NonNull private final String mUrl;
+    private final int mMaxSize;
+    private final int mParallelChunks;
+    @NonNull private final CancellationSignal mCancellationSignal;
+
+    private int mTotalLength = UNKNOWN_LENGTH;
+    @Nullable private String mValidator;
+    private volatile boolean mIsRangeRejected;
+
+    ResumableVideoDownload(@NonNull final String url, final int maxSize, final int parallelChunks,
+            @NonNull final CancellationSignal cancellationSignal) {
+        Preconditions.checkNotNull(url);
+        Preconditions.checkNotNull(cancellationSignal);
+
+        mUrl = url;
+        mMaxSize = maxSize;
+        mParallelChunks = Math.max(1, Math.min(parallelChunks, MAX_PARALLEL_CHUNKS));
+        mCancellationSignal = cancellationSignal;
+    }
+
+    /**
+     * Downloads the video, resuming from any chunks left by an earlier attempt.
+     *
+     * @return true if the whole video is now in the cache under its URL.
+     */
+    boolean download() throws IOException {
+        loadState();
+
+        if (mTotalLength != UNKNOWN_LENGTH) {
+            final List<Integer> missingChunks = getMissingChunks();
+            if (missingChunks.isEmpty()) {
+                return assembleChunks();
+            }
+            if (missingChunks.size() < getChunkCount()) {
+                MoPubLog.d("Resuming video download at chunk " + missingChunks.get(0) + " of "
+                        + getChunkCount());
+                return mParallelChunks > 1
+                        ? downloadChunksInParallel(missingChunks)
+                        : downloadFrom(missingChunks.get(0));
+            }
+        }
+
+        clearPartialDownload();
+        if (mParallelChunks > 1) {
+            return downloadInParallel();
+        }
+        return downloadFrom(0);
+    }
+
+    /**
+     * Streams the video from the start of {@code firstChunk} to the end of the file.
+     */
+    private boolean downloadFrom(final int firstChunk) throws IOException {
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        try {
+            urlConnection = MoPubHttpUrlConnection.getHttpUrlConnection(mUrl);
+            if (firstChunk > 0) {
+                urlConnection.setRequestProperty(RANGE,
+                        "bytes=" + (long) firstChunk * CHUNK_SIZE + "-");
+                if (mValidator != null) {
+                    urlConnection.setRequestProperty(IF_RANGE, mValidator);
+                }
+            }
+            inputStream = new BufferedInputStream(urlConnection.getInputStream());
+
+            final int statusCode = urlConnection.getResponseCode();
+            int startChunk = firstChunk;
+            if (firstChunk > 0 && statusCode == HttpURLConnection.HTTP_OK) {
+                // The server ignored the range or the file has changed, so start over
+                MoPubLog.d("Server did not resume video download. Starting over.");
+                clearPartialDownload();
+                startChunk = 0;
+            } else if (firstChunk > 0 && statusCode == HTTP_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                clearPartialDownload();
+                return false;
+            } else if (statusCode < HttpURLConnection.HTTP_OK
+                    || statusCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                MoPubLog.d("VideoDownloader encountered unexpected statusCode: " + statusCode);
+                return false;
+            }
+
+            if (startChunk == 0) {
+                mTotalLength = urlConnection.getContentLength();
+                mValidator = getValidator(urlConnection);
+                if (!checkSize(mTotalLength)) {
+                    return false;
+                }
+                saveState();
+            }
+
+            if (!streamIntoChunks(inputStream, startChunk)) {
+                return false;
+            }
+            return assembleChunks();
+        } finally {
+            Streams.closeStream(inputStream);
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Requests the first chunk on its own to learn the file size and whether ranges are
+     * supported, then fetches the remaining chunks concurrently.
+     */
+    private boolean downloadInParallel() throws IOException {
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        try {
+            urlConnection = MoPubHttpUrlConnection.getHttpUrlConnection(mUrl);
+            urlConnection.setRequestProperty(RANGE, "bytes=0-" + (CHUNK_SIZE - 1));
+            inputStream = new BufferedInputStream(urlConnection.getInputStream());
+
+            final int statusCode = urlConnection.getResponseCode();
+            if (statusCode < HttpURLConnection.HTTP_OK
+                    || statusCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                MoPubLog.d("VideoDownloader encountered unexpected statusCode: " + statusCode);
+                return false;
+            }
+
+            mValidator = getValidator(urlConnection);
+            if (statusCode != HttpURLConnection.HTTP_PARTIAL) {
+                // Ranges are not supported, so this is the whole file
+                mTotalLength = urlConnection.getContentLength();
+                if (!checkSize(mTotalLength)) {
+                    return false;
+                }
+                saveState();
+                return streamIntoChunks(inputStream, 0) && assembleChunks();
+            }
+
+            mTotalLength = parseTotalLength(urlConnection.getHeaderField(CONTENT_RANGE));
+            if (mTotalLength == UNKNOWN_LENGTH || !checkSize(mTotalLength)) {
+                return false;
+            }
+            saveState();
+            if (!readChunk(inputStream, 0)) {
+                return false;
+            }
+        } finally {
+            Streams.closeStream(inputStream);
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+
+        return downloadChunksInParallel(getMissingChunks());
+    }
+
+    private boolean downloadChunksInParallel(@NonNull final List<Integer> chunks) {
+        boolean success = true;
+        // Chunks are submitted in windows so one download never has more than mParallelChunks
+        // requests in flight.
+        for (int windowStart = 0; windowStart < chunks.size() && success && !mIsRangeRejected;
+                windowStart += mParallelChunks) {
+            final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(mParallelChunks);
+            final int windowEnd = Math.min(windowStart + mParallelChunks, chunks.size());
+            for (final Integer chunk : chunks.subList(windowStart, windowEnd)) {
+                futures.add(sChunkExecutor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return downloadChunk(chunk);
+                    }
+                }));
+            }
+
+            for (final Future<Boolean> future : futures) {
+                try {
+                    success &= future.get();
+                } catch (Exception e) {
+                    MoPubLog.d("Unable to download video chunk", e);
+                    success = false;
+                }
+            }
+        }
+        if (mIsRangeRejected) {
+            // Resuming cannot work against this file, so start over next time
+            clearPartialDownload();
+            return false;
+        }
+        return success && assembleChunks();
+    }
+
+    private boolean downloadChunk(final int chunk) throws IOException {
+        if (mCancellationSignal.isCancelled()) {
+            return false;
+        }
+
+        final long start = (long) chunk * CHUNK_SIZE;
+        final long end = Math.min(start + CHUNK_SIZE, mTotalLength) - 1;
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        boolean success = false;
+        try {
+            urlConnection = MoPubHttpUrlConnection.getHttpUrlConnection(mUrl);
+            urlConnection.setRequestProperty(RANGE, "bytes=" + start + "-" + end);
+            if (mValidator != null) {
+                urlConnection.setRequestProperty(IF_RANGE, mValidator);
+            }
+            inputStream = new BufferedInputStream(urlConnection.getInputStream());
+
+            if (urlConnection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                MoPubLog.d("Server did not return video chunk " + chunk + " as a range.");
+                mIsRangeRejected = true;
+                return false;
+            }
+            success = readChunk(inputStream, chunk);
+            return success;
+        } finally {
+            Streams.closeStream(inputStream);
+            // A chunk read to the end leaves its connection in the pool for the next chunk
+            if (!success && urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Reads exactly one chunk from {@code inputStream} and stores it.
+     */
+    private boolean readChunk(@NonNull final InputStream inputStream, final int chunk)
+            throws IOException {
+        final int length = getChunkLength(chunk);
+        final byte[] buffer = new byte[length];
+        final int filled = fill(inputStream, buffer);
+        if (filled != length) {
+            MoPubLog.d("Video chunk " + chunk + " ended early.");
+            return false;
+        }
+        return CacheService.putToDiskCache(getChunkKey(chunk), buffer);
+    }
+
+    /**
+     * Stores {@code inputStream} as consecutive chunks starting at {@code firstChunk}. Every
+     * chunk is persisted as soon as it is full, so an interruption loses at most one chunk.
+     *
+     * @return true if the stream was read to the end.
+     */
+    private boolean streamIntoChunks(@NonNull final InputStream inputStream, final int firstChunk)
+            throws IOException {
+        final byte[] buffer = new byte[CHUNK_SIZE];
+        long totalRead = (long) firstChunk * CHUNK_SIZE;
+        for (int chunk = firstChunk; ; chunk++) {
+            final int filled = fill(inputStream, buffer);
+            if (filled < 0) {
+                return false;
+            }
+
+            totalRead += filled;
+            if (totalRead > mMaxSize) {
+                MoPubLog.d("VideoDownloader encountered video larger than disk cap. ("
+                        + totalRead + " bytes / " + mMaxSize + " maximum).");
+                clearPartialDownload();
+                return false;
+            }
+
+            if (filled > 0 && !CacheService.putToDiskCache(getChunkKey(chunk),
+                    new ByteArrayInputStream(buffer, 0, filled))) {
+                return false;
+            }
+            if (filled < CHUNK_SIZE) {
+                if (mTotalLength == UNKNOWN_LENGTH) {
+                    // Only now is the size known. Record it so assembly can verify it.
+                    mTotalLength = (int) totalRead;
+                    saveState();
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads from {@code inputStream} until {@code buffer} is full or the stream ends.
+     *
+     * @return The number of bytes read, or -1 if the download was cancelled.
+     */
+    private int fill(@NonNull final InputStream inputStream, @NonNull final byte[] buffer)
+            throws IOException {
+        int filled = 0;
+        while (filled < buffer.length) {
+            if (mCancellationSignal.isCancelled()) {
+                return -1;
+            }
+            final int read = inputStream.read(buffer, filled, buffer.length - filled);
+            if (read == -1) {
+                break;
+            }
+            filled += read;
+        }
+        return filled;
+    }
+
+    /**
+     * Joins the chunks into the cache entry for the video URL and removes the partial entries.
+     */
+    private boolean assembleChunks() {
+        if (!getMissingChunks().isEmpty()) {
+            return false;
+        }
+
+        long assembledLength = 0;
+        for (int chunk = 0; chunk < getChunkCount(); chunk++) {
+            assembledLength += CacheService.getLengthDiskCache(getChunkKey(chunk));
+        }
+        if (assembledLength != mTotalLength) {
+            MoPubLog.d("Downloaded video length " + assembledLength + " did not match expected "
+                    + "length " + mTotalLength + ". Starting over next time.");
+            clearPartialDownload();
+            return false;
+        }
+
+        final boolean success = CacheService.putToDiskCache(mUrl,
+                new ChunkInputStream(getChunkCount()));
+        if (success) {
+            clearPartialDownload();
+        }
+        return success;
+    }
+
+    @NonNull
+    private List<Integer> getMissingChunks() {
+        final List<Integer> missingChunks = new ArrayList<Integer>();
+        for (int chunk = 0; chunk < getChunkCount(); chunk++) {
+            if (!CacheService.containsKeyDiskCache(getChunkKey(chunk))) {
+                missingChunks.add(chunk);
+            }
+        }
+        return missingChunks;
+    }
+
+    private int getChunkCount() {
+        if (mTotalLength == UNKNOWN_LENGTH) {
+            return 0;
+        }
+        return (mTotalLength + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    private int getChunkLength(final int chunk) {
+        return (int) Math.min(CHUNK_SIZE, mTotalLength - (long) chunk * CHUNK_SIZE);
+    }
+
+    @NonNull
+    private String getChunkKey(final int chunk) {
+        return CHUNK_KEY_PREFIX + chunk + "-" + mUrl;
+    }
+
+    private boolean checkSize(final int contentLength) {
+        if (contentLength > mMaxSize) {
+            MoPubLog.d(String.format(
+                    "VideoDownloader encountered video larger than disk cap. " +
+                            "(%d bytes / %d maximum).",
+                    contentLength,
+                    mMaxSize));
+            return false;
+        }
+        return true;
+    }
+
+    private void loadState() {
+        final byte[] state = CacheService.getFromDiskCache(STATE_KEY_PREFIX + mUrl);
+        if (state == null) {
+            return;
+        }
+
+        final String[] fields = new String(state).split("\n", 2);
+        try {
+            mTotalLength = Integer.parseInt(fields[0]);
+        } catch (NumberFormatException e) {
+            mTotalLength = UNKNOWN_LENGTH;
+        }
+        mValidator = fields.length > 1 && !TextUtils.isEmpty(fields[1]) ? fields[1] : null;
+    }
+
+    private void saveState() {
+        if (mTotalLength == UNKNOWN_LENGTH) {
+            return;
+        }
+        CacheService.putToDiskCache(STATE_KEY_PREFIX + mUrl,
+                (mTotalLength + "\n" + (mValidator == null ? "" : mValidator)).getBytes());
+    }
+
+    private void clearPartialDownload() {
+        CacheService.removeFromDiskCache(STATE_KEY_PREFIX + mUrl);
+        // Chunks are removed until the first gap. Parallel downloads may leave later chunks
+        // behind, so the known chunk count is checked as well.
+        final int knownChunkCount = getChunkCount();
+        for (int chunk = 0; ; chunk++) {
+            if (!CacheService.removeFromDiskCache(getChunkKey(chunk))
+                    && chunk >= knownChunkCount) {
+                break;
+            }
+        }
+    }
+
+    @Nullable
+    private static String getValidator(@NonNull final HttpURLConnection urlConnection) {
+        final String eTag = urlConnection.getHeaderField(ETAG);
+        if (!TextUtils.isEmpty(eTag)) {
+            return eTag;
+        }
+        final String lastModified = urlConnection.getHeaderField(LAST_MODIFIED);
+        return TextUtils.isEmpty(lastModified) ? null : lastModified;
+    }
+
+    @VisibleForTesting
+    static int parseTotalLength(@Nullable final String contentRange) {
+        if (contentRange == null) {
+            return UNKNOWN_LENGTH;
+        }
+        final Matcher matcher = CONTENT_RANGE_TOTAL_PATTERN.matcher(contentRange.trim());
+        if (!matcher.matches()) {
+            return UNKNOWN_LENGTH;
+        }
+        try {
+            return Integer.parseInt(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return UNKNOWN_LENGTH;
+        }
+    }
+
+    /**
+     * Reads the chunks back in order, holding only one chunk in memory at a time.
+     */
+    private class ChunkInputStream extends InputStream {
+        private final int mChunkCount;
+        private int mNextChunk;
+        @Nullable private byte[] mCurrentChunk;
+        private int mPosition;
+
+        ChunkInputStream(final int chunkCount) {
+            mChunkCount = chunkCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NonNull final byte[] buffer, final int offset, final int length)
+                throws IOException {
+            while (mCurrentChunk == null || mPosition >= mCurrentChunk.length) {
+                if (mNextChunk >= mChunkCount) {
+                    return -1;
+                }
+                mCurrentChunk = CacheService.getFromDiskCache(getChunkKey(mNextChunk));
+                if (mCurrentChunk == null) {
+                    throw new IOException("Video chunk " + mNextChunk + " disappeared.");
+                }
+                mNextChunk++;
+                mPosition = 0;
+            }
+
+            final int toCopy = Math.min(length, mCurrentChunk.length - mPosition);
+            System.arraycopy(mCurrentChunk, mPosition, buffer, offset, toCopy);
+            mPosition += toCopy;
+            return toCopy;
+        }
+    }
+}
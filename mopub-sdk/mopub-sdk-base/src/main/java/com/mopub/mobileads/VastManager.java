@@ -12,6 +12,7 @@ import com.mopub.common.Preconditions;
 import com.mopub.common.VisibleForTesting;
 import com.mopub.common.logging.MoPubLog;
 import com.mopub.common.util.AsyncTasks;
+import com.mopub.mobileads.VideoDownloader.DownloadPriority;
 import com.mopub.mobileads.VideoDownloader.VideoDownloaderListener;
 
 /**
@@ -42,6 +43,7 @@ public class VastManager implements VastXmlManagerAggregator.VastXmlManagerAggre
     @Nullable private String mDspCreativeId;
     private double mScreenAspectRatio;
     private int mScreenAreaDp;
+    @NonNull private DownloadPriority mDownloadPriority = DownloadPriority.INTERSTITIAL;
 
     private final boolean mShouldPreCacheVideo;
 
@@ -79,6 +81,14 @@ public class VastManager implements VastXmlManagerAggregator.VastXmlManagerAggre
         }
     }
 
+    /**
+     * Sets how urgently the video is precached relative to other VAST videos.
+     */
+    public void setDownloadPriority(@NonNull final DownloadPriority downloadPriority) {
+        Preconditions.checkNotNull(downloadPriority);
+        mDownloadPriority = downloadPriority;
+    }
+
     /**
      * Stops the VAST aggregator from continuing to follow wrapper redirects.
      */
@@ -124,7 +134,8 @@ public class VastManager implements VastXmlManagerAggregator.VastXmlManagerAggre
             }
         };
 
-        VideoDownloader.cache(vastVideoConfig.getNetworkMediaFileUrl(), videoDownloaderListener);
+        VideoDownloader.cache(vastVideoConfig.getNetworkMediaFileUrl(), mDownloadPriority,
+                videoDownloaderListener);
     }
 
     /**
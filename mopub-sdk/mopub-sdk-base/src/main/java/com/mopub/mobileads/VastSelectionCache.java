@@ -0,0 +1,128 @@
+package com.mopub.mobileads;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import com.mopub.common.Preconditions;
+import com.mopub.common.VisibleForTesting;
+import com.mopub.common.logging.MoPubLog;
+import com.mopub.common.util.Utils;
+
+/**
+ * Remembers which media file and companion ad {@link VastXmlManagerAggregator} picked for a
+ * creative, so the same creative coming back from the waterfall is not scored again. Only the
+ * position of the winning candidate is kept. The aggregator rebuilds the configuration from the
+ * new document, since configurations collect trackers and must not be shared between loads.
+ */
+class VastSelectionCache {
+
+    /**
+     * Position of the candidate that was chosen, or {@link #NONE} if no candidate qualified. A
+     * {@link #NONE} selection is never reused, since the candidates are scored again anyway to
+     * confirm that none of them qualifies.
+     */
+    static class Selection {
+        static final int NONE = -1;
+
+        final int index;
+        @Nullable final VastResource.Type resourceType;
+
+        Selection(final int index, @Nullable final VastResource.Type resourceType) {
+            this.index = index;
+            this.resourceType = resourceType;
+        }
+    }
+
+    private static final int MAX_ENTRIES = 64;
+
+    @NonNull private static final LruCache<String, Selection> sSelections =
+            new LruCache<String, Selection>(MAX_ENTRIES);
+    private static int sHitCount;
+    private static int sMissCount;
+
+    private VastSelectionCache() {
+    }
+
+    /**
+     * Identifies a VAST document by a SHA-1 hash of its contents, so that two different documents
+     * never share selections.
+     */
+    @NonNull
+    static String getDocumentKey(@NonNull final String vastXml) {
+        Preconditions.checkNotNull(vastXml);
+
+        return Utils.sha1(vastXml);
+    }
+
+    /**
+     * Builds the key for one selection.
+     *
+     * @param candidatesKey     The document key plus where the candidates are in the document,
+     *                          e.g. which Ad and Linear
+     * @param screenAspectRatio The aspect ratio the candidates were scored against
+     * @param screenAreaDp      The area the candidates were scored against
+     * @param selectionType     What was selected, e.g. the media file or a companion orientation
+     */
+    @NonNull
+    static String getSelectionKey(@NonNull final String candidatesKey,
+            final double screenAspectRatio, final int screenAreaDp,
+            @NonNull final String selectionType) {
+        Preconditions.checkNotNull(candidatesKey);
+        Preconditions.checkNotNull(selectionType);
+
+        return candidatesKey + "|" + Math.round(screenAspectRatio * 1000) + "|" + screenAreaDp
+                + "|" + selectionType;
+    }
+
+    @Nullable
+    static Selection get(@NonNull final String key) {
+        Preconditions.checkNotNull(key);
+
+        synchronized (sSelections) {
+            final Selection selection = sSelections.get(key);
+            if (selection != null) {
+                sHitCount++;
+                MoPubLog.d("VAST selection cache hit (hits: " + sHitCount + ", misses: "
+                        + sMissCount + ")");
+            } else {
+                sMissCount++;
+                MoPubLog.d("VAST selection cache miss (hits: " + sHitCount + ", misses: "
+                        + sMissCount + ")");
+            }
+            return selection;
+        }
+    }
+
+    static void put(@NonNull final String key, @NonNull final Selection selection) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(selection);
+
+        synchronized (sSelections) {
+            sSelections.put(key, selection);
+        }
+    }
+
+    @VisibleForTesting
+    static int getHitCount() {
+        synchronized (sSelections) {
+            return sHitCount;
+        }
+    }
+
+    @VisibleForTesting
+    static int getMissCount() {
+        synchronized (sSelections) {
+            return sMissCount;
+        }
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        synchronized (sSelections) {
+            sSelections.evictAll();
+            sHitCount = 0;
+            sMissCount = 0;
+        }
+    }
+}
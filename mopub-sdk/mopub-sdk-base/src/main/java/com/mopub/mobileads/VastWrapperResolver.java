@@ -0,0 +1,179 @@
+package com.mopub.mobileads;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.mopub.common.MoPubHttpUrlConnection;
+import com.mopub.common.Preconditions;
+import com.mopub.common.VisibleForTesting;
+import com.mopub.common.util.Streams;
+import com.mopub.common.util.Strings;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fetches the VAST documents that Wrapper elements redirect to for one VAST response. This
+ * differs from fetching each redirect as it is evaluated in two ways:
+ *
+ * - A Wrapper's redirect can be fetched while an earlier sibling Wrapper is still being
+ * evaluated. {@link VastXmlManagerAggregator} only prefetches the sibling right after the Wrapper
+ * it is evaluating, and fetches that are never used are cancelled, so at most one extra ad
+ * request is made to a demand source whose Wrapper is not reached.
+ * - Every fetch for the chain has to finish before a shared deadline of
+ * {@link #CHAIN_DEADLINE_MS}, instead of each redirect having its own timeout.
+ *
+ * Responses are never cached or shared between VAST responses. Wrapper URLs usually carry
+ * per-auction macros, and the documents they return carry that impression's trackers.
+ */
+class VastWrapperResolver {
+
+    /**
+     * How long all of the redirects of one VAST document may take.
+     */
+    @VisibleForTesting static final long CHAIN_DEADLINE_MS = 15 * 1000;
+    private static final int MAX_PARALLEL_FETCHES = 4;
+
+    @NonNull private static final ExecutorService sExecutor;
+
+    static {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_FETCHES,
+                MAX_PARALLEL_FETCHES, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        sExecutor = executor;
+    }
+
+    @NonNull private final ExecutorService mExecutor;
+    private final long mDeadlineMs;
+    @NonNull private final Map<String, Future<String>> mFetches =
+            new HashMap<String, Future<String>>();
+
+    VastWrapperResolver() {
+        this(sExecutor, SystemClock.elapsedRealtime() + CHAIN_DEADLINE_MS);
+    }
+
+    @VisibleForTesting
+    VastWrapperResolver(@NonNull final ExecutorService executor, final long deadlineMs) {
+        Preconditions.checkNotNull(executor);
+
+        mExecutor = executor;
+        mDeadlineMs = deadlineMs;
+    }
+
+    /**
+     * Starts fetching each of {@code urls} that is not already being fetched.
+     */
+    void prefetch(@NonNull final List<String> urls) {
+        Preconditions.checkNotNull(urls);
+
+        for (final String url : urls) {
+            startFetch(url);
+        }
+    }
+
+    /**
+     * Returns the document at {@code url}, waiting for a prefetch that is in flight or fetching it
+     * if needed.
+     *
+     * @throws IOException If the document could not be fetched before the chain's deadline.
+     */
+    @NonNull
+    String resolve(@NonNull final String url) throws IOException {
+        Preconditions.checkNotNull(url);
+
+        final Future<String> fetch = startFetch(url);
+        mFetches.remove(url);
+        final long remainingMs = mDeadlineMs - SystemClock.elapsedRealtime();
+        try {
+            if (remainingMs <= 0) {
+                throw new TimeoutException();
+            }
+            return fetch.get(remainingMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            fetch.cancel(true);
+            throw new SocketTimeoutException("VAST wrapper chain deadline exceeded for " + url);
+        } catch (InterruptedException e) {
+            fetch.cancel(true);
+            throw new IOException("Interrupted while resolving " + url, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to resolve " + url, cause);
+        }
+    }
+
+    /**
+     * Cancels prefetches that were never resolved, such as those for Wrappers after the one that
+     * produced a video.
+     */
+    void cancel() {
+        for (final Future<String> fetch : mFetches.values()) {
+            fetch.cancel(true);
+        }
+        mFetches.clear();
+    }
+
+    @NonNull
+    private Future<String> startFetch(@NonNull final String url) {
+        Future<String> fetch = mFetches.get(url);
+        if (fetch != null) {
+            return fetch;
+        }
+
+        final Callable<String> callable = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return fetch(url);
+            }
+        };
+        try {
+            fetch = mExecutor.submit(callable);
+        } catch (RejectedExecutionException e) {
+            // Fall back to fetching on the calling thread when resolved
+            final FutureTask<String> task = new FutureTask<String>(callable);
+            task.run();
+            fetch = task;
+        }
+        mFetches.put(url, fetch);
+        return fetch;
+    }
+
+    @NonNull
+    private static String fetch(@NonNull final String url) throws IOException {
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        boolean success = false;
+        try {
+            urlConnection = MoPubHttpUrlConnection.getHttpUrlConnection(url);
+            inputStream = new BufferedInputStream(urlConnection.getInputStream());
+            final String xml = Strings.fromStream(inputStream);
+            success = true;
+            return xml;
+        } finally {
+            Streams.closeStream(inputStream);
+            // Reading the body to the end and closing it lets the connection be reused for the
+            // next redirect, which often goes to the same host.
+            if (!success && urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+}
@@ -10,20 +10,14 @@ import android.text.TextUtils;
 import android.view.Display;
 import android.view.WindowManager;
 
-import com.mopub.common.MoPubHttpUrlConnection;
 import com.mopub.common.Preconditions;
 import com.mopub.common.VisibleForTesting;
 import com.mopub.common.logging.MoPubLog;
 import com.mopub.common.util.Dips;
-import com.mopub.common.util.Streams;
-import com.mopub.common.util.Strings;
 import com.mopub.network.Networking;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
-import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -71,16 +65,21 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
 
     // More than reasonable number of nested VAST urls to follow
     static final int MAX_TIMES_TO_FOLLOW_VAST_REDIRECT = 10;
+    // How many later sibling Wrappers are fetched while one Wrapper is being evaluated
+    @VisibleForTesting static final int MAX_PREFETCHED_SIBLING_WRAPPERS = 1;
     private static final double ASPECT_RATIO_WEIGHT = 70;
     private static final double AREA_WEIGHT = 30;
     private static final List<String> VIDEO_MIME_TYPES =
             Arrays.asList("video/mp4", "video/3gpp");
     private static final int MINIMUM_COMPANION_AD_WIDTH = 300;
     private static final int MINIMUM_COMPANION_AD_HEIGHT = 250;
+    private static final String MEDIA_FILE_SELECTION = "mediaFile";
 
     @NonNull private final WeakReference<VastXmlManagerAggregatorListener> mVastXmlManagerAggregatorListener;
     private final double mScreenAspectRatio;
     private final int mScreenAreaDp;
+    private final double mLogScreenAspectRatio;
+    private final double mLogScreenAreaDp;
     @NonNull private final Context mContext;
 
     /**
@@ -89,6 +88,12 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
      */
     private int mTimesFollowedVastRedirect;
 
+    /**
+     * Fetches wrapper redirects for this document and the documents it redirects to. This is only
+     * accessed on the background thread.
+     */
+    @Nullable private VastWrapperResolver mWrapperResolver;
+
     VastXmlManagerAggregator(@NonNull final VastXmlManagerAggregatorListener vastXmlManagerAggregatorListener,
             final double screenAspectRatio,
             final int screenAreaDp,
@@ -101,6 +106,8 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
                 new WeakReference<VastXmlManagerAggregatorListener>(vastXmlManagerAggregatorListener);
         mScreenAspectRatio = screenAspectRatio;
         mScreenAreaDp = screenAreaDp;
+        mLogScreenAspectRatio = Math.log(screenAspectRatio);
+        mLogScreenAreaDp = Math.log(screenAreaDp);
         mContext = context.getApplicationContext();
     }
 
@@ -123,6 +130,10 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
         } catch (Exception e) {
             MoPubLog.d("Unable to generate VastVideoConfig.", e);
             return null;
+        } finally {
+            if (mWrapperResolver != null) {
+                mWrapperResolver.cancel();
+            }
         }
     }
 
@@ -184,17 +195,20 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
             return null;
         }
 
-        for (VastAdXmlManager vastAdXmlManager : vastAdXmlManagers) {
+        final String documentKey = VastSelectionCache.getDocumentKey(vastXml);
+        for (int adIndex = 0; adIndex < vastAdXmlManagers.size(); adIndex++) {
+            final VastAdXmlManager vastAdXmlManager = vastAdXmlManagers.get(adIndex);
             if (!isValidSequenceNumber(vastAdXmlManager.getSequence())) {
                 continue;
             }
+            final String adKey = documentKey + "/" + adIndex;
 
             // InLine evaluation
             final VastInLineXmlManager vastInLineXmlManager =
                     vastAdXmlManager.getInLineXmlManager();
             if (vastInLineXmlManager != null) {
                 final VastVideoConfig vastVideoConfig = evaluateInLineXmlManager(
-                        vastInLineXmlManager, errorTrackers);
+                        vastInLineXmlManager, errorTrackers, adKey);
                 // If the vastVideoConfig is non null, it means we found a valid media file
                 if (vastVideoConfig != null) {
                     populateMoPubCustomElements(xmlManager, vastVideoConfig);
@@ -206,6 +220,7 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
             final VastWrapperXmlManager vastWrapperXmlManager
                     = vastAdXmlManager.getWrapperXmlManager();
             if (vastWrapperXmlManager != null) {
+                prefetchWrapperRedirects(vastAdXmlManagers, adIndex);
                 final List<VastTracker> wrapperErrorTrackers = new ArrayList<VastTracker>(errorTrackers);
                 wrapperErrorTrackers.addAll(vastWrapperXmlManager.getErrorTrackers());
                 final String vastRedirectXml = evaluateWrapperRedirect(vastWrapperXmlManager,
@@ -242,11 +257,12 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
                 // Only populate a companion ad if we don't already have one from one of the
                 // redirects
                 if (!vastVideoConfig.hasCompanionAd()) {
+                    final String wrapperKey = adKey + "/wrapper";
                     vastVideoConfig.setVastCompanionAd(
                             getBestCompanionAd(companionAdXmlManagers,
-                                    CompanionOrientation.LANDSCAPE),
+                                    CompanionOrientation.LANDSCAPE, wrapperKey),
                             getBestCompanionAd(companionAdXmlManagers,
-                                    CompanionOrientation.PORTRAIT));
+                                    CompanionOrientation.PORTRAIT, wrapperKey));
                 } else {
                     // Otherwise append the companion trackers if it doesn't have resources
                     final VastCompanionAdConfig landscapeCompanionAd = vastVideoConfig.getVastCompanionAd(
@@ -292,20 +308,25 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
      * @param vastInLineXmlManager used to extract the media file, clickthrough link, trackers, and
      *                         companion ad
      * @param errorTrackers The error trackers from previous wrappers
+     * @param adKey Identifies the Ad element in {@link VastSelectionCache}
      * @return a {@link VastVideoConfig} or null if a valid media file was not found
      */
     @Nullable
     private VastVideoConfig evaluateInLineXmlManager(
             @NonNull final VastInLineXmlManager vastInLineXmlManager,
-            @NonNull final List<VastTracker> errorTrackers) {
+            @NonNull final List<VastTracker> errorTrackers,
+            @NonNull final String adKey) {
         Preconditions.checkNotNull(vastInLineXmlManager);
         Preconditions.checkNotNull(errorTrackers);
+        Preconditions.checkNotNull(adKey);
 
         final List<VastLinearXmlManager> linearXmlManagers
                 = vastInLineXmlManager.getLinearXmlManagers();
 
-        for (VastLinearXmlManager linearXmlManager : linearXmlManagers) {
-            String bestMediaFileUrl = getBestMediaFileUrl(linearXmlManager.getMediaXmlManagers());
+        for (int linearIndex = 0; linearIndex < linearXmlManagers.size(); linearIndex++) {
+            final VastLinearXmlManager linearXmlManager = linearXmlManagers.get(linearIndex);
+            String bestMediaFileUrl = getBestMediaFileUrl(linearXmlManager.getMediaXmlManagers(),
+                    adKey + "/" + linearIndex);
             if (bestMediaFileUrl != null) {
                 // Create vast video configuration and populate initial trackers
                 final VastVideoConfig vastVideoConfig = new VastVideoConfig();
@@ -322,9 +343,9 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
                         vastInLineXmlManager.getCompanionAdXmlManagers();
                 vastVideoConfig.setVastCompanionAd(
                         getBestCompanionAd(companionAdXmlManagers,
-                                CompanionOrientation.LANDSCAPE),
+                                CompanionOrientation.LANDSCAPE, adKey),
                         getBestCompanionAd(companionAdXmlManagers,
-                                CompanionOrientation.PORTRAIT));
+                                CompanionOrientation.PORTRAIT, adKey));
                 vastVideoConfig.setSocialActionsCompanionAds(
                         getSocialActionsCompanionAds(companionAdXmlManagers));
                 errorTrackers.addAll(vastInLineXmlManager.getErrorTrackers());
@@ -510,59 +531,127 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
     @VisibleForTesting
     @Nullable
     String getBestMediaFileUrl(@NonNull final List<VastMediaXmlManager> managers) {
-        Preconditions.checkNotNull(managers, "managers cannot be null");
-        final List<VastMediaXmlManager> mediaXmlManagers = new ArrayList<VastMediaXmlManager>(managers);
-        double bestMediaFitness = Double.POSITIVE_INFINITY;
-        String bestMediaFileUrl = null;
+        return getBestMediaFileUrl(managers, null);
+    }
 
-        final Iterator<VastMediaXmlManager> xmlManagerIterator = mediaXmlManagers.iterator();
-        while (xmlManagerIterator.hasNext()) {
-            final VastMediaXmlManager mediaXmlManager = xmlManagerIterator.next();
+    /**
+     * Picks the media file whose dimensions best fit the screen.
+     *
+     * @param managers      The MediaFile elements of one Linear element
+     * @param candidatesKey Identifies the Linear element in {@link VastSelectionCache}, or
+     *                      {@code null} to always score the media files
+     */
+    @VisibleForTesting
+    @Nullable
+    String getBestMediaFileUrl(@NonNull final List<VastMediaXmlManager> managers,
+            @Nullable final String candidatesKey) {
+        Preconditions.checkNotNull(managers, "managers cannot be null");
 
-            final String mediaType = mediaXmlManager.getType();
-            final String mediaUrl = mediaXmlManager.getMediaUrl();
-            if (!VIDEO_MIME_TYPES.contains(mediaType) || mediaUrl == null) {
-                xmlManagerIterator.remove();
-                continue;
+        final String selectionKey = candidatesKey == null ? null
+                : VastSelectionCache.getSelectionKey(candidatesKey, mScreenAspectRatio,
+                        mScreenAreaDp, MEDIA_FILE_SELECTION);
+        if (selectionKey != null) {
+            final VastSelectionCache.Selection selection = VastSelectionCache.get(selectionKey);
+            if (selection != null && selection.index >= 0
+                    && selection.index < managers.size()) {
+                final VastMediaXmlManager mediaXmlManager = managers.get(selection.index);
+                if (hasPlayableMediaFile(mediaXmlManager) && hasValidDimensions(mediaXmlManager)) {
+                    return mediaXmlManager.getMediaUrl();
+                }
             }
+        }
+
+        double bestMediaFitness = Double.POSITIVE_INFINITY;
+        int bestMediaIndex = VastSelectionCache.Selection.NONE;
+        String bestMediaFileUrl = null;
 
-            final Integer mediaWidth = mediaXmlManager.getWidth();
-            final Integer mediaHeight = mediaXmlManager.getHeight();
-            if (mediaWidth == null || mediaWidth <= 0 || mediaHeight == null || mediaHeight <= 0) {
+        for (int i = 0; i < managers.size(); i++) {
+            final VastMediaXmlManager mediaXmlManager = managers.get(i);
+            if (!hasPlayableMediaFile(mediaXmlManager) || !hasValidDimensions(mediaXmlManager)) {
                 continue;
             }
 
-            final double mediaFitness = calculateFitness(mediaWidth, mediaHeight);
+            final double mediaFitness = calculateFitness(mediaXmlManager.getWidth(),
+                    mediaXmlManager.getHeight());
             if (mediaFitness < bestMediaFitness) {
                 bestMediaFitness = mediaFitness;
-                bestMediaFileUrl = mediaUrl;
+                bestMediaIndex = i;
+                bestMediaFileUrl = mediaXmlManager.getMediaUrl();
             }
         }
 
+        if (selectionKey != null && bestMediaIndex != VastSelectionCache.Selection.NONE) {
+            final VastSelectionCache.Selection selection =
+                    new VastSelectionCache.Selection(bestMediaIndex, null);
+            VastSelectionCache.put(selectionKey, selection);
+        }
         return bestMediaFileUrl;
     }
 
+    private static boolean hasPlayableMediaFile(
+            @NonNull final VastMediaXmlManager mediaXmlManager) {
+        return VIDEO_MIME_TYPES.contains(mediaXmlManager.getType())
+                && mediaXmlManager.getMediaUrl() != null;
+    }
+
+    private static boolean hasValidDimensions(@NonNull final VastMediaXmlManager mediaXmlManager) {
+        final Integer mediaWidth = mediaXmlManager.getWidth();
+        final Integer mediaHeight = mediaXmlManager.getHeight();
+        return mediaWidth != null && mediaWidth > 0 && mediaHeight != null && mediaHeight > 0;
+    }
+
     @VisibleForTesting
     @Nullable
     VastCompanionAdConfig getBestCompanionAd(
             @NonNull final List<VastCompanionAdXmlManager> managers,
             @NonNull final CompanionOrientation orientation) {
+        return getBestCompanionAd(managers, orientation, null);
+    }
+
+    /**
+     * Picks the companion ad that best fits the screen in the given orientation, preferring
+     * resource types in the order of {@link VastResource.Type}.
+     *
+     * @param managers      The Companion elements of one InLine or Wrapper element
+     * @param orientation   The orientation to fit the companion ad to
+     * @param candidatesKey Identifies the element in {@link VastSelectionCache}, or {@code null}
+     *                      to always score the companion ads
+     */
+    @VisibleForTesting
+    @Nullable
+    VastCompanionAdConfig getBestCompanionAd(
+            @NonNull final List<VastCompanionAdXmlManager> managers,
+            @NonNull final CompanionOrientation orientation,
+            @Nullable final String candidatesKey) {
         Preconditions.checkNotNull(managers, "managers cannot be null");
         Preconditions.checkNotNull(orientation, "orientation cannot be null");
 
-        final List<VastCompanionAdXmlManager> companionXmlManagers =
-                new ArrayList<VastCompanionAdXmlManager>(managers);
+        final String selectionKey = candidatesKey == null ? null
+                : VastSelectionCache.getSelectionKey(candidatesKey, mScreenAspectRatio,
+                        mScreenAreaDp, orientation.name());
+        if (selectionKey != null) {
+            final VastSelectionCache.Selection selection = VastSelectionCache.get(selectionKey);
+            if (selection != null && selection.index >= 0
+                    && selection.index < managers.size() && selection.resourceType != null) {
+                final VastCompanionAdConfig companionAdConfig = createCompanionAdConfig(
+                        managers.get(selection.index), selection.resourceType, orientation);
+                if (companionAdConfig != null) {
+                    return companionAdConfig;
+                }
+            }
+        }
+
         double bestCompanionFitness = Double.POSITIVE_INFINITY;
+        int bestCompanionIndex = VastSelectionCache.Selection.NONE;
         VastCompanionAdXmlManager bestCompanionXmlManager = null;
+        VastResource.Type bestVastResourceType = null;
         VastResource bestVastResource = null;
         Point bestVastScaledDimensions = null;
 
         // Look for the best companion ad in order of prioritized resource types
         for (VastResource.Type type : VastResource.Type.values()) {
-            final Iterator<VastCompanionAdXmlManager> xmlManagerIterator =
-                    companionXmlManagers.iterator();
-            while (xmlManagerIterator.hasNext()) {
-                final VastCompanionAdXmlManager companionXmlManager = xmlManagerIterator.next();
+            for (int i = 0; i < managers.size(); i++) {
+                final VastCompanionAdXmlManager companionXmlManager = managers.get(i);
 
                 final Integer width = companionXmlManager.getWidth();
                 final Integer height = companionXmlManager.getHeight();
@@ -587,7 +676,9 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
                 }
                 if (companionFitness < bestCompanionFitness) {
                     bestCompanionFitness = companionFitness;
+                    bestCompanionIndex = i;
                     bestCompanionXmlManager = companionXmlManager;
+                    bestVastResourceType = type;
                     bestVastResource = vastResource;
                     bestVastScaledDimensions = vastScaledDimensions;
                 }
@@ -597,6 +688,12 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
             }
         }
 
+        if (selectionKey != null && bestCompanionIndex != VastSelectionCache.Selection.NONE) {
+            final VastSelectionCache.Selection selection = new VastSelectionCache.Selection(
+                    bestCompanionIndex, bestVastResourceType);
+            VastSelectionCache.put(selectionKey, selection);
+        }
+
         if (bestCompanionXmlManager != null) {
             return new VastCompanionAdConfig(
                     bestVastScaledDimensions.x,
@@ -610,6 +707,41 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
         return null;
     }
 
+    /**
+     * Builds the configuration for a companion ad that was picked before.
+     *
+     * @return The configuration, or {@code null} if the companion no longer qualifies.
+     */
+    @Nullable
+    private VastCompanionAdConfig createCompanionAdConfig(
+            @NonNull final VastCompanionAdXmlManager companionXmlManager,
+            @NonNull final VastResource.Type type,
+            @NonNull final CompanionOrientation orientation) {
+        final Integer width = companionXmlManager.getWidth();
+        final Integer height = companionXmlManager.getHeight();
+        if (width == null || width < MINIMUM_COMPANION_AD_WIDTH ||
+                height == null || height < MINIMUM_COMPANION_AD_HEIGHT) {
+            return null;
+        }
+
+        final Point vastScaledDimensions = getScaledDimensions(width, height, type, orientation);
+        final VastResource vastResource = VastResource.fromVastResourceXmlManager(
+                companionXmlManager.getResourceXmlManager(), type,
+                vastScaledDimensions.x, vastScaledDimensions.y);
+        if (vastResource == null) {
+            return null;
+        }
+
+        return new VastCompanionAdConfig(
+                vastScaledDimensions.x,
+                vastScaledDimensions.y,
+                vastResource,
+                companionXmlManager.getClickThroughUrl(),
+                companionXmlManager.getClickTrackers(),
+                companionXmlManager.getCompanionCreativeViewTrackers()
+        );
+    }
+
     @VisibleForTesting
     @NonNull
     Map<String, VastCompanionAdConfig> getSocialActionsCompanionAds(
@@ -786,12 +918,33 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
      * @return the fitness score. The closer to 0, the better.
      */
     private double calculateFitness(final int widthDp, final int heightDp) {
-        final double mediaAspectRatio = (double) widthDp / heightDp;
-        final int mediaAreaDp = widthDp * heightDp;
-        final double aspectRatioRatio = mediaAspectRatio / mScreenAspectRatio;
-        final double areaRatio = (double) mediaAreaDp / mScreenAreaDp;
-        return ASPECT_RATIO_WEIGHT * Math.abs(Math.log(aspectRatioRatio))
-                + AREA_WEIGHT * Math.abs(Math.log(areaRatio));
+        // log(aspect ratio / screen aspect ratio) and log(area / screen area), expanded so that
+        // the logs of the dimensions can come from a table
+        final double logWidth = LogTable.log(widthDp);
+        final double logHeight = LogTable.log(heightDp);
+        return ASPECT_RATIO_WEIGHT * Math.abs(logWidth - logHeight - mLogScreenAspectRatio)
+                + AREA_WEIGHT * Math.abs(logWidth + logHeight - mLogScreenAreaDp);
+    }
+
+    /**
+     * Natural logs of the dimensions media files and companion ads commonly have.
+     */
+    private static class LogTable {
+        private static final int MAX_DIMENSION = 2048;
+        private static final double[] LOGS = new double[MAX_DIMENSION + 1];
+
+        static {
+            for (int i = 0; i <= MAX_DIMENSION; i++) {
+                LOGS[i] = Math.log(i);
+            }
+        }
+
+        static double log(final int value) {
+            if (value >= 0 && value <= MAX_DIMENSION) {
+                return LOGS[value];
+            }
+            return Math.log(value);
+        }
     }
 
     /**
@@ -824,23 +977,55 @@ public class VastXmlManagerAggregator extends AsyncTask<String, Void, VastVideoC
 
         if (mTimesFollowedVastRedirect < MAX_TIMES_TO_FOLLOW_VAST_REDIRECT) {
             mTimesFollowedVastRedirect++;
+            return getWrapperResolver().resolve(redirectUrl);
+        }
+
+        return null;
+    }
 
-            HttpURLConnection urlConnection = null;
-            InputStream inputStream = null;
-            try {
-                urlConnection = MoPubHttpUrlConnection.getHttpUrlConnection(redirectUrl);
-                inputStream = new BufferedInputStream(urlConnection.getInputStream());
-
-                return Strings.fromStream(inputStream);
-            } finally {
-                Streams.closeStream(inputStream);
-                if (urlConnection != null) {
-                    urlConnection.disconnect();
+    /**
+     * Starts fetching the redirect of the Wrapper at {@code wrapperIndex} together with that of
+     * the next {@link #MAX_PREFETCHED_SIBLING_WRAPPERS} sibling Wrappers. Wrappers are still
+     * evaluated in document order, so the first Wrapper that leads to a video wins as before;
+     * this only hides the latency of the next one. Siblings further on are not fetched until
+     * they are close, since every fetch is an ad request to a demand source.
+     */
+    private void prefetchWrapperRedirects(@NonNull final List<VastAdXmlManager> vastAdXmlManagers,
+            final int wrapperIndex) {
+        final int maxRedirects = Math.min(MAX_TIMES_TO_FOLLOW_VAST_REDIRECT
+                - mTimesFollowedVastRedirect, 1 + MAX_PREFETCHED_SIBLING_WRAPPERS);
+        final List<String> vastAdTagUris = new ArrayList<String>();
+        for (int i = wrapperIndex; i < vastAdXmlManagers.size(); i++) {
+            final VastAdXmlManager vastAdXmlManager = vastAdXmlManagers.get(i);
+            if (vastAdTagUris.size() >= maxRedirects) {
+                break;
+            }
+            if (!isValidSequenceNumber(vastAdXmlManager.getSequence())) {
+                continue;
+            }
+            final VastWrapperXmlManager vastWrapperXmlManager =
+                    vastAdXmlManager.getWrapperXmlManager();
+            if (vastWrapperXmlManager != null) {
+                final String vastAdTagUri = vastWrapperXmlManager.getVastAdTagURI();
+                if (vastAdTagUri != null) {
+                    vastAdTagUris.add(vastAdTagUri);
                 }
             }
         }
 
-        return null;
+        // A Wrapper without a sibling to fetch alongside is fetched when it is evaluated
+        if (vastAdTagUris.size() > 1) {
+            getWrapperResolver().prefetch(vastAdTagUris);
+        }
+    }
+
+    @NonNull
+    private VastWrapperResolver getWrapperResolver() {
+        // The chain's deadline starts when the first redirect is followed
+        if (mWrapperResolver == null) {
+            mWrapperResolver = new VastWrapperResolver();
+        }
+        return mWrapperResolver;
     }
 
     @VisibleForTesting
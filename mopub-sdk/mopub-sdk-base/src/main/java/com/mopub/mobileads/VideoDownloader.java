@@ -4,34 +4,87 @@ import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import com.mopub.common.CacheService;
-import com.mopub.common.MoPubHttpUrlConnection;
+import com.mopub.common.ClientMetadata;
+import com.mopub.common.ClientMetadata.MoPubNetworkType;
 import com.mopub.common.Preconditions;
 import com.mopub.common.VisibleForTesting;
 import com.mopub.common.logging.MoPubLog;
 import com.mopub.common.util.AsyncTasks;
-import com.mopub.common.util.Streams;
 
-import java.io.BufferedInputStream;
-import java.io.InputStream;
-import java.lang.ref.WeakReference;
-import java.net.HttpURLConnection;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
 
+/**
+ * Schedules video precache downloads. Requests for a URL that is already queued or downloading
+ * share the one download. At most {@link #setMaxConcurrentDownloads(int)} videos download at once
+ * (only one on 2G and 3G networks), and queued downloads start in order of
+ * {@link DownloadPriority}, then in the order they were requested. Cancelling a request only
+ * cancels its download once no other request shares it.
+ *
+ * All methods must be called on the UI thread.
+ */
 public class VideoDownloader {
     private static final int MAX_VIDEO_SIZE = 25 * 1024 * 1024; // 25 MiB
-    private static final Deque<WeakReference<VideoDownloaderTask>> sDownloaderTasks =
-            new ArrayDeque<WeakReference<VideoDownloaderTask>>();
+    private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 2;
+    private static int sMaxParallelChunks = 1;
+    private static int sMaxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+
+    /**
+     * Downloads by URL, in the order they were first requested.
+     */
+    private static final LinkedHashMap<String, Download> sDownloads =
+            new LinkedHashMap<String, Download>();
+    private static final PriorityQueue<Download> sPendingDownloads = new PriorityQueue<Download>();
+    /**
+     * Every request that is waiting for a download, in the order they were made.
+     */
+    private static final List<DownloadRequest> sRequests = new ArrayList<DownloadRequest>();
+    private static int sActiveDownloadCount;
+    private static long sNextSequenceNumber;
 
     interface VideoDownloaderListener {
         void onComplete(boolean success);
     }
 
+    /**
+     * Download priorities, from most to least urgent.
+     */
+    public enum DownloadPriority {
+        /**
+         * A rewarded video that the user is about to watch. None of the SDK's own formats use
+         * this, since they only report that they loaded once their video is cached, so a show can
+         * never be waiting on their download. It is for callers that start playback as soon as
+         * the video is cached. Requesting a queued URL again at this priority moves it to the
+         * front of the queue.
+         */
+        SHOW_IMMINENT,
+        /**
+         * A video for an interstitial that is being loaded. Interstitials are usually shown as
+         * soon as they load.
+         */
+        INTERSTITIAL,
+        /**
+         * A video that may be needed later, such as one for a rewarded ad, which is usually
+         * loaded well before the user opts in to watch it. On metered networks these wait until
+         * no other video is downloading.
+         */
+        SPECULATIVE
+    }
+
     private VideoDownloader() {}
 
     public static void cache(@Nullable final String url,
             @NonNull final VideoDownloaderListener listener) {
+        cache(url, DownloadPriority.INTERSTITIAL, listener);
+    }
+
+    public static void cache(@Nullable final String url,
+            @NonNull final DownloadPriority priority,
+            @NonNull final VideoDownloaderListener listener) {
+        Preconditions.checkNotNull(priority);
         Preconditions.checkNotNull(listener);
 
         if (url == null) {
@@ -40,62 +93,223 @@ public class VideoDownloader {
             return;
         }
 
-        final VideoDownloaderTask videoDownloaderTask = new VideoDownloaderTask(listener);
-        try {
-            AsyncTasks.safeExecuteOnExecutor(videoDownloaderTask, url);
-        } catch (Exception e) {
-            listener.onComplete(false);
+        final Download existingDownload = sDownloads.get(url);
+        if (existingDownload != null) {
+            existingDownload.mListeners.add(listener);
+            sRequests.add(new DownloadRequest(existingDownload, listener));
+            if (priority.ordinal() < existingDownload.mPriority.ordinal()
+                    && sPendingDownloads.remove(existingDownload)) {
+                existingDownload.mPriority = priority;
+                sPendingDownloads.add(existingDownload);
+            }
+            scheduleDownloads();
+            return;
         }
+
+        final Download download = new Download(url, priority, sNextSequenceNumber++);
+        download.mListeners.add(listener);
+        sRequests.add(new DownloadRequest(download, listener));
+        sDownloads.put(url, download);
+        sPendingDownloads.add(download);
+        scheduleDownloads();
     }
 
+    /**
+     * Sets how many byte ranges of a video may be downloaded at once. With the default of 1,
+     * videos are streamed in one request and resumed from the last complete chunk if interrupted.
+     * Larger values split large videos into concurrent range requests.
+     */
+    public static void setMaxParallelChunks(final int maxParallelChunks) {
+        sMaxParallelChunks = Math.max(1, maxParallelChunks);
+    }
 
+    /**
+     * Sets how many videos may be downloaded at once on fast networks. The default is 2.
+     */
+    public static void setMaxConcurrentDownloads(final int maxConcurrentDownloads) {
+        sMaxConcurrentDownloads = Math.max(1, maxConcurrentDownloads);
+        scheduleDownloads();
+    }
+
+    /**
+     * Cancels every request, and with them every download.
+     */
     public static void cancelAllDownloaderTasks() {
-        for (final WeakReference<VideoDownloaderTask> weakDownloaderTask : sDownloaderTasks) {
-            cancelOneTask(weakDownloaderTask);
+        while (!sRequests.isEmpty()) {
+            cancelRequest(sRequests.get(sRequests.size() - 1));
         }
-
-        sDownloaderTasks.clear();
     }
 
+    /**
+     * Cancels the request that was made most recently. Its listener is told the download failed.
+     * The download itself is only cancelled if no other request is waiting for it.
+     */
     public static void cancelLastDownloadTask() {
-        if (sDownloaderTasks.isEmpty()) {
-            return;
+        if (!sRequests.isEmpty()) {
+            cancelRequest(sRequests.get(sRequests.size() - 1));
+        }
+    }
+
+    private static void cancelRequest(@NonNull final DownloadRequest request) {
+        sRequests.remove(request);
+        final Download download = request.mDownload;
+        download.mListeners.remove(request.mListener);
+        if (download.mListeners.isEmpty()) {
+            cancelDownload(download);
         }
+        request.mListener.onComplete(false);
+    }
 
-        cancelOneTask(sDownloaderTasks.peekLast());
-        sDownloaderTasks.removeLast();
+    private static void cancelDownload(@NonNull final Download download) {
+        if (download.mTask != null) {
+            // Forget the download now so a new request for the URL starts a new download instead
+            // of joining this one. The task still reports back through onCancelled().
+            sDownloads.remove(download.mUrl);
+            download.mTask.cancel(true);
+        } else {
+            sPendingDownloads.remove(download);
+            finishDownload(download, false);
+        }
     }
 
-    /**
-     * @param weakDownloaderTask A weak reference to an in-flight VideoDownloaderTask
-     * @return  <tt>false</tt> if weakDownloaderTask is null, has a null referent, or if the task has
-     *          already been completed
-     *          <tt>true</tt> otherwise
-     */
-    private static boolean cancelOneTask(
-            @Nullable final WeakReference<VideoDownloaderTask> weakDownloaderTask) {
-        if (weakDownloaderTask == null) {
-            return false;
+    private static void scheduleDownloads() {
+        final MoPubNetworkType networkType = getActiveNetworkType();
+        final int maxConcurrentDownloads = getMaxConcurrentDownloads(networkType);
+        while (sActiveDownloadCount < maxConcurrentDownloads && !sPendingDownloads.isEmpty()) {
+            final Download download = sPendingDownloads.peek();
+            // Preloaded videos would compete for bandwidth with videos that are about to play
+            if (download.mPriority == DownloadPriority.SPECULATIVE
+                    && sActiveDownloadCount > 0
+                    && !isUnmetered(networkType)) {
+                return;
+            }
+
+            sPendingDownloads.poll();
+            startDownload(download, isSlow(networkType) ? 1 : sMaxParallelChunks);
+        }
+    }
+
+    private static void startDownload(@NonNull final Download download,
+            final int maxParallelChunks) {
+        final VideoDownloaderTask task = new VideoDownloaderTask(new VideoDownloaderListener() {
+            @Override
+            public void onComplete(final boolean success) {
+                if (download.mTask == null) {
+                    // The download was cleared while in flight
+                    return;
+                }
+                sActiveDownloadCount--;
+                finishDownload(download, success);
+                scheduleDownloads();
+            }
+        }, maxParallelChunks);
+        download.mTask = task;
+        sActiveDownloadCount++;
+
+        try {
+            AsyncTasks.safeExecuteOnExecutor(task, download.mUrl);
+        } catch (Exception e) {
+            MoPubLog.d("VideoDownloader failed to start download.", e);
+            download.mTask = null;
+            sActiveDownloadCount--;
+            finishDownload(download, false);
+        }
+    }
+
+    private static void finishDownload(@NonNull final Download download, final boolean success) {
+        // A cleared or cancelled download may finish after a new one for the same URL started
+        if (sDownloads.get(download.mUrl) == download) {
+            sDownloads.remove(download.mUrl);
+        }
+        download.mTask = null;
+        final Iterator<DownloadRequest> iterator = sRequests.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mDownload == download) {
+                iterator.remove();
+            }
         }
 
-        final VideoDownloaderTask downloaderTask = weakDownloaderTask.get();
-        if (downloaderTask == null) {
-            return false;
+        final List<VideoDownloaderListener> listeners =
+                new ArrayList<VideoDownloaderListener>(download.mListeners);
+        download.mListeners.clear();
+        for (final VideoDownloaderListener listener : listeners) {
+            listener.onComplete(success);
         }
+    }
 
-        return downloaderTask.cancel(true);
+    @NonNull
+    private static MoPubNetworkType getActiveNetworkType() {
+        final ClientMetadata clientMetadata = ClientMetadata.getInstance();
+        if (clientMetadata == null) {
+            return MoPubNetworkType.UNKNOWN;
+        }
+        return clientMetadata.getActiveNetworkType();
+    }
+
+    @VisibleForTesting
+    static int getMaxConcurrentDownloads(@NonNull final MoPubNetworkType networkType) {
+        return isSlow(networkType) ? 1 : sMaxConcurrentDownloads;
+    }
+
+    private static boolean isSlow(@NonNull final MoPubNetworkType networkType) {
+        return networkType == MoPubNetworkType.GG || networkType == MoPubNetworkType.GGG;
+    }
+
+    private static boolean isUnmetered(@NonNull final MoPubNetworkType networkType) {
+        return networkType == MoPubNetworkType.WIFI || networkType == MoPubNetworkType.ETHERNET;
+    }
+
+    private static class Download implements Comparable<Download> {
+        @NonNull final String mUrl;
+        @NonNull DownloadPriority mPriority;
+        final long mSequenceNumber;
+        @NonNull final List<VideoDownloaderListener> mListeners =
+                new ArrayList<VideoDownloaderListener>();
+        @Nullable VideoDownloaderTask mTask;
+
+        Download(@NonNull final String url, @NonNull final DownloadPriority priority,
+                final long sequenceNumber) {
+            mUrl = url;
+            mPriority = priority;
+            mSequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public int compareTo(@NonNull final Download another) {
+            final int byPriority = mPriority.compareTo(another.mPriority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            return mSequenceNumber < another.mSequenceNumber ? -1
+                    : (mSequenceNumber == another.mSequenceNumber ? 0 : 1);
+        }
+    }
+
+    private static class DownloadRequest {
+        @NonNull final Download mDownload;
+        @NonNull final VideoDownloaderListener mListener;
+
+        DownloadRequest(@NonNull final Download download,
+                @NonNull final VideoDownloaderListener listener) {
+            mDownload = download;
+            mListener = listener;
+        }
     }
 
     @VisibleForTesting
     static class VideoDownloaderTask extends AsyncTask<String, Void, Boolean> {
         @NonNull private final VideoDownloaderListener mListener;
-        @NonNull private final WeakReference<VideoDownloaderTask> mWeakSelf;
+        private final int mMaxParallelChunks;
 
         @VisibleForTesting
         VideoDownloaderTask(@NonNull final VideoDownloaderListener listener) {
+            this(listener, sMaxParallelChunks);
+        }
+
+        VideoDownloaderTask(@NonNull final VideoDownloaderListener listener,
+                final int maxParallelChunks) {
             mListener = listener;
-            mWeakSelf = new WeakReference<VideoDownloaderTask>(this);
-            sDownloaderTasks.add(mWeakSelf);
+            mMaxParallelChunks = maxParallelChunks;
         }
 
         @Override
@@ -106,42 +320,17 @@ public class VideoDownloader {
             }
 
             final String videoUrl = params[0];
-            HttpURLConnection urlConnection = null;
-            InputStream inputStream = null;
             try {
-                urlConnection = MoPubHttpUrlConnection.getHttpUrlConnection(videoUrl);
-                inputStream = new BufferedInputStream(urlConnection.getInputStream());
-
-                // Check status code range
-                int statusCode = urlConnection.getResponseCode();
-                if (statusCode < HttpURLConnection.HTTP_OK
-                        || statusCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
-                    MoPubLog.d("VideoDownloader encountered unexpected statusCode: " +
-                            statusCode);
-                    return false;
-                }
-
-                // Check video size below maximum
-                int contentLength = urlConnection.getContentLength();
-                if (contentLength > MAX_VIDEO_SIZE) {
-                    MoPubLog.d(String.format(
-                            "VideoDownloader encountered video larger than disk cap. " +
-                                    "(%d bytes / %d maximum).",
-                            contentLength,
-                            MAX_VIDEO_SIZE));
-                    return false;
-                }
-
-                boolean diskPutResult = CacheService.putToDiskCache(videoUrl, inputStream);
-                return diskPutResult;
+                return new ResumableVideoDownload(videoUrl, MAX_VIDEO_SIZE, mMaxParallelChunks,
+                        new ResumableVideoDownload.CancellationSignal() {
+                            @Override
+                            public boolean isCancelled() {
+                                return VideoDownloaderTask.this.isCancelled();
+                            }
+                        }).download();
             } catch (Exception e) {
                 MoPubLog.d("VideoDownloader task threw an internal exception.", e);
                 return false;
-            } finally {
-                Streams.closeStream(inputStream);
-                if (urlConnection != null) {
-                    urlConnection.disconnect();
-                }
             }
         }
 
@@ -152,8 +341,6 @@ public class VideoDownloader {
                 return;
             }
 
-            sDownloaderTasks.remove(mWeakSelf);
-
             if (success == null) {
                 mListener.onComplete(false);
                 return;
@@ -165,20 +352,32 @@ public class VideoDownloader {
         @Override
         protected void onCancelled() {
             MoPubLog.d("VideoDownloader task was cancelled.");
-            sDownloaderTasks.remove(mWeakSelf);
             mListener.onComplete(false);
         }
     }
 
     @Deprecated
     @VisibleForTesting
-    public static Deque<WeakReference<VideoDownloaderTask>> getDownloaderTasks() {
-        return sDownloaderTasks;
+    static int getPendingDownloadCount() {
+        return sPendingDownloads.size();
+    }
+
+    @Deprecated
+    @VisibleForTesting
+    static int getActiveDownloadCount() {
+        return sActiveDownloadCount;
     }
 
     @Deprecated
     @VisibleForTesting
     public static void clearDownloaderTasks() {
-        sDownloaderTasks.clear();
+        for (final Download download : sDownloads.values()) {
+            download.mTask = null;
+        }
+        sDownloads.clear();
+        sRequests.clear();
+        sPendingDownloads.clear();
+        sActiveDownloadCount = 0;
+        sMaxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
     }
 }
@@ -1,7 +1,12 @@
 package com.mopub.mobileads;
 
 import android.annotation.SuppressLint;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
@@ -12,16 +17,37 @@ import com.mopub.common.logging.MoPubLog;
 
 import java.lang.ref.WeakReference;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import static com.mopub.common.Constants.AD_EXPIRATION_DELAY;
 import static com.mopub.common.Constants.FIFTEEN_MINUTES_MILLIS;
 
 /**
- * Holds WebViews in memory until they are used.
+ * Holds WebViews in memory until they are used. The cache is bounded both by count and by an
+ * estimate of the memory its WebViews hold; when it is full, the oldest WebView is evicted. WebViews
+ * expire with their ads after {@link com.mopub.common.Constants#AD_EXPIRATION_DELAY}, and the cache
+ * sheds WebViews when the system asks the app to trim memory.
  */
 public class WebViewCacheService {
+    public enum EvictionReason {
+        /** The cache needed room for a newer WebView */
+        CAPACITY,
+        /** The ad expired before it was shown */
+        EXPIRED,
+        /** The system asked the app to trim memory */
+        MEMORY_PRESSURE
+    }
+
+    /**
+     * Implemented by {@link Interstitial}s that want to know when their pre-rendered WebView is
+     * evicted before it could be shown.
+     */
+    public interface EvictionListener {
+        void onWebViewEvicted(@NonNull Long broadcastIdentifier, @NonNull EvictionReason reason);
+    }
+
     public static class Config {
         @NonNull
         private final BaseWebView mWebView;
@@ -29,6 +55,7 @@ public class WebViewCacheService {
         private final WeakReference<Interstitial> mWeakInterstitial;
         @NonNull
         private final ExternalViewabilitySessionManager mViewabilityManager;
+        private final long mCreatedTimeMillis;
 
         Config(@NonNull final BaseWebView baseWebView,
                 @NonNull final Interstitial baseInterstitial,
@@ -36,6 +63,7 @@ public class WebViewCacheService {
             mWebView = baseWebView;
             mWeakInterstitial = new WeakReference<Interstitial>(baseInterstitial);
             mViewabilityManager = viewabilityManager;
+            mCreatedTimeMillis = SystemClock.elapsedRealtime();
         }
 
         @NonNull
@@ -52,27 +80,38 @@ public class WebViewCacheService {
         public ExternalViewabilitySessionManager getViewabilityManager() {
             return mViewabilityManager;
         }
+
+        boolean isExpired(final long nowMillis) {
+            return nowMillis - mCreatedTimeMillis >= AD_EXPIRATION_DELAY;
+        }
     }
 
     /**
-     * Maximum number of {@link BaseWebView}s that are cached. This limit is intended to be very
-     * conservative; it is not recommended to cache more than a few BaseWebViews.
+     * Maximum number of {@link BaseWebView}s that are cached, regardless of the memory available.
      */
     @VisibleForTesting
-    static final int MAX_SIZE = 50;
+    static final int MAX_SIZE = 10;
 
     /**
-     * Trim the cache at least this frequently. Trimming only removes a {@link Config}s when its
-     * associated {@link Interstitial} is no longer in memory. The cache is also
+     * Rough amount of memory, mostly in the renderer, held by a WebView with a loaded ad. The cache
+     * cannot measure this, so every WebView is counted at this size.
+     */
+    @VisibleForTesting
+    static final int ESTIMATED_WEBVIEW_SIZE_BYTES = 20 * 1024 * 1024;
+
+    /**
+     * Trim the cache at least this frequently. Trimming removes {@link Config}s whose associated
+     * {@link Interstitial} is no longer in memory or whose ad has expired. The cache is also
      * trimmed every time {@link #storeWebViewConfig(Long, Interstitial, BaseWebView, ExternalViewabilitySessionManager)} is called.
      */
     @VisibleForTesting
     static final long TRIM_CACHE_FREQUENCY_MILLIS = FIFTEEN_MINUTES_MILLIS;
 
+    // Insertion ordered, so the first entry is always the oldest
     @SuppressLint("UseSparseArrays")
     @NonNull
     private static final Map<Long, Config> sWebViewConfigs =
-            Collections.synchronizedMap(new HashMap<Long, Config>());
+            Collections.synchronizedMap(new LinkedHashMap<Long, Config>());
 
     @VisibleForTesting
     @NonNull
@@ -80,12 +119,36 @@ public class WebViewCacheService {
     @NonNull
     private static Handler sHandler = new Handler();
 
+    @Nullable private static Context sContext;
+    private static long sMaxSizeBytes = (long) MAX_SIZE * ESTIMATED_WEBVIEW_SIZE_BYTES;
+    private static int sHitCount;
+    private static int sMissCount;
+    private static int sEvictionCount;
+
+    @NonNull private static final ComponentCallbacks2 sTrimMemoryCallbacks =
+            new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(final int level) {
+                    trimMemory(level);
+                }
+
+                @Override
+                public void onConfigurationChanged(final Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    trimMemory(TRIM_MEMORY_COMPLETE);
+                }
+            };
+
     private WebViewCacheService() {
     }
 
     /**
      * Stores the {@link BaseWebView} in the cache. This WebView will live until it is retrieved via
-     * {@link #popWebViewConfig(Long)} or when the base interstitial object is removed from memory.
+     * {@link #popWebViewConfig(Long)}, when the base interstitial object is removed from memory,
+     * when its ad expires, or when it is evicted to make room or to free memory.
      *
      * @param broadcastIdentifier The unique identifier associated with both the interstitial and the WebView
      * @param baseInterstitial    The interstitial managing this WebView
@@ -94,7 +157,7 @@ public class WebViewCacheService {
      *                            during Interstitial load and reutilized on show
      */
     @VisibleForTesting
-    public static void storeWebViewConfig(@NonNull final Long broadcastIdentifier,
+    public static synchronized void storeWebViewConfig(@NonNull final Long broadcastIdentifier,
             @NonNull final Interstitial baseInterstitial,
             @NonNull final BaseWebView baseWebView,
             @NonNull final ExternalViewabilitySessionManager viewabilityManager) {
@@ -102,45 +165,162 @@ public class WebViewCacheService {
         Preconditions.checkNotNull(baseInterstitial);
         Preconditions.checkNotNull(baseWebView);
 
-        trimCache();
-        // Ignore request when max size is reached.
-        if (sWebViewConfigs.size() >= MAX_SIZE) {
-            MoPubLog.w(
-                    "Unable to cache web view. Please destroy some via MoPubInterstitial#destroy() and try again.");
-            return;
+        if (sContext == null && baseWebView.getContext() != null) {
+            initialize(baseWebView.getContext());
+        }
+
+        removeStaleConfigs();
+        while (!sWebViewConfigs.isEmpty() && (sWebViewConfigs.size() >= MAX_SIZE
+                || getSizeBytes() + ESTIMATED_WEBVIEW_SIZE_BYTES > sMaxSizeBytes)) {
+            evict(sWebViewConfigs.keySet().iterator().next(), EvictionReason.CAPACITY);
         }
 
         sWebViewConfigs.put(broadcastIdentifier,
                 new Config(baseWebView, baseInterstitial, viewabilityManager));
+        scheduleTrimCache();
     }
 
     @Nullable
-    public static Config popWebViewConfig(@NonNull final Long broadcastIdentifier) {
+    public static synchronized Config popWebViewConfig(@NonNull final Long broadcastIdentifier) {
         Preconditions.checkNotNull(broadcastIdentifier);
 
-        return sWebViewConfigs.remove(broadcastIdentifier);
+        final Config config = sWebViewConfigs.get(broadcastIdentifier);
+        if (config != null && config.isExpired(SystemClock.elapsedRealtime())) {
+            evict(broadcastIdentifier, EvictionReason.EXPIRED);
+            sMissCount++;
+            return null;
+        }
+
+        sWebViewConfigs.remove(broadcastIdentifier);
+        if (config != null) {
+            sHitCount++;
+        } else {
+            sMissCount++;
+        }
+        return config;
     }
 
     @VisibleForTesting
     static synchronized void trimCache() {
+        removeStaleConfigs();
+
+        if (!sWebViewConfigs.isEmpty()) {
+            scheduleTrimCache();
+        }
+    }
+
+    /**
+     * Evicts WebViews, oldest first, in response to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     * Cached WebViews are interstitials waiting to be shown, so only severe pressure evicts all of
+     * them.
+     */
+    @VisibleForTesting
+    static synchronized void trimMemory(final int level) {
+        final int maxSize;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            maxSize = 0;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            maxSize = sWebViewConfigs.size() / 2;
+        } else {
+            return;
+        }
+
+        while (sWebViewConfigs.size() > maxSize) {
+            evict(sWebViewConfigs.keySet().iterator().next(), EvictionReason.MEMORY_PRESSURE);
+        }
+        MoPubLog.d("Trimmed WebView cache to " + sWebViewConfigs.size() + " WebViews");
+    }
+
+    public static int getSize() {
+        return sWebViewConfigs.size();
+    }
+
+    public static long getSizeBytes() {
+        return (long) sWebViewConfigs.size() * ESTIMATED_WEBVIEW_SIZE_BYTES;
+    }
+
+    public static long getMaxSizeBytes() {
+        return sMaxSizeBytes;
+    }
+
+    public static int getHitCount() {
+        return sHitCount;
+    }
+
+    public static int getMissCount() {
+        return sMissCount;
+    }
+
+    public static int getEvictionCount() {
+        return sEvictionCount;
+    }
+
+    /**
+     * Sizes the cache to half of the app's memory class, but never below one WebView, and starts
+     * listening for memory pressure.
+     */
+    private static void initialize(@NonNull final Context context) {
+        sContext = context.getApplicationContext();
+        sContext.registerComponentCallbacks(sTrimMemoryCallbacks);
+
+        final ActivityManager activityManager =
+                (ActivityManager) sContext.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            final long maxSizeBytes = (long) activityManager.getMemoryClass() * 1024 * 1024 / 2;
+            sMaxSizeBytes = Math.min((long) MAX_SIZE * ESTIMATED_WEBVIEW_SIZE_BYTES,
+                    Math.max(ESTIMATED_WEBVIEW_SIZE_BYTES, maxSizeBytes));
+        }
+    }
+
+    private static void removeStaleConfigs() {
+        final long now = SystemClock.elapsedRealtime();
         final Iterator<Map.Entry<Long, Config>> iterator = sWebViewConfigs.entrySet().iterator();
         while (iterator.hasNext()) {
             final Map.Entry<Long, Config> entry = iterator.next();
+            final Config config = entry.getValue();
 
             // If the Interstitial was removed from memory, end viewability manager tracking and
             // discard the entire associated Config.
-            if (entry.getValue().getWeakInterstitial().get() == null) {
-                entry.getValue().getViewabilityManager().endDisplaySession();
+            if (config.getWeakInterstitial().get() == null) {
+                config.getViewabilityManager().endDisplaySession();
                 iterator.remove();
+            } else if (config.isExpired(now)) {
+                iterator.remove();
+                release(entry.getKey(), config, EvictionReason.EXPIRED);
             }
         }
+    }
 
-        if (!sWebViewConfigs.isEmpty()) {
-            sHandler.removeCallbacks(sTrimCacheRunnable);
-            sHandler.postDelayed(sTrimCacheRunnable, TRIM_CACHE_FREQUENCY_MILLIS);
+    private static void evict(@NonNull final Long broadcastIdentifier,
+            @NonNull final EvictionReason reason) {
+        final Config config = sWebViewConfigs.remove(broadcastIdentifier);
+        if (config != null) {
+            release(broadcastIdentifier, config, reason);
+        }
+    }
+
+    private static void release(@NonNull final Long broadcastIdentifier,
+            @NonNull final Config config, @NonNull final EvictionReason reason) {
+        sEvictionCount++;
+        MoPubLog.d("Evicting cached WebView for broadcast identifier " + broadcastIdentifier
+                + " (" + reason + ")");
+
+        config.getViewabilityManager().endDisplaySession();
+        config.getWebView().destroy();
+
+        final Interstitial interstitial = config.getWeakInterstitial().get();
+        if (interstitial instanceof EvictionListener) {
+            ((EvictionListener) interstitial).onWebViewEvicted(broadcastIdentifier, reason);
         }
     }
 
+    private static void scheduleTrimCache() {
+        sHandler.removeCallbacks(sTrimCacheRunnable);
+        sHandler.postDelayed(sTrimCacheRunnable, TRIM_CACHE_FREQUENCY_MILLIS);
+    }
+
     private static class TrimCacheRunnable implements Runnable {
         @Override
         public void run() {
@@ -153,6 +333,14 @@ public class WebViewCacheService {
     public static void clearAll() {
         sWebViewConfigs.clear();
         sHandler.removeCallbacks(sTrimCacheRunnable);
+        if (sContext != null) {
+            sContext.unregisterComponentCallbacks(sTrimMemoryCallbacks);
+            sContext = null;
+        }
+        sMaxSizeBytes = (long) MAX_SIZE * ESTIMATED_WEBVIEW_SIZE_BYTES;
+        sHitCount = 0;
+        sMissCount = 0;
+        sEvictionCount = 0;
     }
 
     @Deprecated
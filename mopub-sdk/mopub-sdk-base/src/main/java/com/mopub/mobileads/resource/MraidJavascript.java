@@ -1,8 +1,10 @@
 package com.mopub.mobileads.resource;
 
 public class MraidJavascript {
+    // Indentation and whole-line comments are stripped from the entire script, not just its
+    // last line, so the parentheses around the concatenation matter.
     public static final String JAVASCRIPT_SOURCE =
-            "(function() {\n" +
+            ("(function() {\n" +
             "  var isIOS = (/iphone|ipad|ipod/i).test(window.navigator.userAgent.toLowerCase());\n" +
             "  if (isIOS) {\n" +
             "    console = {};\n" +
@@ -884,5 +886,5 @@ public class MraidJavascript {
             "      }\n" +
             "    }\n" +
             "  };\n" +
-            "}());\n".replaceAll("(?m)^\\s+", "").replaceAll("(?m)^//.*(?=\\n)", "");
+            "}());\n").replaceAll("(?m)^\\s+", "").replaceAll("(?m)^//.*(?=\\n)", "");
 }
@@ -7,6 +7,8 @@ import android.graphics.Color;
 import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
@@ -37,10 +39,31 @@ import org.json.JSONObject;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class MraidBridge {
+    // Bits of a pending setSupports update
+    private static final int NO_PENDING_SUPPORTS = -1;
+    private static final int SUPPORTS_SMS = 1;
+    private static final int SUPPORTS_TEL = 1 << 1;
+    private static final int SUPPORTS_CALENDAR = 1 << 2;
+    private static final int SUPPORTS_STORE_PICTURE = 1 << 3;
+    private static final int SUPPORTS_INLINE_VIDEO = 1 << 4;
+
+    /**
+     * Kinds of state that are sent to the WebView in batches.
+     */
+    private enum PendingUpdate {
+        SUPPORTS,
+        PLACEMENT_TYPE,
+        SCREEN_METRICS,
+        VIEW_STATE,
+        VIEWABLE
+    }
+
     private final AdReport mAdReport;
 
     public interface MraidBridgeListener {
@@ -84,6 +107,32 @@ public class MraidBridge {
 
     private boolean mHasLoaded;
 
+    // State pushes wait here until the next main thread loop, so that a burst of updates, such as
+    // the ones sent on rotation, reaches the WebView as a single script. Only the latest value of
+    // each kind of state is sent, in the order each kind was first updated.
+    @NonNull private final List<PendingUpdate> mPendingUpdates =
+            new ArrayList<PendingUpdate>(PendingUpdate.values().length);
+    @Nullable private MraidScreenMetrics mPendingScreenMetrics;
+    @Nullable private Boolean mPendingViewable;
+    @Nullable private PlacementType mPendingPlacementType;
+    @Nullable private ViewState mPendingViewState;
+    private int mPendingSupports = NO_PENDING_SUPPORTS;
+    private boolean mIsFlushScheduled;
+
+    // Reused for every script sent to the WebView
+    @NonNull private final StringBuilder mScriptBuilder = new StringBuilder();
+    @NonNull private final Handler mHandler;
+    @NonNull private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushPendingState();
+        }
+    };
+
+    // Scripts sent to the WebView, and the state updates that were requested
+    private int mInjectedScriptCount;
+    private int mStateUpdateCount;
+
     MraidBridge(@Nullable AdReport adReport, @NonNull PlacementType placementType) {
         this(adReport, placementType, new MraidNativeCommandHandler());
     }
@@ -91,9 +140,18 @@ public class MraidBridge {
     @VisibleForTesting
     MraidBridge(@Nullable AdReport adReport, @NonNull PlacementType placementType,
             @NonNull MraidNativeCommandHandler mraidNativeCommandHandler) {
+        this(adReport, placementType, mraidNativeCommandHandler,
+                new Handler(Looper.getMainLooper()));
+    }
+
+    @VisibleForTesting
+    MraidBridge(@Nullable AdReport adReport, @NonNull PlacementType placementType,
+            @NonNull MraidNativeCommandHandler mraidNativeCommandHandler,
+            @NonNull Handler handler) {
         mAdReport = adReport;
         mPlacementType = placementType;
         mMraidNativeCommandHandler = mraidNativeCommandHandler;
+        mHandler = handler;
     }
 
     void setMraidBridgeListener(@Nullable MraidBridgeListener listener) {
@@ -189,6 +247,7 @@ public class MraidBridge {
 
     void detach() {
         mMraidWebView = null;
+        clearPendingState();
     }
 
     public void setContentHtml(@NonNull String htmlData) {
@@ -212,14 +271,156 @@ public class MraidBridge {
         mMraidWebView.loadUrl(url);
     }
 
+    /**
+     * Runs the javascript right away. Pending state updates are sent first, in the same script,
+     * so that the WebView sees them in the order they were made.
+     */
     void injectJavaScript(@NonNull String javascript) {
+        appendPendingState();
+        mScriptBuilder.append(javascript);
+        sendScript();
+    }
+
+    /**
+     * Sends the pending state updates, if any have not been sent yet.
+     */
+    @VisibleForTesting
+    void flushPendingState() {
+        appendPendingState();
+        sendScript();
+    }
+
+    private void schedulePendingStateFlush(@NonNull final PendingUpdate pendingUpdate) {
+        if (!mPendingUpdates.contains(pendingUpdate)) {
+            mPendingUpdates.add(pendingUpdate);
+        }
+        mStateUpdateCount++;
+        if (mIsFlushScheduled) {
+            return;
+        }
+
+        mIsFlushScheduled = true;
+        mHandler.post(mFlushRunnable);
+    }
+
+    private void clearPendingState() {
+        mPendingUpdates.clear();
+        mPendingScreenMetrics = null;
+        mPendingViewable = null;
+        mPendingPlacementType = null;
+        mPendingViewState = null;
+        mPendingSupports = NO_PENDING_SUPPORTS;
+        mScriptBuilder.setLength(0);
+        mHandler.removeCallbacks(mFlushRunnable);
+        mIsFlushScheduled = false;
+    }
+
+    private void appendPendingState() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mIsFlushScheduled = false;
+
+        for (final PendingUpdate pendingUpdate : mPendingUpdates) {
+            appendPendingUpdate(pendingUpdate);
+        }
+        mPendingUpdates.clear();
+    }
+
+    private void appendPendingUpdate(@NonNull final PendingUpdate pendingUpdate) {
+        switch (pendingUpdate) {
+            case SUPPORTS:
+                appendPendingSupports();
+                break;
+            case PLACEMENT_TYPE:
+                appendPendingPlacementType();
+                break;
+            case SCREEN_METRICS:
+                appendPendingScreenMetrics();
+                break;
+            case VIEW_STATE:
+                appendPendingViewState();
+                break;
+            case VIEWABLE:
+                appendPendingViewable();
+                break;
+        }
+    }
+
+    private void appendPendingSupports() {
+        if (mPendingSupports != NO_PENDING_SUPPORTS) {
+            mScriptBuilder.append("mraidbridge.setSupports(")
+                    .append((mPendingSupports & SUPPORTS_SMS) != 0).append(',')
+                    .append((mPendingSupports & SUPPORTS_TEL) != 0).append(',')
+                    .append((mPendingSupports & SUPPORTS_CALENDAR) != 0).append(',')
+                    .append((mPendingSupports & SUPPORTS_STORE_PICTURE) != 0).append(',')
+                    .append((mPendingSupports & SUPPORTS_INLINE_VIDEO) != 0)
+                    .append(");");
+            mPendingSupports = NO_PENDING_SUPPORTS;
+        }
+    }
+
+    private void appendPendingPlacementType() {
+        if (mPendingPlacementType != null) {
+            mScriptBuilder.append("mraidbridge.setPlacementType(")
+                    .append(JSONObject.quote(mPendingPlacementType.toJavascriptString()))
+                    .append(");");
+            mPendingPlacementType = null;
+        }
+    }
+
+    private void appendPendingScreenMetrics() {
+        if (mPendingScreenMetrics != null) {
+            mScriptBuilder.append("mraidbridge.setScreenSize(");
+            appendSize(mPendingScreenMetrics.getScreenRectDips());
+            mScriptBuilder.append(");mraidbridge.setMaxSize(");
+            appendSize(mPendingScreenMetrics.getRootViewRectDips());
+            mScriptBuilder.append(");mraidbridge.setCurrentPosition(");
+            appendRect(mPendingScreenMetrics.getCurrentAdRectDips());
+            mScriptBuilder.append(");mraidbridge.setDefaultPosition(");
+            appendRect(mPendingScreenMetrics.getDefaultAdRectDips());
+            mScriptBuilder.append(");mraidbridge.notifySizeChangeEvent(");
+            appendSize(mPendingScreenMetrics.getCurrentAdRectDips());
+            mScriptBuilder.append(");");
+            mPendingScreenMetrics = null;
+        }
+    }
+
+    private void appendPendingViewState() {
+        if (mPendingViewState != null) {
+            mScriptBuilder.append("mraidbridge.setState(")
+                    .append(JSONObject.quote(mPendingViewState.toJavascriptString()))
+                    .append(");");
+            mPendingViewState = null;
+        }
+    }
+
+    private void appendPendingViewable() {
+        if (mPendingViewable != null) {
+            mScriptBuilder.append("mraidbridge.setIsViewable(")
+                    .append(mPendingViewable.booleanValue())
+                    .append(");");
+            mPendingViewable = null;
+        }
+    }
+
+    private void sendScript() {
+        if (mScriptBuilder.length() == 0) {
+            return;
+        }
+
+        final String javascript = mScriptBuilder.toString();
+        mScriptBuilder.setLength(0);
         if (mMraidWebView == null) {
             MoPubLog.d("Attempted to inject Javascript into MRAID WebView while was not "
                     + "attached:\n\t" + javascript);
             return;
         }
         MoPubLog.d("Injecting Javascript into MRAID WebView:\n\t" + javascript);
-        mMraidWebView.loadUrl("javascript:" + javascript);
+        mInjectedScriptCount++;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mMraidWebView.evaluateJavascript(javascript, null);
+        } else {
+            mMraidWebView.loadUrl("javascript:" + javascript);
+        }
     }
 
     private void fireErrorEvent(@NonNull MraidJavascriptCommand command, @NonNull String message) {
@@ -537,53 +738,48 @@ public class MraidBridge {
     }
 
     void notifyViewability(boolean isViewable) {
-        injectJavaScript("mraidbridge.setIsViewable("
-                + isViewable
-                + ")");
+        mPendingViewable = isViewable;
+        schedulePendingStateFlush(PendingUpdate.VIEWABLE);
     }
 
     void notifyPlacementType(PlacementType placementType) {
-        injectJavaScript("mraidbridge.setPlacementType("
-                + JSONObject.quote(placementType.toJavascriptString())
-                + ")");
+        mPendingPlacementType = placementType;
+        schedulePendingStateFlush(PendingUpdate.PLACEMENT_TYPE);
     }
 
     void notifyViewState(ViewState state) {
-        injectJavaScript("mraidbridge.setState("
-                + JSONObject.quote(state.toJavascriptString())
-                + ")");
+        mPendingViewState = state;
+        schedulePendingStateFlush(PendingUpdate.VIEW_STATE);
     }
 
     void notifySupports(boolean sms, boolean telephone, boolean calendar,
             boolean storePicture, boolean inlineVideo) {
-        injectJavaScript("mraidbridge.setSupports("
-                + sms + "," + telephone + "," + calendar + "," + storePicture + "," + inlineVideo
-                + ")");
+        mPendingSupports = (sms ? SUPPORTS_SMS : 0)
+                | (telephone ? SUPPORTS_TEL : 0)
+                | (calendar ? SUPPORTS_CALENDAR : 0)
+                | (storePicture ? SUPPORTS_STORE_PICTURE : 0)
+                | (inlineVideo ? SUPPORTS_INLINE_VIDEO : 0);
+        schedulePendingStateFlush(PendingUpdate.SUPPORTS);
     }
 
-    @NonNull
-    private String stringifyRect(Rect rect) {
-        return rect.left + "," + rect.top + "," + rect.width() + "," + rect.height();
+    private void appendRect(@NonNull final Rect rect) {
+        mScriptBuilder.append(rect.left).append(',')
+                .append(rect.top).append(',')
+                .append(rect.width()).append(',')
+                .append(rect.height());
     }
 
-    @NonNull
-    private String stringifySize(Rect rect) {
-        return rect.width() + "," + rect.height();
+    private void appendSize(@NonNull final Rect rect) {
+        mScriptBuilder.append(rect.width()).append(',').append(rect.height());
     }
 
+    /**
+     * The metrics are read when the update is sent, so they must not be changed in between
+     * except to newer values.
+     */
     public void notifyScreenMetrics(@NonNull final MraidScreenMetrics screenMetrics) {
-        injectJavaScript("mraidbridge.setScreenSize("
-                + stringifySize(screenMetrics.getScreenRectDips())
-                + ");mraidbridge.setMaxSize("
-                + stringifySize(screenMetrics.getRootViewRectDips())
-                + ");mraidbridge.setCurrentPosition("
-                + stringifyRect(screenMetrics.getCurrentAdRectDips())
-                + ");mraidbridge.setDefaultPosition("
-                + stringifyRect(screenMetrics.getDefaultAdRectDips())
-                + ")");
-        injectJavaScript("mraidbridge.notifySizeChangeEvent("
-                + stringifySize(screenMetrics.getCurrentAdRectDips())
-                + ")");
+        mPendingScreenMetrics = screenMetrics;
+        schedulePendingStateFlush(PendingUpdate.SCREEN_METRICS);
     }
 
     void notifyReady() {
@@ -606,6 +802,14 @@ public class MraidBridge {
         return mHasLoaded;
     }
 
+    int getInjectedScriptCount() {
+        return mInjectedScriptCount;
+    }
+
+    int getStateUpdateCount() {
+        return mStateUpdateCount;
+    }
+
     @VisibleForTesting
     MraidWebView getMraidWebView() {
         return mMraidWebView;
@@ -366,8 +366,8 @@ public class MraidController {
 
     /**
      * Gets and sets the MraidWebView. Returns true if the MraidWebView was from the cache, and
-     * false if a new one was created. If the broadcast identifier is {@code null}, then this
-     * will always return false and create a new MraidWebView.
+     * false if one was taken from the {@link MraidWebViewPool}. If the broadcast identifier is
+     * {@code null}, then this will always return false and use a MraidWebView from the pool.
      *
      * @param broadcastIdentifier The unique identifier associated with the MraidWebView in the cache.
      * @param listener            Listener passed in from {@link #fillContent(Long, String, MraidWebViewCacheListener)}
@@ -388,8 +388,8 @@ public class MraidController {
                 return true;
             }
         }
-        MoPubLog.d("WebView cache miss. Creating a new MraidWebView.");
-        mMraidWebView = new MraidWebView(mContext);
+        MoPubLog.d("WebView cache miss. Using a MraidWebView from the pool.");
+        mMraidWebView = MraidWebViewPool.obtain(mContext);
 
         if (listener != null) {
             listener.onReady(mMraidWebView, null);
@@ -653,7 +653,12 @@ public class MraidController {
         // Remove the closeable ad container from the view hierarchy, if necessary
         Views.removeFromParent(mCloseableAdContainer);
 
-        // Calling destroy eliminates a memory leak on Gingerbread devices
+        MoPubLog.d("MRAID ad injected " + getInjectedScriptCount() + " scripts for "
+                + getStateUpdateCount() + " state updates");
+
+        // WebViews are not given back to the MraidWebViewPool, since storage and cache left by
+        // this ad would be visible to the next one. Calling destroy eliminates a memory leak on
+        // Gingerbread devices
         mMraidBridge.detach();
         if (mMraidWebView != null) {
             mMraidWebView.destroy();
@@ -810,7 +815,7 @@ public class MraidController {
         if (isTwoPart) {
             // Of note: the two part ad will start off with its view state as LOADING, and will
             // transition to EXPANDED once the page is fully loaded
-            mTwoPartWebView = new MraidWebView(mContext);
+            mTwoPartWebView = MraidWebViewPool.obtain(mContext);
             mTwoPartBridge.attachView(mTwoPartWebView);
 
             // onPageLoaded gets fired once the html is loaded into the two part webView
@@ -1024,6 +1029,18 @@ public class MraidController {
         return mDefaultAdContainer;
     }
 
+    /**
+     * Scripts sent to the WebViews of this ad. State updates made in the same main thread loop
+     * are sent together, so this is usually lower than {@link #getStateUpdateCount()}.
+     */
+    public int getInjectedScriptCount() {
+        return mMraidBridge.getInjectedScriptCount() + mTwoPartBridge.getInjectedScriptCount();
+    }
+
+    public int getStateUpdateCount() {
+        return mMraidBridge.getStateUpdateCount() + mTwoPartBridge.getStateUpdateCount();
+    }
+
     /**
      * Loads a javascript URL. Useful for running callbacks, such as javascript:webviewDidClose()
      */
@@ -11,6 +11,7 @@ import com.mopub.mobileads.resource.MraidJavascript;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.Locale;
 
 /**
@@ -19,8 +20,15 @@ import java.util.Locale;
 public class MraidWebViewClient extends WebViewClient {
 
     private static final String MRAID_JS = "mraid.js";
-    private static final String MRAID_INJECTION_JAVASCRIPT = "javascript:"
-            + MraidJavascript.JAVASCRIPT_SOURCE;
+
+    /**
+     * The MRAID javascript, encoded once when the first mraid.js request is intercepted and
+     * shared by every response after that. The array is never handed out or written to.
+     */
+    private static class InjectionBytesHolder {
+        static final byte[] MRAID_INJECTION_BYTES = ("javascript:"
+                + MraidJavascript.JAVASCRIPT_SOURCE).getBytes(Charset.forName("UTF-8"));
+    }
 
     @SuppressWarnings("deprecation") // new method will simply call this one
     @Override
@@ -33,14 +41,37 @@ public class MraidWebViewClient extends WebViewClient {
         }
     }
 
+    /**
+     * Creatives can request hundreds of subresources, so urls are first checked for a path that
+     * ends in mraid.js without allocating. Only those are parsed to make sure it is the last path
+     * segment.
+     */
     @VisibleForTesting
     boolean matchesInjectionUrl(@NonNull final String url) {
+        if (!pathEndsWithMraidJs(url)) {
+            return false;
+        }
         final Uri uri = Uri.parse(url.toLowerCase(Locale.US));
         return MRAID_JS.equals(uri.getLastPathSegment());
     }
 
+    private static boolean pathEndsWithMraidJs(@NonNull final String url) {
+        int end = url.length();
+        for (int i = 0; i < end; i++) {
+            final char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+            }
+        }
+        while (end > 0 && url.charAt(end - 1) == '/') {
+            end--;
+        }
+        final int start = end - MRAID_JS.length();
+        return start >= 0 && url.regionMatches(true, start, MRAID_JS, 0, MRAID_JS.length());
+    }
+
     private WebResourceResponse createMraidInjectionResponse() {
-        InputStream data = new ByteArrayInputStream(MRAID_INJECTION_JAVASCRIPT.getBytes());
+        InputStream data = new ByteArrayInputStream(InjectionBytesHolder.MRAID_INJECTION_BYTES);
         return new WebResourceResponse("text/javascript", "UTF-8", data);
     }
 }
@@ -0,0 +1,183 @@
+package com.mopub.mraid;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.mopub.common.Constants;
+import com.mopub.common.Preconditions;
+import com.mopub.common.VisibleForTesting;
+import com.mopub.common.logging.MoPubLog;
+import com.mopub.mraid.MraidBridge.MraidWebView;
+import com.mopub.network.Networking;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps a few {@link MraidWebView}s created ahead of time so that showing an MRAID ad does not
+ * have to wait for a new WebView. Views are created while the main thread is idle and load a
+ * blank page that includes mraid.js, which starts the renderer and evaluates the MRAID bridge
+ * script once before an ad needs it. Each view is handed to at most one ad and is destroyed by
+ * that ad, so no storage or cache state carries over between ads. The pool empties itself when
+ * the system asks the app to trim memory.
+ */
+class MraidWebViewPool {
+    /**
+     * Maximum number of idle WebViews. Each WebView holds on to a renderer, so this is kept small.
+     */
+    @VisibleForTesting
+    static final int MAX_SIZE = 2;
+
+    private static final String WARM_UP_HTML =
+            "<html><head><script src=\"mraid.js\"></script></head><body></body></html>";
+
+    @NonNull private static final ArrayDeque<MraidWebView> sWebViews = new ArrayDeque<MraidWebView>();
+    @Nullable private static Context sContext;
+    private static boolean sIsWarmUpScheduled;
+    private static int sHitCount;
+    private static int sMissCount;
+
+    @NonNull private static final MessageQueue.IdleHandler sWarmUpIdleHandler =
+            new MessageQueue.IdleHandler() {
+                @Override
+                public boolean queueIdle() {
+                    sIsWarmUpScheduled = warmUpNextWebView();
+                    return sIsWarmUpScheduled;
+                }
+            };
+
+    @NonNull private static final ComponentCallbacks2 sTrimMemoryCallbacks =
+            new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(final int level) {
+                    trim(level);
+                }
+
+                @Override
+                public void onConfigurationChanged(final Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    trim(TRIM_MEMORY_COMPLETE);
+                }
+            };
+
+    private MraidWebViewPool() {
+    }
+
+    /**
+     * Fills the pool the next times the main thread is idle. Must be called on the main thread.
+     */
+    static void warmUp(@NonNull final Context context) {
+        Preconditions.checkNotNull(context);
+
+        if (sContext == null) {
+            sContext = context.getApplicationContext();
+            sContext.registerComponentCallbacks(sTrimMemoryCallbacks);
+        }
+
+        if (!sIsWarmUpScheduled && sWebViews.size() < MAX_SIZE) {
+            sIsWarmUpScheduled = true;
+            Looper.myQueue().addIdleHandler(sWarmUpIdleHandler);
+        }
+    }
+
+    /**
+     * Returns a warmed up WebView from the pool, or a new one if the pool is empty.
+     */
+    @NonNull
+    static MraidWebView obtain(@NonNull final Context context) {
+        Preconditions.checkNotNull(context);
+
+        final MraidWebView webView = sWebViews.poll();
+        if (webView != null) {
+            sHitCount++;
+            webView.stopLoading();
+            webView.clearHistory();
+            warmUp(context);
+            return webView;
+        }
+
+        sMissCount++;
+        MoPubLog.d("MRAID WebView pool is empty. Creating a new MraidWebView.");
+        warmUp(context);
+        return new MraidWebView(context);
+    }
+
+    /**
+     * Releases idle WebViews when memory runs low. Moderate pressure keeps one WebView around
+     * for the next ad; anything more releases them all.
+     */
+    @VisibleForTesting
+    static void trim(final int level) {
+        final int maxSize;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            maxSize = 0;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            maxSize = 1;
+        } else {
+            return;
+        }
+
+        while (sWebViews.size() > maxSize) {
+            sWebViews.poll().destroy();
+        }
+
+        // Stop filling the pool until another ad asks for a WebView
+        if (sIsWarmUpScheduled) {
+            Looper.myQueue().removeIdleHandler(sWarmUpIdleHandler);
+            sIsWarmUpScheduled = false;
+        }
+    }
+
+    static int size() {
+        return sWebViews.size();
+    }
+
+    static int getHitCount() {
+        return sHitCount;
+    }
+
+    static int getMissCount() {
+        return sMissCount;
+    }
+
+    /**
+     * @return {@code true} if there is room for more WebViews after this one
+     */
+    @VisibleForTesting
+    static boolean warmUpNextWebView() {
+        if (sContext == null || sWebViews.size() >= MAX_SIZE) {
+            return false;
+        }
+
+        final MraidWebView webView = new MraidWebView(sContext);
+        loadWarmUpPage(webView);
+        sWebViews.add(webView);
+        return sWebViews.size() < MAX_SIZE;
+    }
+
+    private static void loadWarmUpPage(@NonNull final MraidWebView webView) {
+        webView.getSettings().setJavaScriptEnabled(true);
+        webView.setWebViewClient(new MraidWebViewClient());
+        webView.loadDataWithBaseURL(Networking.getBaseUrlScheme() + "://" + Constants.HOST + "/",
+                WARM_UP_HTML, "text/html", "UTF-8", null);
+    }
+
+    @Deprecated
+    @VisibleForTesting
+    static void clearAll() {
+        trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        if (sContext != null) {
+            sContext.unregisterComponentCallbacks(sTrimMemoryCallbacks);
+            sContext = null;
+        }
+        sHitCount = 0;
+        sMissCount = 0;
+    }
+}
@@ -3,8 +3,10 @@ package com.mopub.network;
 
 import android.content.Context;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 
 import com.mopub.common.AdFormat;
@@ -17,6 +19,7 @@ import com.mopub.volley.Response;
 import com.mopub.volley.VolleyError;
 
 import java.lang.ref.WeakReference;
+import java.util.Map;
 
 /**
  * AdLoader implements several simple functions: communicate with Volley to download multiple ads
@@ -29,7 +32,17 @@ public class AdLoader {
         void onSuccess(AdResponse response);
     }
 
+    /**
+     * How long a prefetched waterfall page may wait before it is used. The server picks a page for
+     * the conditions at request time, so an old page is dropped and requested again.
+     */
+    @VisibleForTesting
+    static final long PREFETCH_EXPIRATION_MS = 60 * 1000;
+
+    private static volatile boolean sWaterfallPrefetchEnabled = false;
+
     private final MultiAdRequest.Listener mAdListener;
+    private final MultiAdRequest.Listener mPrefetchListener;
     private final WeakReference<Context> mContext;
     private final Listener mOriginalListener;
 
@@ -48,6 +61,14 @@ public class AdLoader {
     private volatile boolean mFailed;
     private boolean mContentDownloaded;
 
+    // The prefetch state below is guarded by lock
+    @Nullable
+    private MultiAdRequest mPrefetchRequest;
+    @Nullable
+    private MultiAdResponse mPrefetchedResponse;
+    private long mPrefetchExpirationMs;
+    private boolean mWaitingForPrefetch;
+
     @NonNull
     private Handler mHandler;
 
@@ -63,6 +84,23 @@ public class AdLoader {
                     @Nullable final String adUnitId,
                     @NonNull final Context context,
                     @NonNull final Listener listener) {
+        this(url, null, adFormat, adUnitId, context, listener);
+    }
+
+    /**
+     * @param url             initial URL to download ads from ads.mopub.com
+     * @param generatedParams the parameters the url generator put into {@code url}, or null
+     * @param adFormat        banner, interstitial, etc.
+     * @param adUnitId        ad unit id will be sent to the server
+     * @param context         required by {@link Networking} class
+     * @param listener        callback to return results
+     */
+    public AdLoader(@NonNull final String url,
+                    @Nullable final Map<String, String> generatedParams,
+                    @NonNull final AdFormat adFormat,
+                    @Nullable final String adUnitId,
+                    @NonNull final Context context,
+                    @NonNull final Listener listener) {
         Preconditions.checkArgument(!TextUtils.isEmpty(url));
         Preconditions.checkNotNull(adFormat);
         Preconditions.checkNotNull(context);
@@ -87,15 +125,45 @@ public class AdLoader {
                     mRunning = false;
                     mMultiAdResponse = response;
                     if (mMultiAdResponse.hasNext()) {
-                        deliverResponse(mMultiAdResponse.next());
+                        final AdResponse adResponse = mMultiAdResponse.next();
+                        prefetchNextPageIfLast();
+                        deliverResponse(adResponse);
                     }
                 }
             }
         };
 
+        mPrefetchListener = new MultiAdRequest.Listener() {
+            @Override
+            public void onErrorResponse(VolleyError volleyError) {
+                synchronized (lock) {
+                    mPrefetchRequest = null;
+                    if (mWaitingForPrefetch) {
+                        mWaitingForPrefetch = false;
+                        mAdListener.onErrorResponse(volleyError);
+                    }
+                }
+            }
+
+            @Override
+            public void onSuccessResponse(final MultiAdResponse response) {
+                synchronized (lock) {
+                    mPrefetchRequest = null;
+                    if (mWaitingForPrefetch) {
+                        mWaitingForPrefetch = false;
+                        mAdListener.onSuccessResponse(response);
+                        return;
+                    }
+                    mPrefetchedResponse = response;
+                    mPrefetchExpirationMs = SystemClock.elapsedRealtime() + PREFETCH_EXPIRATION_MS;
+                }
+            }
+        };
+
         mRunning = false;
         mFailed = false;
         mMultiAdRequest = new MultiAdRequest(url,
+                generatedParams,
                 adFormat,
                 adUnitId,
                 context,
@@ -155,10 +223,19 @@ public class AdLoader {
                 creativeDownloadFailed(errorCode);
             }
 
+            // the current page is used up, continue with the prefetched one if it is still fresh
+            if (!mMultiAdResponse.hasNext()) {
+                final MultiAdResponse prefetchedResponse = takePrefetchedResponse();
+                if (prefetchedResponse != null) {
+                    mMultiAdResponse = prefetchedResponse;
+                }
+            }
+
             // in the middle of waterfall, check if preloaded items available
             if (mMultiAdResponse.hasNext()) {
                 // logic to return next preloaded AdResponse item
                 final AdResponse adResponse = mMultiAdResponse.next();
+                prefetchNextPageIfLast();
                 mHandler.post(new Runnable() {
                     @Override
                     public void run() {
@@ -170,6 +247,14 @@ public class AdLoader {
 
             // logic to request more waterfall ads from server
             if (!mMultiAdResponse.isWaterfallFinished()) {
+                // the next page is already on its way
+                if (mPrefetchRequest != null) {
+                    mRunning = true;
+                    mWaitingForPrefetch = true;
+                    mMultiAdRequest = mPrefetchRequest;
+                    return mMultiAdRequest;
+                }
+
                 // create new request with failURL
                 mMultiAdRequest = new MultiAdRequest(mMultiAdResponse.getFailURL(),
                         mMultiAdRequest.mAdFormat,
@@ -197,6 +282,7 @@ public class AdLoader {
      */
     public void creativeDownloadSuccess() {
         mContentDownloaded = true;
+        cancelPrefetch();
 
         if (null == mDownloadTracker) {
             MoPubLog.e("Response analytics should not be null here");
@@ -229,6 +315,64 @@ public class AdLoader {
         }
     }
 
+    /**
+     * Starts loading the next waterfall page in the background when the ad just taken from the
+     * current page is its last one, so that a failure of that ad does not wait a round trip.
+     */
+    private void prefetchNextPageIfLast() {
+        synchronized (lock) {
+            if (!sWaterfallPrefetchEnabled
+                    || mMultiAdResponse == null
+                    || mMultiAdResponse.hasNext()
+                    || mMultiAdResponse.isWaterfallFinished()
+                    || mPrefetchRequest != null
+                    || mPrefetchedResponse != null) {
+                return;
+            }
+
+            final Context context = mContext.get();
+            if (context == null) {
+                return;
+            }
+
+            mPrefetchRequest = new MultiAdRequest(mMultiAdResponse.getFailURL(),
+                    mMultiAdRequest.mAdFormat,
+                    mMultiAdRequest.mAdUnitId,
+                    context,
+                    mPrefetchListener
+            );
+            Networking.getRequestQueue(context).add(mPrefetchRequest);
+        }
+    }
+
+    /**
+     * @return the prefetched waterfall page if it has not expired, otherwise null. Either way the
+     * page is handed out only once.
+     */
+    @Nullable
+    private MultiAdResponse takePrefetchedResponse() {
+        synchronized (lock) {
+            final MultiAdResponse prefetchedResponse = mPrefetchedResponse;
+            mPrefetchedResponse = null;
+            if (prefetchedResponse == null
+                    || SystemClock.elapsedRealtime() >= mPrefetchExpirationMs) {
+                return null;
+            }
+            return prefetchedResponse;
+        }
+    }
+
+    private void cancelPrefetch() {
+        synchronized (lock) {
+            if (mPrefetchRequest != null) {
+                mPrefetchRequest.cancel();
+                mPrefetchRequest = null;
+            }
+            mPrefetchedResponse = null;
+            mWaitingForPrefetch = false;
+        }
+    }
+
     /**
      * Submits request to the networking library
      *
@@ -290,6 +434,18 @@ public class AdLoader {
         }
     }
 
+    /**
+     * When enabled, the next waterfall page is requested as soon as the last ad of the current
+     * page starts loading, instead of after it fails. Off by default.
+     */
+    public static void setWaterfallPrefetchEnabled(final boolean waterfallPrefetchEnabled) {
+        sWaterfallPrefetchEnabled = waterfallPrefetchEnabled;
+    }
+
+    public static boolean isWaterfallPrefetchEnabled() {
+        return sWaterfallPrefetchEnabled;
+    }
+
     public boolean isRunning() {
         return mRunning;
     }
@@ -0,0 +1,82 @@
+package com.mopub.network;
+
+import android.support.annotation.NonNull;
+
+import com.mopub.common.VisibleForTesting;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often SDK requests reuse a pooled connection instead of opening a new secure one, and
+ * how long the TLS handshakes of new connections take. Requests through the Volley queue, and
+ * https requests to MoPub through {@link com.mopub.common.MoPubHttpUrlConnection}, share one
+ * socket factory and are counted here. Other MoPubHttpUrlConnection requests and requests sent by
+ * a stack set with {@link Networking#setHttpStack} are not counted, since their connections are
+ * not visible here.
+ */
+public class ConnectionPoolMetrics {
+    @NonNull private final AtomicLong mRequestCount = new AtomicLong();
+    @NonNull private final AtomicLong mNewConnectionCount = new AtomicLong();
+    @NonNull private final AtomicLong mHandshakeCount = new AtomicLong();
+    @NonNull private final AtomicLong mTotalHandshakeTimeMs = new AtomicLong();
+
+    /**
+     * Called for each request the SDK sends.
+     */
+    public void onRequest() {
+        mRequestCount.incrementAndGet();
+    }
+
+    void onNewConnection() {
+        mNewConnectionCount.incrementAndGet();
+    }
+
+    void onHandshakeCompleted(final long handshakeTimeMs) {
+        mHandshakeCount.incrementAndGet();
+        mTotalHandshakeTimeMs.addAndGet(handshakeTimeMs);
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public long getNewConnectionCount() {
+        return mNewConnectionCount.get();
+    }
+
+    /**
+     * Requests that did not need a new secure connection. Plain http requests count as reused
+     * since their connections are not tracked.
+     */
+    public long getReusedConnectionCount() {
+        return Math.max(0, mRequestCount.get() - mNewConnectionCount.get());
+    }
+
+    public long getHandshakeCount() {
+        return mHandshakeCount.get();
+    }
+
+    public long getAverageHandshakeTimeMs() {
+        final long handshakeCount = mHandshakeCount.get();
+        if (handshakeCount == 0) {
+            return 0;
+        }
+        return mTotalHandshakeTimeMs.get() / handshakeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "requests: " + getRequestCount()
+                + ", new connections: " + getNewConnectionCount()
+                + ", reused connections: " + getReusedConnectionCount()
+                + ", average handshake: " + getAverageHandshakeTimeMs() + "ms";
+    }
+
+    @VisibleForTesting
+    void reset() {
+        mRequestCount.set(0);
+        mNewConnectionCount.set(0);
+        mHandshakeCount.set(0);
+        mTotalHandshakeTimeMs.set(0);
+    }
+}
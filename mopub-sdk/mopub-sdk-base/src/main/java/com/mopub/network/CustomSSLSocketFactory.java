@@ -2,6 +2,7 @@ package com.mopub.network;
 
 import android.net.SSLCertificateSocketFactory;
 import android.os.Build;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
@@ -16,6 +17,8 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLHandshakeException;
@@ -28,13 +31,25 @@ import javax.net.ssl.SSLSocketFactory;
 public class CustomSSLSocketFactory extends SSLSocketFactory {
 
     @Nullable private SSLSocketFactory mCertificateSocketFactory;
+    @Nullable private ConnectionPoolMetrics mConnectionPoolMetrics;
 
     private CustomSSLSocketFactory() {}
 
     @NonNull
     public static CustomSSLSocketFactory getDefault(final int handshakeTimeoutMillis) {
+        return getDefault(handshakeTimeoutMillis, null);
+    }
+
+    /**
+     * @param handshakeTimeoutMillis The TLS handshake timeout
+     * @param connectionPoolMetrics  Counts each socket this factory creates and times its handshake
+     */
+    @NonNull
+    public static CustomSSLSocketFactory getDefault(final int handshakeTimeoutMillis,
+            @Nullable final ConnectionPoolMetrics connectionPoolMetrics) {
         CustomSSLSocketFactory factory = new CustomSSLSocketFactory();
         factory.mCertificateSocketFactory = SSLCertificateSocketFactory.getDefault(handshakeTimeoutMillis, null);
+        factory.mConnectionPoolMetrics = connectionPoolMetrics;
 
         return factory;
     }
@@ -49,6 +64,7 @@ public class CustomSSLSocketFactory extends SSLSocketFactory {
         }
         final Socket socket = mCertificateSocketFactory.createSocket();
         enableTlsIfAvailable(socket);
+        trackConnection(socket);
         return socket;
     }
 
@@ -59,6 +75,7 @@ public class CustomSSLSocketFactory extends SSLSocketFactory {
         }
         final Socket socket = mCertificateSocketFactory.createSocket(host, i);
         enableTlsIfAvailable(socket);
+        trackConnection(socket);
         return socket;
     }
 
@@ -69,6 +86,7 @@ public class CustomSSLSocketFactory extends SSLSocketFactory {
         }
         final Socket socket = mCertificateSocketFactory.createSocket(host, port, localhost, localPort);
         enableTlsIfAvailable(socket);
+        trackConnection(socket);
         return socket;
     }
 
@@ -79,6 +97,7 @@ public class CustomSSLSocketFactory extends SSLSocketFactory {
         }
         final Socket socket = mCertificateSocketFactory.createSocket(address, port);
         enableTlsIfAvailable(socket);
+        trackConnection(socket);
         return socket;
     }
 
@@ -89,6 +108,7 @@ public class CustomSSLSocketFactory extends SSLSocketFactory {
         }
         final Socket socket = mCertificateSocketFactory.createSocket(address, port, localhost, localPort);
         enableTlsIfAvailable(socket);
+        trackConnection(socket);
         return socket;
     }
 
@@ -135,6 +155,7 @@ public class CustomSSLSocketFactory extends SSLSocketFactory {
         final Socket socket = mCertificateSocketFactory.createSocket(socketParam, host, port,
                 autoClose);
         enableTlsIfAvailable(socket);
+        trackConnection(socket);
         return socket;
     }
 
@@ -161,6 +182,7 @@ public class CustomSSLSocketFactory extends SSLSocketFactory {
             final SSLSocket sslSocket = (SSLSocket) socket;
             setHostnameOnSocket((SSLCertificateSocketFactory) mCertificateSocketFactory, sslSocket,
                     host);
+            trackConnection(sslSocket);
             verifyServerName(sslSocket, host);
         }
     }
@@ -213,6 +235,32 @@ public class CustomSSLSocketFactory extends SSLSocketFactory {
         }
     }
 
+    /**
+     * Counts a new secure socket and times its handshake. Call this once the socket is set up,
+     * since the handshake starts with the first read, write or startHandshake after that. A socket
+     * that is not connected yet has a connect ahead of its handshake that cannot be seen from
+     * here, so only the connection is counted.
+     */
+    private void trackConnection(@Nullable final Socket socket) {
+        final ConnectionPoolMetrics connectionPoolMetrics = mConnectionPoolMetrics;
+        if (connectionPoolMetrics == null || !(socket instanceof SSLSocket)) {
+            return;
+        }
+
+        connectionPoolMetrics.onNewConnection();
+        if (!socket.isConnected()) {
+            return;
+        }
+        final long handshakeStartMs = SystemClock.elapsedRealtime();
+        ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+            @Override
+            public void handshakeCompleted(final HandshakeCompletedEvent event) {
+                connectionPoolMetrics.onHandshakeCompleted(
+                        SystemClock.elapsedRealtime() - handshakeStartMs);
+            }
+        });
+    }
+
     @Deprecated
     @VisibleForTesting
     void setCertificateSocketFactory(@NonNull final SSLSocketFactory sslSocketFactory) {
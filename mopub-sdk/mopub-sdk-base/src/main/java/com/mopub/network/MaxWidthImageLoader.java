@@ -1,18 +1,24 @@
 package com.mopub.network;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Point;
 import android.view.Display;
 import android.view.WindowManager;
+import android.widget.ImageView;
 
+import com.mopub.volley.Request;
 import com.mopub.volley.RequestQueue;
+import com.mopub.volley.Response;
+import com.mopub.volley.VolleyError;
 
 public class MaxWidthImageLoader extends com.mopub.volley.toolbox.ImageLoader {
+    private final Context mContext;
     private final int mMaxImageWidth;
 
-
     public MaxWidthImageLoader(final RequestQueue queue, final Context context, final ImageCache imageCache) {
         super(queue, imageCache);
+        mContext = context.getApplicationContext();
 
         // Get Display Options
         WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
@@ -28,4 +34,43 @@ public class MaxWidthImageLoader extends com.mopub.volley.toolbox.ImageLoader {
     public ImageContainer get(final String requestUrl, final ImageListener listener) {
         return super.get(requestUrl, listener, mMaxImageWidth, 0 /* no height limit */);
     }
+
+    /**
+     * Loads the image no larger than the given bounds, for example those of the view it is shown
+     * in. An image that has already been loaded at the default size is returned from memory
+     * rather than decoded again at the smaller size.
+     */
+    @Override
+    public ImageContainer get(final String requestUrl, final ImageListener listener,
+            final int maxWidth, final int maxHeight) {
+        if (isCached(requestUrl, mMaxImageWidth, 0)) {
+            return super.get(requestUrl, listener, mMaxImageWidth, 0);
+        }
+        return super.get(requestUrl, listener, maxWidth, maxHeight);
+    }
+
+    /**
+     * Images are requested in the {@link RequestLane#CREATIVE_ASSET} lane, kept in the disk cache
+     * and decoded no larger than the requested size. Since the memory cache key
+     * includes the size, the same image shown at two sizes is held once per size.
+     */
+    @Override
+    protected Request<Bitmap> makeImageRequest(final String requestUrl, final int maxWidth,
+            final int maxHeight, final ImageView.ScaleType scaleType, final String cacheKey) {
+        return new MoPubImageRequest(mContext, requestUrl,
+                maxWidth > 0 ? Math.min(maxWidth, mMaxImageWidth) : mMaxImageWidth, maxHeight,
+                scaleType,
+                new Response.Listener<Bitmap>() {
+                    @Override
+                    public void onResponse(final Bitmap response) {
+                        onGetImageSuccess(cacheKey, response);
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(final VolleyError error) {
+                        onGetImageError(cacheKey, error);
+                    }
+                });
+    }
 }
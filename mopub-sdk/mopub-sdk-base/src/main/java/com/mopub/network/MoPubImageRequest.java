@@ -0,0 +1,261 @@
+package com.mopub.network;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.widget.ImageView.ScaleType;
+
+import com.mopub.common.CacheService;
+import com.mopub.common.Preconditions;
+import com.mopub.common.VisibleForTesting;
+import com.mopub.common.logging.MoPubLog;
+import com.mopub.volley.DefaultRetryPolicy;
+import com.mopub.volley.Header;
+import com.mopub.volley.NetworkResponse;
+import com.mopub.volley.ParseError;
+import com.mopub.volley.Request;
+import com.mopub.volley.Response;
+import com.mopub.volley.toolbox.HttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+/**
+ * Image request used by {@link MaxWidthImageLoader}. Downloaded images are kept, still compressed,
+ * in the {@link CacheService} disk cache for {@link #DISK_CACHE_TTL_MS}, so an image evicted from
+ * memory or needed again soon after a restart is decoded from disk instead of downloaded. Images
+ * are decoded one at a time on the dispatcher threads, subsampled, and then scaled to the
+ * requested size the same way Volley's ImageRequest does.
+ */
+class MoPubImageRequest extends Request<Bitmap> {
+    // Entries without an expiry header were stored under "image-"
+    private static final String DISK_CACHE_KEY_PREFIX = "image-v2-";
+    // Same as Volley's ImageRequest
+    private static final int IMAGE_TIMEOUT_MS = 1000;
+    private static final int IMAGE_MAX_RETRIES = 2;
+    private static final float IMAGE_BACKOFF_MULT = 2f;
+    private static final int DECODE_BUFFER_SIZE = 16 * 1024;
+    // Each disk cache entry starts with the time it expires at
+    private static final int EXPIRY_HEADER_LENGTH = 8;
+    @VisibleForTesting static final long DISK_CACHE_TTL_MS = 24 * 60 * 60 * 1000;
+
+    // Decode only one bitmap at a time to limit memory usage, as Volley's ImageRequest does
+    @NonNull private static final Object sDecodeLock = new Object();
+    // Scratch buffer for decoding, guarded by sDecodeLock
+    @NonNull private static final byte[] sDecodeBuffer = new byte[DECODE_BUFFER_SIZE];
+
+    @NonNull private final Context mContext;
+    @NonNull private final Response.Listener<Bitmap> mListener;
+    private final int mMaxWidth;
+    private final int mMaxHeight;
+    @NonNull private final ScaleType mScaleType;
+    private volatile boolean mServedFromDisk;
+
+    MoPubImageRequest(@NonNull final Context context,
+            @NonNull final String url,
+            final int maxWidth,
+            final int maxHeight,
+            @NonNull final ScaleType scaleType,
+            @NonNull final Response.Listener<Bitmap> listener,
+            @Nullable final Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        Preconditions.checkNotNull(context);
+        Preconditions.checkNotNull(scaleType);
+        Preconditions.checkNotNull(listener);
+
+        mContext = context.getApplicationContext();
+        mListener = listener;
+        mMaxWidth = maxWidth;
+        mMaxHeight = maxHeight;
+        mScaleType = scaleType;
+
+        // The disk cache below replaces Volley's cache for images
+        setShouldCache(false);
+        setRetryPolicy(new DefaultRetryPolicy(IMAGE_TIMEOUT_MS, IMAGE_MAX_RETRIES,
+                IMAGE_BACKOFF_MULT));
+    }
+
+    @Override
+    public Priority getPriority() {
+        return RequestLane.CREATIVE_ASSET.getPriority();
+    }
+
+    /**
+     * Called on the dispatcher thread before the image is downloaded.
+     *
+     * @return a response with the image from the disk cache, or null if it has to be downloaded
+     */
+    @Nullable
+    HttpResponse getDiskCachedResponse() {
+        synchronized (MoPubImageRequest.class) {
+            if (!CacheService.initializeDiskCache(mContext)) {
+                return null;
+            }
+        }
+
+        final String diskCacheKey = getDiskCacheKey(getUrl());
+        final byte[] entry = CacheService.getFromDiskCache(diskCacheKey);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.length < EXPIRY_HEADER_LENGTH
+                || ByteBuffer.wrap(entry).getLong() <= System.currentTimeMillis()) {
+            CacheService.removeFromDiskCache(diskCacheKey);
+            return null;
+        }
+        mServedFromDisk = true;
+        return new HttpResponse(HttpURLConnection.HTTP_OK, Collections.<Header>emptyList(),
+                entry.length - EXPIRY_HEADER_LENGTH,
+                new ByteArrayInputStream(entry, EXPIRY_HEADER_LENGTH,
+                        entry.length - EXPIRY_HEADER_LENGTH));
+    }
+
+    @Override
+    protected Response<Bitmap> parseNetworkResponse(final NetworkResponse response) {
+        final Bitmap bitmap;
+        synchronized (sDecodeLock) {
+            try {
+                bitmap = decode(response.data, mMaxWidth, mMaxHeight, mScaleType);
+            } catch (OutOfMemoryError e) {
+                MoPubLog.d("Out of memory decoding image: " + getUrl());
+                return Response.error(new ParseError(e));
+            }
+        }
+        if (bitmap == null) {
+            return Response.error(new ParseError(response));
+        }
+
+        if (!mServedFromDisk) {
+            CacheService.putToDiskCacheAsync(getDiskCacheKey(getUrl()),
+                    toDiskCacheEntry(response.data,
+                            System.currentTimeMillis() + DISK_CACHE_TTL_MS));
+        }
+        return Response.success(bitmap, null);
+    }
+
+    @Override
+    protected void deliverResponse(final Bitmap response) {
+        mListener.onResponse(response);
+    }
+
+    @NonNull
+    static String getDiskCacheKey(@NonNull final String url) {
+        return DISK_CACHE_KEY_PREFIX + url;
+    }
+
+    @NonNull
+    @VisibleForTesting
+    static byte[] toDiskCacheEntry(@NonNull final byte[] data, final long expiresAtMillis) {
+        return ByteBuffer.allocate(EXPIRY_HEADER_LENGTH + data.length)
+                .putLong(expiresAtMillis)
+                .put(data)
+                .array();
+    }
+
+    @Nullable
+    private static Bitmap decode(@NonNull final byte[] data, final int maxWidth,
+            final int maxHeight, @NonNull final ScaleType scaleType) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inTempStorage = sDecodeBuffer;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        final int actualWidth = options.outWidth;
+        final int actualHeight = options.outHeight;
+
+        final int desiredWidth = getResizedDimension(maxWidth, maxHeight, actualWidth,
+                actualHeight, scaleType);
+        final int desiredHeight = getResizedDimension(maxHeight, maxWidth, actualHeight,
+                actualWidth, scaleType);
+
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inSampleSize = computeSampleSize(actualWidth, actualHeight, desiredWidth,
+                desiredHeight);
+        final Bitmap sampledBitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        // Subsampling only divides by powers of two, so scale the rest of the way down
+        if (sampledBitmap != null && desiredWidth > 0 && desiredHeight > 0
+                && (sampledBitmap.getWidth() > desiredWidth
+                || sampledBitmap.getHeight() > desiredHeight)) {
+            final Bitmap scaledBitmap = Bitmap.createScaledBitmap(sampledBitmap, desiredWidth,
+                    desiredHeight, true);
+            if (scaledBitmap != sampledBitmap) {
+                sampledBitmap.recycle();
+            }
+            return scaledBitmap;
+        }
+        return sampledBitmap;
+    }
+
+    /**
+     * Same as Volley's ImageRequest#getResizedDimension. Returns the size of the primary side
+     * once the image is fit into the bounds for the given scale type. A bound of 0 means that
+     * side is not limited.
+     */
+    @VisibleForTesting
+    static int getResizedDimension(final int maxPrimary, final int maxSecondary,
+            final int actualPrimary, final int actualSecondary,
+            @NonNull final ScaleType scaleType) {
+        // If no dominant value at all, just return the actual
+        if (maxPrimary == 0 && maxSecondary == 0) {
+            return actualPrimary;
+        }
+
+        // FIT_XY fills the whole rectangle and ignores the aspect ratio
+        if (scaleType == ScaleType.FIT_XY) {
+            if (maxPrimary == 0) {
+                return actualPrimary;
+            }
+            return maxPrimary;
+        }
+
+        // If primary is unspecified, scale primary to match secondary's scaling ratio
+        if (maxPrimary == 0) {
+            final double ratio = (double) maxSecondary / (double) actualSecondary;
+            return (int) (actualPrimary * ratio);
+        }
+
+        if (maxSecondary == 0) {
+            return maxPrimary;
+        }
+
+        final double ratio = (double) actualSecondary / (double) actualPrimary;
+        int resized = maxPrimary;
+
+        // CENTER_CROP fills the whole rectangle and keeps the aspect ratio
+        if (scaleType == ScaleType.CENTER_CROP) {
+            if ((resized * ratio) < maxSecondary) {
+                resized = (int) (maxSecondary / ratio);
+            }
+            return resized;
+        }
+
+        if ((resized * ratio) > maxSecondary) {
+            resized = (int) (maxSecondary / ratio);
+        }
+        return resized;
+    }
+
+    /**
+     * @return the largest power of two that the image can be divided by while staying at least
+     * as large as the given bounds. A bound of 0 or less means that side is not limited.
+     */
+    @VisibleForTesting
+    static int computeSampleSize(final int width, final int height, final int maxWidth,
+            final int maxHeight) {
+        if (width <= 0 || height <= 0 || (maxWidth <= 0 && maxHeight <= 0)) {
+            return 1;
+        }
+
+        int sampleSize = 1;
+        while ((maxWidth <= 0 || width / (sampleSize * 2) >= maxWidth)
+                && (maxHeight <= 0 || height / (sampleSize * 2) >= maxHeight)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
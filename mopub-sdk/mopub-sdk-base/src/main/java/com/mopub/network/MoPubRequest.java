@@ -30,15 +30,30 @@ public abstract class MoPubRequest<T> extends Request<T>  {
 
     @NonNull private final String mOriginalUrl;
     @NonNull private final Context mContext;
+    @Nullable private final Map<String, String> mGeneratedParams;
+    // Volley asks for the body again on every retry
+    @Nullable private byte[] mBody;
 
     public MoPubRequest(@NonNull final Context context,
                         @NonNull final String url,
                         @Nullable final Response.ErrorListener listener) {
+        this(context, url, null, listener);
+    }
+
+    /**
+     * @param generatedParams The unencoded parameters the url generator put into {@code url}, so
+     *                        they do not have to be parsed out of it again, or {@code null}
+     */
+    public MoPubRequest(@NonNull final Context context,
+                        @NonNull final String url,
+                        @Nullable final Map<String, String> generatedParams,
+                        @Nullable final Response.ErrorListener listener) {
         super(MoPubRequestUtils.chooseMethod(url), MoPubRequestUtils.truncateQueryParamsIfPost(url),
                 listener);
 
         mOriginalUrl = url;
         mContext = context.getApplicationContext();
+        mGeneratedParams = generatedParams;
     }
 
     @Override
@@ -47,7 +62,7 @@ public abstract class MoPubRequest<T> extends Request<T>  {
             return null;
         }
 
-        return MoPubRequestUtils.convertQueryToMap(mContext, mOriginalUrl);
+        return MoPubRequestUtils.convertQueryToMap(mContext, mOriginalUrl, mGeneratedParams);
     }
 
     @Override
@@ -60,11 +75,14 @@ public abstract class MoPubRequest<T> extends Request<T>  {
 
     @Override
     public byte[] getBody() {
-        final String body = MoPubRequestUtils.generateBodyFromParams(getParams(), getUrl());
-        if (body == null) {
-            return null;
+        if (mBody == null) {
+            final String body = MoPubRequestUtils.generateBodyFromParams(getParams(), getUrl());
+            if (body == null) {
+                return null;
+            }
+            mBody = body.getBytes();
         }
-        return body.getBytes();
+        return mBody;
     }
 
     @NonNull
@@ -18,7 +18,8 @@ import java.util.Map;
 /**
  * MoPub's custom implementation of the Google Volley RequestQueue.
  * This subclass provides convenience methods for adding a delayed request to run at a time in
- * the future. This is useful for our backoff policy architecture.
+ * the future. This is useful for our backoff policy architecture. It also reports how long
+ * requests wait in each {@link RequestLane} to {@link Networking#getRequestLaneMetrics()}.
  *
  * We've overridden certain implementation methods but have kept the contract of the
  * original method consistent.
@@ -33,16 +34,34 @@ public class MoPubRequestQueue extends RequestQueue {
     MoPubRequestQueue(Cache cache, Network network, int threadPoolSize, ResponseDelivery delivery) {
         super(cache, network, threadPoolSize, delivery);
         mDelayedRequests = new HashMap<Request<?>, DelayedRequestHelper>(CAPACITY);
+        addLaneMetricsListener();
     }
 
     MoPubRequestQueue(Cache cache, Network network, int threadPoolSize) {
         super(cache, network, threadPoolSize);
         mDelayedRequests = new HashMap<Request<?>, DelayedRequestHelper>(CAPACITY);
+        addLaneMetricsListener();
     }
 
     MoPubRequestQueue(Cache cache, Network network) {
         super(cache, network);
         mDelayedRequests = new HashMap<Request<?>, DelayedRequestHelper>(CAPACITY);
+        addLaneMetricsListener();
+    }
+
+    private void addLaneMetricsListener() {
+        addRequestFinishedListener(new RequestFinishedListener<Object>() {
+            @Override
+            public void onRequestFinished(final Request<Object> request) {
+                Networking.getRequestLaneMetrics().onRequestFinished(request);
+            }
+        });
+    }
+
+    @Override
+    public <T> Request<T> add(final Request<T> request) {
+        Networking.getRequestLaneMetrics().onRequestQueued(request);
+        return super.add(request);
     }
 
     /**
@@ -57,11 +57,36 @@ public class MoPubRequestUtils {
     @NonNull
     public static Map<String, String> convertQueryToMap(@NonNull final Context context,
             @NonNull final String url) {
+        return convertQueryToMap(context, url, null);
+    }
+
+    /**
+     * Gets the parameters to send in the body of a request to {@code url}.
+     *
+     * @param generatedParams The unencoded parameters the url generator put into {@code url}, as
+     *                        returned by {@link com.mopub.common.BaseUrlGenerator#getGeneratedParams()},
+     *                        or {@code null} to parse them out of the url
+     */
+    @NonNull
+    public static Map<String, String> convertQueryToMap(@NonNull final Context context,
+            @NonNull final String url, @Nullable final Map<String, String> generatedParams) {
         Preconditions.checkNotNull(context);
         Preconditions.checkNotNull(url);
 
-        final Map<String, String> params = new HashMap<>();
         HurlStack.UrlRewriter rewriter = Networking.getUrlRewriter(context);
+        if (generatedParams != null && isMoPubRequest(url)
+                && rewriter instanceof PlayServicesUrlRewriter) {
+            final PlayServicesUrlRewriter playServicesUrlRewriter =
+                    (PlayServicesUrlRewriter) rewriter;
+            final Map<String, String> params = new HashMap<>(generatedParams.size() * 2);
+            for (final Map.Entry<String, String> param : generatedParams.entrySet()) {
+                params.put(param.getKey(),
+                        playServicesUrlRewriter.rewriteParamValue(param.getValue()));
+            }
+            return params;
+        }
+
+        final Map<String, String> params = new HashMap<>();
         final Uri uri = Uri.parse(rewriter.rewriteUrl(url));
         for (final String queryParam : uri.getQueryParameterNames()) {
             params.put(queryParam, TextUtils.join(",", uri.getQueryParameters(queryParam)));
@@ -15,6 +15,8 @@ import com.mopub.volley.NetworkResponse;
 import com.mopub.volley.Response;
 import com.mopub.volley.toolbox.HttpHeaderParser;
 
+import java.util.Map;
+
 /**
  * Volley request class helper to support ad requests specifics
  */
@@ -40,7 +42,16 @@ public class MultiAdRequest extends MoPubRequest<MultiAdResponse> {
                    @Nullable final String adUnitId,
                    @NonNull final Context context,
                    @NonNull final Listener listener) {
-        super(context, clearUrlIfSdkNotInitialized(url), listener);
+        this(url, null, adFormat, adUnitId, context, listener);
+    }
+
+    MultiAdRequest(@NonNull final String url,
+                   @Nullable final Map<String, String> generatedParams,
+                   @NonNull final AdFormat adFormat,
+                   @Nullable final String adUnitId,
+                   @NonNull final Context context,
+                   @NonNull final Listener listener) {
+        super(context, clearUrlIfSdkNotInitialized(url), generatedParams, listener);
         Preconditions.checkNotNull(url);
         Preconditions.checkNotNull(adFormat);
         Preconditions.checkNotNull(context);
@@ -112,6 +123,11 @@ public class MultiAdRequest extends MoPubRequest<MultiAdResponse> {
         }
     }
 
+    @Override
+    public Priority getPriority() {
+        return RequestLane.AD_REQUEST.getPriority();
+    }
+
     @Override
     public void cancel() {
         super.cancel();
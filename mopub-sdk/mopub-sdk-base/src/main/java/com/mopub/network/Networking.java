@@ -13,17 +13,23 @@ import android.webkit.WebView;
 import com.mopub.common.Constants;
 import com.mopub.common.Preconditions;
 import com.mopub.common.VisibleForTesting;
+import com.mopub.common.logging.MoPubLog;
 import com.mopub.common.util.DeviceUtils;
+import com.mopub.volley.AuthFailureError;
 import com.mopub.volley.Cache;
 import com.mopub.volley.Network;
+import com.mopub.volley.Request;
 import com.mopub.volley.RequestQueue;
 import com.mopub.volley.toolbox.BaseHttpStack;
 import com.mopub.volley.toolbox.BasicNetwork;
 import com.mopub.volley.toolbox.DiskBasedCache;
+import com.mopub.volley.toolbox.HttpResponse;
 import com.mopub.volley.toolbox.HurlStack;
 import com.mopub.volley.toolbox.ImageLoader;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Map;
 
 import javax.net.ssl.SSLSocketFactory;
 
@@ -40,6 +46,12 @@ public class Networking {
     private volatile static MaxWidthImageLoader sMaxWidthImageLoader;
     private static boolean sUseHttps = false;
     private static HurlStack.UrlRewriter sUrlRewriter;
+    private volatile static SSLSocketFactory sSslSocketFactory;
+    @Nullable private static BaseHttpStack sHttpStack;
+    @NonNull private static final ConnectionPoolMetrics sConnectionPoolMetrics =
+            new ConnectionPoolMetrics();
+    @NonNull private static final RequestLaneMetrics sRequestLaneMetrics =
+            new RequestLaneMetrics();
 
     @Nullable
     public static MoPubRequestQueue getRequestQueue() {
@@ -66,14 +78,19 @@ public class Networking {
                 requestQueue = sRequestQueue;
                 if (requestQueue == null) {
 
-                    final SSLSocketFactory socketFactory = CustomSSLSocketFactory.getDefault(Constants.TEN_SECONDS_MILLIS);
-
-                    final String userAgent = Networking.getUserAgent(
-                            context.getApplicationContext());
-                    final BaseHttpStack httpStack = new RequestQueueHttpStack(userAgent,
-                            getUrlRewriter(context), socketFactory);
+                    BaseHttpStack httpStack = sHttpStack;
+                    // A custom stack opens its connections without the SDK's socket factory, so
+                    // they cannot be counted as new or reused
+                    final boolean countsConnections = httpStack == null;
+                    if (httpStack == null) {
+                        final String userAgent = Networking.getUserAgent(
+                                context.getApplicationContext());
+                        httpStack = new RequestQueueHttpStack(userAgent,
+                                getUrlRewriter(context), getSslSocketFactory());
+                    }
 
-                    final Network network = new BasicNetwork(httpStack);
+                    final Network network = new BasicNetwork(
+                            new MeteredHttpStack(httpStack, countsConnections));
                     final File volleyCacheDir = new File(context.getCacheDir().getPath() +
                             File.separator + CACHE_DIRECTORY_NAME);
                     final Cache cache = new DiskBasedCache(volleyCacheDir,
@@ -88,6 +105,57 @@ public class Networking {
         return requestQueue;
     }
 
+    /**
+     * The socket factory for https connections from the Volley queue and for https connections
+     * to MoPub from {@link com.mopub.common.MoPubHttpUrlConnection}. Sharing one factory lets
+     * connections and TLS sessions to the same host be reused between them.
+     */
+    @NonNull
+    public static SSLSocketFactory getSslSocketFactory() {
+        SSLSocketFactory sslSocketFactory = sSslSocketFactory;
+        // Double-check locking to initialize.
+        if (sslSocketFactory == null) {
+            synchronized (Networking.class) {
+                sslSocketFactory = sSslSocketFactory;
+                if (sslSocketFactory == null) {
+                    sslSocketFactory = CustomSSLSocketFactory.getDefault(
+                            Constants.TEN_SECONDS_MILLIS, sConnectionPoolMetrics);
+                    sSslSocketFactory = sslSocketFactory;
+                }
+            }
+        }
+        return sslSocketFactory;
+    }
+
+    /**
+     * Replaces the HTTP stack of the SDK's request queue. The default stack uses
+     * HttpURLConnection and speaks HTTP/1.1 only; an app that wants HTTP/2 can supply a stack
+     * backed by a client that supports it. This must be called before the first ad request. The stack is responsible for
+     * sending {@link #getUserAgent(Context)} and for rewriting urls with
+     * {@link #getUrlRewriter(Context)}. Its connections do not go through
+     * {@link #getSslSocketFactory()}, so its requests are left out of
+     * {@link #getConnectionPoolMetrics()}.
+     *
+     * @param httpStack The stack to use, or null to use the default one
+     */
+    public static synchronized void setHttpStack(@Nullable final BaseHttpStack httpStack) {
+        if (sRequestQueue != null) {
+            MoPubLog.w("The request queue has already been created. The new HTTP stack will not be "
+                    + "used.");
+        }
+        sHttpStack = httpStack;
+    }
+
+    @NonNull
+    public static ConnectionPoolMetrics getConnectionPoolMetrics() {
+        return sConnectionPoolMetrics;
+    }
+
+    @NonNull
+    public static RequestLaneMetrics getRequestLaneMetrics() {
+        return sRequestLaneMetrics;
+    }
+
     @NonNull
     public static ImageLoader getImageLoader(@NonNull Context context) {
         MaxWidthImageLoader imageLoader = sMaxWidthImageLoader;
@@ -183,6 +251,10 @@ public class Networking {
         sRequestQueue = null;
         sMaxWidthImageLoader = null;
         sUserAgent = null;
+        sSslSocketFactory = null;
+        sHttpStack = null;
+        sConnectionPoolMetrics.reset();
+        sRequestLaneMetrics.reset();
     }
 
     @VisibleForTesting
@@ -231,4 +303,39 @@ public class Networking {
     public static String getBaseUrlScheme() {
         return shouldUseHttps() ? Constants.HTTPS : Constants.HTTP;
     }
+
+    /**
+     * Counts the requests sent through the request queue's stack and ends their wait in their
+     * {@link RequestLane}. Images found in the disk cache are answered without going to the
+     * network. Requests are only added to the {@link ConnectionPoolMetrics} when the stack uses
+     * the SDK's socket factory.
+     */
+    private static class MeteredHttpStack extends BaseHttpStack {
+        @NonNull private final BaseHttpStack mHttpStack;
+        private final boolean mCountsConnections;
+
+        MeteredHttpStack(@NonNull final BaseHttpStack httpStack, final boolean countsConnections) {
+            mHttpStack = httpStack;
+            mCountsConnections = countsConnections;
+        }
+
+        @Override
+        public HttpResponse executeRequest(final Request<?> request,
+                final Map<String, String> additionalHeaders) throws IOException, AuthFailureError {
+            if (request instanceof MoPubImageRequest) {
+                final HttpResponse diskCachedResponse =
+                        ((MoPubImageRequest) request).getDiskCachedResponse();
+                if (diskCachedResponse != null) {
+                    sRequestLaneMetrics.onRequestStarted(request);
+                    return diskCachedResponse;
+                }
+            }
+
+            if (mCountsConnections) {
+                sConnectionPoolMetrics.onRequest();
+            }
+            sRequestLaneMetrics.onRequestStarted(request);
+            return mHttpStack.executeRequest(request, additionalHeaders);
+        }
+    }
 }
@@ -21,18 +21,30 @@ public class PlayServicesUrlRewriter implements HurlStack.UrlRewriter {
 
     @Override
     public String rewriteUrl(final String url) {
-        if (!url.contains(UDID_TEMPLATE) && !url.contains(DO_NOT_TRACK_TEMPLATE)) {
-            return url;
+        return rewrite(url, true);
+    }
+
+    /**
+     * Replaces the templates in a single parameter value that is sent without url encoding, such
+     * as in the body of a POST request.
+     */
+    public String rewriteParamValue(final String value) {
+        return rewrite(value, false);
+    }
+
+    private String rewrite(final String string, final boolean shouldEncode) {
+        if (!string.contains(UDID_TEMPLATE) && !string.contains(DO_NOT_TRACK_TEMPLATE)) {
+            return string;
         }
 
         ClientMetadata clientMetadata = ClientMetadata.getInstance();
         if (clientMetadata == null) {
-            return url;
+            return string;
         }
         MoPubIdentifier identifier = clientMetadata.getMoPubIdentifier();
         AdvertisingId info = identifier.getAdvertisingInfo();
-        String toReturn = url.replace(UDID_TEMPLATE,
-                Uri.encode(info.getIdWithPrefix(MoPub.canCollectPersonalInformation())));
+        final String id = info.getIdWithPrefix(MoPub.canCollectPersonalInformation());
+        String toReturn = string.replace(UDID_TEMPLATE, shouldEncode ? Uri.encode(id) : id);
         toReturn = toReturn.replace(DO_NOT_TRACK_TEMPLATE, info.isDoNotTrack() ? "1" : "0");
         return toReturn;
     }
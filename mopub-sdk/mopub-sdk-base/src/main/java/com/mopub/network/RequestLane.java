@@ -0,0 +1,49 @@
+package com.mopub.network;
+
+import android.support.annotation.NonNull;
+
+import com.mopub.common.Preconditions;
+import com.mopub.volley.Request;
+
+/**
+ * The lanes requests wait in before a network dispatcher picks them up. Each lane maps to a Volley
+ * {@link Request.Priority}, and a free dispatcher always takes the oldest request of the highest
+ * lane, so a burst of trackers or images never delays an ad request that comes after it.
+ * Requests that do not pick a lane keep Volley's default priority and are counted in
+ * {@link #OTHER}, which shares its priority with {@link #TRACKING}.
+ */
+public enum RequestLane {
+    AD_REQUEST(Request.Priority.IMMEDIATE),
+    CREATIVE_ASSET(Request.Priority.HIGH),
+    TRACKING(Request.Priority.NORMAL),
+    OTHER(Request.Priority.NORMAL),
+    BACKGROUND(Request.Priority.LOW);
+
+    @NonNull private final Request.Priority mPriority;
+
+    RequestLane(@NonNull final Request.Priority priority) {
+        mPriority = priority;
+    }
+
+    @NonNull
+    public Request.Priority getPriority() {
+        return mPriority;
+    }
+
+    @NonNull
+    public static RequestLane of(@NonNull final Request<?> request) {
+        Preconditions.checkNotNull(request);
+
+        if (request instanceof TrackingRequest) {
+            return TRACKING;
+        }
+
+        final Request.Priority priority = request.getPriority();
+        for (final RequestLane lane : values()) {
+            if (lane != TRACKING && lane.mPriority == priority) {
+                return lane;
+            }
+        }
+        return OTHER;
+    }
+}
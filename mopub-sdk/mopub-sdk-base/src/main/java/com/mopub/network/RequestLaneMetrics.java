@@ -0,0 +1,94 @@
+package com.mopub.network;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.mopub.common.Preconditions;
+import com.mopub.common.VisibleForTesting;
+import com.mopub.volley.Request;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Tracks, for each {@link RequestLane}, how many requests are waiting for a network dispatcher and
+ * how long they waited before one picked them up.
+ */
+public class RequestLaneMetrics {
+    private static final int LANE_COUNT = RequestLane.values().length;
+
+    // Requests are keyed by identity since some of them override equals
+    @NonNull private final Map<Request<?>, Long> mQueuedAtMs = new IdentityHashMap<>();
+    @NonNull private final int[] mQueueDepths = new int[LANE_COUNT];
+    @NonNull private final long[] mStartedCounts = new long[LANE_COUNT];
+    @NonNull private final long[] mTotalWaitTimesMs = new long[LANE_COUNT];
+
+    synchronized void onRequestQueued(@NonNull final Request<?> request) {
+        Preconditions.checkNotNull(request);
+
+        if (mQueuedAtMs.put(request, SystemClock.elapsedRealtime()) == null) {
+            mQueueDepths[RequestLane.of(request).ordinal()]++;
+        }
+    }
+
+    /**
+     * Called when a dispatcher sends the request over the network. Retries of a request that has
+     * already started are ignored.
+     */
+    synchronized void onRequestStarted(@NonNull final Request<?> request) {
+        Preconditions.checkNotNull(request);
+
+        final Long queuedAtMs = mQueuedAtMs.remove(request);
+        if (queuedAtMs == null) {
+            return;
+        }
+        final int lane = RequestLane.of(request).ordinal();
+        mQueueDepths[lane]--;
+        mStartedCounts[lane]++;
+        mTotalWaitTimesMs[lane] += SystemClock.elapsedRealtime() - queuedAtMs;
+    }
+
+    /**
+     * Called when the request is done. Requests that never reached the network, because they were
+     * cancelled or served from the cache, leave their lane here.
+     */
+    synchronized void onRequestFinished(@NonNull final Request<?> request) {
+        Preconditions.checkNotNull(request);
+
+        if (mQueuedAtMs.remove(request) != null) {
+            mQueueDepths[RequestLane.of(request).ordinal()]--;
+        }
+    }
+
+    public synchronized int getQueueDepth(@NonNull final RequestLane lane) {
+        Preconditions.checkNotNull(lane);
+
+        return mQueueDepths[lane.ordinal()];
+    }
+
+    public synchronized long getStartedCount(@NonNull final RequestLane lane) {
+        Preconditions.checkNotNull(lane);
+
+        return mStartedCounts[lane.ordinal()];
+    }
+
+    public synchronized long getAverageWaitTimeMs(@NonNull final RequestLane lane) {
+        Preconditions.checkNotNull(lane);
+
+        final long startedCount = mStartedCounts[lane.ordinal()];
+        if (startedCount == 0) {
+            return 0;
+        }
+        return mTotalWaitTimesMs[lane.ordinal()] / startedCount;
+    }
+
+    @VisibleForTesting
+    synchronized void reset() {
+        mQueuedAtMs.clear();
+        for (int i = 0; i < LANE_COUNT; i++) {
+            mQueueDepths[i] = 0;
+            mStartedCounts[i] = 0;
+            mTotalWaitTimesMs[i] = 0;
+        }
+    }
+}
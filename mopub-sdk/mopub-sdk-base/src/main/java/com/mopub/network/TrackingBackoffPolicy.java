@@ -0,0 +1,34 @@
+package com.mopub.network;
+
+import com.mopub.volley.NoConnectionError;
+import com.mopub.volley.VolleyError;
+
+/**
+ * The backoff policy for tracking beacons. Only beacons that could not connect are retried, since
+ * retrying a beacon the server may already have received can count an impression twice.
+ */
+class TrackingBackoffPolicy extends BackoffPolicy {
+    private static final int DEFAULT_BACKOFF_TIME_MS = 10 * 1000;
+    private static final int MAX_BACKOFF_TIME_MS = 5 * 60 * 1000;
+    private static final int BACKOFF_MULTIPLIER = 2;
+    private static final int MAX_RETRIES = 5;
+
+    TrackingBackoffPolicy() {
+        mDefaultBackoffTimeMs = DEFAULT_BACKOFF_TIME_MS;
+        mMaxBackoffTimeMs = MAX_BACKOFF_TIME_MS;
+        mBackoffMultiplier = BACKOFF_MULTIPLIER;
+        mMaxRetries = MAX_RETRIES;
+    }
+
+    @Override
+    public void backoff(final VolleyError volleyError) throws VolleyError {
+        if (!(volleyError instanceof NoConnectionError) || !hasAttemptRemaining()) {
+            throw volleyError;
+        }
+
+        mBackoffMs = (int) Math.min(
+                mDefaultBackoffTimeMs * Math.pow(mBackoffMultiplier, mRetryCount),
+                mMaxBackoffTimeMs);
+        mRetryCount++;
+    }
+}
@@ -0,0 +1,594 @@
+package com.mopub.network;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.mopub.common.Constants;
+import com.mopub.common.Preconditions;
+import com.mopub.common.VisibleForTesting;
+import com.mopub.common.logging.MoPubLog;
+import com.mopub.common.util.Streams;
+import com.mopub.common.util.Strings;
+import com.mopub.volley.VolleyError;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends tracking beacons that nobody waits on.
+ *
+ * Identical URLs sent within {@link #DEDUP_WINDOW_MS} of each other are sent once, and at most
+ * {@link #MAX_REQUESTS_PER_HOST} beacons per host are in the request queue at a time so that a
+ * burst of trackers does not crowd out ad requests. Beacons that could not connect are retried
+ * with a {@link TrackingBackoffPolicy}, and all of them are sent again as soon as connectivity
+ * returns. A beacon waiting for its retry gives up its host slot.
+ *
+ * Every beacon is written to a journal with the time it was created until it is handed to the
+ * request queue. Beacons that were not sent yet when the process died are sent the next time the
+ * dispatcher starts, unless they are older than {@link #MAX_JOURNAL_AGE_MS}. Beacons that were
+ * already sent are never sent again, since the server may have counted them.
+ */
+public class TrackingDispatcher {
+    @VisibleForTesting static final int MAX_REQUESTS_PER_HOST = 6;
+    @VisibleForTesting static final long DEDUP_WINDOW_MS = 2000;
+    @VisibleForTesting static final long MAX_JOURNAL_AGE_MS = Constants.AD_EXPIRATION_DELAY;
+    @VisibleForTesting static final String JOURNAL_FILE_NAME = "mopub-tracking-journal";
+    // "A <creation time> <url>" when a beacon is waiting to be sent, "S <url>" once it is sent
+    private static final String JOURNAL_ADD = "A ";
+    private static final String JOURNAL_SENT = "S ";
+    private static final int MAX_JOURNAL_RECORDS = 500;
+
+    @Nullable private static volatile TrackingDispatcher sInstance;
+
+    /**
+     * A beacon read back from the journal.
+     */
+    @VisibleForTesting
+    static class JournalRecord {
+        @NonNull final String url;
+        final long createdAtMillis;
+
+        JournalRecord(@NonNull final String url, final long createdAtMillis) {
+            this.url = url;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+
+    private class Beacon implements TrackingRequest.Listener {
+        @NonNull final String url;
+        @NonNull final String host;
+        // Wall clock time, since the journal outlives the process
+        final long createdAtMillis;
+        @NonNull final BackoffPolicy backoffPolicy = new TrackingBackoffPolicy();
+        @NonNull final Runnable retryRunnable = new Runnable() {
+            @Override
+            public void run() {
+                onRetryDue(Beacon.this);
+            }
+        };
+
+        Beacon(@NonNull final String url, @NonNull final String host,
+                final long createdAtMillis) {
+            this.url = url;
+            this.host = host;
+            this.createdAtMillis = createdAtMillis;
+        }
+
+        @Override
+        public void onResponse(@NonNull final String url) {
+            MoPubLog.d("Successfully hit tracking endpoint: " + url);
+            onBeaconDone(this);
+        }
+
+        @Override
+        public void onErrorResponse(final VolleyError volleyError) {
+            try {
+                backoffPolicy.backoff(volleyError);
+            } catch (VolleyError e) {
+                MoPubLog.d("Failed to hit tracking endpoint: " + url);
+                onBeaconDone(this);
+                return;
+            }
+            MoPubLog.d("Retrying tracking endpoint in " + backoffPolicy.getBackoffMs()
+                    + "ms: " + url);
+            onBeaconRetry(this);
+        }
+    }
+
+    @NonNull private final Context mContext;
+    @Nullable private final File mJournalFile;
+    @NonNull private final Executor mJournalExecutor;
+    @NonNull private final Handler mHandler;
+
+    @NonNull private final LinkedHashMap<String, Long> mRecentUrls =
+            new LinkedHashMap<String, Long>();
+    @NonNull private final Map<String, Integer> mInFlightPerHost = new HashMap<String, Integer>();
+    @NonNull private final Map<String, Queue<Beacon>> mWaitingPerHost =
+            new HashMap<String, Queue<Beacon>>();
+    @NonNull private final Set<Beacon> mAwaitingRetry = new LinkedHashSet<Beacon>();
+    // Beacons that are in the journal and not sent yet
+    @NonNull private final Set<Beacon> mUnsentBeacons = new LinkedHashSet<Beacon>();
+    @NonNull private final StringBuilder mJournalBuffer = new StringBuilder();
+    @Nullable private List<JournalRecord> mJournalRewrite;
+    private boolean mIsJournalFlushScheduled;
+    private int mJournalRecordCount;
+    private boolean mIsConnectivityReceiverRegistered;
+
+    @NonNull private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(final Context context, final Intent intent) {
+            if (isInitialStickyBroadcast()
+                    || intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)) {
+                return;
+            }
+            flushRetries();
+        }
+    };
+
+    @NonNull
+    public static TrackingDispatcher getInstance(@NonNull final Context context) {
+        Preconditions.checkNotNull(context);
+
+        TrackingDispatcher dispatcher = sInstance;
+        if (dispatcher == null) {
+            synchronized (TrackingDispatcher.class) {
+                dispatcher = sInstance;
+                if (dispatcher == null) {
+                    final Context applicationContext = context.getApplicationContext();
+                    dispatcher = new TrackingDispatcher(
+                            applicationContext != null ? applicationContext : context);
+                    dispatcher.restoreJournal();
+                    sInstance = dispatcher;
+                }
+            }
+        }
+        return dispatcher;
+    }
+
+    @VisibleForTesting
+    TrackingDispatcher(@NonNull final Context context) {
+        Preconditions.checkNotNull(context);
+
+        mContext = context;
+        final File filesDir = context.getFilesDir();
+        mJournalFile = filesDir == null ? null : new File(filesDir, JOURNAL_FILE_NAME);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        mJournalExecutor = executor;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Sends {@code url}, unless the same URL was sent within {@link #DEDUP_WINDOW_MS}.
+     */
+    public void dispatch(@Nullable final String url) {
+        if (TextUtils.isEmpty(url)) {
+            return;
+        }
+
+        synchronized (this) {
+            final long now = SystemClock.elapsedRealtime();
+            pruneRecentUrls(now);
+            if (mRecentUrls.containsKey(url)) {
+                MoPubLog.d("Dropping duplicate tracking request: " + url);
+                return;
+            }
+            mRecentUrls.put(url, now);
+
+            final Beacon beacon = new Beacon(url, getHost(url), System.currentTimeMillis());
+            markUnsent(beacon);
+            enqueue(beacon);
+        }
+    }
+
+    private void pruneRecentUrls(final long now) {
+        // Entries are in the order they were sent, so the expired ones are at the front
+        final Iterator<Long> iterator = mRecentUrls.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next() < DEDUP_WINDOW_MS) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    private void markUnsent(@NonNull final Beacon beacon) {
+        mUnsentBeacons.add(beacon);
+        appendToJournal(beacon.url,
+                JOURNAL_ADD + beacon.createdAtMillis + " " + beacon.url + "\n");
+    }
+
+    private void enqueue(@NonNull final Beacon beacon) {
+        // URLs without a host fail right away, so they are not held back
+        final Integer inFlight = mInFlightPerHost.get(beacon.host);
+        if (!beacon.host.isEmpty() && inFlight != null && inFlight >= MAX_REQUESTS_PER_HOST) {
+            Queue<Beacon> waiting = mWaitingPerHost.get(beacon.host);
+            if (waiting == null) {
+                waiting = new ArrayDeque<Beacon>();
+                mWaitingPerHost.put(beacon.host, waiting);
+            }
+            waiting.add(beacon);
+            return;
+        }
+        send(beacon);
+    }
+
+    private void send(@NonNull final Beacon beacon) {
+        final Integer inFlight = mInFlightPerHost.get(beacon.host);
+        mInFlightPerHost.put(beacon.host, inFlight == null ? 1 : inFlight + 1);
+
+        if (mUnsentBeacons.remove(beacon)) {
+            appendToJournal(beacon.url, JOURNAL_SENT + beacon.url + "\n");
+        }
+        Networking.getRequestQueue(mContext).add(
+                new TrackingRequest(mContext, beacon.url, beacon));
+    }
+
+    /**
+     * Frees a slot for the host, and hands it to the next beacon waiting for one.
+     */
+    private void releaseSlot(@NonNull final String host) {
+        final Integer inFlight = mInFlightPerHost.get(host);
+        if (inFlight == null || inFlight <= 1) {
+            mInFlightPerHost.remove(host);
+        } else {
+            mInFlightPerHost.put(host, inFlight - 1);
+        }
+
+        final Queue<Beacon> waiting = mWaitingPerHost.get(host);
+        if (waiting != null && !waiting.isEmpty()) {
+            final Beacon next = waiting.remove();
+            if (waiting.isEmpty()) {
+                mWaitingPerHost.remove(host);
+            }
+            send(next);
+        }
+    }
+
+    private void onBeaconRetry(@NonNull final Beacon beacon) {
+        synchronized (this) {
+            // The beacon never reached the server, so it is unsent again and does not hold on to
+            // its slot while it waits
+            releaseSlot(beacon.host);
+            markUnsent(beacon);
+            mAwaitingRetry.add(beacon);
+            mHandler.postDelayed(beacon.retryRunnable, beacon.backoffPolicy.getBackoffMs());
+            registerConnectivityReceiver();
+        }
+    }
+
+    private void onRetryDue(@NonNull final Beacon beacon) {
+        synchronized (this) {
+            if (!mAwaitingRetry.remove(beacon)) {
+                return;
+            }
+            if (mAwaitingRetry.isEmpty()) {
+                unregisterConnectivityReceiver();
+            }
+            enqueue(beacon);
+        }
+    }
+
+    private void onBeaconDone(@NonNull final Beacon beacon) {
+        synchronized (this) {
+            releaseSlot(beacon.host);
+        }
+    }
+
+    /**
+     * Sends every beacon that is waiting to be retried now instead of after its backoff.
+     */
+    @VisibleForTesting
+    void flushRetries() {
+        synchronized (this) {
+            if (mAwaitingRetry.isEmpty()) {
+                return;
+            }
+
+            final List<Beacon> beacons = new ArrayList<Beacon>(mAwaitingRetry);
+            mAwaitingRetry.clear();
+            unregisterConnectivityReceiver();
+            for (final Beacon beacon : beacons) {
+                mHandler.removeCallbacks(beacon.retryRunnable);
+                enqueue(beacon);
+            }
+        }
+    }
+
+    private void registerConnectivityReceiver() {
+        if (mIsConnectivityReceiverRegistered) {
+            return;
+        }
+        try {
+            mContext.registerReceiver(mConnectivityReceiver,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            mIsConnectivityReceiverRegistered = true;
+        } catch (Exception e) {
+            MoPubLog.d("Unable to listen for connectivity changes.", e);
+        }
+    }
+
+    private void unregisterConnectivityReceiver() {
+        if (!mIsConnectivityReceiverRegistered) {
+            return;
+        }
+        try {
+            mContext.unregisterReceiver(mConnectivityReceiver);
+        } catch (Exception e) {
+            MoPubLog.d("Unable to stop listening for connectivity changes.", e);
+        }
+        mIsConnectivityReceiverRegistered = false;
+    }
+
+    @NonNull
+    private static String getHost(@NonNull final String url) {
+        final String host = Uri.parse(url).getHost();
+        return host == null ? "" : host.toLowerCase();
+    }
+
+    ///////////////////////////////////////////////////////////////
+    // Journal
+    //////////////////////////////////////////////////////////////
+
+    /**
+     * Adds a record about {@code url} to the journal. Records are buffered and written together
+     * on the journal thread. Once {@link #MAX_JOURNAL_RECORDS} records were written, the journal
+     * is rewritten with only the unsent beacons instead.
+     */
+    private void appendToJournal(@NonNull final String url, @NonNull final String record) {
+        if (mJournalFile == null || url.indexOf('\n') >= 0 || url.indexOf('\r') >= 0) {
+            return;
+        }
+
+        mJournalRecordCount++;
+        if (mJournalRecordCount >= MAX_JOURNAL_RECORDS) {
+            // mUnsentBeacons already reflects this record
+            final List<JournalRecord> rewrite = new ArrayList<JournalRecord>();
+            for (final Beacon beacon : mUnsentBeacons) {
+                rewrite.add(new JournalRecord(beacon.url, beacon.createdAtMillis));
+            }
+            mJournalRewrite = rewrite;
+            mJournalBuffer.setLength(0);
+            mJournalRecordCount = rewrite.size();
+        } else {
+            mJournalBuffer.append(record);
+        }
+
+        if (!mIsJournalFlushScheduled) {
+            mIsJournalFlushScheduled = true;
+            mJournalExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushJournal();
+                }
+            });
+        }
+    }
+
+    private void flushJournal() {
+        final List<JournalRecord> rewrite;
+        final String records;
+        synchronized (this) {
+            rewrite = mJournalRewrite;
+            records = mJournalBuffer.toString();
+            mJournalRewrite = null;
+            mJournalBuffer.setLength(0);
+            mIsJournalFlushScheduled = false;
+        }
+
+        if (mJournalFile == null) {
+            return;
+        }
+        if (rewrite != null) {
+            rewriteJournal(mJournalFile, rewrite);
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(mJournalFile, true), "UTF-8"));
+            writer.write(records);
+        } catch (IOException e) {
+            MoPubLog.d("Unable to write tracking journal.", e);
+        } finally {
+            Streams.closeStream(writer);
+        }
+    }
+
+    /**
+     * Reads the journal on the journal thread and sends the beacons that were not sent yet when
+     * it was last written.
+     */
+    private void restoreJournal() {
+        if (mJournalFile == null) {
+            return;
+        }
+
+        mJournalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<JournalRecord> records = readJournal(mJournalFile,
+                        System.currentTimeMillis());
+                rewriteJournal(mJournalFile, records);
+                if (records.isEmpty()) {
+                    return;
+                }
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (TrackingDispatcher.this) {
+                            MoPubLog.d("Sending " + records.size()
+                                    + " tracking requests from the last session.");
+                            mJournalRecordCount += records.size();
+                            for (final JournalRecord record : records) {
+                                final Beacon beacon = new Beacon(record.url,
+                                        getHost(record.url), record.createdAtMillis);
+                                // Already in the rewritten journal
+                                mUnsentBeacons.add(beacon);
+                                enqueue(beacon);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the beacons in the journal that were not sent, in the order they were added, except
+     * those created more than {@link #MAX_JOURNAL_AGE_MS} before {@code nowMillis}
+     */
+    @NonNull
+    @VisibleForTesting
+    static List<JournalRecord> readJournal(@NonNull final File journalFile, final long nowMillis) {
+        // The creation times of each URL's unsent beacons, in the order it was added
+        final LinkedHashMap<String, Queue<Long>> unsent = new LinkedHashMap<String, Queue<Long>>();
+        if (journalFile.exists()) {
+            String journal = "";
+            InputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(journalFile);
+                journal = Strings.fromStream(inputStream);
+            } catch (IOException e) {
+                MoPubLog.d("Unable to read tracking journal.", e);
+            } finally {
+                Streams.closeStream(inputStream);
+            }
+
+            // A record without its newline was cut short by the process dying, so only complete
+            // lines are read
+            int lineStart = 0;
+            int lineEnd;
+            while ((lineEnd = journal.indexOf('\n', lineStart)) >= 0) {
+                final String line = journal.substring(lineStart, lineEnd);
+                lineStart = lineEnd + 1;
+                if (line.startsWith(JOURNAL_ADD)) {
+                    final int urlStart = line.indexOf(' ', JOURNAL_ADD.length()) + 1;
+                    if (urlStart == 0) {
+                        continue;
+                    }
+                    final long createdAtMillis;
+                    try {
+                        createdAtMillis = Long.parseLong(
+                                line.substring(JOURNAL_ADD.length(), urlStart - 1));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    final String url = line.substring(urlStart);
+                    Queue<Long> times = unsent.get(url);
+                    if (times == null) {
+                        times = new ArrayDeque<Long>();
+                        unsent.put(url, times);
+                    }
+                    times.add(createdAtMillis);
+                } else if (line.startsWith(JOURNAL_SENT)) {
+                    final String url = line.substring(JOURNAL_SENT.length());
+                    final Queue<Long> times = unsent.get(url);
+                    if (times != null) {
+                        times.poll();
+                        if (times.isEmpty()) {
+                            unsent.remove(url);
+                        }
+                    }
+                }
+            }
+        }
+
+        final List<JournalRecord> records = new ArrayList<JournalRecord>();
+        for (final Map.Entry<String, Queue<Long>> entry : unsent.entrySet()) {
+            for (final Long createdAtMillis : entry.getValue()) {
+                final long age = nowMillis - createdAtMillis;
+                if (age >= 0 && age <= MAX_JOURNAL_AGE_MS) {
+                    records.add(new JournalRecord(entry.getKey(), createdAtMillis));
+                }
+            }
+        }
+        return records;
+    }
+
+    private static void rewriteJournal(@NonNull final File journalFile,
+            @NonNull final List<JournalRecord> records) {
+        final File tempFile = new File(journalFile.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(tempFile), "UTF-8"));
+            for (final JournalRecord record : records) {
+                if (record.url.indexOf('\n') >= 0 || record.url.indexOf('\r') >= 0) {
+                    continue;
+                }
+                writer.write(JOURNAL_ADD);
+                writer.write(Long.toString(record.createdAtMillis));
+                writer.write(' ');
+                writer.write(record.url);
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            if (!tempFile.renameTo(journalFile)) {
+                throw new IOException("Unable to replace " + journalFile);
+            }
+        } catch (IOException e) {
+            MoPubLog.d("Unable to rewrite tracking journal.", e);
+        } finally {
+            Streams.closeStream(writer);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+    }
+
+    @Deprecated
+    @VisibleForTesting
+    public static void clearForTesting() {
+        final TrackingDispatcher dispatcher = sInstance;
+        sInstance = null;
+        if (dispatcher == null) {
+            return;
+        }
+
+        // Forget the dedup window and pending retries so that tests do not affect each other
+        synchronized (dispatcher) {
+            dispatcher.mHandler.removeCallbacksAndMessages(null);
+            dispatcher.unregisterConnectivityReceiver();
+            dispatcher.mRecentUrls.clear();
+            dispatcher.mAwaitingRetry.clear();
+            dispatcher.mWaitingPerHost.clear();
+            dispatcher.mInFlightPerHost.clear();
+        }
+    }
+}
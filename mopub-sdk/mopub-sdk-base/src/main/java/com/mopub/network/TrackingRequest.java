@@ -32,7 +32,7 @@ public class TrackingRequest extends MoPubRequest<Void> {
 
     @Nullable private final TrackingRequest.Listener mListener;
 
-    private TrackingRequest(@NonNull final Context context,
+    TrackingRequest(@NonNull final Context context,
             @NonNull final String url,
             @Nullable final Listener listener) {
         super(context, url, listener);
@@ -44,6 +44,11 @@ public class TrackingRequest extends MoPubRequest<Void> {
                 DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
     }
 
+    @Override
+    public Priority getPriority() {
+        return RequestLane.TRACKING.getPriority();
+    }
+
     @Override
     protected Response<Void> parseNetworkResponse(final NetworkResponse networkResponse) {
         if (networkResponse.statusCode != 200) {
@@ -103,6 +108,15 @@ public class TrackingRequest extends MoPubRequest<Void> {
             return;
         }
 
+        if (listener == null) {
+            // Nobody waits on the result, so the dispatcher may batch, retry and persist it
+            final TrackingDispatcher dispatcher = TrackingDispatcher.getInstance(context);
+            for (final String url : urls) {
+                dispatcher.dispatch(url);
+            }
+            return;
+        }
+
         final RequestQueue requestQueue = Networking.getRequestQueue(context);
         for (final String url : urls) {
             if (TextUtils.isEmpty(url)) {
@@ -113,17 +127,13 @@ public class TrackingRequest extends MoPubRequest<Void> {
                 @Override
                 public void onResponse(@NonNull String url) {
                     MoPubLog.d("Successfully hit tracking endpoint: " + url);
-                    if (listener != null) {
-                        listener.onResponse(url);
-                    }
+                    listener.onResponse(url);
                 }
 
                 @Override
                 public void onErrorResponse(final VolleyError volleyError) {
                     MoPubLog.d("Failed to hit tracking endpoint: " + url);
-                    if (listener != null) {
-                        listener.onErrorResponse(volleyError);
-                    }
+                    listener.onErrorResponse(volleyError);
                 }
             };
             final TrackingRequest trackingRequest = new TrackingRequest(context, url,
@@ -1,6 +1,7 @@
 package com.mopub.mobileads;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
 
 import com.mopub.common.AdReport;
 import com.mopub.common.ExternalViewabilitySessionManager;
@@ -13,7 +14,8 @@ import static com.mopub.common.DataKeys.BROADCAST_IDENTIFIER_KEY;
 import static com.mopub.common.DataKeys.HTML_RESPONSE_BODY_KEY;
 import static com.mopub.mobileads.MoPubErrorCode.NETWORK_INVALID_STATE;
 
-public abstract class ResponseBodyInterstitial extends CustomEventInterstitial {
+public abstract class ResponseBodyInterstitial extends CustomEventInterstitial
+        implements WebViewCacheService.EvictionListener {
     private EventForwardingBroadcastReceiver mBroadcastReceiver;
     protected Context mContext;
     protected AdReport mAdReport;
@@ -70,6 +72,17 @@ public abstract class ResponseBodyInterstitial extends CustomEventInterstitial {
         }
     }
 
+    /**
+     * The interstitial activity renders the ad again when it cannot find the pre-rendered WebView,
+     * so an eviction only costs the time to render it when shown.
+     */
+    @Override
+    public void onWebViewEvicted(@NonNull final Long broadcastIdentifier,
+            @NonNull final WebViewCacheService.EvictionReason reason) {
+        MoPubLog.d("Pre-rendered interstitial WebView was evicted (" + reason
+                + "). It will be rendered again when shown.");
+    }
+
     private boolean extrasAreValid(Map<String,String> serverExtras) {
         return serverExtras.containsKey(HTML_RESPONSE_BODY_KEY);
     }
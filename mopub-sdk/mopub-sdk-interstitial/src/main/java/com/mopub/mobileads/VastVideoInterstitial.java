@@ -1,5 +1,6 @@
 package com.mopub.mobileads;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
@@ -57,10 +58,16 @@ class VastVideoInterstitial extends ResponseBodyInterstitial implements VastMana
         }
 
         mVastManager = VastManagerFactory.create(mContext);
+        mVastManager.setDownloadPriority(getDownloadPriority());
         mVastManager.prepareVastVideoConfiguration(mVastResponse, this,
                 mAdReport.getDspCreativeId(), mContext);
     }
 
+    @NonNull
+    protected VideoDownloader.DownloadPriority getDownloadPriority() {
+        return VideoDownloader.DownloadPriority.INTERSTITIAL;
+    }
+
     @Override
     public void showInterstitial() {
         MraidVideoPlayerActivity.startVast(mContext, mVastVideoConfig, mBroadcastIdentifier);
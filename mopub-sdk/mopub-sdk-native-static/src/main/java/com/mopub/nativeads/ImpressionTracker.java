@@ -1,8 +1,6 @@
 package com.mopub.nativeads;
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.view.View;
@@ -19,12 +17,12 @@ import static com.mopub.nativeads.VisibilityTracker.VisibilityTrackerListener;
 
 /**
  * Impression tracker used to call {@link ImpressionInterface#recordImpression(View)} when a
- * percentage of a native ad has been on screen for a duration of time.
+ * percentage of a native ad has been on screen for a duration of time. Visible views are polled in
+ * the passes of the shared {@link com.mopub.common.VisibilityEngine}, which keeps running passes
+ * while any view is waiting for its impression.
  */
 public class ImpressionTracker {
 
-    private static final int PERIOD = 250;
-
     // Object tracking visibility of added views
     @NonNull private final VisibilityTracker mVisibilityTracker;
 
@@ -34,11 +32,9 @@ public class ImpressionTracker {
     // Visible views being polled for time on screen before tracking impression
     @NonNull private final Map<View, TimestampWrapper<ImpressionInterface>> mPollingViews;
 
-    // Handler for polling visible views
-    @NonNull private final Handler mPollHandler;
-
-    // Runnable to run on each visibility loop
-    @NonNull private final PollingRunnable mPollingRunnable;
+    // Views whose impressions were recorded in a poll. Create this once to avoid excessive
+    // garbage collection observed when calculating these on each pass.
+    @NonNull private final ArrayList<View> mRemovedViews;
 
     // Object to check actual visibility
     @NonNull private final VisibilityChecker mVisibilityChecker;
@@ -50,20 +46,19 @@ public class ImpressionTracker {
         this(new WeakHashMap<View, ImpressionInterface>(),
                 new WeakHashMap<View, TimestampWrapper<ImpressionInterface>>(),
                 new VisibilityChecker(),
-                new VisibilityTracker(context),
-                new Handler(Looper.getMainLooper()));
+                new VisibilityTracker(context));
     }
 
     @VisibleForTesting
     ImpressionTracker(@NonNull final Map<View, ImpressionInterface> trackedViews,
             @NonNull final Map<View, TimestampWrapper<ImpressionInterface>> pollingViews,
             @NonNull final VisibilityChecker visibilityChecker,
-            @NonNull final VisibilityTracker visibilityTracker,
-            @NonNull final Handler handler) {
+            @NonNull final VisibilityTracker visibilityTracker) {
         mTrackedViews = trackedViews;
         mPollingViews = pollingViews;
         mVisibilityChecker = visibilityChecker;
         mVisibilityTracker = visibilityTracker;
+        mRemovedViews = new ArrayList<View>();
 
         mVisibilityTrackerListener = new VisibilityTrackerListener() {
             @Override
@@ -91,13 +86,10 @@ public class ImpressionTracker {
                 for (final View view : invisibleViews) {
                     mPollingViews.remove(view);
                 }
-                scheduleNextPoll();
+                pollViews();
             }
         };
         mVisibilityTracker.setVisibilityTrackerListener(mVisibilityTrackerListener);
-
-        mPollHandler = handler;
-        mPollingRunnable = new PollingRunnable();
     }
 
     /**
@@ -134,7 +126,6 @@ public class ImpressionTracker {
         mTrackedViews.clear();
         mPollingViews.clear();
         mVisibilityTracker.clear();
-        mPollHandler.removeMessages(0);
     }
 
     public void destroy() {
@@ -145,56 +136,44 @@ public class ImpressionTracker {
 
     @VisibleForTesting
     void scheduleNextPoll() {
-        // Only schedule if there are no messages already scheduled.
-        if (mPollHandler.hasMessages(0)) {
-            return;
-        }
-
-        mPollHandler.postDelayed(mPollingRunnable, PERIOD);
+        mVisibilityTracker.scheduleVisibilityCheck();
     }
 
     private void removePollingView(final View view) {
         mPollingViews.remove(view);
     }
 
+    /**
+     * Records the impressions of views that have been visible long enough, and schedules another
+     * visibility pass while views are still waiting.
+     */
     @VisibleForTesting
-    class PollingRunnable implements Runnable {
-        // Create this once to avoid excessive garbage collection observed when calculating
-        // these on each pass.
-        @NonNull private final ArrayList<View> mRemovedViews;
-
-        PollingRunnable() {
-            mRemovedViews = new ArrayList<View>();
-        }
-
-        @Override
-        public void run() {
-            for (final Map.Entry<View, TimestampWrapper<ImpressionInterface>> entry : mPollingViews.entrySet()) {
-                final View view = entry.getKey();
-                final TimestampWrapper<ImpressionInterface> timestampWrapper = entry.getValue();
-
-                // If it's been visible for the min impression time, trigger the callback
-                if (!mVisibilityChecker.hasRequiredTimeElapsed(
-                        timestampWrapper.mCreatedTimestamp,
-                        timestampWrapper.mInstance.getImpressionMinTimeViewed())) {
-                    continue;
-                }
+    void pollViews() {
+        for (final Map.Entry<View, TimestampWrapper<ImpressionInterface>> entry : mPollingViews.entrySet()) {
+            final View view = entry.getKey();
+            final TimestampWrapper<ImpressionInterface> timestampWrapper = entry.getValue();
+
+            // If it's been visible for the min impression time, trigger the callback
+            if (!mVisibilityChecker.hasRequiredTimeElapsed(
+                    timestampWrapper.mCreatedTimestamp,
+                    timestampWrapper.mInstance.getImpressionMinTimeViewed())) {
+                continue;
+            }
 
-                timestampWrapper.mInstance.recordImpression(view);
-                timestampWrapper.mInstance.setImpressionRecorded();
+            timestampWrapper.mInstance.recordImpression(view);
+            timestampWrapper.mInstance.setImpressionRecorded();
 
-                // Removed in a separate loop to avoid a ConcurrentModification exception.
-                mRemovedViews.add(view);
-            }
+            // Removed in a separate loop to avoid a ConcurrentModification exception.
+            mRemovedViews.add(view);
+        }
 
-            for (View view : mRemovedViews) {
-              removeView(view);
-            }
-            mRemovedViews.clear();
+        for (View view : mRemovedViews) {
+            removeView(view);
+        }
+        mRemovedViews.clear();
 
-            if (!mPollingViews.isEmpty()) {
-                scheduleNextPoll();
-            }
+        if (!mPollingViews.isEmpty()) {
+            scheduleNextPoll();
         }
     }
 
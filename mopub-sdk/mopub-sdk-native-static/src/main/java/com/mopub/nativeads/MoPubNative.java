@@ -7,6 +7,7 @@ import android.text.TextUtils;
 
 import com.mopub.common.AdFormat;
 import com.mopub.common.Constants;
+import com.mopub.common.MoPub;
 import com.mopub.common.Preconditions;
 import com.mopub.common.VisibleForTesting;
 import com.mopub.common.logging.MoPubLog;
@@ -65,6 +66,7 @@ public class MoPubNative {
     @NonNull private final AdLoader.Listener mVolleyListener;
     @Nullable private Request mNativeRequest;
     @NonNull AdRendererRegistry mAdRendererRegistry;
+    private boolean mIsDestroyed;
 
     public MoPubNative(@NonNull final Context context,
             @NonNull final String adUnitId,
@@ -111,6 +113,7 @@ public class MoPubNative {
     }
 
     public void destroy() {
+        mIsDestroyed = true;
         mContext.clear();
         if (mNativeRequest != null) {
             mNativeRequest.cancel();
@@ -138,7 +141,7 @@ public class MoPubNative {
     }
 
     public void makeRequest(@Nullable final RequestParameters requestParameters,
-            @Nullable Integer sequenceNumber) {
+            @Nullable final Integer sequenceNumber) {
         final Context context = getContextOrDestroy();
         if (context == null) {
             return;
@@ -149,6 +152,17 @@ public class MoPubNative {
             return;
         }
 
+        if (MoPub.queueAdRequestUntilInitialized(new Runnable() {
+            @Override
+            public void run() {
+                if (!mIsDestroyed) {
+                    loadNativeAd(requestParameters, sequenceNumber);
+                }
+            }
+        })) {
+            return;
+        }
+
         loadNativeAd(requestParameters, sequenceNumber);
     }
 
@@ -174,10 +188,20 @@ public class MoPubNative {
             MoPubLog.d("MoPubNative Loading ad from: " + endpointUrl);
         }
 
-        requestNativeAd(endpointUrl, null);
+        requestNativeAd(endpointUrl, generator.getGeneratedParams(), null);
     }
 
     void requestNativeAd(@Nullable final String endpointUrl, @Nullable final NativeErrorCode errorCode) {
+        requestNativeAd(endpointUrl, null, errorCode);
+    }
+
+    /**
+     * @param generatedParams The parameters the url generator put into {@code endpointUrl}, or
+     *                        null
+     */
+    void requestNativeAd(@Nullable final String endpointUrl,
+            @Nullable final Map<String, String> generatedParams,
+            @Nullable final NativeErrorCode errorCode) {
         final Context context = getContextOrDestroy();
         if (context == null) {
             return;
@@ -188,7 +212,8 @@ public class MoPubNative {
                 mMoPubNativeNetworkListener.onNativeFail(errorCode == null ? INVALID_REQUEST_URL : errorCode);
                 return;
             } else {
-                mAdLoader = new AdLoader(endpointUrl, AdFormat.NATIVE, mAdUnitId, context, mVolleyListener);
+                mAdLoader = new AdLoader(endpointUrl, generatedParams, AdFormat.NATIVE, mAdUnitId,
+                        context, mVolleyListener);
             }
         }
         mNativeRequest = mAdLoader.loadNextAd(errorCode);
@@ -3,6 +3,8 @@ package com.mopub.nativeads;
 import android.app.Activity;
 import android.content.Context;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.view.View;
@@ -19,6 +21,7 @@ import com.mopub.nativeads.PositioningSource.PositioningListener;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.WeakHashMap;
 
 /**
@@ -60,6 +63,13 @@ public class MoPubStreamAdPlacer {
     @NonNull private final HashMap<NativeAd, WeakReference<View>> mViewMap;
     @NonNull private final WeakHashMap<View, NativeAd> mNativeAdMap;
 
+    // Views inflated while the main thread is idle for ads that have been placed but not shown
+    @NonNull private final WeakHashMap<NativeAd, View> mPrerenderedAdViews;
+    @NonNull private final List<NativeAd> mAdsToPrerender;
+    @NonNull private final MessageQueue.IdleHandler mPrerenderIdleHandler;
+    private boolean mPrerenderScheduled;
+    @Nullable private WeakReference<ViewGroup> mAdViewParent;
+
     private boolean mHasReceivedPositions;
     @Nullable private PlacementData mPendingPlacementData;
     private boolean mHasReceivedAds;
@@ -140,6 +150,17 @@ public class MoPubStreamAdPlacer {
 
         mNativeAdMap = new WeakHashMap<>();
         mViewMap = new HashMap<>();
+        mPrerenderedAdViews = new WeakHashMap<>();
+        mAdsToPrerender = new ArrayList<>();
+        mPrerenderIdleHandler = new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                // Inflate one view per idle pass so that input is never delayed by more than one
+                prerenderNextAdView();
+                mPrerenderScheduled = !mAdsToPrerender.isEmpty();
+                return mPrerenderScheduled;
+            }
+        };
 
         mPlacementHandler = new Handler();
         mPlacementRunnable = new Runnable() {
@@ -300,6 +321,18 @@ public class MoPubStreamAdPlacer {
         mHasPlacedAds = true;
     }
 
+    /**
+     * Sets the number of ads kept loaded ahead of being placed. More ads make it less likely that
+     * a position is left empty when the user scrolls quickly, at the cost of loading ads that may
+     * never be shown. While ads are placed faster than they load, the ad placer keeps up to 5
+     * ads loaded regardless of this setting.
+     *
+     * @param cacheDepth The number of ads to keep loaded, between 1 (the default) and 5.
+     */
+    public void setAdCacheDepth(final int cacheDepth) {
+        mAdSource.setMinCacheDepth(cacheDepth);
+    }
+
     /**
      * Inserts ads that should appear in the given range.
      *
@@ -352,6 +385,7 @@ public class MoPubStreamAdPlacer {
     public void clearAds() {
         removeAdsInRange(0, mItemCount);
         mAdSource.clear();
+        clearPrerenderedAdViews();
     }
 
     /**
@@ -367,6 +401,7 @@ public class MoPubStreamAdPlacer {
         mPlacementHandler.removeMessages(0);
         mAdSource.clear();
         mPlacementData.clearAds();
+        clearPrerenderedAdViews();
     }
 
     /**
@@ -403,8 +438,17 @@ public class MoPubStreamAdPlacer {
             return null;
         }
 
-        final View view = (convertView != null) ?
-                convertView : nativeAd.createAdView(mActivity, parent);
+        if (parent != null) {
+            mAdViewParent = new WeakReference<>(parent);
+        }
+
+        View view = convertView;
+        if (view == null) {
+            view = mPrerenderedAdViews.remove(nativeAd);
+        }
+        if (view == null) {
+            view = nativeAd.createAdView(mActivity, parent);
+        }
         bindAdView(nativeAd, view);
         return view;
     }
@@ -697,11 +741,53 @@ public class MoPubStreamAdPlacer {
 
         mPlacementData.placeAd(position, nativeAd);
         mItemCount++;
+        schedulePrerender(nativeAd);
 
         mAdLoadedListener.onAdLoaded(position);
         return true;
     }
 
+    /**
+     * Inflates the view of a newly placed ad the next time the main thread is idle, so that
+     * {@link #getAdView} only has to bind it. Views can only be inflated once the parent they are
+     * shown in is known from an earlier call to {@link #getAdView}.
+     */
+    private void schedulePrerender(@NonNull final NativeAd nativeAd) {
+        if (mAdViewParent == null || mAdViewParent.get() == null) {
+            return;
+        }
+
+        mAdsToPrerender.add(nativeAd);
+        if (!mPrerenderScheduled) {
+            mPrerenderScheduled = true;
+            Looper.myQueue().addIdleHandler(mPrerenderIdleHandler);
+        }
+    }
+
+    @VisibleForTesting
+    void prerenderNextAdView() {
+        if (mAdsToPrerender.isEmpty()) {
+            return;
+        }
+
+        final NativeAd nativeAd = mAdsToPrerender.remove(0);
+        final ViewGroup parent = mAdViewParent == null ? null : mAdViewParent.get();
+        if (parent == null || mViewMap.containsKey(nativeAd)
+                || mPrerenderedAdViews.containsKey(nativeAd)) {
+            return;
+        }
+        mPrerenderedAdViews.put(nativeAd, nativeAd.createAdView(mActivity, parent));
+    }
+
+    private void clearPrerenderedAdViews() {
+        if (mPrerenderScheduled) {
+            Looper.myQueue().removeIdleHandler(mPrerenderIdleHandler);
+            mPrerenderScheduled = false;
+        }
+        mAdsToPrerender.clear();
+        mPrerenderedAdViews.clear();
+    }
+
     /**
      * Clears any {@link NativeAd} click trackers and impression tracking are set up for this view.
      */
@@ -8,7 +8,9 @@ import android.support.annotation.Nullable;
 
 import com.mopub.common.VisibleForTesting;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
 import static com.mopub.common.Constants.AD_EXPIRATION_DELAY;
@@ -22,8 +24,10 @@ import static com.mopub.nativeads.MoPubNative.MoPubNativeNetworkListener;
  * a queue, so that the first ad loaded from the server will be the first ad available for dequeue.
  * To take an ad out of the cache, call {@link #dequeueAd}.
  *
- * The cache size may be automatically adjusted by the MoPub server based on an app's usage and
- * ad fill rate. Cached ads have a maximum TTL of 15 minutes before which they expire.
+ * The cache keeps at least {@link #setMinCacheDepth} ads ready. While ads are dequeued faster than
+ * they load, for example when the user scrolls quickly, it grows to the number of ads dequeued
+ * during one load, up to {@link #MAX_CACHE_DEPTH}, and a second request is made in parallel to
+ * fill it. Cached ads have a maximum TTL of 15 minutes before which they expire.
  *
  * The ad source also takes care of retrying failed ad requests, with a reasonable back-off to
  * avoid spamming the server.
@@ -32,9 +36,13 @@ import static com.mopub.nativeads.MoPubNative.MoPubNativeNetworkListener;
  */
 class NativeAdSource {
     /**
-     * Number of ads to cache
+     * Number of ads to cache by default
      */
-    private static final int CACHE_LIMIT = 1;
+    static final int DEFAULT_CACHE_DEPTH = 1;
+    /**
+     * Most ads the cache grows to while ads are dequeued quickly
+     */
+    static final int MAX_CACHE_DEPTH = 5;
 
     private static final int EXPIRATION_TIME_MILLISECONDS = AD_EXPIRATION_DELAY;
     private static final int MAXIMUM_RETRY_TIME_MILLISECONDS = 5 * 60 * 1000; // 5 minutes.
@@ -44,17 +52,32 @@ class NativeAdSource {
     @NonNull private final Handler mReplenishCacheHandler;
     @NonNull private final Runnable mReplenishCacheRunnable;
     @NonNull private final MoPubNativeNetworkListener mMoPubNativeNetworkListener;
+    @NonNull private final MoPubNativeNetworkListener mParallelNetworkListener;
 
     @VisibleForTesting boolean mRequestInFlight;
     @VisibleForTesting boolean mRetryInFlight;
     @VisibleForTesting int mSequenceNumber;
+    // Last sequence number sent with a request. The two loaders never share a number
+    private int mLastRequestedSequenceNumber = -1;
     @VisibleForTesting int mCurrentRetries;
+    @VisibleForTesting boolean mParallelRequestInFlight;
+
+    private int mMinCacheDepth = DEFAULT_CACHE_DEPTH;
+    // Times of the most recent dequeues, oldest first
+    @NonNull private final Deque<Long> mDequeueTimesMs = new ArrayDeque<>(MAX_CACHE_DEPTH);
+    @VisibleForTesting long mAverageFillLatencyMs;
+    private long mRequestStartTimeMs;
+    private long mParallelRequestStartTimeMs;
 
     @Nullable private AdSourceListener mAdSourceListener;
 
     // We will need collections of these when we support multiple ad units.
     @Nullable private RequestParameters mRequestParameters;
     @Nullable private MoPubNative mMoPubNative;
+    // Second loader used to fill a deeper cache in parallel, created when first needed
+    @Nullable private MoPubNative mParallelMoPubNative;
+    @Nullable private Activity mActivity;
+    @Nullable private String mAdUnitId;
 
     @NonNull private final AdRendererRegistry mAdRendererRegistry;
 
@@ -69,7 +92,7 @@ class NativeAdSource {
     }
 
     NativeAdSource() {
-        this(new ArrayList<TimestampWrapper<NativeAd>>(CACHE_LIMIT),
+        this(new ArrayList<TimestampWrapper<NativeAd>>(DEFAULT_CACHE_DEPTH),
                 new Handler(),
                 new AdRendererRegistry());
     }
@@ -101,15 +124,8 @@ class NativeAdSource {
                 }
 
                 mRequestInFlight = false;
-                mSequenceNumber++;
                 resetRetryTime();
-
-                mNativeAdCache.add(new TimestampWrapper<NativeAd>(nativeAd));
-                if (mNativeAdCache.size() == 1 && mAdSourceListener != null) {
-                    mAdSourceListener.onAdsAvailable();
-                }
-
-                replenishCache();
+                onAdLoaded(nativeAd, mRequestStartTimeMs);
             }
 
             @Override
@@ -130,10 +146,44 @@ class NativeAdSource {
             }
         };
 
+        mParallelNetworkListener = new MoPubNativeNetworkListener() {
+            @Override
+            public void onNativeLoad(@NonNull final NativeAd nativeAd) {
+                if (mParallelMoPubNative == null) {
+                    return;
+                }
+
+                mParallelRequestInFlight = false;
+                onAdLoaded(nativeAd, mParallelRequestStartTimeMs);
+            }
+
+            @Override
+            public void onNativeFail(final NativeErrorCode errorCode) {
+                // Retries are left to the main loader.
+                mParallelRequestInFlight = false;
+            }
+        };
+
         mSequenceNumber = 0;
         resetRetryTime();
     }
 
+    private void onAdLoaded(@NonNull final NativeAd nativeAd, final long requestStartTimeMs) {
+        mSequenceNumber++;
+
+        final long fillLatencyMs = SystemClock.uptimeMillis() - requestStartTimeMs;
+        mAverageFillLatencyMs = mAverageFillLatencyMs == 0
+                ? fillLatencyMs
+                : (3 * mAverageFillLatencyMs + fillLatencyMs) / 4;
+
+        mNativeAdCache.add(new TimestampWrapper<NativeAd>(nativeAd));
+        if (mNativeAdCache.size() == 1 && mAdSourceListener != null) {
+            mAdSourceListener.onAdsAvailable();
+        }
+
+        replenishCache();
+    }
+
     int getAdRendererCount() {
         return mAdRendererRegistry.getAdRendererCount();
     }
@@ -152,6 +202,9 @@ class NativeAdSource {
         if (mMoPubNative != null) {
             mMoPubNative.registerAdRenderer(moPubNativeAdRenderer);
         }
+        if (mParallelMoPubNative != null) {
+            mParallelMoPubNative.registerAdRenderer(moPubNativeAdRenderer);
+        }
     }
 
     @Nullable
@@ -167,15 +220,32 @@ class NativeAdSource {
         mAdSourceListener = adSourceListener;
     }
 
+    /**
+     * Sets the number of ads kept ready even when ads are dequeued slowly. The cache may still
+     * grow up to {@link #MAX_CACHE_DEPTH} ads while they are dequeued quickly.
+     */
+    void setMinCacheDepth(final int minCacheDepth) {
+        mMinCacheDepth = Math.max(1, Math.min(minCacheDepth, MAX_CACHE_DEPTH));
+        replenishCache();
+    }
+
     void loadAds(@NonNull final Activity activity,
             @NonNull final String adUnitId,
             final RequestParameters requestParameters) {
-        loadAds(requestParameters, new MoPubNative(activity, adUnitId, mMoPubNativeNetworkListener));
+        loadAds(requestParameters, new MoPubNative(activity, adUnitId, mMoPubNativeNetworkListener),
+                activity, adUnitId);
     }
 
     @VisibleForTesting
     void loadAds(final RequestParameters requestParameters,
              final MoPubNative moPubNative) {
+        loadAds(requestParameters, moPubNative, null, null);
+    }
+
+    private void loadAds(final RequestParameters requestParameters,
+            final MoPubNative moPubNative,
+            @Nullable final Activity activity,
+            @Nullable final String adUnitId) {
         clear();
 
         for (MoPubAdRenderer renderer : mAdRendererRegistry.getRendererIterable()) {
@@ -184,6 +254,8 @@ class NativeAdSource {
 
         mRequestParameters = requestParameters;
         mMoPubNative = moPubNative;
+        mActivity = activity;
+        mAdUnitId = adUnitId;
 
         replenishCache();
     }
@@ -197,8 +269,14 @@ class NativeAdSource {
             mMoPubNative.destroy();
             mMoPubNative = null;
         }
+        if (mParallelMoPubNative != null) {
+            mParallelMoPubNative.destroy();
+            mParallelMoPubNative = null;
+        }
 
         mRequestParameters = null;
+        mActivity = null;
+        mAdUnitId = null;
 
         for (final TimestampWrapper<NativeAd> timestampWrapper : mNativeAdCache) {
             timestampWrapper.mInstance.destroy();
@@ -207,7 +285,10 @@ class NativeAdSource {
 
         mReplenishCacheHandler.removeMessages(0);
         mRequestInFlight = false;
+        mParallelRequestInFlight = false;
+        mDequeueTimesMs.clear();
         mSequenceNumber = 0;
+        mLastRequestedSequenceNumber = -1;
         resetRetryTime();
     }
 
@@ -225,8 +306,14 @@ class NativeAdSource {
     NativeAd dequeueAd() {
         final long now = SystemClock.uptimeMillis();
 
+        if (mDequeueTimesMs.size() == MAX_CACHE_DEPTH) {
+            mDequeueTimesMs.removeFirst();
+        }
+        mDequeueTimesMs.addLast(now);
+
         // Starting an ad request takes several millis. Post for performance reasons.
-        if (!mRequestInFlight && !mRetryInFlight) {
+        if (!mRetryInFlight && (!mRequestInFlight
+                || (!mParallelRequestInFlight && getTargetCacheDepth() > 1))) {
             mReplenishCacheHandler.post(mReplenishCacheRunnable);
         }
 
@@ -261,6 +348,20 @@ class NativeAdSource {
         return RETRY_TIME_ARRAY_MILLISECONDS[mCurrentRetries];
     }
 
+    /**
+     * The number of ads to keep ready: one more than the number of ads dequeued during the time
+     * an ad usually takes to load, and at least the minimum cache depth.
+     */
+    @VisibleForTesting
+    int getTargetCacheDepth() {
+        final long now = SystemClock.uptimeMillis();
+        while (!mDequeueTimesMs.isEmpty()
+                && now - mDequeueTimesMs.peekFirst() >= mAverageFillLatencyMs) {
+            mDequeueTimesMs.removeFirst();
+        }
+        return Math.max(mMinCacheDepth, Math.min(mDequeueTimesMs.size() + 1, MAX_CACHE_DEPTH));
+    }
+
     /**
      * Replenish ads in the ad source cache.
      *
@@ -268,12 +369,50 @@ class NativeAdSource {
      */
     @VisibleForTesting
     void replenishCache() {
-        if (!mRequestInFlight && mMoPubNative != null && mNativeAdCache.size() < CACHE_LIMIT) {
+        if (mMoPubNative == null) {
+            return;
+        }
+
+        final int targetCacheDepth = getTargetCacheDepth();
+        if (!mRequestInFlight
+                && mNativeAdCache.size() + (mParallelRequestInFlight ? 1 : 0) < targetCacheDepth) {
             mRequestInFlight = true;
-            mMoPubNative.makeRequest(mRequestParameters, mSequenceNumber);
+            mRequestStartTimeMs = SystemClock.uptimeMillis();
+            mMoPubNative.makeRequest(mRequestParameters, nextRequestSequenceNumber());
+        }
+
+        if (!mParallelRequestInFlight && !mRetryInFlight
+                && mNativeAdCache.size() + (mRequestInFlight ? 1 : 0) < targetCacheDepth) {
+            final MoPubNative parallelMoPubNative = getParallelMoPubNative();
+            if (parallelMoPubNative != null) {
+                mParallelRequestInFlight = true;
+                mParallelRequestStartTimeMs = SystemClock.uptimeMillis();
+                parallelMoPubNative.makeRequest(mRequestParameters, nextRequestSequenceNumber());
+            }
         }
     }
 
+    /**
+     * @return the number of ads loaded so far, or one more than the last number sent if that is
+     * larger, so that requests from both loaders and retries never repeat a number
+     */
+    private int nextRequestSequenceNumber() {
+        mLastRequestedSequenceNumber = Math.max(mSequenceNumber,
+                mLastRequestedSequenceNumber + 1);
+        return mLastRequestedSequenceNumber;
+    }
+
+    @Nullable
+    private MoPubNative getParallelMoPubNative() {
+        if (mParallelMoPubNative == null && mActivity != null && mAdUnitId != null) {
+            mParallelMoPubNative = new MoPubNative(mActivity, mAdUnitId, mParallelNetworkListener);
+            for (MoPubAdRenderer renderer : mAdRendererRegistry.getRendererIterable()) {
+                mParallelMoPubNative.registerAdRenderer(renderer);
+            }
+        }
+        return mParallelMoPubNative;
+    }
+
     @Deprecated
     @VisibleForTesting
     void setMoPubNative(final MoPubNative moPubNative) {
@@ -286,4 +425,17 @@ class NativeAdSource {
     MoPubNativeNetworkListener getMoPubNativeNetworkListener() {
         return mMoPubNativeNetworkListener;
     }
+
+    @Deprecated
+    @VisibleForTesting
+    void setParallelMoPubNative(final MoPubNative parallelMoPubNative) {
+        mParallelMoPubNative = parallelMoPubNative;
+    }
+
+    @NonNull
+    @Deprecated
+    @VisibleForTesting
+    MoPubNativeNetworkListener getParallelNetworkListener() {
+        return mParallelNetworkListener;
+    }
 }
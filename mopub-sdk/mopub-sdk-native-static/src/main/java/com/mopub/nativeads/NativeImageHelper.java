@@ -102,7 +102,7 @@ public class NativeImageHelper {
         }
 
         final ImageLoader mImageLoader = Networking.getImageLoader(imageView.getContext());
-        mImageLoader.get(url, new ImageLoader.ImageListener() {
+        final ImageLoader.ImageListener imageListener = new ImageLoader.ImageListener() {
             @Override
             public void onResponse(final ImageLoader.ImageContainer imageContainer,
                     final boolean isImmediate) {
@@ -117,6 +117,28 @@ public class NativeImageHelper {
                 MoPubLog.d("Failed to load image.", volleyError);
                 imageView.setImageDrawable(null);
             }
-        });
+        };
+
+        // Decode the image no larger than the view when its size is known
+        final int width = getTargetDimension(imageView.getWidth(),
+                imageView.getLayoutParams() == null ? 0 : imageView.getLayoutParams().width);
+        final int height = getTargetDimension(imageView.getHeight(),
+                imageView.getLayoutParams() == null ? 0 : imageView.getLayoutParams().height);
+        if (width > 0 || height > 0) {
+            mImageLoader.get(url, imageListener, width, height);
+        } else {
+            mImageLoader.get(url, imageListener);
+        }
+    }
+
+    /**
+     * @return the measured size if the view has been laid out, otherwise the exact size from its
+     * layout params, or 0 if the size isn't known yet
+     */
+    private static int getTargetDimension(final int measuredSize, final int layoutParamsSize) {
+        if (measuredSize > 0) {
+            return measuredSize;
+        }
+        return Math.max(layoutParamsSize, 0);
     }
 }
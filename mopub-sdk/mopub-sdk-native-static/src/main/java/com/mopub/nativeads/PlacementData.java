@@ -6,17 +6,17 @@ import android.support.annotation.Nullable;
 import com.mopub.common.logging.MoPubLog;
 import com.mopub.nativeads.MoPubNativeAdPositioning.MoPubClientPositioning;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * A data that represents placed ads in a {@link com.mopub.nativeads.MoPubStreamAdPlacer},
  * useful for tracking insertion and placed ad positions.
  *
- * It maintains four lists of integers
- * 1) Desired insertion positions - positions to place ads
- * 2) Desired original positions - original position for each ad to place
- * 2) Adjusted ad positions - ad positions that were placed
- * 3) Original ad positions - original position of the item after each placed ad
+ * It keeps a single sequence of ad slots in stream order. Each slot is either desired, meaning an
+ * ad should be placed there, or placed, meaning an ad is there. A slot's original position is the
+ * original position of the content item that follows it, and its adjusted position is its
+ * original position plus the number of placed slots before it.
  *
  * For example, consider the following ad positions:
  * ORIGINAL LIST    ADJUSTED LIST
@@ -28,95 +28,41 @@ import java.util.List;
  *                    Ad
  *                    Item 3
  *
- * List starts as:
- *   Item 0
- *   Item 1
- *   Item 2
- *   Item 3
- * desiredOriginalPositions: {1, 2, 3}
- * desiredInsertionPositions: {1, 2, 3}
- * originalPositions: {}
- * adjustedPositions: {}
+ * List starts with three desired slots at original positions {1, 2, 3}, which are also their
+ * adjusted positions.
  *
- * If we place at position 2:
+ * If we place at position 2, the second slot becomes placed, and the third slot moves to
+ * adjusted position 4:
  *   Item 0
  *   Item 1
  *   Ad
  *   Item 2
  *   Item 3
- * desiredOriginalPositions: {1, 3}
- * desiredInsertionPositions: {1, 4}
- * originalPositions: {2}
- * adjustedPositions: {2}
  *
- * If the developer adds a content item at position 2
+ * If the developer adds a content item at position 2, the original positions of the slots at
+ * or after it grow by one, to {1, 3, 4}, and their adjusted positions to {1, 3, 5}:
  *   Item 0
  *   Item 1
  *   New Item
  *   Ad
  *   Item 3
  *   Item 4
- * desiredOriginalPositions: {1, 4}
- * desiredInsertionPositions: {1, 5}
- * originalPositions: {3}
- * adjustedPositions: {3}
  *
- * Now, place at position 1
- *   Item 0
- *   Ad
- *   Item 1
- *   New Item
- *   Ad
- *   Item 3
- *   Item 4
- * desiredOriginalPositions: {4}
- * desiredInsertionPositions: {6}
- * originalPositions: {1, 3}
- * adjustedPositions: {1, 4}
+ * Clearing the ad at position 3 makes its slot desired again, at the same original position.
  *
- * Place at position 6
- *   Item 0
- *   Ad
- *   Item 1
- *   New Item
- *   Ad
- *   Item 3
- *   Ad
- *   Item 4
- * desiredOriginalPositions: {}
- * desiredInsertionPositions: {}
- * originalPositions: {1, 3, 4}
- * adjustedPositions: {1, 4, 6}
+ * The slots' original positions are kept as the gaps between them, and the gaps and the placed
+ * flags are kept in two Fenwick trees, so that inserting or removing a content item only changes
+ * the gap of the first slot after it, and placing or clearing an ad only flips one flag.
  *
- * Clear ad at position 1
- *   Item 0
- *   Item 1
- *   New Item
- *   Ad
- *   Item 3
- *   Ad
- *   Item 4
- * desiredOriginalPositions: {1}
- * desiredInsertionPositions: {1}
- * originalPositions: {3, 4}
- * adjustedPositions: {3, 5}
- *
- * Clear ad at position 5
- *   Item 0
- *   Item 1
- *   New Item
- *   Ad
- *   Item 3
- *   Item 4
- * desiredOriginalPositions: {1, 4}
- * desiredInsertionPositions: {1, 5}
- * originalPositions: {3}
- * adjustedPositions: {3}
+ * Slots are never removed, and repeating positions are only added as far into the stream as they
+ * are asked for, so the sequence only ever grows at its end. Items inserted or removed after the
+ * last slot change a pending gap instead, which the next repeating slot starts with.
  *
  * Some runtime guarantees in terms of number of insertion ads:
  * - Finds the next or previous insertion position in O(logN)
  * - Maps from adjusted to original positions and vice versa in O(logN)
- * - Places an ad (moves positions from desired to placed) in O(N)
+ * - Places an ad, inserts or removes an item in O(logN)
+ * - Clears K ads in O(KlogN)
  */
 class PlacementData {
     /**
@@ -124,65 +70,72 @@ class PlacementData {
      */
     public final static int NOT_FOUND = -1;
 
-    // Cap the number of ads to avoid unrestrained memory usage. 200 allows the 5 positioning
-    // arrays to fit in less than 4K.
-    private final static int MAX_ADS = 200;
-
-    // Initialize all of these to their max capacity. This prevents garbage collection when
-    // reallocating the list, which causes noticeable stuttering when scrolling on some devices.
-    @NonNull private final int[] mDesiredOriginalPositions = new int[MAX_ADS];
-    @NonNull private final int[] mDesiredInsertionPositions = new int[MAX_ADS];
-    private int mDesiredCount = 0;
-    @NonNull private final int[] mOriginalAdPositions = new int[MAX_ADS];
-    @NonNull private final int[] mAdjustedAdPositions = new int[MAX_ADS];
-    @NonNull private final NativeAd[] mNativeAds = new NativeAd[MAX_ADS];
+    private final static int INITIAL_CAPACITY = 16;
+
+    // Weights that searchPrefix can sum over
+    private final static int WEIGHT_GAPS = 1;
+    private final static int WEIGHT_PLACED = 1 << 1;
+    private final static int WEIGHT_DESIRED = 1 << 2;
+
+    private final int mRepeatingInterval;
+
+    private int mSlotCount = 0;
     private int mPlacedCount = 0;
+    // Items inserted minus items removed after the last slot, which moves the repeating slots
+    // that have not been added yet.
+    private int mPendingTailGap = 0;
+    @NonNull private boolean[] mPlaced;
+    @NonNull private NativeAd[] mNativeAds;
+    // Fenwick trees over the slots, indexed from 1. Only whole arrays are ever allocated, when the
+    // slots outgrow them.
+    @NonNull private int[] mGapTree;
+    @NonNull private int[] mPlacedTree;
 
     /**
      * @param desiredInsertionPositions Insertion positions, expressed as original positions
+     * @param repeatingInterval The interval of the positions after the last one, or
+     * {@link MoPubClientPositioning#NO_REPEAT}
      */
-    private PlacementData(@NonNull final int[] desiredInsertionPositions) {
-        mDesiredCount = Math.min(desiredInsertionPositions.length, MAX_ADS);
-        System.arraycopy(desiredInsertionPositions, 0, mDesiredInsertionPositions, 0, mDesiredCount);
-        System.arraycopy(desiredInsertionPositions, 0, mDesiredOriginalPositions, 0, mDesiredCount);
+    private PlacementData(@NonNull final int[] desiredInsertionPositions,
+            final int repeatingInterval) {
+        mRepeatingInterval = repeatingInterval;
+
+        final int capacity = Math.max(INITIAL_CAPACITY, desiredInsertionPositions.length);
+        mPlaced = new boolean[capacity];
+        mNativeAds = new NativeAd[capacity];
+        mGapTree = new int[capacity + 1];
+        mPlacedTree = new int[capacity + 1];
+
+        for (final int position : desiredInsertionPositions) {
+            appendSlot(position);
+        }
     }
 
     @NonNull
     static PlacementData fromAdPositioning(@NonNull final MoPubClientPositioning adPositioning) {
         final List<Integer> fixed = adPositioning.getFixedPositions();
-        final int interval = adPositioning.getRepeatingInterval();
-
-        final int size = (interval == MoPubClientPositioning.NO_REPEAT ? fixed.size() : MAX_ADS);
-        final int[] desiredInsertionPositions = new int[size];
+        final int[] desiredInsertionPositions = new int[fixed.size()];
 
         // Fixed positions are in terms of final positions. Calculate current insertion positions
-        // by decrementing numAds at each index.
+        // by decrementing numAds at each index. Repeating positions are added as needed.
         int numAds = 0;
-        int lastPos = 0;
         for (final Integer position : fixed) {
-            lastPos = position - numAds;
-            desiredInsertionPositions[numAds++] = lastPos;
+            desiredInsertionPositions[numAds] = position - numAds;
+            numAds++;
         }
-
-        // Expand the repeating positions, if there are any
-        while (numAds < size) {
-            lastPos = lastPos + interval - 1;
-            desiredInsertionPositions[numAds++] = lastPos;
-        }
-        return new PlacementData(desiredInsertionPositions);
+        return new PlacementData(desiredInsertionPositions, adPositioning.getRepeatingInterval());
     }
 
     @NonNull
     static PlacementData empty() {
-        return new PlacementData(new int[] {});
+        return new PlacementData(new int[] {}, MoPubClientPositioning.NO_REPEAT);
     }
 
     /**
      * Whether the given position should be an ad.
      */
     boolean shouldPlaceAd(final int position) {
-        final int index = binarySearch(mDesiredInsertionPositions, 0, mDesiredCount, position);
-        return index >= 0;
+        return findDesiredSlot(position) != NOT_FOUND;
     }
 
     /**
@@ -190,12 +143,13 @@ class PlacementData {
      * more ads.
      */
     int nextInsertionPosition(final int position) {
-        final int index = binarySearchGreaterThan(
-                mDesiredInsertionPositions, mDesiredCount, position);
-        if (index == mDesiredCount) {
+        addRepeatingSlotsThrough(position);
+
+        final int rank = getDesiredCountBefore(findFirstSlotAtOrAfter(position + 1));
+        if (rank == mSlotCount - mPlacedCount) {
             return NOT_FOUND;
         }
-        return mDesiredInsertionPositions[index];
+        return getSlotPosition(selectDesiredSlot(rank));
     }
 
     /**
@@ -203,12 +157,13 @@ class PlacementData {
      * are no more ads.
      */
     int previousInsertionPosition(final int position) {
-        final int index = binarySearchFirstEquals(
-                mDesiredInsertionPositions,  mDesiredCount, position);
-        if (index == 0) {
+        addRepeatingSlotsThrough(position);
+
+        final int rank = getDesiredCountBefore(findFirstSlotAtOrAfter(position));
+        if (rank == 0) {
             return NOT_FOUND;
         }
-        return mDesiredInsertionPositions[index - 1];
+        return getSlotPosition(selectDesiredSlot(rank - 1));
     }
 
     /**
@@ -216,54 +171,24 @@ class PlacementData {
      */
     void placeAd(final int adjustedPosition, final NativeAd nativeAd) {
         // See if this is a insertion ad
-        final int desiredIndex = binarySearchFirstEquals(
-                mDesiredInsertionPositions, mDesiredCount, adjustedPosition);
-        if (desiredIndex == mDesiredCount
-                || mDesiredInsertionPositions[desiredIndex] != adjustedPosition) {
+        final int slot = findDesiredSlot(adjustedPosition);
+        if (slot == NOT_FOUND) {
             MoPubLog.w("Attempted to insert an ad at an invalid position");
             return;
         }
 
-        // Add to placed array
-        final int originalPosition = mDesiredOriginalPositions[desiredIndex];
-        int placeIndex = binarySearchGreaterThan(
-                mOriginalAdPositions, mPlacedCount, originalPosition);
-        if (placeIndex < mPlacedCount) {
-            final int num = mPlacedCount - placeIndex;
-            System.arraycopy(mOriginalAdPositions, placeIndex,
-                    mOriginalAdPositions, placeIndex + 1, num);
-            System.arraycopy(mAdjustedAdPositions, placeIndex,
-                    mAdjustedAdPositions, placeIndex + 1, num);
-            System.arraycopy(mNativeAds, placeIndex, mNativeAds, placeIndex + 1, num);
-        }
-        mOriginalAdPositions[placeIndex] = originalPosition;
-        mAdjustedAdPositions[placeIndex] = adjustedPosition;
-        mNativeAds[placeIndex] = nativeAd;
+        // Every later slot moves down by one, since its count of placed slots before it grows.
+        mPlaced[slot] = true;
+        mNativeAds[slot] = nativeAd;
+        add(mPlacedTree, mSlotCount, slot, 1);
         mPlacedCount++;
-
-        // Remove desired index
-        final int num = mDesiredCount - desiredIndex - 1;
-        System.arraycopy(mDesiredInsertionPositions, desiredIndex + 1,
-                mDesiredInsertionPositions, desiredIndex, num);
-        System.arraycopy(mDesiredOriginalPositions, desiredIndex + 1,
-                mDesiredOriginalPositions, desiredIndex, num);
-        mDesiredCount--;
-
-        // Increment adjusted positions
-        for (int i = desiredIndex; i < mDesiredCount; ++i) {
-            mDesiredInsertionPositions[i]++;
-        }
-        for (int i = placeIndex + 1; i < mPlacedCount; ++i) {
-            mAdjustedAdPositions[i]++;
-        }
     }
 
     /**
      * @see {@link com.mopub.nativeads.MoPubStreamAdPlacer#isAd(int)}
      */
     boolean isPlacedAd(final int position) {
-        final int index = binarySearch(mAdjustedAdPositions, 0, mPlacedCount, position);
-        return index >= 0;
+        return findPlacedSlot(position) != NOT_FOUND;
     }
 
     /**
@@ -272,11 +197,11 @@ class PlacementData {
      */
     @Nullable
     NativeAd getPlacedAd(final int position) {
-        final int index = binarySearch(mAdjustedAdPositions, 0, mPlacedCount, position);
-        if (index < 0) {
+        final int slot = findPlacedSlot(position);
+        if (slot == NOT_FOUND) {
             return null;
         }
-        return mNativeAds[index];
+        return mNativeAds[slot];
     }
 
     /**
@@ -286,7 +211,9 @@ class PlacementData {
     @NonNull
     int[] getPlacedAdPositions() {
         int[] positions = new int[mPlacedCount];
-        System.arraycopy(mAdjustedAdPositions, 0, positions, 0, mPlacedCount);
+        for (int i = 0; i < mPlacedCount; i++) {
+            positions[i] = getSlotPosition(selectPlacedSlot(i));
+        }
         return positions;
     }
 
@@ -294,24 +221,23 @@ class PlacementData {
      * @see com.mopub.nativeads.MoPubStreamAdPlacer#getOriginalPosition(int)
      */
     int getOriginalPosition(final int position) {
-        final int index = binarySearch(mAdjustedAdPositions, 0, mPlacedCount, position);
-
-        // No match, ~index is the number of ads before this pos.
-        if (index < 0) {
-            return position - ~index;
-        }
+        final int placedBefore = sum(mPlacedTree, findFirstSlotAtOrAfter(position));
 
         // This is an ad - there is no original position
-        return NOT_FOUND;
+        if (placedBefore < mPlacedCount
+                && getSlotPosition(selectPlacedSlot(placedBefore)) == position) {
+            return NOT_FOUND;
+        }
+        return position - placedBefore;
     }
 
     /**
      * @see com.mopub.nativeads.MoPubStreamAdPlacer#getAdjustedPosition(int)
      */
     int getAdjustedPosition(final int originalPosition) {
-        // This is an ad. Since binary search doesn't properly handle dups, find the first non-ad.
-        int index = binarySearchGreaterThan(mOriginalAdPositions, mPlacedCount, originalPosition);
-        return originalPosition + index;
+        // Ads placed at this original position come before the item.
+        final int firstSlotAfter = searchPrefix(WEIGHT_GAPS, originalPosition + 1);
+        return originalPosition + sum(mPlacedTree, firstSlotAfter);
     }
 
     /**
@@ -343,61 +269,27 @@ class PlacementData {
      * positions.
      */
     int clearAdsInRange(final int adjustedStartRange, final int adjustedEndRange) {
-        // Temporary arrays to store the cleared positions. Using temporary arrays makes it
-        // easy to debug what positions are being cleared.
-        int[] clearOriginalPositions = new int[mPlacedCount];
-        int[] clearAdjustedPositions = new int[mPlacedCount];
+        final int rank = sum(mPlacedTree, findFirstSlotAtOrAfter(adjustedStartRange));
         int clearCount = 0;
 
-        // Add to the clear position arrays any positions that fall inside
-        // [adjustedRangeStart, adjustedRangeEnd).
-        for (int i = 0; i < mPlacedCount; ++i) {
-            int originalPosition = mOriginalAdPositions[i];
-            int adjustedPosition = mAdjustedAdPositions[i];
-            if (adjustedStartRange <= adjustedPosition && adjustedPosition < adjustedEndRange) {
-                // When copying adjusted positions, subtract the current clear count because there
-                // is no longer an ad incrementing the desired insertion position.
-                clearOriginalPositions[clearCount] = originalPosition;
-                clearAdjustedPositions[clearCount] = adjustedPosition - clearCount;
-
-                // Destroying and nulling out the ad objects to avoids a memory leak.
-                mNativeAds[i].destroy();
-                mNativeAds[i] = null;
-                clearCount++;
-            } else if (clearCount > 0) {
-                // The position is not in the range; shift it by the number of cleared ads.
-                int newIndex = i - clearCount;
-                mOriginalAdPositions[newIndex] = originalPosition;
-                mAdjustedAdPositions[newIndex] = adjustedPosition - clearCount;
-                mNativeAds[newIndex] = mNativeAds[i];
+        // Clearing an ad moves the later ones up by one, so the same rank is the next placed ad
+        // and its position before any clearing is its current position plus the clear count.
+        while (rank < mPlacedCount) {
+            final int slot = selectPlacedSlot(rank);
+            if (getSlotPosition(slot) + clearCount >= adjustedEndRange) {
+                break;
             }
-        }
 
-        // If we have cleared nothing, this method was a no-op.
-        if (clearCount == 0) {
-            return 0;
-        }
-
-        // Modify the desired positions arrays in order to make space to put back the
-        // cleared ad positions. For example if the desired array was {1, 10,
-        // 15} and we need to insert {3, 7} we'll shift the desired array to be {1, ?, ? , 10, 15}.
-        int firstCleared = clearAdjustedPositions[0];
-        int desiredIndex = binarySearchFirstEquals(
-                mDesiredInsertionPositions, mDesiredCount, firstCleared);
-        for (int i = mDesiredCount - 1; i >= desiredIndex; --i) {
-            mDesiredOriginalPositions[i + clearCount] = mDesiredOriginalPositions[i];
-            mDesiredInsertionPositions[i + clearCount] = mDesiredInsertionPositions[i] - clearCount;
-        }
-
-        // Copy the cleared ad positions into the desired arrays.
-        for (int i = 0; i < clearCount; ++i) {
-            mDesiredOriginalPositions[desiredIndex + i] = clearOriginalPositions[i];
-            mDesiredInsertionPositions[desiredIndex + i] = clearAdjustedPositions[i];
+            // Destroying and nulling out the ad objects to avoids a memory leak.
+            if (mNativeAds[slot] != null) {
+                mNativeAds[slot].destroy();
+                mNativeAds[slot] = null;
+            }
+            mPlaced[slot] = false;
+            add(mPlacedTree, mSlotCount, slot, -1);
+            mPlacedCount--;
+            clearCount++;
         }
-
-        // Update the array counts, and we're done.
-        mDesiredCount = mDesiredCount + clearCount;
-        mPlacedCount = mPlacedCount - clearCount;
         return clearCount;
     }
 
@@ -410,28 +302,22 @@ class PlacementData {
             return;
         }
 
-        clearAdsInRange(0, mAdjustedAdPositions[mPlacedCount - 1] + 1);
+        clearAdsInRange(0, Integer.MAX_VALUE);
     }
 
     /**
      * @see com.mopub.nativeads.MoPubStreamAdPlacer#insertItem(int)
      */
     void insertItem(final int originalPosition) {
-
-        // Increment desired arrays.
-        int indexToIncrement = binarySearchFirstEquals(
-                mDesiredOriginalPositions, mDesiredCount, originalPosition);
-        for (int i = indexToIncrement; i < mDesiredCount; ++i) {
-            mDesiredOriginalPositions[i]++;
-            mDesiredInsertionPositions[i]++;
-        }
-
-        // Increment placed arrays.
-        indexToIncrement = binarySearchFirstEquals(
-                mOriginalAdPositions, mPlacedCount, originalPosition);
-        for (int i = indexToIncrement; i < mPlacedCount; ++i) {
-            mOriginalAdPositions[i]++;
-            mAdjustedAdPositions[i]++;
+        // Every repeating slot before this position has to exist, or it would be moved as well.
+        addRepeatingSlotsBefore(originalPosition);
+
+        // Moving the first slot at or after this position moves every slot after it as well.
+        final int slot = searchPrefix(WEIGHT_GAPS, originalPosition);
+        if (slot < mSlotCount) {
+            add(mGapTree, mSlotCount, slot, 1);
+        } else if (mRepeatingInterval != MoPubClientPositioning.NO_REPEAT) {
+            mPendingTailGap++;
         }
     }
 
@@ -442,22 +328,15 @@ class PlacementData {
         // When removing items, we only decrement ad position values *greater* than the original
         // position we're removing. The original position associated with an ad is the original
         // position of the first content item after the ad, so we shouldn't change the original
-        // position of an ad that matches the original position removed.
-        int indexToDecrement = binarySearchGreaterThan(
-                mDesiredOriginalPositions, mDesiredCount, originalPosition);
-
-        // Decrement desired arrays.
-        for (int i = indexToDecrement; i < mDesiredCount; ++i) {
-            mDesiredOriginalPositions[i]--;
-            mDesiredInsertionPositions[i]--;
-        }
-
-        indexToDecrement = binarySearchGreaterThan(
-                mOriginalAdPositions, mPlacedCount, originalPosition);
-
-        for (int i = indexToDecrement; i < mPlacedCount; ++i) {
-            mOriginalAdPositions[i]--;
-            mAdjustedAdPositions[i]--;
+        // position of an ad that matches the original position removed. The slot before it is at
+        // or before the removed position, so its gap never drops below 0.
+        addRepeatingSlotsBefore(originalPosition + 1);
+
+        final int slot = searchPrefix(WEIGHT_GAPS, originalPosition + 1);
+        if (slot < mSlotCount) {
+            add(mGapTree, mSlotCount, slot, -1);
+        } else if (mRepeatingInterval != MoPubClientPositioning.NO_REPEAT) {
+            mPendingTailGap--;
         }
     }
 
@@ -469,59 +348,170 @@ class PlacementData {
         insertItem(newPosition);
     }
 
-    private static int binarySearchFirstEquals(int[] array, int count, int value) {
-        int index = binarySearch(array, 0, count, value);
+    /**
+     * Returns the desired slot at the given adjusted position, or NOT_FOUND.
+     */
+    private int findDesiredSlot(final int position) {
+        addRepeatingSlotsThrough(position);
 
-        // If not found, binarySearch returns the 2's complement of the index of the nearest
-        // value higher than the target value, which is also the insertion index.
-        if (index < 0) {
-            return ~index;
+        final int rank = getDesiredCountBefore(findFirstSlotAtOrAfter(position));
+        if (rank == mSlotCount - mPlacedCount) {
+            return NOT_FOUND;
+        }
+        final int slot = selectDesiredSlot(rank);
+        return getSlotPosition(slot) == position ? slot : NOT_FOUND;
+    }
+
+    /**
+     * Returns the placed slot at the given adjusted position, or NOT_FOUND.
+     */
+    private int findPlacedSlot(final int position) {
+        final int rank = sum(mPlacedTree, findFirstSlotAtOrAfter(position));
+        if (rank == mPlacedCount) {
+            return NOT_FOUND;
         }
+        final int slot = selectPlacedSlot(rank);
+        return getSlotPosition(slot) == position ? slot : NOT_FOUND;
+    }
+
+    /**
+     * Returns the first slot whose adjusted position is at least the given position, or the slot
+     * count if there is none.
+     */
+    private int findFirstSlotAtOrAfter(final int position) {
+        // Summing gaps and placed flags through a slot gives its adjusted position, plus one if
+        // the slot itself is placed.
+        final int slot = searchPrefix(WEIGHT_GAPS | WEIGHT_PLACED, position);
+        if (slot < mSlotCount && getSlotPosition(slot) < position) {
+            return slot + 1;
+        }
+        return slot;
+    }
+
+    /**
+     * The adjusted position of a slot: its original position plus the ads placed before it.
+     */
+    private int getSlotPosition(final int slot) {
+        return sum(mGapTree, slot + 1) + sum(mPlacedTree, slot);
+    }
+
+    private int getDesiredCountBefore(final int slot) {
+        return slot - sum(mPlacedTree, slot);
+    }
+
+    private int selectDesiredSlot(final int rank) {
+        return searchPrefix(WEIGHT_DESIRED, rank + 1);
+    }
 
-        int duplicateValue = array[index];
-        while (index >= 0 && array[index] == duplicateValue) {
-            index--;
+    private int selectPlacedSlot(final int rank) {
+        return searchPrefix(WEIGHT_PLACED, rank + 1);
+    }
+
+    /**
+     * Adds repeating slots until there is a desired slot after the given adjusted position.
+     */
+    private void addRepeatingSlotsThrough(final int position) {
+        if (mRepeatingInterval == MoPubClientPositioning.NO_REPEAT) {
+            return;
         }
 
-        return index + 1;
+        while (mSlotCount == 0
+                || mPlaced[mSlotCount - 1]
+                || getSlotPosition(mSlotCount - 1) <= position) {
+            appendRepeatingSlot();
+        }
     }
 
-    private static int binarySearchGreaterThan(int[] array, int count, int value) {
-        int index = binarySearch(array, 0, count, value);
+    /**
+     * Adds repeating slots until the next one would be at or after the given original position.
+     */
+    private void addRepeatingSlotsBefore(final int originalPosition) {
+        if (mRepeatingInterval == MoPubClientPositioning.NO_REPEAT) {
+            return;
+        }
 
-        // If not found, binarySearch returns the 2's complement of the index of the nearest
-        // value higher than the target value, which is also the insertion index.
-        if (index < 0) {
-            return ~index;
+        while (getNextRepeatingOriginalPosition() < originalPosition) {
+            appendRepeatingSlot();
         }
+    }
+
+    private int getNextRepeatingOriginalPosition() {
+        final int lastOriginalPosition = sum(mGapTree, mSlotCount);
+        return lastOriginalPosition + mRepeatingInterval - 1 + mPendingTailGap;
+    }
+
+    private void appendRepeatingSlot() {
+        appendSlot(getNextRepeatingOriginalPosition());
+        mPendingTailGap = 0;
+    }
 
-        int duplicateValue = array[index];
-        while (index < count && array[index] == duplicateValue) {
-            index++;
+    private void appendSlot(final int originalPosition) {
+        if (mSlotCount == mPlaced.length) {
+            final int capacity = mSlotCount * 2;
+            mPlaced = Arrays.copyOf(mPlaced, capacity);
+            mNativeAds = Arrays.copyOf(mNativeAds, capacity);
+            mGapTree = Arrays.copyOf(mGapTree, capacity + 1);
+            mPlacedTree = Arrays.copyOf(mPlacedTree, capacity + 1);
         }
 
-        return index;
+        // The new node covers the new slot and the slots of the nodes below it.
+        final int node = mSlotCount + 1;
+        final int coveredStart = node - (node & -node);
+        mGapTree[node] = originalPosition - sum(mGapTree, coveredStart);
+        mPlacedTree[node] = sum(mPlacedTree, mSlotCount) - sum(mPlacedTree, coveredStart);
+        mPlaced[mSlotCount] = false;
+        mNativeAds[mSlotCount] = null;
+        mSlotCount++;
     }
 
     /**
-     * Copied from Arrays.java, which isn't available until Gingerbread.
+     * Returns the first slot at which the sum of the given weights over the slots up to and
+     * including it reaches the target, or the slot count if it never does. All weights are
+     * non-negative, so the sums only grow along the slots.
      */
-    private static int binarySearch(int[] array, int startIndex, int endIndex, int value) {
-        int lo = startIndex;
-        int hi = endIndex - 1;
-
-        while (lo <= hi) {
-            int mid = (lo + hi) >>> 1;
-            int midVal = array[mid];
-
-            if (midVal < value) {
-                lo = mid + 1;
-            } else if (midVal > value) {
-                hi = mid - 1;
-            } else {
-                return mid;  // value found
+    private int searchPrefix(final int weights, final int target) {
+        int slot = 0;
+        int sum = 0;
+        for (int step = Integer.highestOneBit(mSlotCount); step > 0; step >>= 1) {
+            final int node = slot + step;
+            if (node > mSlotCount) {
+                continue;
             }
+
+            int nodeSum = 0;
+            if ((weights & WEIGHT_GAPS) != 0) {
+                nodeSum += mGapTree[node];
+            }
+            if ((weights & WEIGHT_PLACED) != 0) {
+                nodeSum += mPlacedTree[node];
+            }
+            if ((weights & WEIGHT_DESIRED) != 0) {
+                nodeSum += (node & -node) - mPlacedTree[node];
+            }
+
+            if (sum + nodeSum < target) {
+                slot = node;
+                sum += nodeSum;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Sum of the first {@code count} values of a Fenwick tree.
+     */
+    private static int sum(@NonNull final int[] tree, final int count) {
+        int sum = 0;
+        for (int node = count; node > 0; node -= node & -node) {
+            sum += tree[node];
+        }
+        return sum;
+    }
+
+    private static void add(@NonNull final int[] tree, final int size, final int index,
+            final int delta) {
+        for (int node = index + 1; node <= size; node += node & -node) {
+            tree[node] += delta;
         }
-        return ~lo;  // value not present
     }
 }
@@ -2,10 +2,12 @@ package com.mopub.nativeads;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.mopub.common.VisibleForTesting;
 import com.mopub.network.MoPubNetworkError;
 import com.mopub.network.MoPubRequestUtils;
+import com.mopub.network.RequestLane;
 import com.mopub.volley.NetworkResponse;
 import com.mopub.volley.Response;
 import com.mopub.volley.VolleyError;
@@ -34,11 +36,24 @@ public class PositioningRequest extends JsonRequest<MoPubClientPositioning> {
 
     @NonNull private final String mOriginalUrl;
     @NonNull private final Context mContext;
+    @Nullable private final Map<String, String> mGeneratedParams;
+    @Nullable private byte[] mBody;
 
     public PositioningRequest(@NonNull final Context context,
             final String url,
             final Response.Listener<MoPubClientPositioning> listener,
             final Response.ErrorListener errorListener) {
+        this(context, url, null, listener, errorListener);
+    }
+
+    /**
+     * @param generatedParams The parameters the url generator put into {@code url}, or null
+     */
+    public PositioningRequest(@NonNull final Context context,
+            final String url,
+            @Nullable final Map<String, String> generatedParams,
+            final Response.Listener<MoPubClientPositioning> listener,
+            final Response.ErrorListener errorListener) {
         super(MoPubRequestUtils.chooseMethod(url),
                 MoPubRequestUtils.truncateQueryParamsIfPost(url),
                 null,
@@ -47,6 +62,12 @@ public class PositioningRequest extends JsonRequest<MoPubClientPositioning> {
 
         mOriginalUrl = url;
         mContext = context.getApplicationContext();
+        mGeneratedParams = generatedParams;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return RequestLane.AD_REQUEST.getPriority();
     }
 
     // This is done just for unit testing visibility.
@@ -145,15 +166,18 @@ public class PositioningRequest extends JsonRequest<MoPubClientPositioning> {
             return null;
         }
 
-        return MoPubRequestUtils.convertQueryToMap(mContext, mOriginalUrl);
+        return MoPubRequestUtils.convertQueryToMap(mContext, mOriginalUrl, mGeneratedParams);
     }
 
     @Override
     public byte[] getBody() {
-        final String body = MoPubRequestUtils.generateBodyFromParams(getParams(), getUrl());
-        if (body == null) {
-            return null;
+        if (mBody == null) {
+            final String body = MoPubRequestUtils.generateBodyFromParams(getParams(), getUrl());
+            if (body == null) {
+                return null;
+            }
+            mBody = body.getBytes();
         }
-        return body.getBytes();
+        return mBody;
     }
 }
@@ -17,6 +17,8 @@ import com.mopub.volley.RequestQueue;
 import com.mopub.volley.Response;
 import com.mopub.volley.VolleyError;
 
+import java.util.Map;
+
 /**
  * Requests positioning information from the MoPub ad server.
  *
@@ -65,6 +67,7 @@ class ServerPositioningSource implements PositioningSource {
     @Nullable private PositioningListener mListener;
     private int mRetryCount;
     @Nullable private String mRetryUrl;
+    @Nullable private Map<String, String> mRetryParams;
     @Nullable private PositioningRequest mRequest;
 
     ServerPositioningSource(@NonNull final Context context) {
@@ -117,16 +120,18 @@ class ServerPositioningSource implements PositioningSource {
         }
 
         mListener = listener;
-        mRetryUrl = new PositioningUrlGenerator(mContext)
-                .withAdUnitId(adUnitId)
-                .generateUrlString(Constants.HOST);
+        final PositioningUrlGenerator urlGenerator = new PositioningUrlGenerator(mContext)
+                .withAdUnitId(adUnitId);
+        mRetryUrl = urlGenerator.generateUrlString(Constants.HOST);
+        mRetryParams = urlGenerator.getGeneratedParams();
         requestPositioningInternal();
     }
 
     private void requestPositioningInternal() {
         MoPubLog.d("Loading positioning from: " + mRetryUrl);
 
-        mRequest = new PositioningRequest(mContext, mRetryUrl, mPositioningListener, mErrorListener);
+        mRequest = new PositioningRequest(mContext, mRetryUrl, mRetryParams, mPositioningListener,
+                mErrorListener);
         final RequestQueue requestQueue = Networking.getRequestQueue(mContext);
         requestQueue.add(mRequest);
     }
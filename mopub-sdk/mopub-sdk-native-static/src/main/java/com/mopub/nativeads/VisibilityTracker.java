@@ -1,17 +1,14 @@
 package com.mopub.nativeads;
 
 import android.content.Context;
-import android.graphics.Rect;
-import android.os.Handler;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.view.View;
 import android.view.ViewTreeObserver;
 
+import com.mopub.common.VisibilityEngine;
 import com.mopub.common.VisibleForTesting;
-import com.mopub.common.logging.MoPubLog;
-import com.mopub.common.util.Views;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
@@ -19,16 +16,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
-import static android.view.ViewTreeObserver.OnPreDrawListener;
-
 /**
  * Tracks views to determine when they become visible or invisible, where visibility is defined as
- * having been at least X% on the screen.
+ * having been at least X% on the screen. Visibility is checked in the passes of the shared
+ * {@link VisibilityEngine}.
  */
-class VisibilityTracker {
-    // Time interval to use for throttling visibility checks.
-    private static final int VISIBILITY_THROTTLE_MILLIS = 100;
-
+class VisibilityTracker implements VisibilityEngine.Client {
     // Trim the tracked views after this many accesses. This protects us against tracking
     // too many views if the developer uses the adapter for multiple ListViews. It also
     // limits the memory leak if a developer forgets to call destroy().
@@ -45,7 +38,7 @@ class VisibilityTracker {
         void onVisibilityChanged(List<View> visibleViews, List<View> invisibleViews);
     }
 
-    @NonNull @VisibleForTesting final OnPreDrawListener mOnPreDrawListener;
+    // View tree whose draws trigger visibility passes for this tracker
     @NonNull @VisibleForTesting WeakReference<ViewTreeObserver> mWeakViewTreeObserver;
 
     static class TrackingInfo {
@@ -54,6 +47,8 @@ class VisibilityTracker {
         int mMaxInvisiblePercent;
         long mAccessOrder;
         View mRootView;
+        // Weak so that the tracked views map can still drop views that are garbage collected
+        WeakReference<View> mView;
 
         /**
          * If this number is set, then use this as the minimum amount of the view seen before it is
@@ -65,47 +60,44 @@ class VisibilityTracker {
     // Views that are being tracked, mapped to the min viewable percentage
     @NonNull private final Map<View, TrackingInfo> mTrackedViews;
 
+    // Tracking info of the tracked views in a list, so that a visibility pass doesn't allocate an
+    // iterator over the map.
+    @NonNull private final ArrayList<TrackingInfo> mTrackingInfos;
+
     // Object to check actual visibility
     @NonNull private final VisibilityChecker mVisibilityChecker;
 
+    @NonNull private final VisibilityEngine mVisibilityEngine;
+
     // Callback listener
     @Nullable private VisibilityTrackerListener mVisibilityTrackerListener;
 
-    // Runnable to run on each visibility loop
-    @NonNull private final VisibilityRunnable mVisibilityRunnable;
-
-    // Handler for visibility
-    @NonNull private final Handler mVisibilityHandler;
-
-    // Whether the visibility runnable is scheduled
-    private boolean mIsVisibilityScheduled;
+    // Set of views that are visible or invisible. We create these once to avoid excessive
+    // garbage collection observed when calculating these on each pass.
+    @NonNull private final ArrayList<View> mVisibleViews;
+    @NonNull private final ArrayList<View> mInvisibleViews;
 
     public VisibilityTracker(@NonNull final Context context) {
         this(context,
                 new WeakHashMap<View, TrackingInfo>(10),
                 new VisibilityChecker(),
-                new Handler());
+                VisibilityEngine.getInstance());
     }
 
     @VisibleForTesting
     VisibilityTracker(@NonNull final Context context,
             @NonNull final Map<View, TrackingInfo> trackedViews,
             @NonNull final VisibilityChecker visibilityChecker,
-            @NonNull final Handler visibilityHandler) {
+            @NonNull final VisibilityEngine visibilityEngine) {
         mTrackedViews = trackedViews;
         mVisibilityChecker = visibilityChecker;
-        mVisibilityHandler = visibilityHandler;
-        mVisibilityRunnable = new VisibilityRunnable();
+        mVisibilityEngine = visibilityEngine;
+        mTrackingInfos = new ArrayList<TrackingInfo>();
         mTrimmedViews = new ArrayList<View>(NUM_ACCESSES_BEFORE_TRIMMING);
+        mVisibleViews = new ArrayList<View>();
+        mInvisibleViews = new ArrayList<View>();
 
-        mOnPreDrawListener = new OnPreDrawListener() {
-            @Override
-            public boolean onPreDraw() {
-                scheduleVisibilityCheck();
-                return true;
-            }
-        };
-
+        mVisibilityEngine.addClient(this);
         mWeakViewTreeObserver = new WeakReference<ViewTreeObserver>(null);
         setViewTreeObserver(context, null);
     }
@@ -116,21 +108,11 @@ class VisibilityTracker {
             return;
         }
 
-        final View rootView = Views.getTopmostView(context, view);
-        if (rootView == null) {
-            MoPubLog.d("Unable to set Visibility Tracker due to no available root view.");
-            return;
-        }
-
-        final ViewTreeObserver viewTreeObserver = rootView.getViewTreeObserver();
-        if (!viewTreeObserver.isAlive()) {
-            MoPubLog.w("Visibility Tracker was unable to track views because the"
-                    + " root view tree observer was not alive");
-            return;
+        final ViewTreeObserver viewTreeObserver = mVisibilityEngine.addPreDrawHook(context, view);
+        if (viewTreeObserver != null) {
+            mVisibilityEngine.removePreDrawHook(originalViewTreeObserver);
+            mWeakViewTreeObserver = new WeakReference<ViewTreeObserver>(viewTreeObserver);
         }
-
-        mWeakViewTreeObserver = new WeakReference<ViewTreeObserver>(viewTreeObserver);
-        viewTreeObserver.addOnPreDrawListener(mOnPreDrawListener);
     }
 
     void setVisibilityTrackerListener(
@@ -160,7 +142,9 @@ class VisibilityTracker {
         TrackingInfo trackingInfo = mTrackedViews.get(view);
         if (trackingInfo == null) {
             trackingInfo = new TrackingInfo();
+            trackingInfo.mView = new WeakReference<View>(view);
             mTrackedViews.put(view, trackingInfo);
+            mTrackingInfos.add(trackingInfo);
             scheduleVisibilityCheck();
         }
 
@@ -197,7 +181,11 @@ class VisibilityTracker {
      * Stops tracking a view, cleaning any pending tracking
      */
     void removeView(@NonNull final View view) {
-        mTrackedViews.remove(view);
+        final TrackingInfo trackingInfo = mTrackedViews.remove(view);
+        if (trackingInfo != null) {
+            mTrackingInfos.remove(trackingInfo);
+        }
+        mVisibilityEngine.forgetView(view);
     }
 
     /**
@@ -205,8 +193,7 @@ class VisibilityTracker {
      */
     void clear() {
         mTrackedViews.clear();
-        mVisibilityHandler.removeMessages(0);
-        mIsVisibilityScheduled = false;
+        mTrackingInfos.clear();
     }
 
     /**
@@ -214,68 +201,59 @@ class VisibilityTracker {
      */
     void destroy() {
         clear();
-        final ViewTreeObserver viewTreeObserver = mWeakViewTreeObserver.get();
-        if (viewTreeObserver != null && viewTreeObserver.isAlive()) {
-            viewTreeObserver.removeOnPreDrawListener(mOnPreDrawListener);
-        }
+        mVisibilityEngine.removeClient(this);
+        mVisibilityEngine.removePreDrawHook(mWeakViewTreeObserver.get());
         mWeakViewTreeObserver.clear();
         mVisibilityTrackerListener = null;
     }
 
     void scheduleVisibilityCheck() {
-        // Tracking this directly instead of calling hasMessages directly because we measured that
-        // this led to slightly better performance.
-        if (mIsVisibilityScheduled) {
-            return;
-        }
-
-        mIsVisibilityScheduled = true;
-        mVisibilityHandler.postDelayed(mVisibilityRunnable, VISIBILITY_THROTTLE_MILLIS);
+        mVisibilityEngine.scheduleVisibilityCheck();
     }
 
-    class VisibilityRunnable implements Runnable {
-        // Set of views that are visible or invisible. We create these once to avoid excessive
-        // garbage collection observed when calculating these on each pass.
-        @NonNull private final ArrayList<View> mVisibleViews;
-        @NonNull private final ArrayList<View> mInvisibleViews;
-
-        VisibilityRunnable() {
-            mInvisibleViews = new ArrayList<View>();
-            mVisibleViews = new ArrayList<View>();
-        }
-
-        @Override
-        public void run() {
-            mIsVisibilityScheduled = false;
-            for (final Map.Entry<View, TrackingInfo> entry : mTrackedViews.entrySet()) {
-                final View view = entry.getKey();
-                final int minPercentageViewed = entry.getValue().mMinViewablePercent;
-                final int maxInvisiblePercent = entry.getValue().mMaxInvisiblePercent;
-                final Integer minVisiblePx = entry.getValue().mMinVisiblePx;
-                final View rootView = entry.getValue().mRootView;
-
-                if (mVisibilityChecker.isVisible(rootView, view, minPercentageViewed,
-                        minVisiblePx)) {
-                    mVisibleViews.add(view);
-                } else if (!mVisibilityChecker.isVisible(rootView, view, maxInvisiblePercent,
-                        null)) {
-                    mInvisibleViews.add(view);
-                }
+    @Override
+    public void onVisibilityCheck() {
+        for (int i = mTrackingInfos.size() - 1; i >= 0; i--) {
+            final TrackingInfo trackingInfo = mTrackingInfos.get(i);
+            final View view = trackingInfo.mView.get();
+            if (view == null) {
+                // Garbage collected, and so already dropped from the tracked views map
+                mTrackingInfos.remove(i);
+                continue;
             }
 
-            if (mVisibilityTrackerListener != null) {
-                mVisibilityTrackerListener.onVisibilityChanged(mVisibleViews, mInvisibleViews);
+            // Both thresholds are checked against a single measurement of the view
+            final VisibilityEngine.ViewMeasurement measurement =
+                    mVisibilityChecker.getMeasurement(trackingInfo.mRootView, view);
+            if (measurement != null && measurement.isVisible(trackingInfo.mMinViewablePercent,
+                    trackingInfo.mMinVisiblePx)) {
+                mVisibleViews.add(view);
+            } else if (measurement == null
+                    || !measurement.isVisible(trackingInfo.mMaxInvisiblePercent, null)) {
+                mInvisibleViews.add(view);
             }
+        }
 
-            // Clear these immediately so that we don't leak memory
-            mVisibleViews.clear();
-            mInvisibleViews.clear();
+        if (mVisibilityTrackerListener != null) {
+            mVisibilityTrackerListener.onVisibilityChanged(mVisibleViews, mInvisibleViews);
         }
+
+        // Clear these immediately so that we don't leak memory
+        mVisibleViews.clear();
+        mInvisibleViews.clear();
     }
 
     static class VisibilityChecker {
-        // A rect to use for hit testing. Create this once to avoid excess garbage collection
-        private final Rect mClipRect = new Rect();
+        @NonNull private final VisibilityEngine mVisibilityEngine;
+
+        VisibilityChecker() {
+            this(VisibilityEngine.getInstance());
+        }
+
+        @VisibleForTesting
+        VisibilityChecker(@NonNull final VisibilityEngine visibilityEngine) {
+            mVisibilityEngine = visibilityEngine;
+        }
 
         /**
          * Whether the visible time has elapsed from the start time. Easily mocked for testing.
@@ -284,40 +262,23 @@ class VisibilityTracker {
             return SystemClock.uptimeMillis() - startTimeMillis >= minTimeViewed;
         }
 
+        /**
+         * @return the view's measurement for the current visibility pass, or null if the view is
+         * not attached.
+         */
+        @Nullable
+        VisibilityEngine.ViewMeasurement getMeasurement(@Nullable final View rootView,
+                @Nullable final View view) {
+            return mVisibilityEngine.getMeasurement(rootView, view);
+        }
+
         /**
          * Whether the view is at least certain amount visible. If the min pixel amount is set,
          * use that. Otherwise, use the min percentage visible.
          */
         boolean isVisible(@Nullable final View rootView, @Nullable final View view,
                 final int minPercentageViewed, @Nullable final Integer minVisiblePx) {
-            // ListView & GridView both call detachFromParent() for views that can be recycled for
-            // new data. This is one of the rare instances where a view will have a null parent for
-            // an extended period of time and will not be the main window.
-            // view.getGlobalVisibleRect() doesn't check that case, so if the view has visibility
-            // of View.VISIBLE but it's group has no parent it is likely in the recycle bin of a
-            // ListView / GridView and not on screen.
-            if (view == null || view.getVisibility() != View.VISIBLE || rootView.getParent() == null) {
-                return false;
-            }
-
-            if (!view.getGlobalVisibleRect(mClipRect)) {
-                // Not visible
-                return false;
-            }
-
-            // % visible check - the cast is to avoid int overflow for large views.
-            final long visibleViewArea = (long) mClipRect.height() * mClipRect.width();
-            final long totalViewArea = (long) view.getHeight() * view.getWidth();
-
-            if (totalViewArea <= 0) {
-                return false;
-            }
-
-            if (minVisiblePx != null && minVisiblePx > 0) {
-                return visibleViewArea >= minVisiblePx;
-            }
-
-            return 100 * visibleViewArea >= minPercentageViewed * totalViewArea;
+            return mVisibilityEngine.isVisible(rootView, view, minPercentageViewed, minVisiblePx);
         }
     }
 }
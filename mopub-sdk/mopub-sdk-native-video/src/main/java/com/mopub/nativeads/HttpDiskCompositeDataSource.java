@@ -15,11 +15,9 @@ import com.mopub.common.Preconditions;
 import com.mopub.common.VisibleForTesting;
 import com.mopub.common.logging.MoPubLog;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
 import java.util.TreeSet;
 
 /**
@@ -34,10 +32,6 @@ public class HttpDiskCompositeDataSource implements DataSource {
     @VisibleForTesting static final String INTERVALS_KEY_PREFIX = "intervals-sorted-";
     @VisibleForTesting static final String EXPECTED_FILE_SIZE_KEY_PREFIX = "expectedsize-";
 
-    // These are used to serialize/deserialize the intervals list
-    private static final String START = "start";
-    private static final String LENGTH = "length";
-
     /**
      * The constant used in {@link DefaultHttpDataSource} is private even though this is a pretty
      * standard constant used in Exoplayer. This represents the constant that tells the HTTP
@@ -63,10 +57,17 @@ public class HttpDiskCompositeDataSource implements DataSource {
     @NonNull private final HttpDataSource mHttpDataSource;
 
     /**
-     * Bytes from disk. This is the in-memory working copy.
+     * Bytes from disk. This is the in-memory working copy. When set, this is always
+     * {@link #mBlockBuffer}.
      */
     @Nullable private byte[] mCachedBytes;
 
+    /**
+     * Backing array for {@link #mCachedBytes}. Segments are read into and written from this one
+     * array so moving between blocks does not allocate.
+     */
+    @NonNull private final byte[] mBlockBuffer;
+
     /**
      * Base key of the cache. This is the URI of the {@link DataSpec}.
      */
@@ -120,18 +121,51 @@ public class HttpDiskCompositeDataSource implements DataSource {
      */
     private boolean mIsDirty;
 
+    /**
+     * Whether the intervals were cleared during the current session because the cache was found
+     * to be inconsistent. If so, they replace the stored intervals on close rather than being
+     * merged into them.
+     */
+    private boolean mIsIntervalsInvalidated;
+
+    /**
+     * Cache key of the segment this is currently reading, so prefetching stays out of its way.
+     */
+    @Nullable private String mReadingSegmentKey;
+
+    /**
+     * Optional read-ahead stage that is told about each segment as it is loaded.
+     */
+    @Nullable private final SegmentPrefetcher mSegmentPrefetcher;
+
     public HttpDiskCompositeDataSource(@NonNull final Context context,
             @NonNull final String userAgent) {
-        this(context, userAgent, new DefaultHttpDataSource(userAgent, null));
+        this(context, userAgent, (SegmentPrefetcher) null);
+    }
+
+    HttpDiskCompositeDataSource(@NonNull final Context context,
+            @NonNull final String userAgent,
+            @Nullable final SegmentPrefetcher segmentPrefetcher) {
+        this(context, userAgent, new DefaultHttpDataSource(userAgent, null), segmentPrefetcher);
     }
 
     @VisibleForTesting
     HttpDiskCompositeDataSource(@NonNull final Context context,
             @NonNull final String userAgent,
             @NonNull final HttpDataSource httpDataSource) {
+        this(context, userAgent, httpDataSource, null);
+    }
+
+    @VisibleForTesting
+    HttpDiskCompositeDataSource(@NonNull final Context context,
+            @NonNull final String userAgent,
+            @NonNull final HttpDataSource httpDataSource,
+            @Nullable final SegmentPrefetcher segmentPrefetcher) {
         mHttpDataSource = httpDataSource;
+        mSegmentPrefetcher = segmentPrefetcher;
         CacheService.initialize(context);
         mIntervals = new TreeSet<IntInterval>();
+        mBlockBuffer = new byte[BLOCK_SIZE];
     }
 
     @Override
@@ -142,6 +176,7 @@ public class HttpDiskCompositeDataSource implements DataSource {
         }
 
         mIsDirty = false;
+        mIsIntervalsInvalidated = false;
 
         mDataSpec = dataSpec;
         mKey = dataSpec.uri.toString();
@@ -150,24 +185,26 @@ public class HttpDiskCompositeDataSource implements DataSource {
         }
         mStartInFile = (int) dataSpec.absoluteStreamPosition;
         mSegment = mStartInFile / BLOCK_SIZE;
-        mCachedBytes = CacheService.getFromDiskCache(mSegment + mKey);
+        startReadingSegment();
+        mCachedBytes = readSegmentFromDisk();
         mStartInDataBlock = mStartInFile % BLOCK_SIZE;
         mDataBlockOffset = 0;
 
-        mExpectedFileLength = getExpectedFileLengthFromDisk(mKey);
+        mExpectedFileLength = RangeIndex.getExpectedFileLength(mKey);
 
-        populateIntervalsFromDisk(mKey, mIntervals);
+        RangeIndex.getIntervals(mKey, mIntervals);
 
         int mDataRequestStartPoint = getFirstContiguousPointAfter(mStartInFile, mIntervals);
 
         // Cache miss
         if (mCachedBytes == null) {
-            mCachedBytes = new byte[BLOCK_SIZE];
+            mCachedBytes = clearBlockBuffer();
 
             // It's not in the cache, but we expected it to be there.
             if (mDataRequestStartPoint > mStartInFile) {
                 MoPubLog.d("Cache segment " + mSegment + " was evicted. Invalidating cache");
                 mIntervals.clear();
+                mIsIntervalsInvalidated = true;
                 mDataRequestStartPoint = (int) dataSpec.absoluteStreamPosition;
             }
         }
@@ -192,8 +229,7 @@ public class HttpDiskCompositeDataSource implements DataSource {
                     // If we don't have an expected file length set, set it if we requested the
                     // rest of the file.
                     mExpectedFileLength = (int) (mStartInFile + size);
-                    CacheService.putToDiskCache(EXPECTED_FILE_SIZE_KEY_PREFIX + mKey,
-                            String.valueOf(mExpectedFileLength).getBytes());
+                    RangeIndex.putExpectedFileLength(mKey, mExpectedFileLength);
                 }
                 mIsHttpSourceOpen = true;
             } catch (HttpDataSource.InvalidResponseCodeException e) {
@@ -212,45 +248,14 @@ public class HttpDiskCompositeDataSource implements DataSource {
         return size;
     }
 
-    private static void populateIntervalsFromDisk(@NonNull final String key,
-            @NonNull final TreeSet<IntInterval> intervals) {
-        Preconditions.checkNotNull(key);
-        Preconditions.checkNotNull(intervals);
-
-        intervals.clear();
-        byte[] intervalsFromDisk = CacheService.getFromDiskCache(INTERVALS_KEY_PREFIX + key);
-        if (intervalsFromDisk != null) {
-            String intervalsStringData = new String(intervalsFromDisk);
-            try {
-                JSONArray jsonIntervalArray = new JSONArray(intervalsStringData);
-                for (int i = 0; i < jsonIntervalArray.length(); i++) {
-                    JSONObject jsonInterval = new JSONObject((String) jsonIntervalArray.get(i));
-                    intervals.add(new IntInterval(jsonInterval.getInt(START),
-                            jsonInterval.getInt(LENGTH)));
-                }
-            } catch (JSONException e) {
-                MoPubLog.d("clearing cache since invalid json intervals found", e);
-                intervals.clear();
-            } catch (ClassCastException e) {
-                MoPubLog.d("clearing cache since unable to read json data");
-                intervals.clear();
-            }
-        }
-    }
-
-    private static Integer getExpectedFileLengthFromDisk(@NonNull final String key) {
-        Preconditions.checkNotNull(key);
+    /**
+     * Returns the fraction, from 0 to 1, of the video at {@code url} that is cached on disk. This
+     * does not touch the disk once the video's ranges have been loaded.
+     */
+    public static float getCachedFraction(@NonNull final String url) {
+        Preconditions.checkNotNull(url);
 
-        byte[] maxSizeByteArray = CacheService.getFromDiskCache(
-                EXPECTED_FILE_SIZE_KEY_PREFIX + key);
-        if (maxSizeByteArray != null) {
-            try {
-                return Integer.parseInt(new String(maxSizeByteArray));
-            } catch (NumberFormatException e) {
-                return null;
-            }
-        }
-        return null;
+        return RangeIndex.getCachedFraction(url);
     }
 
     @Override
@@ -261,11 +266,19 @@ public class HttpDiskCompositeDataSource implements DataSource {
     @Override
     public void close() throws IOException {
         if (!TextUtils.isEmpty(mKey) && mCachedBytes != null) {
-            CacheService.putToDiskCache(mSegment + mKey, mCachedBytes);
             addNewInterval(mIntervals, mStartInFile, mDataBlockOffset);
-            writeIntervalsToDisk(mIntervals, mKey);
+            final byte[] intervals = mIsIntervalsInvalidated
+                    ? RangeIndex.putIntervals(mKey, mIntervals)
+                    : RangeIndex.mergeIntervals(mKey, mIntervals);
+            // The block and its intervals are written under one journal flush. This has to be
+            // synchronous since the block buffer is reused by the next open.
+            CacheService.edit()
+                    .put(mSegment + mKey, mCachedBytes)
+                    .put(INTERVALS_KEY_PREFIX + mKey, intervals)
+                    .commit();
         }
         mCachedBytes = null;
+        finishReadingSegment();
 
         mHttpDataSource.close();
         mIsHttpSourceOpen = false;
@@ -274,19 +287,7 @@ public class HttpDiskCompositeDataSource implements DataSource {
         mStartInDataBlock = 0;
         mExpectedFileLength = null;
         mIsDirty = false;
-    }
-
-    private static void writeIntervalsToDisk(@NonNull final TreeSet<IntInterval> intervals,
-            @NonNull final String key) {
-        Preconditions.checkNotNull(intervals);
-        Preconditions.checkNotNull(key);
-
-        final JSONArray jsonIntervals = new JSONArray();
-        for (IntInterval interval : intervals) {
-            jsonIntervals.put(interval);
-        }
-        CacheService.putToDiskCache(INTERVALS_KEY_PREFIX + key,
-                jsonIntervals.toString().getBytes());
+        mIsIntervalsInvalidated = false;
     }
 
     @Override
@@ -336,14 +337,15 @@ public class HttpDiskCompositeDataSource implements DataSource {
                 writeCacheToDiskAndClearVariables();
 
                 // Read in the next segment from disk
-                mCachedBytes = CacheService.getFromDiskCache(mSegment + mKey);
+                mCachedBytes = readSegmentFromDisk();
                 if (mCachedBytes == null) {
                     // If there is a mismatch between expected bytes available in the cache and what
                     // is actually in the cache, this is an unrecoverable problem. Reset the cache
                     // and clear the data and open a new HTTP connection starting at the current position.
                     MoPubLog.d("Unexpected cache miss. Invalidating cache");
                     mIntervals.clear();
-                    mCachedBytes = new byte[BLOCK_SIZE];
+                    mIsIntervalsInvalidated = true;
+                    mCachedBytes = clearBlockBuffer();
                     mHttpDataSource.close();
 
                     mHttpDataSource.open(
@@ -392,9 +394,9 @@ public class HttpDiskCompositeDataSource implements DataSource {
 
             writeCacheToDiskAndClearVariables();
 
-            mCachedBytes = CacheService.getFromDiskCache(mSegment + mKey);
+            mCachedBytes = readSegmentFromDisk();
             if (mCachedBytes == null) {
-                mCachedBytes = new byte[BLOCK_SIZE];
+                mCachedBytes = clearBlockBuffer();
             }
 
             System.arraycopy(buffer,
@@ -416,13 +418,62 @@ public class HttpDiskCompositeDataSource implements DataSource {
         return farthestContiguousPoint > startInFile + dataBlockOffset;
     }
 
-    private void writeCacheToDiskAndClearVariables() {
+    private void writeCacheToDiskAndClearVariables() throws InterruptedIOException {
         CacheService.putToDiskCache(mSegment + mKey, mCachedBytes);
         addNewInterval(mIntervals, mStartInFile, mDataBlockOffset);
         mStartInDataBlock = 0;
         mStartInFile = mStartInFile + mDataBlockOffset;
         mDataBlockOffset = 0;
         mSegment = mStartInFile / BLOCK_SIZE;
+        startReadingSegment();
+    }
+
+    /**
+     * Marks the current segment as being read, waiting for any prefetch of it to finish first,
+     * and lets the prefetcher read ahead of it.
+     */
+    private void startReadingSegment() throws InterruptedIOException {
+        finishReadingSegment();
+        mReadingSegmentKey = mSegment + mKey;
+        SegmentPrefetcher.startReading(mReadingSegmentKey);
+        if (mSegmentPrefetcher != null && mKey != null) {
+            mSegmentPrefetcher.onSegmentLoaded(mKey, mSegment);
+        }
+    }
+
+    private void finishReadingSegment() {
+        if (mReadingSegmentKey != null) {
+            SegmentPrefetcher.finishReading(mReadingSegmentKey);
+            mReadingSegmentKey = null;
+        }
+    }
+
+    /**
+     * Reads the current segment from disk into the reusable block buffer.
+     *
+     * @return The block buffer, or null if the segment is not in the cache.
+     */
+    @Nullable
+    private byte[] readSegmentFromDisk() {
+        final int bytesRead = CacheService.readFromDiskCache(mSegment + mKey, 0, mBlockBuffer, 0,
+                BLOCK_SIZE);
+        if (bytesRead < 0) {
+            return null;
+        }
+        // Segments written by older versions may be shorter than a full block
+        Arrays.fill(mBlockBuffer, bytesRead, BLOCK_SIZE, (byte) 0);
+        return mBlockBuffer;
+    }
+
+    /**
+     * Zeroes the reusable block buffer so a fresh segment does not carry over stale bytes.
+     *
+     * @return The block buffer.
+     */
+    @NonNull
+    private byte[] clearBlockBuffer() {
+        Arrays.fill(mBlockBuffer, (byte) 0);
+        return mBlockBuffer;
     }
 
     /**
@@ -95,12 +95,14 @@ public class NativeVideoController extends ExoPlayer.DefaultEventListener implem
     @Nullable private BitmapDrawable mFinalFrame;
     @Nullable private MediaCodecAudioRenderer mAudioRenderer;
     @Nullable private MediaCodecVideoRenderer mVideoRenderer;
+    @Nullable private SegmentPrefetcher mSegmentPrefetcher;
 
     private boolean mPlayWhenReady;
     private boolean mAudioEnabled;
     private boolean mAppAudioEnabled;
     private int mPreviousExoPlayerState = Player.STATE_IDLE;
     private boolean mExoPlayerStateStartedFromIdle = true;
+    private int mBufferUnderrunCount;
 
     /**
      * Create a new {@link NativeVideoController} for this id with the given parameters.
@@ -308,6 +310,17 @@ public class NativeVideoController extends ExoPlayer.DefaultEventListener implem
             mNativeVideoProgressRunnable.requestStop();
         }
 
+        if (playWhenReady && newState == Player.STATE_BUFFERING
+                && mPreviousExoPlayerState == Player.STATE_READY) {
+            // Playback had started and then ran out of buffered data
+            mBufferUnderrunCount++;
+        }
+        if (mSegmentPrefetcher != null) {
+            // Keep reading ahead while buffering, since that is when the player needs data most
+            mSegmentPrefetcher.setEnabled(playWhenReady && (newState == Player.STATE_READY
+                    || newState == Player.STATE_BUFFERING));
+        }
+
         mPreviousExoPlayerState = newState;
         if (newState == Player.STATE_READY) {
             mExoPlayerStateStartedFromIdle = false;
@@ -361,6 +374,14 @@ public class NativeVideoController extends ExoPlayer.DefaultEventListener implem
         mVastVideoConfig.handleClickWithoutResult(context, 0);
     }
 
+    /**
+     * Returns the number of times playback stalled waiting for data since this controller was
+     * created.
+     */
+    public int getBufferUnderrunCount() {
+        return mBufferUnderrunCount;
+    }
+
     public boolean hasFinalFrame() {
         return mFinalFrame != null;
     }
@@ -379,6 +400,13 @@ public class NativeVideoController extends ExoPlayer.DefaultEventListener implem
             return;
         }
 
+        if (mSegmentPrefetcher != null) {
+            mSegmentPrefetcher.cancel();
+            MoPubLog.d("Native video prefetched " + mSegmentPrefetcher.getBytesScheduled()
+                    + " bytes with " + mBufferUnderrunCount + " buffer underruns so far");
+            mSegmentPrefetcher = null;
+        }
+
         setExoSurface(null);
         mExoPlayer.stop();
         mExoPlayer.release();
@@ -406,10 +434,16 @@ public class NativeVideoController extends ExoPlayer.DefaultEventListener implem
             mNativeVideoProgressRunnable.setExoPlayer(mExoPlayer);
             mExoPlayer.addListener(this);
 
+            final Uri videoUri = Uri.parse(mVastVideoConfig.getNetworkMediaFileUrl());
+            final SegmentPrefetcher segmentPrefetcher = new SegmentPrefetcher(videoUri.toString(),
+                    "exo_demo");
+            mSegmentPrefetcher = segmentPrefetcher;
+
             final DataSource.Factory dataSourceFactory = new DataSource.Factory() {
                 @Override
                 public DataSource createDataSource() {
-                    return new HttpDiskCompositeDataSource(mContext, "exo_demo");
+                    return new HttpDiskCompositeDataSource(mContext, "exo_demo",
+                            segmentPrefetcher);
                 }
             };
 
@@ -423,7 +457,7 @@ public class NativeVideoController extends ExoPlayer.DefaultEventListener implem
             final ExtractorMediaSource.Factory extractorMediaSourceFactory = new ExtractorMediaSource.Factory(dataSourceFactory);
             extractorMediaSourceFactory.setExtractorsFactory(extractorsFactory);
 
-            final MediaSource mediaSource = extractorMediaSourceFactory.createMediaSource(Uri.parse(mVastVideoConfig.getNetworkMediaFileUrl()));
+            final MediaSource mediaSource = extractorMediaSourceFactory.createMediaSource(videoUri);
 
             mExoPlayer.prepare(mediaSource);
             mNativeVideoProgressRunnable.startRepeating(50);
@@ -0,0 +1,313 @@
+package com.mopub.nativeads;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.mopub.common.CacheService;
+import com.mopub.common.Preconditions;
+import com.mopub.common.VisibleForTesting;
+import com.mopub.common.logging.MoPubLog;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.util.TreeSet;
+
+import static com.mopub.nativeads.HttpDiskCompositeDataSource.EXPECTED_FILE_SIZE_KEY_PREFIX;
+import static com.mopub.nativeads.HttpDiskCompositeDataSource.INTERVALS_KEY_PREFIX;
+
+/**
+ * Keeps track of which byte ranges of each video are stored on disk by
+ * {@link HttpDiskCompositeDataSource}. The ranges for a URL are read from {@link CacheService}
+ * once and then kept in memory across opens.
+ *
+ * On disk, the ranges are stored as a format version byte followed by one pair of unsigned
+ * varints per interval: the distance from the previous interval's start, and the length.
+ */
+class RangeIndex {
+
+    @VisibleForTesting static final byte FORMAT_VERSION = 1;
+
+    /**
+     * Number of videos whose ranges are kept in memory. Native video ads rarely have more than a
+     * handful of videos in play at a time.
+     */
+    private static final int MAX_ENTRIES = 20;
+
+    // These are used to read intervals written in the legacy JSON format
+    private static final String START = "start";
+    private static final String LENGTH = "length";
+
+    private static class Entry {
+        @NonNull final TreeSet<IntInterval> intervals = new TreeSet<IntInterval>();
+        @Nullable Integer expectedFileLength;
+    }
+
+    @NonNull private static final LruCache<String, Entry> sEntries =
+            new LruCache<String, Entry>(MAX_ENTRIES);
+
+    private RangeIndex() {
+    }
+
+    /**
+     * Replaces the contents of {@code intervals} with the ranges known to be on disk for
+     * {@code key}.
+     */
+    static void getIntervals(@NonNull final String key,
+            @NonNull final TreeSet<IntInterval> intervals) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(intervals);
+
+        intervals.clear();
+        final Entry entry = getEntry(key);
+        synchronized (entry) {
+            copyIntervals(entry.intervals, intervals);
+        }
+    }
+
+    /**
+     * Records {@code intervals} as the ranges on disk for {@code key}, replacing what was there.
+     * This only updates the in-memory index; callers persist the returned bytes themselves.
+     *
+     * @return The ranges for {@code key} in the binary on-disk format.
+     */
+    @NonNull
+    static byte[] putIntervals(@NonNull final String key,
+            @NonNull final TreeSet<IntInterval> intervals) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(intervals);
+
+        final Entry entry = getEntry(key);
+        synchronized (entry) {
+            entry.intervals.clear();
+            copyIntervals(intervals, entry.intervals);
+            return encode(entry.intervals);
+        }
+    }
+
+    /**
+     * Adds each of {@code intervals} that is not already covered to the ranges on disk for
+     * {@code key}. This lets several writers record ranges for the same file without dropping
+     * each other's. This only updates the in-memory index; callers persist the returned bytes
+     * themselves.
+     *
+     * @return The ranges for {@code key} in the binary on-disk format.
+     */
+    @NonNull
+    static byte[] mergeIntervals(@NonNull final String key,
+            @NonNull final TreeSet<IntInterval> intervals) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(intervals);
+
+        final Entry entry = getEntry(key);
+        synchronized (entry) {
+            for (final IntInterval interval : intervals) {
+                HttpDiskCompositeDataSource.addNewInterval(entry.intervals, interval.getStart(),
+                        interval.getLength());
+            }
+            return encode(entry.intervals);
+        }
+    }
+
+    @Nullable
+    static Integer getExpectedFileLength(@NonNull final String key) {
+        Preconditions.checkNotNull(key);
+
+        final Entry entry = getEntry(key);
+        synchronized (entry) {
+            return entry.expectedFileLength;
+        }
+    }
+
+    /**
+     * Records and persists the expected length of the file at {@code key}.
+     */
+    static void putExpectedFileLength(@NonNull final String key, final int expectedFileLength) {
+        Preconditions.checkNotNull(key);
+
+        final Entry entry = getEntry(key);
+        synchronized (entry) {
+            entry.expectedFileLength = expectedFileLength;
+        }
+        CacheService.putToDiskCache(EXPECTED_FILE_SIZE_KEY_PREFIX + key,
+                String.valueOf(expectedFileLength).getBytes());
+    }
+
+    /**
+     * Returns the fraction, from 0 to 1, of the file at {@code key} that is stored on disk. This
+     * is 0 if the length of the file is not yet known.
+     */
+    static float getCachedFraction(@NonNull final String key) {
+        Preconditions.checkNotNull(key);
+
+        final Entry entry = getEntry(key);
+        synchronized (entry) {
+            if (entry.expectedFileLength == null || entry.expectedFileLength <= 0) {
+                return 0f;
+            }
+
+            // Intervals are sorted by start and may overlap
+            long cachedBytes = 0;
+            int coveredUpTo = 0;
+            for (final IntInterval interval : entry.intervals) {
+                final int start = Math.max(interval.getStart(), coveredUpTo);
+                final int end = Math.min(interval.getStart() + interval.getLength(),
+                        entry.expectedFileLength);
+                if (end > start) {
+                    cachedBytes += end - start;
+                    coveredUpTo = end;
+                }
+            }
+            return Math.min(1f, (float) cachedBytes / entry.expectedFileLength);
+        }
+    }
+
+    @NonNull
+    private static Entry getEntry(@NonNull final String key) {
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(key);
+            if (entry == null) {
+                entry = loadEntry(key);
+                sEntries.put(key, entry);
+            }
+            return entry;
+        }
+    }
+
+    @NonNull
+    private static Entry loadEntry(@NonNull final String key) {
+        final Entry entry = new Entry();
+
+        final byte[] intervalsFromDisk = CacheService.getFromDiskCache(INTERVALS_KEY_PREFIX + key);
+        if (intervalsFromDisk != null && !decode(intervalsFromDisk, entry.intervals)) {
+            MoPubLog.d("clearing cache since invalid intervals found");
+            entry.intervals.clear();
+        }
+
+        final byte[] expectedFileLengthFromDisk = CacheService.getFromDiskCache(
+                EXPECTED_FILE_SIZE_KEY_PREFIX + key);
+        if (expectedFileLengthFromDisk != null) {
+            try {
+                entry.expectedFileLength = Integer.parseInt(new String(expectedFileLengthFromDisk));
+            } catch (NumberFormatException e) {
+                entry.expectedFileLength = null;
+            }
+        }
+        return entry;
+    }
+
+    private static void copyIntervals(@NonNull final TreeSet<IntInterval> from,
+            @NonNull final TreeSet<IntInterval> to) {
+        for (final IntInterval interval : from) {
+            to.add(new IntInterval(interval.getStart(), interval.getLength()));
+        }
+    }
+
+    /**
+     * Serializes the intervals into the binary on-disk format.
+     */
+    @NonNull
+    static byte[] encode(@NonNull final TreeSet<IntInterval> intervals) {
+        Preconditions.checkNotNull(intervals);
+
+        // One version byte plus at most 5 bytes per varint
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(1 + intervals.size() * 10);
+        out.write(FORMAT_VERSION);
+        int previousStart = 0;
+        for (final IntInterval interval : intervals) {
+            writeVarint(out, interval.getStart() - previousStart);
+            writeVarint(out, interval.getLength());
+            previousStart = interval.getStart();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Deserializes intervals written by {@link #encode(TreeSet)}, or in the legacy JSON format.
+     *
+     * @return false if the data could not be read.
+     */
+    static boolean decode(@NonNull final byte[] data,
+            @NonNull final TreeSet<IntInterval> intervals) {
+        Preconditions.checkNotNull(data);
+        Preconditions.checkNotNull(intervals);
+
+        if (data.length == 0) {
+            return false;
+        }
+        if (data[0] == '[') {
+            return decodeLegacyJson(data, intervals);
+        }
+        if (data[0] != FORMAT_VERSION) {
+            return false;
+        }
+
+        final int[] position = {1};
+        int start = 0;
+        while (position[0] < data.length) {
+            final int startDelta = readVarint(data, position);
+            final int length = readVarint(data, position);
+            if (startDelta < 0 || length < 0) {
+                return false;
+            }
+            start += startDelta;
+            intervals.add(new IntInterval(start, length));
+        }
+        return true;
+    }
+
+    private static boolean decodeLegacyJson(@NonNull final byte[] data,
+            @NonNull final TreeSet<IntInterval> intervals) {
+        try {
+            final JSONArray jsonIntervalArray = new JSONArray(new String(data));
+            for (int i = 0; i < jsonIntervalArray.length(); i++) {
+                final JSONObject jsonInterval = new JSONObject((String) jsonIntervalArray.get(i));
+                intervals.add(new IntInterval(jsonInterval.getInt(START),
+                        jsonInterval.getInt(LENGTH)));
+            }
+            return true;
+        } catch (JSONException e) {
+            MoPubLog.d("unable to read json intervals", e);
+            return false;
+        } catch (ClassCastException e) {
+            MoPubLog.d("unable to read json data");
+            return false;
+        }
+    }
+
+    private static void writeVarint(@NonNull final ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads an unsigned varint starting at {@code position[0]} and advances the position.
+     *
+     * @return The value, or -1 if the data ends early or the varint is too long.
+     */
+    private static int readVarint(@NonNull final byte[] data, @NonNull final int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= data.length) {
+                return -1;
+            }
+            final byte b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        sEntries.evictAll();
+    }
+}
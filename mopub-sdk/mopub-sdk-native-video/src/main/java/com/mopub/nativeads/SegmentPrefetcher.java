@@ -0,0 +1,290 @@
+package com.mopub.nativeads;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.mopub.common.CacheService;
+import com.mopub.common.Preconditions;
+import com.mopub.common.VisibleForTesting;
+import com.mopub.common.logging.MoPubLog;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.mopub.nativeads.HttpDiskCompositeDataSource.BLOCK_SIZE;
+import static com.mopub.nativeads.HttpDiskCompositeDataSource.INTERVALS_KEY_PREFIX;
+
+/**
+ * Reads ahead of {@link HttpDiskCompositeDataSource} by downloading the next few
+ * {@link HttpDiskCompositeDataSource#BLOCK_SIZE} segments of a video into {@link CacheService} in
+ * the background. Segments use the same keys and interval bookkeeping as the data source, so a
+ * later open or seek finds them on disk. Each instance belongs to one ad and stops once it has
+ * downloaded its byte budget.
+ */
+class SegmentPrefetcher {
+
+    @VisibleForTesting static final int DEFAULT_SEGMENTS_AHEAD = 2;
+    @VisibleForTesting static final long DEFAULT_BUDGET_BYTES = 4L * BLOCK_SIZE;
+    private static final int MAX_PARALLEL_DOWNLOADS = 2;
+    @VisibleForTesting static final long MAX_READ_WAIT_MS = 3000;
+
+    @NonNull private static final Executor sExecutor;
+
+    static {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_DOWNLOADS,
+                MAX_PARALLEL_DOWNLOADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        sExecutor = executor;
+    }
+
+    /**
+     * Segments (by cache key) currently being downloaded by a prefetcher, and the number of data
+     * sources currently reading each segment. A segment is never prefetched and read at the same
+     * time, since both write the whole block back to disk.
+     */
+    @NonNull private static final Set<String> sPrefetchingSegments = new HashSet<String>();
+    @NonNull private static final Map<String, Integer> sReadingSegments =
+            new HashMap<String, Integer>();
+
+    @NonNull private final String mKey;
+    @NonNull private final HttpDataSource.Factory mHttpDataSourceFactory;
+    @NonNull private final Executor mExecutor;
+    private final int mSegmentsAhead;
+    private final long mBudgetBytes;
+
+    @NonNull private final Set<Integer> mScheduledSegments = new HashSet<Integer>();
+    private long mBytesScheduled;
+    private int mCurrentSegment;
+    private boolean mIsEnabled;
+    private volatile boolean mIsCancelled;
+
+    SegmentPrefetcher(@NonNull final String url, @NonNull final String userAgent) {
+        this(url, new DefaultHttpDataSourceFactory(userAgent), sExecutor, DEFAULT_SEGMENTS_AHEAD,
+                DEFAULT_BUDGET_BYTES);
+    }
+
+    @VisibleForTesting
+    SegmentPrefetcher(@NonNull final String url,
+            @NonNull final HttpDataSource.Factory httpDataSourceFactory,
+            @NonNull final Executor executor,
+            final int segmentsAhead,
+            final long budgetBytes) {
+        Preconditions.checkNotNull(url);
+        Preconditions.checkNotNull(httpDataSourceFactory);
+        Preconditions.checkNotNull(executor);
+
+        mKey = url;
+        mHttpDataSourceFactory = httpDataSourceFactory;
+        mExecutor = executor;
+        mSegmentsAhead = segmentsAhead;
+        mBudgetBytes = budgetBytes;
+    }
+
+    /**
+     * Starts or pauses reading ahead. This is enabled while playback is running or buffering.
+     * Called on the main thread, so scheduling, which may read the cached intervals from disk,
+     * runs on the executor.
+     */
+    void setEnabled(final boolean enabled) {
+        synchronized (this) {
+            if (mIsEnabled == enabled) {
+                return;
+            }
+            mIsEnabled = enabled;
+            if (!enabled) {
+                return;
+            }
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                scheduleSegmentsAhead();
+            }
+        });
+    }
+
+    /**
+     * Called by the data source whenever it starts reading a segment of {@code key}.
+     */
+    synchronized void onSegmentLoaded(@NonNull final String key, final int segment) {
+        if (!mKey.equals(key)) {
+            return;
+        }
+        mCurrentSegment = segment;
+        scheduleSegmentsAhead();
+    }
+
+    /**
+     * Stops scheduling downloads. Downloads already in flight finish on their own.
+     */
+    void cancel() {
+        mIsCancelled = true;
+        synchronized (this) {
+            mIsEnabled = false;
+        }
+    }
+
+    synchronized long getBytesScheduled() {
+        return mBytesScheduled;
+    }
+
+    private synchronized void scheduleSegmentsAhead() {
+        if (!mIsEnabled || mIsCancelled) {
+            return;
+        }
+
+        final Integer expectedFileLength = RangeIndex.getExpectedFileLength(mKey);
+        if (expectedFileLength == null) {
+            return;
+        }
+
+        final TreeSet<IntInterval> intervals = new TreeSet<IntInterval>();
+        RangeIndex.getIntervals(mKey, intervals);
+        for (int segment = mCurrentSegment + 1; segment <= mCurrentSegment + mSegmentsAhead;
+                segment++) {
+            final int start = segment * BLOCK_SIZE;
+            final int length = Math.min(BLOCK_SIZE, expectedFileLength - start);
+            if (length <= 0) {
+                return;
+            }
+            if (mScheduledSegments.contains(segment)
+                    || HttpDiskCompositeDataSource.getFirstContiguousPointAfter(start, intervals)
+                    >= start + length) {
+                continue;
+            }
+            if (mBytesScheduled + length > mBudgetBytes) {
+                return;
+            }
+
+            final int segmentToFetch = segment;
+            mScheduledSegments.add(segmentToFetch);
+            mBytesScheduled += length;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    prefetchSegment(segmentToFetch, start, length);
+                }
+            });
+        }
+    }
+
+    @VisibleForTesting
+    void prefetchSegment(final int segment, final int start, final int length) {
+        if (mIsCancelled) {
+            return;
+        }
+
+        final String segmentKey = segment + mKey;
+        if (!tryStartPrefetching(segmentKey)) {
+            // The data source is reading this segment and will cache it itself.
+            return;
+        }
+
+        final HttpDataSource httpDataSource = mHttpDataSourceFactory.createDataSource();
+        try {
+            final byte[] block = new byte[BLOCK_SIZE];
+            httpDataSource.open(new DataSpec(Uri.parse(mKey), start, length, null));
+            int bytesRead = 0;
+            while (bytesRead < length && !mIsCancelled) {
+                final int read = httpDataSource.read(block, bytesRead, length - bytesRead);
+                if (read == -1) {
+                    break;
+                }
+                bytesRead += read;
+            }
+
+            // A partial block would overwrite any bytes already cached later in the segment
+            if (bytesRead == length) {
+                final TreeSet<IntInterval> fetched = new TreeSet<IntInterval>();
+                fetched.add(new IntInterval(start, bytesRead));
+                CacheService.edit()
+                        .put(segmentKey, block)
+                        .put(INTERVALS_KEY_PREFIX + mKey, RangeIndex.mergeIntervals(mKey, fetched))
+                        .commit();
+            }
+        } catch (IOException e) {
+            MoPubLog.d("Unable to prefetch segment " + segment + " of " + mKey, e);
+        } finally {
+            try {
+                httpDataSource.close();
+            } catch (IOException ignore) {
+                // ignore
+            }
+            finishPrefetching(segmentKey);
+        }
+    }
+
+    private static boolean tryStartPrefetching(@NonNull final String segmentKey) {
+        synchronized (sPrefetchingSegments) {
+            if (sReadingSegments.containsKey(segmentKey)
+                    || sPrefetchingSegments.contains(segmentKey)) {
+                return false;
+            }
+            sPrefetchingSegments.add(segmentKey);
+            return true;
+        }
+    }
+
+    private static void finishPrefetching(@NonNull final String segmentKey) {
+        synchronized (sPrefetchingSegments) {
+            sPrefetchingSegments.remove(segmentKey);
+            sPrefetchingSegments.notifyAll();
+        }
+    }
+
+    /**
+     * Marks a segment as being read by a data source. If the segment is being prefetched, this
+     * waits up to {@link #MAX_READ_WAIT_MS} for the download to land on disk so the data source
+     * reads the fresh block. After that the data source stops waiting and reads the segment from
+     * the network itself.
+     */
+    static void startReading(@NonNull final String segmentKey) throws InterruptedIOException {
+        startReading(segmentKey, MAX_READ_WAIT_MS);
+    }
+
+    @VisibleForTesting
+    static void startReading(@NonNull final String segmentKey, final long maxWaitMs)
+            throws InterruptedIOException {
+        final long deadline = System.currentTimeMillis() + maxWaitMs;
+        synchronized (sPrefetchingSegments) {
+            while (sPrefetchingSegments.contains(segmentKey)) {
+                final long remainingMs = deadline - System.currentTimeMillis();
+                if (remainingMs <= 0) {
+                    MoPubLog.d("Timed out waiting for prefetch of " + segmentKey);
+                    break;
+                }
+                try {
+                    sPrefetchingSegments.wait(remainingMs);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted waiting for prefetch of "
+                            + segmentKey);
+                }
+            }
+            final Integer readers = sReadingSegments.get(segmentKey);
+            sReadingSegments.put(segmentKey, readers == null ? 1 : readers + 1);
+        }
+    }
+
+    static void finishReading(@NonNull final String segmentKey) {
+        synchronized (sPrefetchingSegments) {
+            final Integer readers = sReadingSegments.get(segmentKey);
+            if (readers == null || readers <= 1) {
+                sReadingSegments.remove(segmentKey);
+            } else {
+                sReadingSegments.put(segmentKey, readers - 1);
+            }
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.mopub.network.TrackingRequest;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 class AdLoaderRewardedVideo extends AdLoader {
     private boolean mImpressionTrackerFired;
@@ -22,7 +23,16 @@ class AdLoaderRewardedVideo extends AdLoader {
                           @NonNull String adUnitId,
                           @NonNull Context context,
                           @NonNull Listener listener) {
-        super(url, adFormat, adUnitId, context, listener);
+        this(url, null, adFormat, adUnitId, context, listener);
+    }
+
+    AdLoaderRewardedVideo(@NonNull String url,
+                          @Nullable Map<String, String> generatedParams,
+                          @NonNull AdFormat adFormat,
+                          @NonNull String adUnitId,
+                          @NonNull Context context,
+                          @NonNull Listener listener) {
+        super(url, generatedParams, adFormat, adUnitId, context, listener);
 
         mImpressionTrackerFired = false;
         mClickTrackerFired = false;
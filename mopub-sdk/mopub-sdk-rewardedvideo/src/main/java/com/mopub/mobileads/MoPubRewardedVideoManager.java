@@ -303,6 +303,15 @@ public class MoPubRewardedVideoManager {
             return;
         }
 
+        if (MoPub.queueAdRequestUntilInitialized(new Runnable() {
+            @Override
+            public void run() {
+                loadVideo(adUnitId, requestParameters, mediationSettings);
+            }
+        })) {
+            return;
+        }
+
         final String currentlyShowingAdUnitId =
                 sInstance.mRewardedAdData.getCurrentlyShowingAdUnitId();
         if (adUnitId.equals(currentlyShowingAdUnitId)) {
@@ -346,19 +355,21 @@ public class MoPubRewardedVideoManager {
                 .withLocation(requestParameters == null ? null : requestParameters.mLocation)
                 .generateUrlString(Constants.HOST);
 
-        loadVideo(adUnitId, adUrlString, null);
+        loadVideo(adUnitId, adUrlString, urlGenerator.getGeneratedParams(), null);
     }
 
-    private static void loadVideo(@NonNull String adUnitId, @NonNull String adUrlString, @Nullable MoPubErrorCode errorCode) {
+    private static void loadVideo(@NonNull String adUnitId, @NonNull String adUrlString,
+            @Nullable Map<String, String> generatedParams, @Nullable MoPubErrorCode errorCode) {
         if (sInstance == null) {
             logErrorNotInitialized();
             return;
         }
 
-        sInstance.fetchAd(adUnitId, adUrlString, errorCode);
+        sInstance.fetchAd(adUnitId, adUrlString, generatedParams, errorCode);
     }
 
-    private void fetchAd(@NonNull String adUnitId, @NonNull String adUrlString, @Nullable MoPubErrorCode errorCode) {
+    private void fetchAd(@NonNull String adUnitId, @NonNull String adUrlString,
+            @Nullable Map<String, String> generatedParams, @Nullable MoPubErrorCode errorCode) {
         if (rewardedAdsLoaders.isLoading(adUnitId)) {
             MoPubLog.d(String.format(Locale.US, "Did not queue rewarded ad request for ad " +
                     "unit %s. A request is already pending.", adUnitId));
@@ -373,7 +384,8 @@ public class MoPubRewardedVideoManager {
         // Issue MoPub request
         MoPubLog.d(String.format(Locale.US,
                 "Loading rewarded ad request for ad unit %s with URL %s", adUnitId, adUrlString));
-        rewardedAdsLoaders.loadNextAd(mContext, adUnitId, adUrlString, errorCode);
+        rewardedAdsLoaders.loadNextAd(mContext, adUnitId, adUrlString, generatedParams,
+                errorCode);
     }
 
     public static boolean hasVideo(@NonNull String adUnitId) {
@@ -662,7 +674,7 @@ public class MoPubRewardedVideoManager {
         Preconditions.checkNotNull(errorCode);
 
         if (rewardedAdsLoaders.hasMoreAds(adUnitId) && !errorCode.equals(EXPIRED)) {
-            loadVideo(adUnitId, "", errorCode);
+            loadVideo(adUnitId, "", null, errorCode);
         } else if (sInstance.mVideoListener != null) {
             sInstance.mVideoListener.onRewardedVideoLoadFailure(adUnitId, errorCode);
         }
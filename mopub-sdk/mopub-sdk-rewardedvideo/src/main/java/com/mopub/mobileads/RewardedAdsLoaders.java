@@ -47,6 +47,18 @@ class RewardedAdsLoaders {
                           @NonNull String adUnitId,
                           @NonNull String adUrlString,
                           @Nullable MoPubErrorCode errorCode) {
+        return loadNextAd(context, adUnitId, adUrlString, null, errorCode);
+    }
+
+    /**
+     * @param generatedParams The parameters the url generator put into {@code adUrlString}, or
+     *                        null
+     */
+    Request<?> loadNextAd(@NonNull Context context,
+                          @NonNull String adUnitId,
+                          @NonNull String adUrlString,
+                          @Nullable Map<String, String> generatedParams,
+                          @Nullable MoPubErrorCode errorCode) {
         Preconditions.checkNotNull(adUnitId);
         Preconditions.checkNotNull(context);
 
@@ -54,6 +66,7 @@ class RewardedAdsLoaders {
 
         if (adLoader == null || !adLoader.hasMoreAds()) {
             adLoader = new AdLoaderRewardedVideo(adUrlString,
+                                                 generatedParams,
                                                  AdFormat.REWARDED_VIDEO,
                                                  adUnitId,
                                                  context,
@@ -1,6 +1,7 @@
 package com.mopub.mobileads;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.mopub.common.VisibleForTesting;
@@ -31,6 +32,16 @@ class RewardedVastVideoInterstitial extends VastVideoInterstitial {
         }
     }
 
+    /**
+     * Rewarded videos are usually loaded well before the user chooses to watch one, so they
+     * download after interstitial videos.
+     */
+    @NonNull
+    @Override
+    protected VideoDownloader.DownloadPriority getDownloadPriority() {
+        return VideoDownloader.DownloadPriority.SPECULATIVE;
+    }
+
     @Override
     public void onVastVideoConfigurationPrepared(final VastVideoConfig vastVideoConfig) {
         if (vastVideoConfig != null) {
@@ -16,6 +16,7 @@ import org.robolectric.annotation.Config;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.concurrent.Semaphore;
 
 import static com.mopub.common.CacheService.DiskLruCacheGetListener;
@@ -100,6 +101,59 @@ public class CacheServiceTest {
         assertThat(CacheService.getFromDiskCache(key1)).isNull();
     }
 
+    @Test
+    public void readFromDiskCache_withRange_shouldReadOnlyThatRange() throws Exception {
+        CacheService.initialize(context);
+        CacheService.putToDiskCache(key1, data1.getBytes());
+        byte[] dst = new byte[8];
+
+        int bytesRead = CacheService.readFromDiskCache(key1, 6, dst, 2, 4);
+
+        assertThat(bytesRead).isEqualTo(4);
+        assertThat(new String(dst, 2, 4)).isEqualTo("data");
+        assertThat(dst[0]).isEqualTo((byte) 0);
+        assertThat(dst[1]).isEqualTo((byte) 0);
+    }
+
+    @Test
+    public void readFromDiskCache_withRangePastEndOfEntry_shouldReadRemainingBytes() throws Exception {
+        CacheService.initialize(context);
+        CacheService.putToDiskCache(key1, data1.getBytes());
+        ByteBuffer dst = ByteBuffer.allocate(100);
+
+        int bytesRead = CacheService.readFromDiskCache(key1, 6, dst);
+
+        assertThat(bytesRead).isEqualTo(6);
+        assertThat(dst.position()).isEqualTo(6);
+        assertThat(new String(dst.array(), 0, 6)).isEqualTo("data_1");
+    }
+
+    @Test
+    public void readFromDiskCache_withPositionAtEndOfEntry_shouldReturnMinusOne() throws Exception {
+        CacheService.initialize(context);
+        CacheService.putToDiskCache(key1, data1.getBytes());
+
+        assertThat(CacheService.readFromDiskCache(key1, data1.length(), new byte[4], 0, 4))
+                .isEqualTo(-1);
+    }
+
+    @Test
+    public void readFromDiskCache_whenEmpty_shouldReturnMinusOne() throws Exception {
+        CacheService.initialize(context);
+
+        assertThat(CacheService.readFromDiskCache(key1, 0, new byte[4], 0, 4)).isEqualTo(-1);
+    }
+
+    @Test
+    public void getLengthDiskCache_shouldReturnEntryLength_orMinusOneWhenEmpty() throws Exception {
+        CacheService.initialize(context);
+        assertThat(CacheService.getLengthDiskCache(key1)).isEqualTo(-1);
+
+        CacheService.putToDiskCache(key1, data1.getBytes());
+
+        assertThat(CacheService.getLengthDiskCache(key1)).isEqualTo(data1.length());
+    }
+
     @Test
     public void diskLruCacheAsyncGet_whenPopulated_shouldReturnValue() throws Exception {
         CacheService.initialize(context);
@@ -151,6 +205,96 @@ public class CacheServiceTest {
         assertThat(CacheService.getFromDiskCache(key1)).isEqualTo(data1.getBytes());
     }
 
+    @Test
+    public void edit_withMultipleEntries_commit_shouldWriteAllEntries() throws Exception {
+        CacheService.initialize(context);
+
+        boolean result = CacheService.edit()
+                .put(key1, data1.getBytes())
+                .put("key2", "data2".getBytes())
+                .commit();
+
+        assertThat(result).isTrue();
+        assertThat(CacheService.getFromDiskCache(key1)).isEqualTo(data1.getBytes());
+        assertThat(CacheService.getFromDiskCache("key2")).isEqualTo("data2".getBytes());
+    }
+
+    @Test
+    public void edit_withSameKeyTwice_commit_shouldKeepLastValue() throws Exception {
+        CacheService.initialize(context);
+
+        CacheService.edit()
+                .put(key1, "first".getBytes())
+                .put(key1, data1.getBytes())
+                .commit();
+
+        assertThat(CacheService.getFromDiskCache(key1)).isEqualTo(data1.getBytes());
+    }
+
+    @Test
+    public void edit_withNullKey_commit_shouldWriteOtherEntries_shouldReturnFalse() throws Exception {
+        CacheService.initialize(context);
+
+        boolean result = CacheService.edit()
+                .put(null, "data2".getBytes())
+                .put(key1, data1.getBytes())
+                .commit();
+
+        assertThat(result).isFalse();
+        assertThat(CacheService.getFromDiskCache(key1)).isEqualTo(data1.getBytes());
+    }
+
+    @Test
+    public void edit_withoutInitializing_commit_shouldReturnFalse() throws Exception {
+        assertThat(CacheService.edit().put(key1, data1.getBytes()).commit()).isFalse();
+    }
+
+    @Test
+    public void edit_commitAsync_shouldBeReadableImmediately() throws Exception {
+        CacheService.initialize(context);
+
+        CacheService.edit().put(key1, data1.getBytes()).commitAsync();
+
+        assertThat(CacheService.containsKeyDiskCache(key1)).isTrue();
+        assertThat(CacheService.getFromDiskCache(key1)).isEqualTo(data1.getBytes());
+        assertThat(CacheService.getLengthDiskCache(key1)).isEqualTo(data1.length());
+    }
+
+    @Test
+    public void putToDiskCache_afterCommitAsyncForSameKey_shouldKeepSynchronousValue() throws Exception {
+        CacheService.initialize(context);
+
+        CacheService.edit().put(key1, "queued".getBytes()).commitAsync();
+        assertThat(CacheService.putToDiskCache(key1, data1.getBytes())).isTrue();
+
+        assertThat(CacheService.getFromDiskCache(key1)).isEqualTo(data1.getBytes());
+        Thread.sleep(500);
+        assertThat(CacheService.getFromDiskCache(key1)).isEqualTo(data1.getBytes());
+    }
+
+    @Test
+    public void edit_commit_afterCommitAsyncForSameKey_shouldKeepSynchronousValue() throws Exception {
+        CacheService.initialize(context);
+
+        CacheService.edit().put(key1, "queued".getBytes()).commitAsync();
+        assertThat(CacheService.edit().put(key1, data1.getBytes()).commit()).isTrue();
+
+        assertThat(CacheService.getFromDiskCache(key1)).isEqualTo(data1.getBytes());
+        Thread.sleep(500);
+        assertThat(CacheService.getFromDiskCache(key1)).isEqualTo(data1.getBytes());
+    }
+
+    @Test
+    public void removeFromDiskCache_shouldRemoveEntry() throws Exception {
+        CacheService.initialize(context);
+        CacheService.putToDiskCache(key1, data1.getBytes());
+
+        assertThat(CacheService.removeFromDiskCache(key1)).isTrue();
+        assertThat(CacheService.containsKeyDiskCache(key1)).isFalse();
+        assertThat(CacheService.removeFromDiskCache(key1)).isFalse();
+        assertCachesAreEmpty();
+    }
+
     private static InputStream getInputStreamFromString(final String string) {
         return spy(new ByteArrayInputStream(string.getBytes()));
     }
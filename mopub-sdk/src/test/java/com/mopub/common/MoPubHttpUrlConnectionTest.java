@@ -18,6 +18,8 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.util.List;
 
+import javax.net.ssl.HttpsURLConnection;
+
 import static com.mopub.common.MoPubHttpUrlConnection.urlEncode;
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -42,6 +44,47 @@ public class MoPubHttpUrlConnectionTest {
         assertThat(userAgentHeaders).containsExactly(userAgent);
     }
 
+    @Test
+    public void getHttpUrlConnection_withMoPubHttpsUrl_shouldUseSharedSslSocketFactory() throws Exception {
+        HttpsURLConnection urlConnection =
+                (HttpsURLConnection) MoPubHttpUrlConnection.getHttpUrlConnection(url);
+
+        assertThat(urlConnection.getSSLSocketFactory()).isSameAs(Networking.getSslSocketFactory());
+    }
+
+    @Test
+    public void getHttpUrlConnection_withMoPubHttpsUrl_shouldCountRequest() throws Exception {
+        final long requestCount = Networking.getConnectionPoolMetrics().getRequestCount();
+
+        MoPubHttpUrlConnection.getHttpUrlConnection(url);
+
+        assertThat(Networking.getConnectionPoolMetrics().getRequestCount())
+                .isEqualTo(requestCount + 1);
+    }
+
+    @Test
+    public void getHttpUrlConnection_withOtherHttpsUrl_shouldNotUseSharedSslSocketFactory_shouldNotCountRequest() throws Exception {
+        final long requestCount = Networking.getConnectionPoolMetrics().getRequestCount();
+
+        HttpsURLConnection urlConnection = (HttpsURLConnection)
+                MoPubHttpUrlConnection.getHttpUrlConnection("https://www.example.com");
+
+        assertThat(urlConnection.getSSLSocketFactory())
+                .isNotSameAs(Networking.getSslSocketFactory());
+        assertThat(Networking.getConnectionPoolMetrics().getRequestCount())
+                .isEqualTo(requestCount);
+    }
+
+    @Test
+    public void isMoPubHost_shouldMatchMoPubDomainAndSubdomainsOnly() {
+        assertThat(MoPubHttpUrlConnection.isMoPubHost(Constants.HOST)).isTrue();
+        assertThat(MoPubHttpUrlConnection.isMoPubHost("mopub.com")).isTrue();
+        assertThat(MoPubHttpUrlConnection.isMoPubHost("WWW.MoPub.com")).isTrue();
+        assertThat(MoPubHttpUrlConnection.isMoPubHost("notmopub.com")).isFalse();
+        assertThat(MoPubHttpUrlConnection.isMoPubHost("mopub.com.example.com")).isFalse();
+        assertThat(MoPubHttpUrlConnection.isMoPubHost(null)).isFalse();
+    }
+
     @Test
     public void getHttpUrlConnection_shouldSetConnectAndReadTimeoutTo10Seconds() throws Exception {
         HttpURLConnection urlConnection = MoPubHttpUrlConnection.getHttpUrlConnection(url);
@@ -25,6 +25,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
@@ -39,6 +40,10 @@ import java.util.Map;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -221,6 +226,64 @@ public class MoPubTest {
         verify(mockInitializationListener);
     }
 
+    @Test
+    public void initializeSdk_withStageListener_shouldReportEachStage_beforeInitializationFinished() {
+        final SdkInitializationListener.StageListener stageListener =
+                org.mockito.Mockito.mock(SdkInitializationListener.StageListener.class);
+
+        MoPub.initializeSdk(mActivity, new SdkConfiguration.Builder(INIT_ADUNIT).build(),
+                stageListener);
+
+        final InOrder inOrder = inOrder(stageListener);
+        inOrder.verify(stageListener).onInitializationStageFinished(
+                eq(SdkInitializationListener.Stage.CLIENT_METADATA), anyLong());
+        inOrder.verify(stageListener).onInitializationStageFinished(
+                eq(SdkInitializationListener.Stage.PERSONAL_INFO), anyLong());
+        inOrder.verify(stageListener).onInitializationFinished();
+        verify(stageListener).onInitializationStageFinished(
+                eq(SdkInitializationListener.Stage.ADVANCED_BIDDERS), anyLong());
+        assertThat(MoPub.getPersonalInformationManager()).isNotNull();
+    }
+
+    @Test
+    public void initializeSdk_shouldMakePersonalInfoManagerAvailableBeforeReturning() {
+        Robolectric.getBackgroundThreadScheduler().pause();
+
+        MoPub.initializeSdk(mActivity, new SdkConfiguration.Builder(INIT_ADUNIT).build(),
+                mockInitializationListener);
+
+        assertThat(MoPub.getPersonalInformationManager()).isNotNull();
+        Robolectric.getBackgroundThreadScheduler().unPause();
+    }
+
+    @Test
+    public void queueAdRequestUntilInitialized_withSdkNotInitializing_shouldNotQueueRequest() {
+        final Runnable adRequest = org.mockito.Mockito.mock(Runnable.class);
+
+        assertThat(MoPub.queueAdRequestUntilInitialized(adRequest)).isFalse();
+
+        verify(adRequest, never()).run();
+    }
+
+    @Test
+    public void queueAdRequestUntilInitialized_whileSdkInitializing_shouldRunRequestOnceInitialized() {
+        final Runnable adRequest = org.mockito.Mockito.mock(Runnable.class);
+        Robolectric.getBackgroundThreadScheduler().pause();
+
+        MoPub.initializeSdk(mActivity, new SdkConfiguration.Builder(INIT_ADUNIT).build(),
+                mockInitializationListener);
+
+        assertThat(MoPub.queueAdRequestUntilInitialized(adRequest)).isTrue();
+        verify(adRequest, never()).run();
+
+        Robolectric.flushBackgroundThreadScheduler();
+        Robolectric.getBackgroundThreadScheduler().unPause();
+
+        verify(adRequest).run();
+        verify(mockInitializationListener).onInitializationFinished();
+        assertThat(MoPub.isSdkInitialized()).isTrue();
+    }
+
     @Test
     public void updateActivity_withReflection_shouldExist() throws Exception {
         assertThat(Reflection.getDeclaredMethodWithTraversal(MoPubRewardedVideoManager.class,
@@ -0,0 +1,79 @@
+package com.mopub.common;
+
+import android.app.Activity;
+
+import com.mopub.common.SdkInitializationListener.Stage;
+import com.mopub.common.SdkInitializationListener.StageListener;
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.mobileads.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SdkInitializationPipelineTest {
+
+    private Activity activity;
+    private SdkInitializationListener mockInitializationListener;
+    private StageListener mockStageListener;
+    private SdkInitializationPipeline subject;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(Activity.class).create().get();
+        mockInitializationListener = mock(SdkInitializationListener.class);
+        mockStageListener = mock(StageListener.class);
+        subject = new SdkInitializationPipeline(activity,
+                new SdkConfiguration.Builder("adunit").build(), mockInitializationListener,
+                mockStageListener);
+    }
+
+    @After
+    public void tearDown() {
+        Robolectric.getBackgroundThreadScheduler().unPause();
+        ClientMetadata.clearForTesting();
+        MoPub.clearAdvancedBidders();
+    }
+
+    @Test
+    public void start_shouldRecordEveryStage_shouldNotifyStageListener() {
+        subject.start();
+
+        for (final Stage stage : Stage.values()) {
+            assertThat(subject.getStageDurationMillis(stage)).isNotNull();
+            verify(mockStageListener).onInitializationStageFinished(eq(stage), anyLong());
+        }
+        verify(mockInitializationListener, atLeast(1)).onInitializationFinished();
+    }
+
+    @Test
+    public void start_shouldCreatePersonalInfoManagerBeforeReturning_shouldCreateAdvancedBiddersInBackground() {
+        Robolectric.getBackgroundThreadScheduler().pause();
+
+        subject.start();
+
+        assertThat(MoPub.getPersonalInformationManager()).isNotNull();
+        assertThat(subject.getStageDurationMillis(Stage.CLIENT_METADATA)).isNotNull();
+        assertThat(subject.getStageDurationMillis(Stage.PERSONAL_INFO)).isNotNull();
+        assertThat(subject.getStageDurationMillis(Stage.ADVANCED_BIDDERS)).isNull();
+        verify(mockStageListener, never()).onInitializationStageFinished(
+                eq(Stage.ADVANCED_BIDDERS), anyLong());
+
+        Robolectric.flushBackgroundThreadScheduler();
+
+        assertThat(subject.getStageDurationMillis(Stage.ADVANCED_BIDDERS)).isNotNull();
+    }
+}
@@ -36,6 +36,7 @@ import com.mopub.mobileads.test.support.TestMraidControllerFactory;
 import com.mopub.mobileads.test.support.TestVastManagerFactory;
 import com.mopub.nativeads.factories.CustomEventNativeFactory;
 import com.mopub.nativeads.test.support.TestCustomEventNativeFactory;
+import com.mopub.network.TrackingDispatcher;
 
 import org.junit.runners.model.InitializationError;
 import org.mockito.MockitoAnnotations;
@@ -91,6 +92,7 @@ public class SdkTestRunner extends RobolectricTestRunner {
 
             AsyncTasks.setExecutor(new RoboExecutorService());
             CacheService.clearAndNullCaches();
+            TrackingDispatcher.clearForTesting();
         }
     }
 }
@@ -8,6 +8,7 @@ import android.view.ViewParent;
 import android.view.ViewTreeObserver;
 import android.view.Window;
 
+import com.mopub.common.VisibilityEngine;
 import com.mopub.common.test.support.SdkTestRunner;
 
 import org.junit.Before;
@@ -43,6 +44,7 @@ public class BannerVisibilityTrackerTest {
     private BannerVisibilityTracker subject;
     private BannerVisibilityChecker visibilityChecker;
     private Handler visibilityHandler;
+    private VisibilityEngine visibilityEngine;
 
     private View mockView;
     @Mock
@@ -52,12 +54,14 @@ public class BannerVisibilityTrackerTest {
     public void setUp() throws Exception {
         activity = Robolectric.buildActivity(Activity.class).create().get();
         mockView = createViewMock(View.VISIBLE, 100, 100, 100, 100, true, true);
-        subject = new BannerVisibilityTracker(activity, mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS);
+        visibilityHandler = new Handler();
+        visibilityEngine = new VisibilityEngine(visibilityHandler);
+        subject = new BannerVisibilityTracker(activity, mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS,
+                visibilityEngine);
 
         subject.setBannerVisibilityTrackerListener(visibilityTrackerListener);
 
         visibilityChecker = subject.getBannerVisibilityChecker();
-        visibilityHandler = subject.getVisibilityHandler();
 
         // XXX We need this to ensure that our SystemClock starts
         ShadowSystemClock.uptimeMillis();
@@ -76,9 +80,9 @@ public class BannerVisibilityTrackerTest {
         when(decorView.getViewTreeObserver()).thenReturn(viewTreeObserver);
         when(viewTreeObserver.isAlive()).thenReturn(true);
 
-        subject = new BannerVisibilityTracker(spyActivity, mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS);
-        assertThat(subject.mOnPreDrawListener).isNotNull();
-        verify(viewTreeObserver).addOnPreDrawListener(subject.mOnPreDrawListener);
+        subject = new BannerVisibilityTracker(spyActivity, mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS,
+                visibilityEngine);
+        verify(viewTreeObserver).addOnPreDrawListener(visibilityEngine.getOnPreDrawListener());
         assertThat(subject.mWeakViewTreeObserver.get()).isEqualTo(viewTreeObserver);
     }
 
@@ -94,14 +98,16 @@ public class BannerVisibilityTrackerTest {
         when(decorView.getViewTreeObserver()).thenReturn(viewTreeObserver);
         when(viewTreeObserver.isAlive()).thenReturn(false);
 
-        subject = new BannerVisibilityTracker(mockActivity, mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS);
-        verify(viewTreeObserver, never()).addOnPreDrawListener(subject.mOnPreDrawListener);
+        subject = new BannerVisibilityTracker(mockActivity, mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS,
+                visibilityEngine);
+        verify(viewTreeObserver, never()).addOnPreDrawListener(any(OnPreDrawListener.class));
         assertThat(subject.mWeakViewTreeObserver.get()).isNull();
     }
 
     @Test
     public void constructor_withApplicationContext_shouldNotSetOnPreDrawListener() {
-        subject = new BannerVisibilityTracker(activity.getApplicationContext(), mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS);
+        subject = new BannerVisibilityTracker(activity.getApplicationContext(), mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS,
+                visibilityEngine);
 
         assertThat(subject.mWeakViewTreeObserver.get()).isNull();
     }
@@ -116,7 +122,8 @@ public class BannerVisibilityTrackerTest {
         when(rootView.getViewTreeObserver()).thenReturn(viewTreeObserver);
         when(viewTreeObserver.isAlive()).thenReturn(true);
 
-        subject = new BannerVisibilityTracker(activity.getApplicationContext(), rootView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS);
+        subject = new BannerVisibilityTracker(activity.getApplicationContext(), rootView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS,
+                visibilityEngine);
         assertThat(subject.mWeakViewTreeObserver.get()).isEqualTo(viewTreeObserver);
     }
 
@@ -133,7 +140,8 @@ public class BannerVisibilityTrackerTest {
         when(decorView.getViewTreeObserver()).thenReturn(viewTreeObserver);
         when(viewTreeObserver.isAlive()).thenReturn(true);
 
-        subject = new BannerVisibilityTracker(spyActivity, mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS);
+        subject = new BannerVisibilityTracker(spyActivity, mockView, mockView, MIN_VISIBLE_DIPS, MIN_VISIBLE_MILLIS,
+                visibilityEngine);
         subject.destroy();
 
         assertThat(visibilityHandler.hasMessages(0)).isFalse();
@@ -143,10 +151,10 @@ public class BannerVisibilityTrackerTest {
         assertThat(subject.getBannerVisibilityTrackerListener()).isNull();
     }
 
-    // BannerVisibilityRunnable Tests
+    // Visibility check Tests
     @Test
-    public void visibilityRunnable_run_withViewVisibleForAtLeastMinDuration_shouldCallOnVisibilityChangedCallback_shouldMarkImpTrackerAsFired_shouldNotScheduleVisibilityCheck() throws Exception {
-        subject.new BannerVisibilityRunnable().run();
+    public void onVisibilityCheck_withViewVisibleForAtLeastMinDuration_shouldCallOnVisibilityChangedCallback_shouldMarkImpTrackerAsFired_shouldNotScheduleVisibilityCheck() throws Exception {
+        subject.onVisibilityCheck();
 
         verify(visibilityTrackerListener).onVisibilityChanged();
         assertThat(subject.isImpTrackerFired()).isTrue();
@@ -154,10 +162,10 @@ public class BannerVisibilityTrackerTest {
     }
 
     @Test
-    public void visibilityRunnable_run_withViewNotVisible_shouldNotCallOnVisibilityChangedCallback_shouldNotMarkImpTrackerAsFired_shouldScheduleVisibilityCheck() throws Exception {
+    public void onVisibilityCheck_withViewNotVisible_shouldNotCallOnVisibilityChangedCallback_shouldNotMarkImpTrackerAsFired_shouldScheduleVisibilityCheck() throws Exception {
         when(mockView.getVisibility()).thenReturn(View.INVISIBLE);
 
-        subject.new BannerVisibilityRunnable().run();
+        subject.onVisibilityCheck();
 
         verify(visibilityTrackerListener, never()).onVisibilityChanged();
         assertThat(subject.isImpTrackerFired()).isFalse();
@@ -165,9 +173,10 @@ public class BannerVisibilityTrackerTest {
     }
 
     @Test
-    public void visibilityRunnable_run_witViewVisibleForLessThanMinDuration_shouldNotCallOnVisibilityChangedCallback_shouldNotMarkImpTrackerAsFired_shouldScheduleVisibilityCheck() throws Exception {
-        subject = new BannerVisibilityTracker(activity, mockView, mockView, 1, 1000);
-        subject.new BannerVisibilityRunnable().run();
+    public void onVisibilityCheck_witViewVisibleForLessThanMinDuration_shouldNotCallOnVisibilityChangedCallback_shouldNotMarkImpTrackerAsFired_shouldScheduleVisibilityCheck() throws Exception {
+        subject = new BannerVisibilityTracker(activity, mockView, mockView, 1, 1000,
+                visibilityEngine);
+        subject.onVisibilityCheck();
 
         verify(visibilityTrackerListener, never()).onVisibilityChanged();
         assertThat(subject.isImpTrackerFired()).isFalse();
@@ -190,7 +199,8 @@ public class BannerVisibilityTrackerTest {
 
     @Test
     public void hasRequiredTimeElapsed_withStartTimeSet_withElapsedTimeLessThanMinTimeViewed_shouldReturnFalse() throws Exception {
-        subject = new BannerVisibilityTracker(activity, mockView, mockView, 1, 1000);
+        subject = new BannerVisibilityTracker(activity, mockView, mockView, 1, 1000,
+                visibilityEngine);
         visibilityChecker = subject.getBannerVisibilityChecker();
         visibilityChecker.setStartTimeMillis();
 
@@ -0,0 +1,231 @@
+package com.mopub.mobileads;
+
+import android.app.Activity;
+
+import com.mopub.common.CacheService;
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.common.util.test.support.ShadowMoPubHttpUrlConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+
+import static com.mopub.mobileads.ResumableVideoDownload.CHUNK_KEY_PREFIX;
+import static com.mopub.mobileads.ResumableVideoDownload.CHUNK_SIZE;
+import static com.mopub.mobileads.ResumableVideoDownload.STATE_KEY_PREFIX;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMoPubHttpUrlConnection.class})
+public class ResumableVideoDownloadTest {
+    private static final String URL = "https://video_url";
+    private static final int MAX_SIZE = 25 * 1024 * 1024;
+
+    private ResumableVideoDownload.CancellationSignal notCancelled;
+
+    @Before
+    public void setUp() {
+        CacheService.initialize(Robolectric.buildActivity(Activity.class).create().get());
+        notCancelled = new ResumableVideoDownload.CancellationSignal() {
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        ShadowMoPubHttpUrlConnection.reset();
+        CacheService.clearAndNullCaches();
+    }
+
+    @Test
+    public void download_withInterruptedStream_shouldKeepCompletedChunks() throws Exception {
+        final byte[] firstChunk = filledArray(CHUNK_SIZE, (byte) 1);
+        addPendingConnection(200, CHUNK_SIZE + 100, new InterruptedStream(firstChunk));
+
+        try {
+            new ResumableVideoDownload(URL, MAX_SIZE, 1, notCancelled).download();
+            fail("Expected the dropped connection to surface as an IOException");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        assertThat(CacheService.containsKeyDiskCache(URL)).isFalse();
+        assertThat(CacheService.getFromDiskCache(CHUNK_KEY_PREFIX + 0 + "-" + URL))
+                .isEqualTo(firstChunk);
+        assertThat(new String(CacheService.getFromDiskCache(STATE_KEY_PREFIX + URL)))
+                .isEqualTo((CHUNK_SIZE + 100) + "\n\"etag\"");
+    }
+
+    @Test
+    public void download_withPartialDownloadOnDisk_shouldResumeWithRangeRequest() throws Exception {
+        final byte[] firstChunk = filledArray(CHUNK_SIZE, (byte) 1);
+        final byte[] rest = filledArray(100, (byte) 2);
+        CacheService.putToDiskCache(STATE_KEY_PREFIX + URL,
+                ((CHUNK_SIZE + 100) + "\n\"etag\"").getBytes());
+        CacheService.putToDiskCache(CHUNK_KEY_PREFIX + 0 + "-" + URL, firstChunk);
+        final HttpURLConnection connection = addPendingConnection(206, 100,
+                new ByteArrayInputStream(rest));
+
+        boolean result = new ResumableVideoDownload(URL, MAX_SIZE, 1, notCancelled).download();
+
+        assertThat(result).isTrue();
+        verify(connection).setRequestProperty("Range", "bytes=" + CHUNK_SIZE + "-");
+        verify(connection).setRequestProperty("If-Range", "\"etag\"");
+        final byte[] expected = new byte[CHUNK_SIZE + 100];
+        System.arraycopy(firstChunk, 0, expected, 0, CHUNK_SIZE);
+        System.arraycopy(rest, 0, expected, CHUNK_SIZE, 100);
+        assertThat(CacheService.getFromDiskCache(URL)).isEqualTo(expected);
+        assertThat(CacheService.containsKeyDiskCache(STATE_KEY_PREFIX + URL)).isFalse();
+        assertThat(CacheService.containsKeyDiskCache(CHUNK_KEY_PREFIX + 0 + "-" + URL)).isFalse();
+        assertThat(CacheService.getDiskLruCache().size()).isEqualTo(CHUNK_SIZE + 100);
+    }
+
+    @Test
+    public void download_whenServerIgnoresRangeOnResume_shouldStartOver() throws Exception {
+        CacheService.putToDiskCache(STATE_KEY_PREFIX + URL,
+                ((CHUNK_SIZE + 100) + "\n\"etag\"").getBytes());
+        CacheService.putToDiskCache(CHUNK_KEY_PREFIX + 0 + "-" + URL,
+                filledArray(CHUNK_SIZE, (byte) 1));
+        final byte[] newFile = filledArray(50, (byte) 3);
+        addPendingConnection(200, 50, new ByteArrayInputStream(newFile));
+
+        boolean result = new ResumableVideoDownload(URL, MAX_SIZE, 1, notCancelled).download();
+
+        assertThat(result).isTrue();
+        assertThat(CacheService.getFromDiskCache(URL)).isEqualTo(newFile);
+        assertThat(CacheService.getDiskLruCache().size()).isEqualTo(50);
+    }
+
+    @Test
+    public void download_whenCancelled_shouldNotCacheVideo() throws Exception {
+        final HttpURLConnection connection = addPendingConnection(200, 10,
+                new ByteArrayInputStream(filledArray(10, (byte) 1)));
+
+        boolean result = new ResumableVideoDownload(URL, MAX_SIZE, 1,
+                new ResumableVideoDownload.CancellationSignal() {
+                    @Override
+                    public boolean isCancelled() {
+                        return true;
+                    }
+                }).download();
+
+        assertThat(result).isFalse();
+        assertThat(CacheService.containsKeyDiskCache(URL)).isFalse();
+        verify(connection).disconnect();
+    }
+
+    @Test
+    public void download_withParallelChunks_shouldFetchRemainingChunksAsRanges() throws Exception {
+        final byte[] firstChunk = filledArray(CHUNK_SIZE, (byte) 1);
+        final byte[] secondChunk = filledArray(10, (byte) 2);
+        final HttpURLConnection first = addPendingConnection(206, CHUNK_SIZE,
+                new ByteArrayInputStream(firstChunk));
+        when(first.getHeaderField("Content-Range"))
+                .thenReturn("bytes 0-" + (CHUNK_SIZE - 1) + "/" + (CHUNK_SIZE + 10));
+        final HttpURLConnection second = addPendingConnection(206, 10,
+                new ByteArrayInputStream(secondChunk));
+
+        boolean result = new ResumableVideoDownload(URL, MAX_SIZE, 2, notCancelled).download();
+
+        assertThat(result).isTrue();
+        verify(first).setRequestProperty("Range", "bytes=0-" + (CHUNK_SIZE - 1));
+        verify(second).setRequestProperty("Range",
+                "bytes=" + CHUNK_SIZE + "-" + (CHUNK_SIZE + 9));
+        assertThat(CacheService.getLengthDiskCache(URL)).isEqualTo(CHUNK_SIZE + 10);
+    }
+
+    @Test
+    public void download_withParallelChunks_whenRangesUnsupported_shouldStreamWholeFile()
+            throws Exception {
+        final byte[] file = filledArray(20, (byte) 4);
+        final HttpURLConnection connection = addPendingConnection(200, 20,
+                new ByteArrayInputStream(file));
+
+        boolean result = new ResumableVideoDownload(URL, MAX_SIZE, 2, notCancelled).download();
+
+        assertThat(result).isTrue();
+        assertThat(CacheService.getFromDiskCache(URL)).isEqualTo(file);
+        verify(connection).setRequestProperty("Range", "bytes=0-" + (CHUNK_SIZE - 1));
+    }
+
+    @Test
+    public void download_withContentLengthAboveMax_shouldNotCacheAnything() throws Exception {
+        addPendingConnection(200, 101, new ByteArrayInputStream(filledArray(101, (byte) 1)));
+
+        boolean result = new ResumableVideoDownload(URL, 100, 1, notCancelled).download();
+
+        assertThat(result).isFalse();
+        assertThat(CacheService.getDiskLruCache().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void parseTotalLength_shouldReadTotalFromContentRange() {
+        assertThat(ResumableVideoDownload.parseTotalLength("bytes 0-1023/4096")).isEqualTo(4096);
+        assertThat(ResumableVideoDownload.parseTotalLength("bytes 0-1023/*")).isEqualTo(-1);
+        assertThat(ResumableVideoDownload.parseTotalLength(null)).isEqualTo(-1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpURLConnection addPendingConnection(final int statusCode,
+            final int contentLength, final InputStream inputStream) throws IOException {
+        final HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(connection.getResponseCode()).thenReturn(statusCode);
+        when(connection.getContentLength()).thenReturn(contentLength);
+        when(connection.getInputStream()).thenReturn(inputStream);
+        when(connection.getHeaderField("ETag")).thenReturn("\"etag\"");
+        ShadowMoPubHttpUrlConnection.getPendingUrlConnections().add(connection);
+        return connection;
+    }
+
+    private static byte[] filledArray(final int length, final byte value) {
+        final byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+
+    /**
+     * Returns the given bytes and then fails, like a dropped connection.
+     */
+    private static class InterruptedStream extends InputStream {
+        private final ByteArrayInputStream mBytes;
+
+        InterruptedStream(final byte[] bytes) {
+            mBytes = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = mBytes.read();
+            if (read == -1) {
+                throw new IOException("connection dropped");
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length)
+                throws IOException {
+            final int read = mBytes.read(buffer, offset, length);
+            if (read == -1) {
+                throw new IOException("connection dropped");
+            }
+            return read;
+        }
+    }
+}
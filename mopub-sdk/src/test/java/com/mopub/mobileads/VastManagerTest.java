@@ -64,6 +64,8 @@ public class VastManagerTest {
     @After
     public void tearDown() {
         CacheService.clearAndNullCaches();
+        VideoDownloader.clearDownloaderTasks();
+        VastSelectionCache.clear();
     }
 
     private void prepareVastVideoConfiguration() {
@@ -0,0 +1,29 @@
+package com.mopub.mobileads;
+
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.common.util.Utils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class VastSelectionCacheTest {
+
+    @Test
+    public void getDocumentKey_shouldBeSha1OfDocument() {
+        assertThat(VastSelectionCache.getDocumentKey("<VAST/>")).isEqualTo(Utils.sha1("<VAST/>"));
+    }
+
+    @Test
+    public void getDocumentKey_withSameStringHashCode_shouldReturnDifferentKeys() {
+        // "Aa" and "BB" have the same length and String.hashCode()
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+        assertThat(VastSelectionCache.getDocumentKey("Aa"))
+                .isNotEqualTo(VastSelectionCache.getDocumentKey("BB"));
+    }
+}
@@ -0,0 +1,130 @@
+package com.mopub.mobileads;
+
+import android.os.SystemClock;
+
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.common.util.test.support.ShadowMoPubHttpUrlConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class, shadows = {ShadowMoPubHttpUrlConnection.class})
+public class VastWrapperResolverTest {
+    private static final String URL_1 = "https://wrapper1";
+    private static final String URL_2 = "https://wrapper2";
+
+    private ExecutorService executor;
+    private VastWrapperResolver subject;
+
+    @Before
+    public void setUp() {
+        // One thread so that queued responses are consumed in order
+        executor = Executors.newSingleThreadExecutor();
+        subject = new VastWrapperResolver(executor,
+                SystemClock.elapsedRealtime() + VastWrapperResolver.CHAIN_DEADLINE_MS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void resolve_shouldReturnResponseBody() throws Exception {
+        ShadowMoPubHttpUrlConnection.addPendingResponse(200, "<VAST/>");
+
+        assertThat(subject.resolve(URL_1)).isEqualTo("<VAST/>");
+        assertThat(ShadowMoPubHttpUrlConnection.getLatestRequestUrl()).isEqualTo(URL_1);
+    }
+
+    @Test
+    public void resolve_withUrlResolvedByAnotherResolver_shouldFetchAgain() throws Exception {
+        ShadowMoPubHttpUrlConnection.addPendingResponse(200, "<VAST/>");
+        subject.resolve(URL_1);
+
+        final VastWrapperResolver otherResolver = new VastWrapperResolver(executor,
+                SystemClock.elapsedRealtime() + VastWrapperResolver.CHAIN_DEADLINE_MS);
+        ShadowMoPubHttpUrlConnection.addPendingResponse(200, "<VAST version='3.0'/>");
+
+        assertThat(otherResolver.resolve(URL_1)).isEqualTo("<VAST version='3.0'/>");
+        assertThat(ShadowMoPubHttpUrlConnection.getPendingUrlConnections()).isEmpty();
+    }
+
+    @Test
+    public void resolve_withPrefetchedUrls_shouldUseEachUrlsResponse() throws Exception {
+        ShadowMoPubHttpUrlConnection.addPendingResponse(200, "<VAST>1</VAST>");
+        ShadowMoPubHttpUrlConnection.addPendingResponse(200, "<VAST>2</VAST>");
+
+        subject.prefetch(Arrays.asList(URL_1, URL_2));
+
+        assertThat(subject.resolve(URL_2)).isEqualTo("<VAST>2</VAST>");
+        assertThat(subject.resolve(URL_1)).isEqualTo("<VAST>1</VAST>");
+        assertThat(ShadowMoPubHttpUrlConnection.getPendingUrlConnections()).isEmpty();
+    }
+
+    @Test
+    public void resolve_afterDeadline_shouldThrowSocketTimeoutException() throws Exception {
+        ShadowMoPubHttpUrlConnection.addPendingResponse(200, "<VAST/>");
+        subject = new VastWrapperResolver(executor, SystemClock.elapsedRealtime() - 1);
+
+        try {
+            subject.resolve(URL_1);
+            fail("Expected SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void resolve_withFailedFetch_shouldThrowIOException() throws Exception {
+        // No pending response, so the connection is null
+        try {
+            subject.resolve(URL_1);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void cancel_shouldCancelPrefetchesThatWereNotResolved() throws Exception {
+        final ExecutorService mockExecutor = mock(ExecutorService.class);
+        final Future<String> mockFuture1 = mock(Future.class);
+        final Future<String> mockFuture2 = mock(Future.class);
+        when(mockExecutor.submit(any(Callable.class))).thenReturn(mockFuture1, mockFuture2);
+        when(mockFuture1.get(anyLong(), any(TimeUnit.class)))
+                .thenReturn("<VAST/>");
+        subject = new VastWrapperResolver(mockExecutor,
+                SystemClock.elapsedRealtime() + VastWrapperResolver.CHAIN_DEADLINE_MS);
+
+        subject.prefetch(Arrays.asList(URL_1, URL_2));
+        subject.resolve(URL_1);
+        subject.cancel();
+
+        verify(mockFuture2).cancel(true);
+        verify(mockFuture1, never()).cancel(true);
+    }
+}
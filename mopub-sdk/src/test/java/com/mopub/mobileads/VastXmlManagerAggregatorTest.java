@@ -13,6 +13,7 @@ import com.mopub.mobileads.test.support.VastUtils;
 import com.mopub.network.MoPubRequestQueue;
 import com.mopub.network.Networking;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -368,6 +369,11 @@ public class VastXmlManagerAggregatorTest {
                 screenArea, context);
     }
 
+    @After
+    public void tearDown() {
+        VastSelectionCache.clear();
+    }
+
     // NOTE most of the functionality of this class is tested through VastManagerTest
     // through integration tests
 
@@ -520,6 +526,50 @@ public class VastXmlManagerAggregatorTest {
         assertThat(bestMediaFileUrl).isEqualTo("video_url1");
     }
 
+    @Test
+    public void getBestMediaFileUrl_withCandidatesKey_shouldReuseSelection() throws Exception {
+        final VastMediaXmlManager mediaXmlManager1 =
+                initializeMediaXmlManagerMock(400, 240, "video/mp4", "video_url1");
+        final VastMediaXmlManager mediaXmlManager2 =
+                initializeMediaXmlManagerMock(240, 400, "video/mp4", "video_url2");
+        final List<VastMediaXmlManager> managers =
+                Arrays.asList(mediaXmlManager1, mediaXmlManager2);
+
+        assertThat(subject.getBestMediaFileUrl(managers, "doc/0/0")).isEqualTo("video_url1");
+        assertThat(subject.getBestMediaFileUrl(managers, "doc/0/0")).isEqualTo("video_url1");
+
+        assertThat(VastSelectionCache.getMissCount()).isEqualTo(1);
+        assertThat(VastSelectionCache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getBestMediaFileUrl_withCandidatesKey_withCachedMediaFileNoLongerValid_shouldScoreAgain() throws Exception {
+        final VastMediaXmlManager mediaXmlManager1 =
+                initializeMediaXmlManagerMock(400, 240, "video/mp4", "video_url1");
+        final VastMediaXmlManager mediaXmlManager2 =
+                initializeMediaXmlManagerMock(240, 400, "video/mp4", "video_url2");
+        subject.getBestMediaFileUrl(Arrays.asList(mediaXmlManager1, mediaXmlManager2), "doc/0/0");
+
+        final VastMediaXmlManager invalidMediaXmlManager =
+                initializeMediaXmlManagerMock(400, 240, "video/rubbish", "video_url1");
+        final String bestMediaFileUrl = subject.getBestMediaFileUrl(
+                Arrays.asList(invalidMediaXmlManager, mediaXmlManager2), "doc/0/0");
+
+        assertThat(bestMediaFileUrl).isEqualTo("video_url2");
+    }
+
+    @Test
+    public void getBestMediaFileUrl_withCandidatesKey_withNoValidMediaFile_shouldNotCacheSelection() throws Exception {
+        final VastMediaXmlManager mediaXmlManager =
+                initializeMediaXmlManagerMock(400, 240, "video/rubbish", "video_url");
+
+        assertThat(subject.getBestMediaFileUrl(Arrays.asList(mediaXmlManager), "doc/0/0")).isNull();
+        assertThat(subject.getBestMediaFileUrl(Arrays.asList(mediaXmlManager), "doc/0/0")).isNull();
+
+        assertThat(VastSelectionCache.getHitCount()).isEqualTo(0);
+        assertThat(VastSelectionCache.getMissCount()).isEqualTo(2);
+    }
+
     @Test
     public void getBestMediaFileUrl_withInvalidMediaTypeAndNullDimension_shouldReturnNull() throws Exception {
         final Display display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
@@ -563,6 +613,24 @@ public class VastXmlManagerAggregatorTest {
         assertCompanionAdsAreEqual(companionXmlManager, bestCompanionAd);
     }
 
+    @Test
+    public void getBestCompanionAd_withCandidatesKey_shouldReuseSelectionPerOrientation() throws Exception {
+        final VastCompanionAdXmlManager companionXmlManager = initializeCompanionXmlManagerMock(
+                300, 250, "image_url", "image/jpeg", null, null, null);
+        final List<VastCompanionAdXmlManager> managers = Arrays.asList(companionXmlManager);
+
+        subject.getBestCompanionAd(managers,
+                VastXmlManagerAggregator.CompanionOrientation.LANDSCAPE, "doc/0");
+        subject.getBestCompanionAd(managers,
+                VastXmlManagerAggregator.CompanionOrientation.PORTRAIT, "doc/0");
+        final VastCompanionAdConfig bestCompanionAd = subject.getBestCompanionAd(managers,
+                VastXmlManagerAggregator.CompanionOrientation.LANDSCAPE, "doc/0");
+
+        assertCompanionAdsAreEqual(companionXmlManager, bestCompanionAd);
+        assertThat(VastSelectionCache.getMissCount()).isEqualTo(2);
+        assertThat(VastSelectionCache.getHitCount()).isEqualTo(1);
+    }
+
     @Test
     public void getBestCompanionAd_withInvalidVastResource_shouldReturnNull() throws Exception {
         final VastCompanionAdXmlManager companionXmlManager = initializeCompanionXmlManagerMock(
@@ -4,9 +4,12 @@ import android.app.Activity;
 import android.content.Context;
 
 import com.mopub.common.CacheService;
+import com.mopub.common.ClientMetadata;
+import com.mopub.common.ClientMetadata.MoPubNetworkType;
 import com.mopub.common.test.support.SdkTestRunner;
 import com.mopub.common.util.test.support.ShadowAsyncTasks;
 import com.mopub.common.util.test.support.ShadowMoPubHttpUrlConnection;
+import com.mopub.mobileads.VideoDownloader.DownloadPriority;
 import com.mopub.mobileads.VideoDownloader.VideoDownloaderListener;
 import com.mopub.mobileads.VideoDownloader.VideoDownloaderTask;
 
@@ -19,13 +22,12 @@ import org.mockito.Mock;
 import org.robolectric.Robolectric;
 import org.robolectric.annotation.Config;
 
-import java.lang.ref.WeakReference;
-
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(SdkTestRunner.class)
 @Config(constants = BuildConfig.class, shadows = {ShadowAsyncTasks.class, ShadowMoPubHttpUrlConnection.class})
@@ -33,6 +35,7 @@ public class VideoDownloaderTest {
     @Mock VideoDownloaderListener mockListener;
     private final static String expectedUrl1 = "https://video_url";
     private final static String expectedUrl2 = "https://video_url2";
+    private final static String expectedUrl3 = "https://video_url3";
 
     @Before
     public void setUp() {
@@ -44,6 +47,8 @@ public class VideoDownloaderTest {
     public void tearDown() {
         VideoDownloader.clearDownloaderTasks();
         CacheService.clearAndNullCaches();
+        ClientMetadata.clearForTesting();
+        ShadowAsyncTasks.reset();
     }
 
     @Test
@@ -74,60 +79,222 @@ public class VideoDownloaderTest {
     }
 
     @Test
-    public void cache_shouldAddVideoDownloaderTaskToStaticCollection() {
-        assertThat(VideoDownloader.getDownloaderTasks()).isEmpty();
+    public void cache_withSameUrlTwice_shouldStartOneDownload_shouldNotifyBothListeners() {
+        final VideoDownloaderListener otherListener = mock(VideoDownloaderListener.class);
+
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        ShadowAsyncTasks.reset();
+        VideoDownloader.cache(expectedUrl1, otherListener);
+
+        assertThat(ShadowAsyncTasks.wasCalled()).isFalse();
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(1);
+
+        task.onPostExecute(true);
+
+        verify(mockListener).onComplete(true);
+        verify(otherListener).onComplete(true);
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void cache_withMoreThanMaxConcurrentDownloads_shouldQueueUntilOneCompletes() {
+        VideoDownloader.setMaxConcurrentDownloads(1);
 
         VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        VideoDownloader.cache(expectedUrl2, mockListener);
+
+        assertThat(ShadowAsyncTasks.getLatestAsyncTask()).isSameAs(task1);
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(1);
+        assertThat(VideoDownloader.getPendingDownloadCount()).isEqualTo(1);
 
-        VideoDownloaderTask expectedTask =
-                (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        task1.onPostExecute(true);
 
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(1);
-        assertThat(VideoDownloader.getDownloaderTasks().pop().get()).isEqualTo(expectedTask);
+        assertThat(ShadowAsyncTasks.getLatestAsyncTask()).isNotSameAs(task1);
+        assertThat(ShadowAsyncTasks.getLatestParams()).containsOnly(expectedUrl2);
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(1);
+        assertThat(VideoDownloader.getPendingDownloadCount()).isEqualTo(0);
     }
 
     @Test
-    public void cache_shouldAddMultipleVideoDownloaderTasksToStaticCollection() {
+    public void cache_withQueuedDownloads_shouldStartHighestPriorityFirst() {
+        VideoDownloader.setMaxConcurrentDownloads(1);
+
         VideoDownloader.cache(expectedUrl1, mockListener);
-        VideoDownloaderTask expectedTask1 =
-                (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        VideoDownloader.cache(expectedUrl2, DownloadPriority.SPECULATIVE, mockListener);
+        VideoDownloader.cache(expectedUrl3, DownloadPriority.INTERSTITIAL, mockListener);
+
+        task1.onPostExecute(true);
+
+        assertThat(ShadowAsyncTasks.getLatestParams()).containsOnly(expectedUrl3);
+    }
+
+    @Test
+    public void cache_withShowImminentDownload_shouldStartBeforeInterstitialDownloads() {
+        VideoDownloader.setMaxConcurrentDownloads(1);
+
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        VideoDownloader.cache(expectedUrl2, DownloadPriority.INTERSTITIAL, mockListener);
+        VideoDownloader.cache(expectedUrl3, DownloadPriority.SHOW_IMMINENT, mockListener);
+
+        task1.onPostExecute(true);
 
+        assertThat(ShadowAsyncTasks.getLatestParams()).containsOnly(expectedUrl3);
+    }
+
+    @Test
+    public void cache_withQueuedUrlAtHigherPriority_shouldRaisePriority() {
+        VideoDownloader.setMaxConcurrentDownloads(1);
+
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        VideoDownloader.cache(expectedUrl2, DownloadPriority.SPECULATIVE, mockListener);
+        VideoDownloader.cache(expectedUrl3, DownloadPriority.SPECULATIVE, mockListener);
+        VideoDownloader.cache(expectedUrl3, DownloadPriority.INTERSTITIAL, mockListener);
+
+        task1.onPostExecute(true);
+
+        assertThat(ShadowAsyncTasks.getLatestParams()).containsOnly(expectedUrl3);
+        assertThat(VideoDownloader.getPendingDownloadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void cache_onSlowNetwork_shouldDownloadOneAtATime() {
+        setNetworkType(MoPubNetworkType.GGG);
+
+        VideoDownloader.cache(expectedUrl1, mockListener);
         VideoDownloader.cache(expectedUrl2, mockListener);
-        VideoDownloaderTask expectedTask2 =
-                (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
 
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(2);
-        assertThat(VideoDownloader.getDownloaderTasks().pop().get()).isEqualTo(expectedTask1);
-        assertThat(VideoDownloader.getDownloaderTasks().pop().get()).isEqualTo(expectedTask2);
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(1);
+        assertThat(VideoDownloader.getPendingDownloadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void cache_withSpeculativeDownloadOnMeteredNetwork_shouldWaitForOtherDownloads() {
+        setNetworkType(MoPubNetworkType.MOBILE);
+
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        VideoDownloader.cache(expectedUrl2, DownloadPriority.SPECULATIVE, mockListener);
+
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(1);
+        assertThat(VideoDownloader.getPendingDownloadCount()).isEqualTo(1);
+
+        task1.onPostExecute(true);
+
+        assertThat(ShadowAsyncTasks.getLatestParams()).containsOnly(expectedUrl2);
     }
 
     @Test
-    public void cancelAllDownloaderTasks_shouldCancelAllTasksAndRemoveFromStaticCollection() {
-        final VideoDownloaderTask task1 = mock(VideoDownloaderTask.class);
-        final VideoDownloaderTask task2 = mock(VideoDownloaderTask.class);
-        VideoDownloader.getDownloaderTasks().add(new WeakReference<VideoDownloaderTask>(task1));
-        VideoDownloader.getDownloaderTasks().add(new WeakReference<VideoDownloaderTask>(task2));
+    public void cache_withSpeculativeDownloadOnWifi_shouldStartImmediately() {
+        setNetworkType(MoPubNetworkType.WIFI);
+
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        VideoDownloader.cache(expectedUrl2, DownloadPriority.SPECULATIVE, mockListener);
+
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(2);
+        assertThat(ShadowAsyncTasks.getLatestParams()).containsOnly(expectedUrl2);
+    }
+
+    @Test
+    public void getMaxConcurrentDownloads_shouldOnlyLimitSlowNetworks() {
+        VideoDownloader.setMaxConcurrentDownloads(3);
+
+        assertThat(VideoDownloader.getMaxConcurrentDownloads(MoPubNetworkType.GG)).isEqualTo(1);
+        assertThat(VideoDownloader.getMaxConcurrentDownloads(MoPubNetworkType.GGG)).isEqualTo(1);
+        assertThat(VideoDownloader.getMaxConcurrentDownloads(MoPubNetworkType.GGGG)).isEqualTo(3);
+        assertThat(VideoDownloader.getMaxConcurrentDownloads(MoPubNetworkType.WIFI)).isEqualTo(3);
+        assertThat(VideoDownloader.getMaxConcurrentDownloads(MoPubNetworkType.UNKNOWN)).isEqualTo(3);
+    }
+
+    @Test
+    public void cancelAllDownloaderTasks_shouldCancelActiveAndPendingDownloads() {
+        VideoDownloader.setMaxConcurrentDownloads(1);
+        final VideoDownloaderListener otherListener = mock(VideoDownloaderListener.class);
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        VideoDownloader.cache(expectedUrl2, otherListener);
 
         VideoDownloader.cancelAllDownloaderTasks();
 
-        verify(task1).cancel(true);
-        verify(task2).cancel(true);
-        assertThat(VideoDownloader.getDownloaderTasks()).isEmpty();
+        assertThat(task1.isCancelled()).isTrue();
+        verify(mockListener).onComplete(false);
+        verify(otherListener).onComplete(false);
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(0);
+        assertThat(VideoDownloader.getPendingDownloadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void cancelLastDownloadTask_shouldOnlyCancelMostRecentDownload() {
+        final VideoDownloaderListener otherListener = mock(VideoDownloaderListener.class);
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        VideoDownloader.cache(expectedUrl2, otherListener);
+        final VideoDownloaderTask task2 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+
+        VideoDownloader.cancelLastDownloadTask();
+
+        assertThat(task1.isCancelled()).isFalse();
+        assertThat(task2.isCancelled()).isTrue();
+        verify(mockListener, never()).onComplete(anyBoolean());
+        verify(otherListener).onComplete(false);
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void cache_afterCancellingActiveDownload_shouldStartNewDownload() {
+        final VideoDownloaderListener otherListener = mock(VideoDownloaderListener.class);
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+
+        VideoDownloader.cancelLastDownloadTask();
+        VideoDownloader.cache(expectedUrl1, otherListener);
+        final VideoDownloaderTask task2 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+
+        assertThat(task1.isCancelled()).isTrue();
+        assertThat(task2).isNotSameAs(task1);
+        assertThat(task2.isCancelled()).isFalse();
+        verify(mockListener).onComplete(false);
+        verify(otherListener, never()).onComplete(anyBoolean());
     }
 
     @Test
-    public void cancelLastDownloaderTasks_shouldCancelTasksAndRemoveFromStaticCollection() {
-        final VideoDownloaderTask task1 = mock(VideoDownloaderTask.class);
-        final VideoDownloaderTask task2 = mock(VideoDownloaderTask.class);
-        VideoDownloader.getDownloaderTasks().add(new WeakReference<VideoDownloaderTask>(task1));
-        VideoDownloader.getDownloaderTasks().add(new WeakReference<VideoDownloaderTask>(task2));
+    public void cancelLastDownloadTask_withSharedDownload_shouldOnlyCancelLastRequest() {
+        final VideoDownloaderListener otherListener = mock(VideoDownloaderListener.class);
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        VideoDownloader.cache(expectedUrl1, otherListener);
 
         VideoDownloader.cancelLastDownloadTask();
 
-        verify(task1, never()).cancel(anyBoolean());
-        verify(task2).cancel(true);
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(1);
-        assertThat(VideoDownloader.getDownloaderTasks().pop().get()).isEqualTo(task1);
+        assertThat(task1.isCancelled()).isFalse();
+        verify(otherListener).onComplete(false);
+        verify(mockListener, never()).onComplete(anyBoolean());
+
+        VideoDownloader.cancelLastDownloadTask();
+
+        assertThat(task1.isCancelled()).isTrue();
+        verify(mockListener).onComplete(false);
+        verify(otherListener).onComplete(false);
+        assertThat(VideoDownloader.getActiveDownloadCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void cancelLastDownloadTask_withSharedDownload_shouldStillNotifyRemainingListener() {
+        final VideoDownloaderListener otherListener = mock(VideoDownloaderListener.class);
+        VideoDownloader.cache(expectedUrl1, mockListener);
+        final VideoDownloaderTask task1 = (VideoDownloaderTask) ShadowAsyncTasks.getLatestAsyncTask();
+        VideoDownloader.cache(expectedUrl1, otherListener);
+
+        VideoDownloader.cancelLastDownloadTask();
+        task1.onPostExecute(true);
+
+        verify(mockListener).onComplete(true);
+        verify(otherListener).onComplete(false);
+        verify(otherListener, never()).onComplete(true);
     }
 
     @Test
@@ -212,47 +379,45 @@ public class VideoDownloaderTest {
     }
 
     @Test
-    public void onPostExecute_withSuccessTrue_shouldCallOnCompleteTrue_shouldRemoveDownloadTaskFromQueue() {
+    public void onPostExecute_withSuccessTrue_shouldCallOnCompleteTrue() {
         VideoDownloaderTask videoDownloaderTask = new VideoDownloaderTask(mockListener);
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(1);
 
         videoDownloaderTask.onPostExecute(true);
 
         verify(mockListener).onComplete(true);
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(0);
     }
 
     @Test
-    public void onPostExecute_withSuccessFalse_shouldCallOnCompleteFalse_shouldRemoveDownloadTaskFromQueue() {
+    public void onPostExecute_withSuccessFalse_shouldCallOnCompleteFalse() {
         VideoDownloaderTask videoDownloaderTask = new VideoDownloaderTask(mockListener);
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(1);
 
         videoDownloaderTask.onPostExecute(false);
 
         verify(mockListener).onComplete(false);
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(0);
     }
 
     @Test
-    public void onPostExecute_withSuccessNull_shouldCallOnCompleteFalse_shouldRemoveDownloadTaskFromQueue() {
+    public void onPostExecute_withSuccessNull_shouldCallOnCompleteFalse() {
         VideoDownloaderTask videoDownloaderTask = new VideoDownloaderTask(mockListener);
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(1);
 
         videoDownloaderTask.onPostExecute(null);
 
         verify(mockListener).onComplete(false);
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(0);
     }
 
     @Test
-    public void cancelledTask_shouldCallOnCompleteFalse_shouldRemoveDownloadTaskFromQueue() {
+    public void cancelledTask_shouldCallOnCompleteFalse() {
         VideoDownloaderTask videoDownloaderTask = new VideoDownloaderTask(mockListener);
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(1);
 
         videoDownloaderTask.cancel(true);
 
         verify(mockListener).onComplete(false);
-        assertThat(VideoDownloader.getDownloaderTasks()).hasSize(0);
+    }
+
+    private static void setNetworkType(final MoPubNetworkType networkType) {
+        final ClientMetadata clientMetadata = mock(ClientMetadata.class);
+        when(clientMetadata.getActiveNetworkType()).thenReturn(networkType);
+        ClientMetadata.setInstance(clientMetadata);
     }
 
     private static String createLongString(int size) {
@@ -190,6 +190,17 @@ public class WebViewAdUrlGeneratorTest {
         assertThat(adUrl).startsWith("https://");
     }
 
+    @Test
+    public void generateAdUrl_shouldExposeUnencodedParamsOfUrl() {
+        subject.withAdUnitId("adUnitId").withKeywords("key:value with spaces");
+
+        final String adUrl = generateMinimumUrlString();
+
+        assertThat(adUrl).contains("q=key%3Avalue%20with%20spaces");
+        assertThat(subject.getGeneratedParams().get("q")).isEqualTo("key:value with spaces");
+        assertThat(subject.getGeneratedParams().get("id")).isEqualTo("adUnitId");
+    }
+
     @Test
     public void generateAdUrl_shouldRunMultipleTimes() throws Exception{
         String expectedAdUrl = new AdUrlBuilder(expectedUdid).withCurrentConsentStatus(ConsentStatus.UNKNOWN.getValue()).build();
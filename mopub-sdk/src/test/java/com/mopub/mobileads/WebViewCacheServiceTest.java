@@ -1,6 +1,8 @@
 package com.mopub.mobileads;
 
+import android.content.ComponentCallbacks2;
 import android.os.Handler;
+import android.os.SystemClock;
 
 import com.mopub.common.ExternalViewabilitySessionManager;
 import com.mopub.common.test.support.SdkTestRunner;
@@ -13,12 +15,14 @@ import org.robolectric.annotation.Config;
 
 import java.util.Map;
 
+import static com.mopub.common.Constants.AD_EXPIRATION_DELAY;
+
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
-import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.withSettings;
 
 @RunWith(SdkTestRunner.class)
 @Config(constants = BuildConfig.class)
@@ -50,11 +54,14 @@ public class WebViewCacheServiceTest {
     }
 
     @Test
-    public void storeWebView_withEmptyCache_shouldNotSetRunnableForTrimCache() {
+    public void storeWebView_withEmptyCache_shouldSetRunnableForTrimCache() {
         WebViewCacheService.storeWebViewConfig(broadcastIdentifier, interstitial,
                 baseWebView, viewabilityManager);
 
-        verifyZeroInteractions(handler);
+        verify(handler).removeCallbacks(WebViewCacheService.sTrimCacheRunnable);
+        verify(handler).postDelayed(WebViewCacheService.sTrimCacheRunnable,
+                WebViewCacheService.TRIM_CACHE_FREQUENCY_MILLIS);
+        verifyNoMoreInteractions(handler);
         final Map<Long, WebViewCacheService.Config> configs = WebViewCacheService.getWebViewConfigs();
         assertThat(configs.size()).isEqualTo(1);
         assertThat(configs.get(broadcastIdentifier).getWebView()).isEqualTo(baseWebView);
@@ -69,15 +76,19 @@ public class WebViewCacheServiceTest {
         WebViewCacheService.storeWebViewConfig(broadcastIdentifier + 1, interstitial,
                 baseWebView, viewabilityManager);
 
-        verify(handler).removeCallbacks(WebViewCacheService.sTrimCacheRunnable);
-        verify(handler).postDelayed(WebViewCacheService.sTrimCacheRunnable,
+        verify(handler, times(2)).removeCallbacks(WebViewCacheService.sTrimCacheRunnable);
+        verify(handler, times(2)).postDelayed(WebViewCacheService.sTrimCacheRunnable,
                 WebViewCacheService.TRIM_CACHE_FREQUENCY_MILLIS);
         verifyNoMoreInteractions(handler);
     }
 
     @Test
-    public void storeWebView_withMaxSizeReached_shouldTrimCache_shouldIgnoreStoreRequest() {
-        for(int i = 0; i < WebViewCacheService.MAX_SIZE; i++) {
+    public void storeWebView_withMaxSizeReached_shouldEvictOldestWebView_shouldStoreNewWebView() {
+        final Interstitial listeningInterstitial = mock(Interstitial.class,
+                withSettings().extraInterfaces(WebViewCacheService.EvictionListener.class));
+        WebViewCacheService.storeWebViewConfig(broadcastIdentifier, listeningInterstitial,
+                baseWebView, viewabilityManager);
+        for (int i = 1; i < WebViewCacheService.MAX_SIZE; i++) {
             WebViewCacheService.storeWebViewConfig(broadcastIdentifier + i, interstitial,
                     baseWebView, viewabilityManager);
         }
@@ -87,17 +98,86 @@ public class WebViewCacheServiceTest {
         WebViewCacheService.storeWebViewConfig(broadcastIdentifier - 1, interstitial, baseWebView,
                 viewabilityManager);
 
-        // This is called MAX_SIZE - 1 times since trim() is not called on the first run due to
-        // the maps being empty. And then this is called an additional time to test the one
-        // after MAX_SIZE is reached.
-        verify(handler, times(WebViewCacheService.MAX_SIZE)).removeCallbacks(
-                WebViewCacheService.sTrimCacheRunnable);
-        verify(handler, times(WebViewCacheService.MAX_SIZE)).postDelayed(
-                WebViewCacheService.sTrimCacheRunnable,
-                WebViewCacheService.TRIM_CACHE_FREQUENCY_MILLIS);
-
         assertThat(configs.size()).isEqualTo(WebViewCacheService.MAX_SIZE);
-        assertThat(configs.get(broadcastIdentifier-1)).isNull();
+        assertThat(configs.get(broadcastIdentifier)).isNull();
+        assertThat(configs.get(broadcastIdentifier - 1)).isNotNull();
+        assertThat(WebViewCacheService.getEvictionCount()).isEqualTo(1);
+        verify(baseWebView).destroy();
+        verify(viewabilityManager).endDisplaySession();
+        verify((WebViewCacheService.EvictionListener) listeningInterstitial).onWebViewEvicted(
+                broadcastIdentifier, WebViewCacheService.EvictionReason.CAPACITY);
+    }
+
+    @Test
+    public void storeWebView_shouldNotExceedMaxSizeBytes() {
+        for (int i = 0; i < WebViewCacheService.MAX_SIZE * 2; i++) {
+            WebViewCacheService.storeWebViewConfig(broadcastIdentifier + i, interstitial,
+                    baseWebView, viewabilityManager);
+        }
+
+        assertThat(WebViewCacheService.getSizeBytes())
+                .isLessThanOrEqualTo(WebViewCacheService.getMaxSizeBytes());
+    }
+
+    @Test
+    public void popWebView_withExpiredAd_shouldReturnNull_shouldEvictWebView() {
+        WebViewCacheService.storeWebViewConfig(broadcastIdentifier, interstitial,
+                baseWebView, viewabilityManager);
+        SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + AD_EXPIRATION_DELAY);
+
+        assertThat(WebViewCacheService.popWebViewConfig(broadcastIdentifier)).isNull();
+
+        assertThat(WebViewCacheService.getWebViewConfigs()).isEmpty();
+        assertThat(WebViewCacheService.getMissCount()).isEqualTo(1);
+        verify(baseWebView).destroy();
+    }
+
+    @Test
+    public void trimCache_shouldRemoveExpiredWebViews() {
+        WebViewCacheService.storeWebViewConfig(broadcastIdentifier, interstitial,
+                baseWebView, viewabilityManager);
+        SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + AD_EXPIRATION_DELAY);
+
+        WebViewCacheService.trimCache();
+
+        assertThat(WebViewCacheService.getWebViewConfigs()).isEmpty();
+        assertThat(WebViewCacheService.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void trimMemory_withBackgroundLevel_shouldEvictHalfOfWebViews() {
+        for (int i = 0; i < 4; i++) {
+            WebViewCacheService.storeWebViewConfig(broadcastIdentifier + i, interstitial,
+                    baseWebView, viewabilityManager);
+        }
+
+        WebViewCacheService.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        final Map<Long, WebViewCacheService.Config> configs = WebViewCacheService.getWebViewConfigs();
+        assertThat(configs.size()).isEqualTo(2);
+        assertThat(configs.get(broadcastIdentifier)).isNull();
+        assertThat(configs.get(broadcastIdentifier + 3)).isNotNull();
+    }
+
+    @Test
+    public void trimMemory_withCompleteLevel_shouldEvictAllWebViews() {
+        WebViewCacheService.storeWebViewConfig(broadcastIdentifier, interstitial,
+                baseWebView, viewabilityManager);
+
+        WebViewCacheService.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        assertThat(WebViewCacheService.getWebViewConfigs()).isEmpty();
+        assertThat(WebViewCacheService.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void trimMemory_withUiHiddenLevel_shouldKeepWebViews() {
+        WebViewCacheService.storeWebViewConfig(broadcastIdentifier, interstitial,
+                baseWebView, viewabilityManager);
+
+        WebViewCacheService.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(WebViewCacheService.getWebViewConfigs().size()).isEqualTo(1);
     }
 
     @Test
@@ -108,6 +188,7 @@ public class WebViewCacheServiceTest {
         final WebViewCacheService.Config result = WebViewCacheService.popWebViewConfig(broadcastIdentifier);
 
         assertThat(WebViewCacheService.getWebViewConfigs()).isEmpty();
+        assertThat(WebViewCacheService.getHitCount()).isEqualTo(1);
         assertThat(result.getWebView()).isEqualTo(baseWebView);
         assertThat(result.getWeakInterstitial().get()).isEqualTo(interstitial);
         assertThat(result.getViewabilityManager()).isEqualTo(viewabilityManager);
@@ -5,6 +5,8 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.Handler;
+import android.webkit.ValueCallback;
 import android.webkit.WebSettings;
 import android.webkit.WebViewClient;
 
@@ -54,7 +56,9 @@ public class MraidBridgeTest {
     @Mock(answer = Answers.RETURNS_DEEP_STUBS) MraidWebView mockBannerWebView;
     @Mock(answer = Answers.RETURNS_DEEP_STUBS) MraidWebView mockInterstitialWebView;
     @Mock WebSettings mockWebSettings;
+    @Mock Handler mockHandler;
     @Captor ArgumentCaptor<WebViewClient> bannerWebViewClientCaptor;
+    @Captor ArgumentCaptor<Runnable> runnableCaptor;
 
     private Activity activity;
     private MraidBridge subjectBanner;
@@ -159,8 +163,8 @@ public class MraidBridgeTest {
         attachWebViews();
         boolean result = subjectBanner.handleShouldOverrideUrl("bad bad bad");
 
-        verify(mockBannerWebView).loadUrl(startsWith(
-                "javascript:window.mraidbridge.notifyErrorEvent"));
+        verify(mockBannerWebView).evaluateJavascript(startsWith(
+                "window.mraidbridge.notifyErrorEvent"), eq((ValueCallback<String>) null));
         assertThat(result).isTrue();
     }
 
@@ -198,8 +202,8 @@ public class MraidBridgeTest {
         attachWebViews();
         boolean result = subjectBanner.handleShouldOverrideUrl("mraid://bad-command");
 
-        verify(mockBannerWebView).loadUrl(startsWith(
-                "javascript:window.mraidbridge.notifyErrorEvent"));
+        verify(mockBannerWebView).evaluateJavascript(startsWith(
+                "window.mraidbridge.notifyErrorEvent"), eq((ValueCallback<String>) null));
         assertThat(result).isTrue();
     }
 
@@ -364,6 +368,96 @@ public class MraidBridgeTest {
                 anyMapOf(String.class, String.class));
     }
 
+    @Test
+    public void notifyStateUpdates_shouldSendLatestValuesInOneScriptOnNextLoop() {
+        final MraidBridge subject = new MraidBridge(mockAdReport, PlacementType.INLINE,
+                mockNativeCommandHandler, mockHandler);
+        subject.attachView(mockBannerWebView);
+        final MraidScreenMetrics screenMetrics = new MraidScreenMetrics(activity, 1.0f);
+        screenMetrics.setScreenSize(320, 480);
+
+        subject.notifyViewability(true);
+        subject.notifyPlacementType(PlacementType.INLINE);
+        subject.notifyScreenMetrics(screenMetrics);
+        subject.notifyScreenMetrics(screenMetrics);
+        subject.notifyViewability(false);
+
+        verify(mockHandler).post(runnableCaptor.capture());
+        verify(mockBannerWebView, never()).evaluateJavascript(anyString(),
+                any(ValueCallback.class));
+
+        runnableCaptor.getValue().run();
+
+        verify(mockBannerWebView).evaluateJavascript(eq("mraidbridge.setIsViewable(false);"
+                + "mraidbridge.setPlacementType(\"inline\");"
+                + "mraidbridge.setScreenSize(320,480);mraidbridge.setMaxSize(0,0);"
+                + "mraidbridge.setCurrentPosition(0,0,0,0);"
+                + "mraidbridge.setDefaultPosition(0,0,0,0);"
+                + "mraidbridge.notifySizeChangeEvent(0,0);"), eq((ValueCallback<String>) null));
+        assertThat(subject.getInjectedScriptCount()).isEqualTo(1);
+        assertThat(subject.getStateUpdateCount()).isEqualTo(5);
+
+        // Nothing left to send
+        subject.flushPendingState();
+        assertThat(subject.getInjectedScriptCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void flushPendingState_shouldSendUpdatesInOrderFirstSet() {
+        final MraidBridge subject = new MraidBridge(mockAdReport, PlacementType.INLINE,
+                mockNativeCommandHandler, mockHandler);
+        subject.attachView(mockBannerWebView);
+
+        subject.notifyViewState(ViewState.LOADING);
+        subject.notifyPlacementType(PlacementType.INTERSTITIAL);
+        subject.notifyViewState(ViewState.DEFAULT);
+        subject.flushPendingState();
+
+        verify(mockBannerWebView).evaluateJavascript(eq("mraidbridge.setState(\"default\");"
+                + "mraidbridge.setPlacementType(\"interstitial\");"),
+                eq((ValueCallback<String>) null));
+    }
+
+    @Test
+    public void injectJavaScript_withPendingStateUpdates_shouldSendStateFirstInSameScript() {
+        final MraidBridge subject = new MraidBridge(mockAdReport, PlacementType.INLINE,
+                mockNativeCommandHandler, mockHandler);
+        subject.attachView(mockBannerWebView);
+
+        subject.notifyViewState(ViewState.DEFAULT);
+        subject.notifyReady();
+
+        verify(mockBannerWebView).evaluateJavascript(eq("mraidbridge.setState(\"default\");"
+                + "mraidbridge.notifyReadyEvent();"), eq((ValueCallback<String>) null));
+        verify(mockHandler).removeCallbacks(any(Runnable.class));
+        assertThat(subject.getInjectedScriptCount()).isEqualTo(1);
+    }
+
+    @Config(sdk = Build.VERSION_CODES.JELLY_BEAN_MR2)
+    @Test
+    public void injectJavaScript_beforeKitKat_shouldLoadJavascriptUrl() {
+        attachWebViews();
+
+        subjectBanner.injectJavaScript("webviewDidAppear();");
+
+        verify(mockBannerWebView).loadUrl("javascript:webviewDidAppear();");
+    }
+
+    @Test
+    public void detach_shouldDropPendingStateUpdates() {
+        final MraidBridge subject = new MraidBridge(mockAdReport, PlacementType.INLINE,
+                mockNativeCommandHandler, mockHandler);
+        subject.attachView(mockBannerWebView);
+        subject.notifyViewability(true);
+
+        subject.detach();
+        subject.attachView(mockBannerWebView);
+        subject.flushPendingState();
+
+        verify(mockBannerWebView, never()).evaluateJavascript(anyString(),
+                any(ValueCallback.class));
+    }
+
     private void attachWebViews() {
         subjectBanner.attachView(mockBannerWebView);
         subjectInterstitial.attachView(mockInterstitialWebView);
@@ -84,6 +84,7 @@ public class MraidControllerTest {
     public void setUp() {
         ShadowApplication.setDisplayMetricsDensity(1.0f);
         WebViewCacheService.clearAll();
+        MraidWebViewPool.clearAll();
 
         activity = spy(Robolectric.buildActivity(Activity.class).create().get());
         activity.setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
@@ -1006,6 +1007,16 @@ public class MraidControllerTest {
         assertThat(subject.getTwoPartWebView()).isNull();
     }
 
+    @Test
+    public void destroy_shouldNotReturnMraidWebViewToPool() {
+        final MraidWebView mraidWebView = subject.getMraidWebView();
+
+        subject.destroy();
+
+        assertThat(MraidWebViewPool.size()).isEqualTo(0);
+        assertThat(MraidWebViewPool.obtain(activity)).isNotSameAs(mraidWebView);
+    }
+
     @Test
     public void destroy_afterDestroy_shouldNotThrowAnException() {
         subject.destroy();
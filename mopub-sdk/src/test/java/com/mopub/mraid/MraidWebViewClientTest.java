@@ -1,19 +1,34 @@
 package com.mopub.mraid;
 
+import android.net.Uri;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+
 import com.mopub.common.test.support.SdkTestRunner;
 import com.mopub.mobileads.BuildConfig;
+import com.mopub.mobileads.resource.MraidJavascript;
 
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mock;
 import org.robolectric.annotation.Config;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 import static org.fest.assertions.api.Assertions.assertThat;
 
 @RunWith(SdkTestRunner.class)
 @Config(constants = BuildConfig.class)
 public class MraidWebViewClientTest {
 
+    @Mock private WebView mockWebView;
+
     private MraidWebViewClient subject;
 
     @Before
@@ -62,4 +77,83 @@ public class MraidWebViewClientTest {
     public void matchesInjectionUrl_withOpaqueUri_shouldNotMatch() throws Exception {
         assertThat(subject.matchesInjectionUrl("mailto:mraid.js@js.com")).isFalse();
     }
+
+    @Test
+    public void matchesInjectionUrl_withMraidJsUrl_withFragment_shouldMatch() throws Exception {
+        assertThat(subject.matchesInjectionUrl("https://host/path/MRAID.JS?v=2#top")).isTrue();
+    }
+
+    @Test
+    public void matchesInjectionUrl_withMraidJsInQueryOrHost_shouldNotMatch() throws Exception {
+        assertThat(subject.matchesInjectionUrl("https://host/script?name=mraid.js")).isFalse();
+        assertThat(subject.matchesInjectionUrl("https://mraid.js")).isFalse();
+        assertThat(subject.matchesInjectionUrl("https://host/mraid.json")).isFalse();
+    }
+
+    @Test
+    public void shouldInterceptRequest_withMraidJsUrl_shouldServeMraidJavascript() throws Exception {
+        final String expected = "javascript:" + MraidJavascript.JAVASCRIPT_SOURCE;
+
+        final WebResourceResponse first =
+                subject.shouldInterceptRequest(mockWebView, "https://host/mraid.js");
+        final WebResourceResponse second =
+                subject.shouldInterceptRequest(mockWebView, "https://host/mraid.js");
+
+        assertThat(first.getMimeType()).isEqualTo("text/javascript");
+        assertThat(first.getEncoding()).isEqualTo("UTF-8");
+        assertThat(readFully(first.getData())).isEqualTo(expected);
+        assertThat(readFully(second.getData())).isEqualTo(expected);
+    }
+
+    /**
+     * Compares matching the subresource urls of a large creative with and without the suffix
+     * check. Run manually; timings under Robolectric are only meaningful relative to each other.
+     */
+    @Ignore("Benchmark")
+    @Test
+    public void benchmark_matchesInjectionUrl_withManySubresources() {
+        final List<String> urls = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            urls.add("https://cdn.example.com/creative/" + i + "/asset" + i + ".png?cb=" + i);
+        }
+        urls.add("https://ads.mopub.com/mraid.js");
+
+        final int iterations = 200;
+        for (int i = 0; i < iterations / 10; i++) {
+            for (final String url : urls) {
+                subject.matchesInjectionUrl(url);
+                "mraid.js".equals(Uri.parse(url.toLowerCase(Locale.US)).getLastPathSegment());
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (final String url : urls) {
+                "mraid.js".equals(Uri.parse(url.toLowerCase(Locale.US)).getLastPathSegment());
+            }
+        }
+        final long parsedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (final String url : urls) {
+                subject.matchesInjectionUrl(url);
+            }
+        }
+        final long suffixNanos = System.nanoTime() - start;
+
+        final int matches = iterations * urls.size();
+        System.out.println("Parse every url: " + parsedNanos / matches + " ns/url");
+        System.out.println("Suffix check:    " + suffixNanos / matches + " ns/url");
+    }
+
+    private static String readFully(final InputStream inputStream) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toString("UTF-8");
+    }
 }
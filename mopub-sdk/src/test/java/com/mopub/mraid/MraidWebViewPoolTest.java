@@ -0,0 +1,109 @@
+package com.mopub.mraid;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.mobileads.BuildConfig;
+import com.mopub.mraid.MraidBridge.MraidWebView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class MraidWebViewPoolTest {
+
+    private Activity activity;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(Activity.class).create().get();
+        MraidWebViewPool.clearAll();
+    }
+
+    @After
+    public void tearDown() {
+        MraidWebViewPool.clearAll();
+    }
+
+    @Test
+    public void obtain_withEmptyPool_shouldCreateWebView_shouldCountMiss() {
+        final MraidWebView webView = MraidWebViewPool.obtain(activity);
+
+        assertThat(webView).isNotNull();
+        assertThat(MraidWebViewPool.getMissCount()).isEqualTo(1);
+        assertThat(MraidWebViewPool.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void warmUpNextWebView_shouldFillPoolUpToMaxSize() {
+        MraidWebViewPool.warmUp(activity);
+
+        assertThat(MraidWebViewPool.warmUpNextWebView()).isTrue();
+        assertThat(MraidWebViewPool.warmUpNextWebView()).isFalse();
+        assertThat(MraidWebViewPool.warmUpNextWebView()).isFalse();
+
+        assertThat(MraidWebViewPool.size()).isEqualTo(MraidWebViewPool.MAX_SIZE);
+    }
+
+    @Test
+    public void obtain_withWarmedUpPool_shouldReturnPooledWebView() {
+        MraidWebViewPool.warmUp(activity);
+        MraidWebViewPool.warmUpNextWebView();
+
+        MraidWebViewPool.obtain(activity);
+
+        assertThat(MraidWebViewPool.size()).isEqualTo(0);
+        assertThat(MraidWebViewPool.getHitCount()).isEqualTo(1);
+        assertThat(MraidWebViewPool.getMissCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void obtain_shouldNotReturnSameWebViewTwice() {
+        final MraidWebView webView = MraidWebViewPool.obtain(activity);
+        MraidWebViewPool.warmUpNextWebView();
+        MraidWebViewPool.warmUpNextWebView();
+
+        assertThat(MraidWebViewPool.obtain(activity)).isNotSameAs(webView);
+        assertThat(MraidWebViewPool.obtain(activity)).isNotSameAs(webView);
+    }
+
+    @Test
+    public void trim_withModerateLevel_shouldKeepOneWebView() {
+        MraidWebViewPool.warmUp(activity);
+        MraidWebViewPool.warmUpNextWebView();
+        MraidWebViewPool.warmUpNextWebView();
+
+        MraidWebViewPool.trim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+
+        assertThat(MraidWebViewPool.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void trim_withLowLevel_shouldReleaseAllWebViews() {
+        MraidWebViewPool.warmUp(activity);
+        MraidWebViewPool.warmUpNextWebView();
+        MraidWebViewPool.warmUpNextWebView();
+
+        MraidWebViewPool.trim(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(MraidWebViewPool.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void onTrimMemory_shouldTrimPool() {
+        MraidWebViewPool.warmUp(activity);
+        MraidWebViewPool.warmUpNextWebView();
+
+        activity.getApplication().onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        assertThat(MraidWebViewPool.size()).isEqualTo(0);
+    }
+}
@@ -57,6 +57,7 @@ public class HttpDiskCompositeDataSourceTest {
     @After
     public void tearDown() throws Exception {
         CacheService.clearAndNullCaches();
+        RangeIndex.clear();
     }
 
     @Test
@@ -326,7 +327,8 @@ public class HttpDiskCompositeDataSourceTest {
                 "5000".getBytes());
         assertThat(CacheService.getFromDiskCache(
                 HttpDiskCompositeDataSource.INTERVALS_KEY_PREFIX + uri.toString())).isEqualTo(
-                "[\"{start : 0, length : 1000}\"]".getBytes());
+                new byte[]{RangeIndex.FORMAT_VERSION, 0, (byte) 0xE8, 0x07});
+        assertThat(HttpDiskCompositeDataSource.getCachedFraction(uri.toString())).isEqualTo(0.2f);
     }
 
     @Test
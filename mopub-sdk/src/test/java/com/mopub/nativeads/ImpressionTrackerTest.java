@@ -1,6 +1,5 @@
 package com.mopub.nativeads;
 
-import android.os.Handler;
 import android.view.View;
 
 import com.mopub.common.test.support.SdkTestRunner;
@@ -19,8 +18,6 @@ import java.util.HashMap;
 
 import static com.mopub.nativeads.VisibilityTracker.VisibilityChecker;
 import static org.fest.assertions.api.Assertions.assertThat;
-import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -37,7 +34,6 @@ public class ImpressionTrackerTest {
     @Mock private ImpressionInterface impressionInterface;
     @Mock private ImpressionInterface impressionInterface2;
     @Mock private VisibilityTracker visibilityTracker;
-    @Mock private Handler handler;
     @Mock private View view;
     @Mock private View view2;
 
@@ -50,7 +46,7 @@ public class ImpressionTrackerTest {
         trackedViews = new HashMap<View, ImpressionInterface>(10);
         final VisibilityChecker visibilityChecker = new VisibilityChecker();
         subject = new ImpressionTracker(trackedViews, pollingViews, visibilityChecker,
-                visibilityTracker, handler);
+                visibilityTracker);
 
         timeStampWrapper = new TimestampWrapper<ImpressionInterface>(impressionInterface);
 
@@ -166,7 +162,7 @@ public class ImpressionTrackerTest {
     }
 
     @Test
-    public void clear_shouldClearViewTrackedViews_shouldClearPollingViews_shouldClearVisibilityTracker_shouldClearPollHandler() {
+    public void clear_shouldClearViewTrackedViews_shouldClearPollingViews_shouldClearVisibilityTracker() {
         trackedViews.put(view, impressionInterface);
         trackedViews.put(view2, impressionInterface);
         pollingViews.put(view, timeStampWrapper);
@@ -181,7 +177,6 @@ public class ImpressionTrackerTest {
         assertThat(trackedViews).isEmpty();
         assertThat(pollingViews).isEmpty();
         verify(visibilityTracker).clear();
-        verify(handler).removeMessages(0);
     }
     
     @Test
@@ -201,29 +196,16 @@ public class ImpressionTrackerTest {
         assertThat(trackedViews).isEmpty();
         assertThat(pollingViews).isEmpty();
         verify(visibilityTracker).clear();
-        verify(handler).removeMessages(0);
 
         verify(visibilityTracker).destroy();
         assertThat(subject.getVisibilityTrackerListener()).isNull();
     }
 
     @Test
-    public void scheduleNextPoll_shouldPostDelayedThePollingRunnable() {
-        when(handler.hasMessages(0)).thenReturn(false);
-
-        subject.scheduleNextPoll();
-
-        verify(handler).postDelayed(any(ImpressionTracker.PollingRunnable.class), eq((long) 250));
-    }
-
-    @Test
-    public void scheduleNextPoll_withMessages_shouldNotPostDelayedThePollingRunnable() {
-        when(handler.hasMessages(0)).thenReturn(true);
-
+    public void scheduleNextPoll_shouldScheduleVisibilityCheck() {
         subject.scheduleNextPoll();
 
-        verify(handler, never())
-                .postDelayed(any(ImpressionTracker.PollingRunnable.class), eq((long) 250));
+        verify(visibilityTracker).scheduleVisibilityCheck();
     }
 
     @Test
@@ -236,7 +218,7 @@ public class ImpressionTrackerTest {
                 .onVisibilityChanged(Lists.newArrayList(view), Lists.<View>newArrayList());
 
         assertThat(pollingViews.keySet()).containsOnly(view);
-        verify(handler).postDelayed(any(ImpressionTracker.PollingRunnable.class), eq((long) 250));
+        verify(visibilityTracker).scheduleVisibilityCheck();
     }
 
     @Test
@@ -257,52 +239,51 @@ public class ImpressionTrackerTest {
     }
 
     @Test
-    public void pollingRunnableRun_whenLessThanOneSecondHasElapsed_shouldNotTrackImpression_shouldScheduleNextPoll() {
+    public void pollViews_whenLessThanOneSecondHasElapsed_shouldNotTrackImpression_shouldScheduleNextPoll() {
         // Force the last viewed timestamp to be a known value
         timeStampWrapper.mCreatedTimestamp = 5555;
         pollingViews.put(view, timeStampWrapper);
 
         // We progress 999 milliseconds
         Robolectric.getForegroundThreadScheduler().advanceTo(5555 + 999);
-        subject.new PollingRunnable().run();
+        subject.pollViews();
 
         verify(impressionInterface, never()).recordImpression(view);
 
         assertThat(pollingViews.keySet()).containsOnly(view);
-        verify(handler).postDelayed(any(ImpressionTracker.PollingRunnable.class), eq((long) 250));
+        verify(visibilityTracker).scheduleVisibilityCheck();
     }
 
     @Test
-    public void pollingRunnableRun_whenMoreThanOneSecondHasElapsed_shouldTrackImpression_shouldNotScheduleNextPoll() {
+    public void pollViews_whenMoreThanOneSecondHasElapsed_shouldTrackImpression_shouldNotScheduleNextPoll() {
         // Force the last viewed timestamp to be a known value
         timeStampWrapper.mCreatedTimestamp = 5555;
         pollingViews.put(view, timeStampWrapper);
 
         // We progress 1000 milliseconds
         Robolectric.getForegroundThreadScheduler().advanceTo(5555 + 1000);
-        subject.new PollingRunnable().run();
+        subject.pollViews();
 
         verify(impressionInterface).recordImpression(view);
 
         assertThat(pollingViews).isEmpty();
-        verify(handler, never())
-                .postDelayed(any(ImpressionTracker.PollingRunnable.class), eq((long) 250));
+        verify(visibilityTracker, never()).scheduleVisibilityCheck();
     }
 
     @Test(expected = NullPointerException.class)
-    public void pollingRunnableRun_whenWrapperIsNull_shouldThrowNPE() {
+    public void pollViews_whenWrapperIsNull_shouldThrowNPE() {
         pollingViews.put(view, null);
-        subject.new PollingRunnable().run();
+        subject.pollViews();
 
         verify(impressionInterface, never()).recordImpression(view);
     }
 
     @Test(expected = NullPointerException.class)
-    public void pollingRunnableRun_whenImpressionInterfaceIsNull_shouldThrowNPE() {
+    public void pollViews_whenImpressionInterfaceIsNull_shouldThrowNPE() {
         // This doesn't normally happen; perhaps we're being overly defensive
         pollingViews.put(view, new TimestampWrapper<ImpressionInterface>(null));
 
-        subject.new PollingRunnable().run();
+        subject.pollViews();
 
         verify(impressionInterface, never()).recordImpression(view);
     }
@@ -113,6 +113,23 @@ public class MoPubNativeTest {
         assertThat(Robolectric.getForegroundThreadScheduler().size()).isEqualTo(0);
     }
 
+    @Test
+    public void makeRequest_whileSdkInitializing_thenDestroy_shouldNotRequestAd() throws Exception {
+        new Reflection.MethodBuilder(null, "clearAdvancedBidders")
+                .setStatic(MoPub.class)
+                .setAccessible()
+                .execute();
+        Robolectric.getBackgroundThreadScheduler().pause();
+        MoPub.initializeSdk(context, new SdkConfiguration.Builder("adunit").build(), null);
+
+        subject.makeRequest();
+        subject.destroy();
+        Robolectric.flushBackgroundThreadScheduler();
+        Robolectric.getBackgroundThreadScheduler().unPause();
+
+        verify(mockRequestQueue, never()).add(any(Request.class));
+    }
+
     @Test
     public void requestNativeAd_shouldFireNetworkRequest() {
         subject.requestNativeAd("https://www.mopub.com", null);
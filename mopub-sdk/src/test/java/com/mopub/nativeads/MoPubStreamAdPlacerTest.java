@@ -3,6 +3,7 @@ package com.mopub.nativeads;
 import android.app.Activity;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.FrameLayout;
 
 import com.mopub.common.test.support.SdkTestRunner;
 import com.mopub.mobileads.BuildConfig;
@@ -380,6 +381,35 @@ public class MoPubStreamAdPlacerTest {
         verify(mStubNativeAd).renderAdView(view);
     }
 
+    @Test
+    public void getAdView_afterAdViewPrerendered_shouldUsePrerenderedView() {
+        final FrameLayout parent = new FrameLayout(activity);
+        final NativeAd secondNativeAd = mock(NativeAd.class);
+        final View prerenderedView = new View(activity);
+        when(secondNativeAd.createAdView(activity, parent)).thenReturn(prerenderedView);
+        when(mockAdSource.dequeueAd()).thenReturn(mStubNativeAd, (NativeAd) null);
+        subject.loadAds("test-ad-unit-id");
+        subject.handlePositioningLoad(positioning);
+        subject.handleAdsAvailable();
+        subject.setItemCount(100);
+        subject.getAdView(1, null, parent);
+
+        when(mockAdSource.dequeueAd()).thenReturn(secondNativeAd, (NativeAd) null);
+        subject.placeAdsInRange(0, 10);
+        subject.prerenderNextAdView();
+
+        assertThat(subject.getAdView(3, null, parent)).isEqualTo(prerenderedView);
+        verify(secondNativeAd).createAdView(activity, parent);
+        verify(secondNativeAd).renderAdView(prerenderedView);
+    }
+
+    @Test
+    public void setAdCacheDepth_shouldSetMinCacheDepthOfAdSource() {
+        subject.setAdCacheDepth(3);
+
+        verify(mockAdSource).setMinCacheDepth(3);
+    }
+
     @Test
     public void getAdView_withConvertView_shouldCallRenderer() {
         View convertView = new View(activity);
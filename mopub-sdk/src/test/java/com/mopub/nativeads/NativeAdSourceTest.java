@@ -22,6 +22,7 @@ import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -381,4 +382,119 @@ public class NativeAdSourceTest {
         assertThat(subject.getRetryTime()).isEqualTo(defaultRetryTime);
         verify(mockReplenishCacheHandler, never()).postDelayed(any(Runnable.class), anyLong());
     }
+
+    @Test
+    public void getTargetCacheDepth_withoutFillLatency_shouldReturnDefaultCacheDepth() {
+        subject.dequeueAd();
+        subject.dequeueAd();
+
+        assertThat(subject.getTargetCacheDepth()).isEqualTo(NativeAdSource.DEFAULT_CACHE_DEPTH);
+    }
+
+    @Test
+    public void getTargetCacheDepth_withAdsDequeuedWithinFillLatency_shouldGrowCache() {
+        subject.mAverageFillLatencyMs = 2000;
+        subject.dequeueAd();
+        subject.dequeueAd();
+
+        assertThat(subject.getTargetCacheDepth()).isEqualTo(3);
+
+        // Dequeues older than the fill latency no longer count
+        SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + 2000);
+        assertThat(subject.getTargetCacheDepth()).isEqualTo(NativeAdSource.DEFAULT_CACHE_DEPTH);
+    }
+
+    @Test
+    public void getTargetCacheDepth_shouldNotExceedMaxCacheDepth() {
+        subject.mAverageFillLatencyMs = 2000;
+        for (int i = 0; i < 2 * NativeAdSource.MAX_CACHE_DEPTH; i++) {
+            subject.dequeueAd();
+        }
+
+        assertThat(subject.getTargetCacheDepth()).isEqualTo(NativeAdSource.MAX_CACHE_DEPTH);
+    }
+
+    @Test
+    public void setMinCacheDepth_shouldRequestAdsInParallel() {
+        final MoPubNative mockParallelMoPubNative = mock(MoPubNative.class);
+        subject.setMoPubNative(mockMoPubNative);
+        subject.setParallelMoPubNative(mockParallelMoPubNative);
+
+        subject.setMinCacheDepth(3);
+
+        verify(mockMoPubNative).makeRequest(any(RequestParameters.class), eq(0));
+        verify(mockParallelMoPubNative).makeRequest(any(RequestParameters.class), eq(1));
+        assertThat(subject.mRequestInFlight).isTrue();
+        assertThat(subject.mParallelRequestInFlight).isTrue();
+    }
+
+    @Test
+    public void replenishCache_withCacheDepthOfOne_shouldNotRequestAdsInParallel() {
+        final MoPubNative mockParallelMoPubNative = mock(MoPubNative.class);
+        subject.setMoPubNative(mockMoPubNative);
+        subject.setParallelMoPubNative(mockParallelMoPubNative);
+
+        subject.replenishCache();
+
+        verify(mockMoPubNative).makeRequest(any(RequestParameters.class), eq(0));
+        verify(mockParallelMoPubNative, never()).makeRequest(any(RequestParameters.class),
+                any(Integer.class));
+    }
+
+    @Test
+    public void parallelNetworkListener_onNativeLoad_shouldAddToCache_shouldReplenishCache() {
+        final MoPubNative mockParallelMoPubNative = mock(MoPubNative.class);
+        subject.setMoPubNative(mockMoPubNative);
+        subject.setParallelMoPubNative(mockParallelMoPubNative);
+        subject.mRequestInFlight = true;
+        subject.setMinCacheDepth(3);
+
+        subject.getParallelNetworkListener().onNativeLoad(mMockNativeAd);
+
+        assertThat(nativeAdCache).hasSize(1);
+        verify(mockAdSourceListener).onAdsAvailable();
+        assertThat(subject.mSequenceNumber).isEqualTo(1);
+        // Cache of 1 and a request in flight are still short of the depth of 3
+        verify(mockParallelMoPubNative, times(2)).makeRequest(any(RequestParameters.class),
+                any(Integer.class));
+    }
+
+    @Test
+    public void replenishCache_afterParallelLoad_shouldNotReuseSequenceNumber() {
+        final MoPubNative mockParallelMoPubNative = mock(MoPubNative.class);
+        subject.setMoPubNative(mockMoPubNative);
+        subject.setParallelMoPubNative(mockParallelMoPubNative);
+        subject.setMinCacheDepth(3);
+        verify(mockMoPubNative).makeRequest(any(RequestParameters.class), eq(0));
+        verify(mockParallelMoPubNative).makeRequest(any(RequestParameters.class), eq(1));
+
+        subject.getParallelNetworkListener().onNativeLoad(mMockNativeAd);
+        subject.mRequestInFlight = false;
+        subject.replenishCache();
+
+        verify(mockParallelMoPubNative).makeRequest(any(RequestParameters.class), eq(2));
+        verify(mockMoPubNative).makeRequest(any(RequestParameters.class), eq(3));
+    }
+
+    @Test
+    public void parallelNetworkListener_onNativeFail_shouldNotRetry() {
+        subject.mParallelRequestInFlight = true;
+
+        subject.getParallelNetworkListener().onNativeFail(NativeErrorCode.NETWORK_NO_FILL);
+
+        assertThat(subject.mParallelRequestInFlight).isFalse();
+        verify(mockReplenishCacheHandler, never()).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void clear_shouldDestroyParallelMoPubNative() {
+        final MoPubNative mockParallelMoPubNative = mock(MoPubNative.class);
+        subject.setParallelMoPubNative(mockParallelMoPubNative);
+        subject.mParallelRequestInFlight = true;
+
+        subject.clear();
+
+        verify(mockParallelMoPubNative).destroy();
+        assertThat(subject.mParallelRequestInFlight).isFalse();
+    }
 }
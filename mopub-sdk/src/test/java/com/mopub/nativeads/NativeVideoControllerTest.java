@@ -531,6 +531,19 @@ public class NativeVideoControllerTest {
         verify(mockListener).onStateChanged(true, STATE_IDLE);
     }
 
+    @Test
+    public void onPlayerStateChanged_withReadyThenBufferingWhilePlaying_shouldCountBufferUnderrun() {
+        subject.prepare(this);
+
+        subject.onPlayerStateChanged(true, STATE_BUFFERING);
+        subject.onPlayerStateChanged(true, STATE_READY);
+        subject.onPlayerStateChanged(true, STATE_BUFFERING);
+        subject.onPlayerStateChanged(true, STATE_READY);
+        subject.onPlayerStateChanged(false, STATE_BUFFERING);
+
+        assertThat(subject.getBufferUnderrunCount()).isEqualTo(1);
+    }
+
     @Test
     public void seekTo_shouldCallExoPlayerSeekTo_shouldCallProgressRunnableSeekTo() {
         subject.prepare(this);
@@ -4,8 +4,10 @@ package com.mopub.nativeads;
 
 import com.mopub.common.test.support.SdkTestRunner;
 import com.mopub.mobileads.BuildConfig;
+import com.mopub.nativeads.MoPubNativeAdPositioning.MoPubClientPositioning;
 
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -14,6 +16,7 @@ import org.robolectric.annotation.Config;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static com.mopub.nativeads.PlacementData.NOT_FOUND;
 import static org.fest.assertions.api.Assertions.assertThat;
@@ -641,6 +644,30 @@ public class PlacementDataTest {
         checkInsertionPositions(9, adsAt15repeating, 1, 5, 8);
     }
 
+    @Test
+    public void insertItems_beyondRepeatingPositionsLookedUp_shouldMoveLaterPositions() {
+        final PlacementData lookedUp = PlacementData.fromAdPositioning(
+                MoPubNativeAdPositioning.clientPositioning().enableRepeatingPositions(3));
+        lookedUp.shouldPlaceAd(30);
+
+        for (int i = 0; i < 3; i++) {
+            adsRepeating.insertItem(5);
+            lookedUp.insertItem(5);
+        }
+
+        checkInsertionPositions(19, adsRepeating, 2, 4, 9, 11, 13, 15, 17, 19);
+        checkInsertionPositions(19, lookedUp, 2, 4, 9, 11, 13, 15, 17, 19);
+    }
+
+    @Test
+    public void removeThenInsertItems_beyondRepeatingPositionsLookedUp_shouldMoveLaterPositions() {
+        adsRepeating.removeItem(5);
+        adsRepeating.removeItem(5);
+        adsRepeating.insertItem(12);
+
+        checkInsertionPositions(19, adsRepeating, 2, 4, 5, 6, 8, 10, 13, 15, 17, 19);
+    }
+
     @Test
     public void removeThenInsertItem_atZero_shouldBeAtZero() {
         adsAt15repeating.placeAd(1, mMockNativeAd);
@@ -796,6 +823,90 @@ public class PlacementDataTest {
         checkPlacedPositions(20, adsAt15repeating);
     }
 
+    @Test
+    public void placeAds_beyondTwoHundredAds_shouldKeepPlacingAds() {
+        final int adCount = 1000;
+        for (int i = 0; i < adCount; i++) {
+            final int position = adsRepeating.nextInsertionPosition(i == 0 ? 0 : 3 * i - 1);
+            assertThat(position).isEqualTo(3 * i + 2);
+            adsRepeating.placeAd(position, mMockNativeAd);
+        }
+
+        assertThat(adsRepeating.getPlacedAdPositions()).hasSize(adCount);
+        assertThat(adsRepeating.isPlacedAd(3 * (adCount - 1) + 2)).isTrue();
+        assertThat(adsRepeating.getAdjustedCount(2 * adCount)).isEqualTo(3 * adCount - 1);
+        assertThat(adsRepeating.nextInsertionPosition(3 * adCount)).isEqualTo(3 * adCount + 2);
+    }
+
+    @Test
+    public void fixedPositions_beyondTwoHundredAds_shouldAllBeDesired() {
+        final MoPubClientPositioning positioning = MoPubNativeAdPositioning.clientPositioning();
+        for (int i = 0; i < 300; i++) {
+            positioning.addFixedPosition(2 * i + 1);
+        }
+        final PlacementData placementData = PlacementData.fromAdPositioning(positioning);
+
+        assertThat(placementData.shouldPlaceAd(300)).isTrue();
+        assertThat(placementData.nextInsertionPosition(300)).isEqualTo(NOT_FOUND);
+    }
+
+    /**
+     * Times inserting and removing items and placing and clearing ads in a 10,000 item feed with
+     * an ad every 5 items. Run manually; timings under Robolectric are only meaningful relative to
+     * each other.
+     */
+    @Ignore("Benchmark")
+    @Test
+    public void benchmark_longFeedWithFrequentInsertsAndRemovals() {
+        final int itemCount = 10000;
+        final int iterations = 20000;
+        final Random random = new Random(0);
+        final PlacementData placementData = PlacementData.fromAdPositioning(
+                MoPubNativeAdPositioning.clientPositioning().enableRepeatingPositions(5));
+
+        long start = System.nanoTime();
+        int position = placementData.nextInsertionPosition(0);
+        while (position != NOT_FOUND && position < itemCount) {
+            placementData.placeAd(position, mMockNativeAd);
+            position = placementData.nextInsertionPosition(position);
+        }
+        final long placeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            final int originalPosition = random.nextInt(itemCount);
+            if (i % 2 == 0) {
+                placementData.insertItem(originalPosition);
+            } else {
+                placementData.removeItem(originalPosition);
+            }
+        }
+        final long mutateNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            final int originalPosition = random.nextInt(itemCount);
+            placementData.getOriginalPosition(placementData.getAdjustedPosition(originalPosition));
+        }
+        final long mapNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations / 10; i++) {
+            final int adjustedPosition = random.nextInt(itemCount);
+            placementData.clearAdsInRange(adjustedPosition, adjustedPosition + 10);
+            position = placementData.nextInsertionPosition(adjustedPosition - 1);
+            if (position != NOT_FOUND) {
+                placementData.placeAd(position, mMockNativeAd);
+            }
+        }
+        final long clearNanos = System.nanoTime() - start;
+
+        System.out.println("Place ads:        " + placeNanos / 1000 + " us total");
+        System.out.println("Insert/remove:    " + mutateNanos / iterations + " ns/op");
+        System.out.println("Map positions:    " + mapNanos / iterations + " ns/op");
+        System.out.println("Clear and place:  " + clearNanos / (iterations / 10) + " ns/op");
+    }
+
     void checkInsertionPositions(int maxValue, PlacementData placementData, Integer... positions) {
         List<Integer> expected = Arrays.asList(positions);
         List<Integer> actual = new ArrayList<Integer>();
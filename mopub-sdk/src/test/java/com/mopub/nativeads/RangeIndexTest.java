@@ -0,0 +1,140 @@
+package com.mopub.nativeads;
+
+import android.app.Activity;
+
+import com.mopub.common.CacheService;
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.mobileads.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.util.TreeSet;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class RangeIndexTest {
+
+    private static final String KEY = "https://www.someurl/video.mp4";
+
+    @Before
+    public void setUp() throws Exception {
+        CacheService.initialize(Robolectric.buildActivity(Activity.class).create().get());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CacheService.clearAndNullCaches();
+        RangeIndex.clear();
+    }
+
+    @Test
+    public void encode_thenDecode_shouldRoundTripIntervals() throws Exception {
+        TreeSet<IntInterval> intervals = new TreeSet<IntInterval>();
+        intervals.add(new IntInterval(0, 44));
+        intervals.add(new IntInterval(44, 1000000));
+        intervals.add(new IntInterval(Integer.MAX_VALUE - 10, 10));
+        TreeSet<IntInterval> decoded = new TreeSet<IntInterval>();
+
+        boolean result = RangeIndex.decode(RangeIndex.encode(intervals), decoded);
+
+        assertThat(result).isTrue();
+        assertThat(decoded).isEqualTo(intervals);
+    }
+
+    @Test
+    public void encode_withNoIntervals_shouldOnlyWriteVersion() throws Exception {
+        assertThat(RangeIndex.encode(new TreeSet<IntInterval>())).isEqualTo(
+                new byte[]{RangeIndex.FORMAT_VERSION});
+    }
+
+    @Test
+    public void decode_withLegacyJson_shouldReadIntervals() throws Exception {
+        TreeSet<IntInterval> decoded = new TreeSet<IntInterval>();
+
+        boolean result = RangeIndex.decode(
+                "[\"{start : 0, length : 44}\", \"{start : 100, length : 50}\"]".getBytes(),
+                decoded);
+
+        assertThat(result).isTrue();
+        assertThat(decoded).containsExactly(new IntInterval(0, 44), new IntInterval(100, 50));
+    }
+
+    @Test
+    public void decode_withTruncatedVarint_shouldReturnFalse() throws Exception {
+        TreeSet<IntInterval> decoded = new TreeSet<IntInterval>();
+
+        assertThat(RangeIndex.decode(new byte[]{RangeIndex.FORMAT_VERSION, 0, (byte) 0x80},
+                decoded)).isFalse();
+    }
+
+    @Test
+    public void decode_withUnknownVersion_shouldReturnFalse() throws Exception {
+        assertThat(RangeIndex.decode(new byte[]{99, 0, 0}, new TreeSet<IntInterval>())).isFalse();
+    }
+
+    @Test
+    public void getIntervals_shouldReadFromDiskOnlyOnce() throws Exception {
+        TreeSet<IntInterval> intervals = new TreeSet<IntInterval>();
+        intervals.add(new IntInterval(0, 100));
+        CacheService.putToDiskCache(HttpDiskCompositeDataSource.INTERVALS_KEY_PREFIX + KEY,
+                RangeIndex.encode(intervals));
+        TreeSet<IntInterval> result = new TreeSet<IntInterval>();
+
+        RangeIndex.getIntervals(KEY, result);
+        CacheService.putToDiskCache(HttpDiskCompositeDataSource.INTERVALS_KEY_PREFIX + KEY,
+                RangeIndex.encode(new TreeSet<IntInterval>()));
+        RangeIndex.getIntervals(KEY, result);
+
+        assertThat(result).containsOnly(new IntInterval(0, 100));
+    }
+
+    @Test
+    public void putIntervals_shouldStoreCopy() throws Exception {
+        TreeSet<IntInterval> intervals = new TreeSet<IntInterval>();
+        intervals.add(new IntInterval(0, 100));
+
+        RangeIndex.putIntervals(KEY, intervals);
+        intervals.first().setLength(5);
+        TreeSet<IntInterval> result = new TreeSet<IntInterval>();
+        RangeIndex.getIntervals(KEY, result);
+
+        assertThat(result).containsOnly(new IntInterval(0, 100));
+    }
+
+    @Test
+    public void getCachedFraction_withOverlappingIntervals_shouldCountBytesOnce() throws Exception {
+        TreeSet<IntInterval> intervals = new TreeSet<IntInterval>();
+        intervals.add(new IntInterval(0, 300));
+        intervals.add(new IntInterval(200, 200));
+        intervals.add(new IntInterval(900, 100));
+        RangeIndex.putIntervals(KEY, intervals);
+        RangeIndex.putExpectedFileLength(KEY, 1000);
+
+        assertThat(RangeIndex.getCachedFraction(KEY)).isEqualTo(0.5f);
+    }
+
+    @Test
+    public void getCachedFraction_withUnknownFileLength_shouldReturnZero() throws Exception {
+        TreeSet<IntInterval> intervals = new TreeSet<IntInterval>();
+        intervals.add(new IntInterval(0, 300));
+        RangeIndex.putIntervals(KEY, intervals);
+
+        assertThat(RangeIndex.getCachedFraction(KEY)).isEqualTo(0f);
+    }
+
+    @Test
+    public void putExpectedFileLength_shouldPersistToDisk() throws Exception {
+        RangeIndex.putExpectedFileLength(KEY, 1234);
+
+        assertThat(CacheService.getFromDiskCache(
+                HttpDiskCompositeDataSource.EXPECTED_FILE_SIZE_KEY_PREFIX + KEY)).isEqualTo(
+                "1234".getBytes());
+    }
+}
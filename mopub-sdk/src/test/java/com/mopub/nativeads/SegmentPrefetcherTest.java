@@ -0,0 +1,238 @@
+package com.mopub.nativeads;
+
+import android.app.Activity;
+
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.mopub.common.CacheService;
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.mobileads.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+
+import static com.mopub.nativeads.HttpDiskCompositeDataSource.BLOCK_SIZE;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class SegmentPrefetcherTest {
+
+    private static final String URL = "https://www.someurl/video.mp4";
+
+    @Mock HttpDataSource.Factory mockHttpDataSourceFactory;
+    @Mock HttpDataSource mockHttpDataSource;
+    private Executor directExecutor;
+    private SegmentPrefetcher subject;
+
+    @Before
+    public void setUp() throws Exception {
+        CacheService.initialize(Robolectric.buildActivity(Activity.class).create().get());
+        directExecutor = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        };
+        when(mockHttpDataSourceFactory.createDataSource()).thenReturn(mockHttpDataSource);
+        when(mockHttpDataSource.read(any(byte[].class), anyInt(), anyInt())).thenAnswer(
+                new Answer<Integer>() {
+                    @Override
+                    public Integer answer(final InvocationOnMock invocation) throws Throwable {
+                        final Object[] args = invocation.getArguments();
+                        final byte[] buffer = (byte[]) args[0];
+                        final int offset = (Integer) args[1];
+                        final int length = (Integer) args[2];
+                        Arrays.fill(buffer, offset, offset + length, (byte) 7);
+                        return length;
+                    }
+                });
+        subject = new SegmentPrefetcher(URL, mockHttpDataSourceFactory, directExecutor, 2,
+                10L * BLOCK_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CacheService.clearAndNullCaches();
+        RangeIndex.clear();
+    }
+
+    @Test
+    public void onSegmentLoaded_whenEnabled_shouldCacheNextSegments() throws Exception {
+        RangeIndex.putExpectedFileLength(URL, 5 * BLOCK_SIZE);
+        subject.setEnabled(true);
+
+        subject.onSegmentLoaded(URL, 0);
+
+        assertThat(CacheService.containsKeyDiskCache("1" + URL)).isTrue();
+        assertThat(CacheService.containsKeyDiskCache("2" + URL)).isTrue();
+        assertThat(CacheService.containsKeyDiskCache("3" + URL)).isFalse();
+        assertThat(subject.getBytesScheduled()).isEqualTo(2L * BLOCK_SIZE);
+        TreeSet<IntInterval> intervals = new TreeSet<IntInterval>();
+        RangeIndex.getIntervals(URL, intervals);
+        assertThat(intervals).containsOnly(new IntInterval(BLOCK_SIZE, BLOCK_SIZE),
+                new IntInterval(2 * BLOCK_SIZE, BLOCK_SIZE));
+    }
+
+    @Test
+    public void onSegmentLoaded_whenNotEnabled_shouldNotFetch() throws Exception {
+        RangeIndex.putExpectedFileLength(URL, 5 * BLOCK_SIZE);
+
+        subject.onSegmentLoaded(URL, 0);
+
+        verify(mockHttpDataSource, never()).open(any(DataSpec.class));
+    }
+
+    @Test
+    public void onSegmentLoaded_withUnknownFileLength_shouldNotFetch() throws Exception {
+        subject.setEnabled(true);
+
+        subject.onSegmentLoaded(URL, 0);
+
+        verify(mockHttpDataSource, never()).open(any(DataSpec.class));
+    }
+
+    @Test
+    public void onSegmentLoaded_withOtherUrl_shouldNotFetch() throws Exception {
+        RangeIndex.putExpectedFileLength(URL, 5 * BLOCK_SIZE);
+        subject.setEnabled(true);
+
+        subject.onSegmentLoaded("https://www.otherurl", 0);
+
+        verify(mockHttpDataSource, never()).open(any(DataSpec.class));
+    }
+
+    @Test
+    public void onSegmentLoaded_withLastSegmentShorterThanBlock_shouldFetchOnlyRemainingBytes()
+            throws Exception {
+        RangeIndex.putExpectedFileLength(URL, BLOCK_SIZE + 1000);
+        subject.setEnabled(true);
+
+        subject.onSegmentLoaded(URL, 0);
+
+        assertThat(subject.getBytesScheduled()).isEqualTo(1000L);
+        TreeSet<IntInterval> intervals = new TreeSet<IntInterval>();
+        RangeIndex.getIntervals(URL, intervals);
+        assertThat(intervals).containsOnly(new IntInterval(BLOCK_SIZE, 1000));
+    }
+
+    @Test
+    public void onSegmentLoaded_shouldStayWithinBudget() throws Exception {
+        subject = new SegmentPrefetcher(URL, mockHttpDataSourceFactory, directExecutor, 2,
+                BLOCK_SIZE);
+        RangeIndex.putExpectedFileLength(URL, 10 * BLOCK_SIZE);
+        subject.setEnabled(true);
+
+        subject.onSegmentLoaded(URL, 0);
+        subject.onSegmentLoaded(URL, 3);
+
+        assertThat(subject.getBytesScheduled()).isEqualTo((long) BLOCK_SIZE);
+        assertThat(CacheService.containsKeyDiskCache("1" + URL)).isTrue();
+        assertThat(CacheService.containsKeyDiskCache("2" + URL)).isFalse();
+        assertThat(CacheService.containsKeyDiskCache("4" + URL)).isFalse();
+    }
+
+    @Test
+    public void onSegmentLoaded_withSegmentAlreadyCached_shouldSkipIt() throws Exception {
+        RangeIndex.putExpectedFileLength(URL, 5 * BLOCK_SIZE);
+        TreeSet<IntInterval> cached = new TreeSet<IntInterval>();
+        cached.add(new IntInterval(0, 2 * BLOCK_SIZE));
+        RangeIndex.putIntervals(URL, cached);
+        subject.setEnabled(true);
+
+        subject.onSegmentLoaded(URL, 0);
+
+        assertThat(subject.getBytesScheduled()).isEqualTo((long) BLOCK_SIZE);
+        assertThat(CacheService.containsKeyDiskCache("2" + URL)).isTrue();
+    }
+
+    @Test
+    public void prefetchSegment_whenSegmentIsBeingRead_shouldNotFetch() throws Exception {
+        SegmentPrefetcher.startReading("1" + URL);
+        try {
+            subject.prefetchSegment(1, BLOCK_SIZE, BLOCK_SIZE);
+        } finally {
+            SegmentPrefetcher.finishReading("1" + URL);
+        }
+
+        verify(mockHttpDataSource, never()).open(any(DataSpec.class));
+    }
+
+    @Test
+    public void setEnabled_shouldScheduleOnExecutor() throws Exception {
+        final List<Runnable> pending = new ArrayList<Runnable>();
+        subject = new SegmentPrefetcher(URL, mockHttpDataSourceFactory, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                pending.add(command);
+            }
+        }, 2, 10L * BLOCK_SIZE);
+        RangeIndex.putExpectedFileLength(URL, 5 * BLOCK_SIZE);
+
+        subject.setEnabled(true);
+
+        assertThat(subject.getBytesScheduled()).isEqualTo(0L);
+        assertThat(pending).hasSize(1);
+
+        pending.remove(0).run();
+
+        assertThat(subject.getBytesScheduled()).isEqualTo(2L * BLOCK_SIZE);
+    }
+
+    @Test
+    public void startReading_whenSegmentIsBeingPrefetched_shouldStopWaitingAfterTimeout()
+            throws Exception {
+        when(mockHttpDataSource.open(any(DataSpec.class))).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(final InvocationOnMock invocation) throws Throwable {
+                // The download is still in flight while the data source starts reading
+                SegmentPrefetcher.startReading("1" + URL, 10);
+                SegmentPrefetcher.finishReading("1" + URL);
+                return (long) BLOCK_SIZE;
+            }
+        });
+
+        subject.prefetchSegment(1, BLOCK_SIZE, BLOCK_SIZE);
+
+        assertThat(CacheService.containsKeyDiskCache("1" + URL)).isTrue();
+    }
+
+    @Test
+    public void prefetchSegment_withShortRead_shouldNotCacheSegment() throws Exception {
+        when(mockHttpDataSource.read(any(byte[].class), anyInt(), anyInt())).thenReturn(100, -1);
+
+        subject.prefetchSegment(1, BLOCK_SIZE, BLOCK_SIZE);
+
+        assertThat(CacheService.containsKeyDiskCache("1" + URL)).isFalse();
+        verify(mockHttpDataSource).close();
+    }
+
+    @Test
+    public void cancel_shouldStopScheduling() throws Exception {
+        RangeIndex.putExpectedFileLength(URL, 5 * BLOCK_SIZE);
+        subject.setEnabled(true);
+        subject.cancel();
+
+        subject.onSegmentLoaded(URL, 0);
+
+        verify(mockHttpDataSource, never()).open(any(DataSpec.class));
+    }
+}
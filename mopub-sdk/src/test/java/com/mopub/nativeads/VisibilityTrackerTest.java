@@ -9,6 +9,7 @@ import android.view.ViewParent;
 import android.view.ViewTreeObserver;
 import android.view.Window;
 
+import com.mopub.common.VisibilityEngine;
 import com.mopub.common.test.support.SdkTestRunner;
 import com.mopub.mobileads.BuildConfig;
 import com.mopub.nativeads.VisibilityTracker.TrackingInfo;
@@ -40,6 +41,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -53,6 +55,7 @@ public class VisibilityTrackerTest {
     private VisibilityTracker subject;
     private Map<View, TrackingInfo> trackedViews;
     private VisibilityChecker visibilityChecker;
+    private VisibilityEngine visibilityEngine;
 
     @Mock private VisibilityTrackerListener visibilityTrackerListener;
     @Mock private View view;
@@ -62,7 +65,8 @@ public class VisibilityTrackerTest {
     @Before
     public void setUp() throws Exception {
         trackedViews = new WeakHashMap<View, TrackingInfo>();
-        visibilityChecker = new VisibilityChecker();
+        visibilityEngine = new VisibilityEngine(visibilityHandler);
+        visibilityChecker = new VisibilityChecker(visibilityEngine);
         activity = Robolectric.buildActivity(Activity.class).create().get();
         view = createViewMock(View.VISIBLE, 100, 100, 100, 100, true, true);
         view2 = createViewMock(View.VISIBLE, 100, 100, 100, 100, true, true);
@@ -76,7 +80,7 @@ public class VisibilityTrackerTest {
                 visibilityTrackerListener.onVisibilityChanged(safeVisibleViews, safeInVisibleViews);
             }
         };
-        subject = new VisibilityTracker(activity, trackedViews, visibilityChecker, visibilityHandler);
+        subject = new VisibilityTracker(activity, trackedViews, visibilityChecker, visibilityEngine);
         subject.setVisibilityTrackerListener(proxyListener);
 
         // XXX We need this to ensure that our SystemClock starts
@@ -96,9 +100,8 @@ public class VisibilityTrackerTest {
         when(decorView.getViewTreeObserver()).thenReturn(viewTreeObserver);
         when(viewTreeObserver.isAlive()).thenReturn(true);
 
-        subject = new VisibilityTracker(activity1, trackedViews, visibilityChecker, visibilityHandler);
-        assertThat(subject.mOnPreDrawListener).isNotNull();
-        verify(viewTreeObserver).addOnPreDrawListener(subject.mOnPreDrawListener);
+        subject = new VisibilityTracker(activity1, trackedViews, visibilityChecker, visibilityEngine);
+        verify(viewTreeObserver).addOnPreDrawListener(visibilityEngine.getOnPreDrawListener());
         assertThat(subject.mWeakViewTreeObserver.get()).isEqualTo(viewTreeObserver);
     }
 
@@ -114,15 +117,15 @@ public class VisibilityTrackerTest {
         when(decorView.getViewTreeObserver()).thenReturn(viewTreeObserver);
         when(viewTreeObserver.isAlive()).thenReturn(false);
 
-        subject = new VisibilityTracker(activity1, trackedViews, visibilityChecker, visibilityHandler);
-        verify(viewTreeObserver, never()).addOnPreDrawListener(subject.mOnPreDrawListener);
+        subject = new VisibilityTracker(activity1, trackedViews, visibilityChecker, visibilityEngine);
+        verify(viewTreeObserver, never()).addOnPreDrawListener(any(OnPreDrawListener.class));
         assertThat(subject.mWeakViewTreeObserver.get()).isNull();
     }
 
     @Test
     public void constructor_withApplicationContext_shouldNotSetOnPreDrawListener() {
         subject = new VisibilityTracker(activity.getApplicationContext(), trackedViews,
-                visibilityChecker, visibilityHandler);
+                visibilityChecker, visibilityEngine);
 
         assertThat(subject.mWeakViewTreeObserver.get()).isNull();
     }
@@ -145,7 +148,7 @@ public class VisibilityTrackerTest {
         when(viewTreeObserver.isAlive()).thenReturn(true);
 
         subject = new VisibilityTracker(activity.getApplicationContext(), trackedViews,
-                visibilityChecker, visibilityHandler);
+                visibilityChecker, visibilityEngine);
         subject.addView(view, MIN_PERCENTAGE_VIEWED, null);
 
         assertThat(subject.mWeakViewTreeObserver.get()).isEqualTo(viewTreeObserver);
@@ -171,15 +174,17 @@ public class VisibilityTrackerTest {
     }
 
     @Test
-    public void clear_shouldRemoveAllViewsFromTrackedViews_shouldRemoveMessagesFromVisibilityHandler_shouldResetIsVisibilityScheduled() throws Exception {
+    public void clear_shouldRemoveAllViewsFromTrackedViews() throws Exception {
         subject.addView(view, MIN_PERCENTAGE_VIEWED, null);
         subject.addView(view2, MIN_PERCENTAGE_VIEWED, null);
         assertThat(trackedViews).hasSize(2);
 
         subject.clear();
+        subject.onVisibilityCheck();
 
         assertThat(trackedViews).isEmpty();
-        verify(visibilityHandler).removeMessages(0);
+        verify(visibilityTrackerListener).onVisibilityChanged(Lists.<View>newArrayList(),
+                Lists.<View>newArrayList());
     }
 
     @Test
@@ -195,7 +200,10 @@ public class VisibilityTrackerTest {
         when(decorView.getViewTreeObserver()).thenReturn(viewTreeObserver);
         when(viewTreeObserver.isAlive()).thenReturn(true);
 
-        subject = new VisibilityTracker(activity1, trackedViews, visibilityChecker, visibilityHandler);
+        // The only client of its engine
+        visibilityEngine = new VisibilityEngine(visibilityHandler);
+        subject = new VisibilityTracker(activity1, trackedViews,
+                new VisibilityChecker(visibilityEngine), visibilityEngine);
 
         subject.addView(view, MIN_PERCENTAGE_VIEWED, null);
         subject.addView(view2, MIN_PERCENTAGE_VIEWED, null);
@@ -213,7 +221,7 @@ public class VisibilityTrackerTest {
     public void visibilityRunnable_run_withVisibleView_shouldCallOnVisibleCallback() throws Exception {
         subject.addView(view, MIN_PERCENTAGE_VIEWED, null);
 
-        subject.new VisibilityRunnable().run();
+        subject.onVisibilityCheck();
 
         verify(visibilityTrackerListener).onVisibilityChanged(
                 Lists.newArrayList(view), Lists.<View>newArrayList());
@@ -224,7 +232,7 @@ public class VisibilityTrackerTest {
         when(view.getVisibility()).thenReturn(View.INVISIBLE);
         subject.addView(view, MIN_PERCENTAGE_VIEWED, null);
 
-        subject.new VisibilityRunnable().run();
+        subject.onVisibilityCheck();
 
         ArgumentCaptor<List> visibleCaptor = ArgumentCaptor.forClass(List.class);
         ArgumentCaptor<List> invisibleCaptor = ArgumentCaptor.forClass(List.class);
@@ -235,6 +243,48 @@ public class VisibilityTrackerTest {
         assertThat(invisibleCaptor.getValue().size()).isEqualTo(1);
     }
 
+    @Test
+    public void onVisibilityCheck_withViewBetweenThresholds_shouldReportNeitherVisibleNorInvisible() throws Exception {
+        view = createViewMock(View.VISIBLE, 30, 100, 100, 100, true, true);
+        subject.addView(view, view, MIN_PERCENTAGE_VIEWED, 10, null);
+
+        subject.onVisibilityCheck();
+
+        verify(visibilityTrackerListener).onVisibilityChanged(Lists.<View>newArrayList(),
+                Lists.<View>newArrayList());
+    }
+
+    @Test
+    public void visibilityPass_withViewTrackedTwice_shouldMeasureViewOnce() throws Exception {
+        final VisibilityTracker otherTracker = new VisibilityTracker(activity,
+                new WeakHashMap<View, TrackingInfo>(), visibilityChecker, visibilityEngine);
+        otherTracker.setVisibilityTrackerListener(visibilityTrackerListener);
+        subject.addView(view, view, MIN_PERCENTAGE_VIEWED, 10, null);
+        otherTracker.addView(view, view, 90, 80, null);
+
+        visibilityEngine.runVisibilityPass();
+
+        verify(view, times(1)).getGlobalVisibleRect(any(Rect.class));
+        verify(visibilityTrackerListener, times(2)).onVisibilityChanged(
+                Lists.newArrayList(view), Lists.<View>newArrayList());
+        assertThat(visibilityEngine.getPassCount()).isEqualTo(1);
+        assertThat(visibilityEngine.getLastPassMeasuredViewCount()).isEqualTo(1);
+
+        visibilityEngine.runVisibilityPass();
+
+        verify(view, times(2)).getGlobalVisibleRect(any(Rect.class));
+    }
+
+    @Test
+    public void visibilityPass_afterDestroy_shouldNotCheckTracker() throws Exception {
+        subject.addView(view, MIN_PERCENTAGE_VIEWED, null);
+        subject.destroy();
+
+        visibilityEngine.runVisibilityPass();
+
+        verify(view, never()).getGlobalVisibleRect(any(Rect.class));
+    }
+
     // VisibilityChecker tests
 
     @Test
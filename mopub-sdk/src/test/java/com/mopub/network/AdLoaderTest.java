@@ -2,6 +2,7 @@ package com.mopub.network;
 
 import android.app.Activity;
 import android.content.Context;
+import android.os.SystemClock;
 
 import com.mopub.common.AdFormat;
 import com.mopub.common.test.support.SdkTestRunner;
@@ -19,6 +20,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.robolectric.Robolectric;
 import org.robolectric.annotation.Config;
@@ -33,6 +35,7 @@ import static com.mopub.mobileads.MoPubErrorCode.UNSPECIFIED;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -72,6 +75,7 @@ public class AdLoaderTest {
 
     @After
     public void teardown() {
+        AdLoader.setWaterfallPrefetchEnabled(false);
     }
 
     @Test
@@ -226,7 +230,97 @@ public class AdLoaderTest {
         assertThat(subject.hasMoreAds()).isTrue();
     }
 
+    @Test
+    public void loadNextAd_withPrefetchEnabled_shouldRequestNextPageWhenLastAdIsTaken() throws Exception {
+        AdLoader.setWaterfallPrefetchEnabled(true);
+        setMultiAdResponse(createMultiAdResponse("fail_url", 2));
+
+        subject.loadNextAd(null);
+        verify(mockRequestQueue, never()).add(any(MultiAdRequest.class));
+
+        subject.loadNextAd(UNSPECIFIED);
+        verify(mockRequestQueue).add(any(MultiAdRequest.class));
+        verify(mockListener, times(2)).onSuccess(any(AdResponse.class));
+    }
+
+    @Test
+    public void loadNextAd_withPrefetchedPage_shouldUseItWithoutNewRequest() throws Exception {
+        AdLoader.setWaterfallPrefetchEnabled(true);
+        setMultiAdResponse(createMultiAdResponse("fail_url", 1));
+        subject.loadNextAd(null);
+        captureAddedRequest().deliverResponse(createMultiAdResponse(null, 1));
+
+        subject.loadNextAd(UNSPECIFIED);
+
+        verify(mockListener, times(2)).onSuccess(any(AdResponse.class));
+        verify(mockRequestQueue, times(1)).add(any(MultiAdRequest.class));
+        assertThat(subject.hasMoreAds()).isFalse();
+    }
+
+    @Test
+    public void loadNextAd_withExpiredPrefetchedPage_shouldRequestNextPageAgain() throws Exception {
+        AdLoader.setWaterfallPrefetchEnabled(true);
+        setMultiAdResponse(createMultiAdResponse("fail_url", 1));
+        subject.loadNextAd(null);
+        captureAddedRequest().deliverResponse(createMultiAdResponse(null, 1));
+        SystemClock.setCurrentTimeMillis(
+                SystemClock.uptimeMillis() + AdLoader.PREFETCH_EXPIRATION_MS);
+
+        subject.loadNextAd(UNSPECIFIED);
+
+        verify(mockListener, times(1)).onSuccess(any(AdResponse.class));
+        verify(mockRequestQueue, times(2)).add(any(MultiAdRequest.class));
+    }
+
+    @Test
+    public void loadNextAd_whilePrefetchInFlight_shouldWaitForIt() throws Exception {
+        AdLoader.setWaterfallPrefetchEnabled(true);
+        setMultiAdResponse(createMultiAdResponse("fail_url", 1));
+        subject.loadNextAd(null);
+        final MultiAdRequest prefetchRequest = captureAddedRequest();
+
+        assertThat(subject.loadNextAd(UNSPECIFIED)).isSameAs(prefetchRequest);
+        assertThat(subject.isRunning()).isTrue();
+
+        prefetchRequest.deliverResponse(createMultiAdResponse(null, 1));
+        verify(mockListener, times(2)).onSuccess(any(AdResponse.class));
+        assertThat(subject.isRunning()).isFalse();
+        verify(mockRequestQueue, times(1)).add(any(MultiAdRequest.class));
+    }
+
+    @Test
+    public void creativeDownloadSuccess_shouldCancelPrefetch() throws Exception {
+        AdLoader.setWaterfallPrefetchEnabled(true);
+        setMultiAdResponse(createMultiAdResponse("fail_url", 1));
+        subject.loadNextAd(null);
+        final MultiAdRequest prefetchRequest = captureAddedRequest();
+
+        subject.creativeDownloadSuccess();
+
+        assertThat(prefetchRequest.isCanceled()).isTrue();
+    }
+
     // -----------  utils  -----------
+    private MultiAdResponse createMultiAdResponse(final String failUrl, final int adCount) throws Exception {
+        final JSONObject[] adResponses = new JSONObject[adCount];
+        for (int i = 0; i < adCount; i++) {
+            adResponses[i] = createAdResponseJson("trackingUrl" + i, "content_" + i);
+        }
+        final byte[] body = createResponseBody(failUrl, adResponses);
+        return new MultiAdResponse(activity, new NetworkResponse(200, body, headers, false),
+                AdFormat.BANNER, adUnitId);
+    }
+
+    private void setMultiAdResponse(final MultiAdResponse multiAdResponse) throws Exception {
+        getPrivateField("mMultiAdResponse").set(subject, multiAdResponse);
+    }
+
+    private MultiAdRequest captureAddedRequest() {
+        final ArgumentCaptor<MultiAdRequest> captor = ArgumentCaptor.forClass(MultiAdRequest.class);
+        verify(mockRequestQueue).add(captor.capture());
+        return captor.getValue();
+    }
+
     private static Field getPrivateField(final String name) throws NoSuchFieldException {
         Field declaredField = AdLoader.class.getDeclaredField(name);
         declaredField.setAccessible(true);
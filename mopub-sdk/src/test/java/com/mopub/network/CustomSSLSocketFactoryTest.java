@@ -22,12 +22,14 @@ import org.robolectric.annotation.Config;
 import java.net.InetAddress;
 import java.net.Socket;
 
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 
+import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
@@ -151,6 +153,35 @@ public class CustomSSLSocketFactoryTest {
         CustomSSLSocketFactory.verifyServerName(mockSslSocket, "hostname");
     }
 
+    @SuppressLint("SSLCertificateSocketFactoryCreateSocket")
+    @Test
+    public void createSocket_withConnectionPoolMetrics_withConnectedSocket_shouldTimeHandshake() throws Exception {
+        final ConnectionPoolMetrics connectionPoolMetrics = new ConnectionPoolMetrics();
+        subject = CustomSSLSocketFactory.getDefault(0, connectionPoolMetrics);
+        subject.setCertificateSocketFactory(mockSSLCertificateSocketFactory);
+        Mockito.when(mockSSLSocket.isConnected()).thenReturn(true);
+
+        subject.createSocket(mock(InetAddress.class), 443);
+
+        assertThat(connectionPoolMetrics.getNewConnectionCount()).isEqualTo(1);
+        verify(mockSSLSocket).addHandshakeCompletedListener(any(HandshakeCompletedListener.class));
+    }
+
+    @SuppressLint("SSLCertificateSocketFactoryCreateSocket")
+    @Test
+    public void createSocket_withConnectionPoolMetrics_withUnconnectedSocket_shouldNotTimeHandshake() throws Exception {
+        final ConnectionPoolMetrics connectionPoolMetrics = new ConnectionPoolMetrics();
+        subject = CustomSSLSocketFactory.getDefault(0, connectionPoolMetrics);
+        subject.setCertificateSocketFactory(mockSSLCertificateSocketFactory);
+        Mockito.when(mockSSLCertificateSocketFactory.createSocket()).thenReturn(mockSSLSocket);
+
+        subject.createSocket();
+
+        assertThat(connectionPoolMetrics.getNewConnectionCount()).isEqualTo(1);
+        verify(mockSSLSocket, never()).addHandshakeCompletedListener(
+                any(HandshakeCompletedListener.class));
+    }
+
     /**
      * This class has the setHostname() method that CustomSSLSocketFactory#setHostnameOnSocket uses
      * via reflection. This exists so we can Mockito.verify the method setHostname().
@@ -0,0 +1,153 @@
+package com.mopub.network;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.widget.ImageView.ScaleType;
+
+import com.mopub.common.CacheService;
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.mobileads.BuildConfig;
+import com.mopub.volley.NetworkResponse;
+import com.mopub.volley.Response;
+import com.mopub.volley.toolbox.HttpResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.io.InputStream;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class MoPubImageRequestTest {
+
+    private static final String URL = "https://host/image.png";
+
+    @Mock private Response.Listener<Bitmap> mockListener;
+    @Mock private Response.ErrorListener mockErrorListener;
+
+    private Activity activity;
+    private MoPubImageRequest subject;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(Activity.class).create().get();
+        subject = new MoPubImageRequest(activity, URL, 300, 0, ScaleType.CENTER_INSIDE,
+                mockListener, mockErrorListener);
+    }
+
+    @Test
+    public void constructor_shouldNotUseVolleyCache() {
+        assertThat(subject.shouldCache()).isFalse();
+        assertThat(subject.getPriority()).isEqualTo(RequestLane.CREATIVE_ASSET.getPriority());
+    }
+
+    @Test
+    public void computeSampleSize_shouldKeepImageAtLeastAsLargeAsBounds() {
+        assertThat(MoPubImageRequest.computeSampleSize(1200, 600, 300, 0)).isEqualTo(4);
+        assertThat(MoPubImageRequest.computeSampleSize(1200, 600, 301, 0)).isEqualTo(2);
+        assertThat(MoPubImageRequest.computeSampleSize(1200, 600, 300, 200)).isEqualTo(2);
+        assertThat(MoPubImageRequest.computeSampleSize(1200, 600, 0, 150)).isEqualTo(4);
+    }
+
+    @Test
+    public void computeSampleSize_withImageSmallerThanBounds_shouldReturnOne() {
+        assertThat(MoPubImageRequest.computeSampleSize(100, 100, 300, 300)).isEqualTo(1);
+    }
+
+    @Test
+    public void computeSampleSize_withoutBounds_shouldReturnOne() {
+        assertThat(MoPubImageRequest.computeSampleSize(1200, 600, 0, 0)).isEqualTo(1);
+    }
+
+    @Test
+    public void getResizedDimension_withCenterInside_shouldKeepAspectRatioWithinBounds() {
+        // 1200x600 into 300x100 is limited by height: 200x100
+        assertThat(MoPubImageRequest.getResizedDimension(300, 100, 1200, 600,
+                ScaleType.CENTER_INSIDE)).isEqualTo(200);
+        assertThat(MoPubImageRequest.getResizedDimension(100, 300, 600, 1200,
+                ScaleType.CENTER_INSIDE)).isEqualTo(100);
+    }
+
+    @Test
+    public void getResizedDimension_withOneBound_shouldScaleOtherSideByRatio() {
+        assertThat(MoPubImageRequest.getResizedDimension(300, 0, 1200, 600,
+                ScaleType.CENTER_INSIDE)).isEqualTo(300);
+        assertThat(MoPubImageRequest.getResizedDimension(0, 300, 600, 1200,
+                ScaleType.CENTER_INSIDE)).isEqualTo(150);
+    }
+
+    @Test
+    public void getResizedDimension_withFitXy_shouldIgnoreAspectRatio() {
+        assertThat(MoPubImageRequest.getResizedDimension(300, 100, 1200, 600,
+                ScaleType.FIT_XY)).isEqualTo(300);
+        assertThat(MoPubImageRequest.getResizedDimension(100, 300, 600, 1200,
+                ScaleType.FIT_XY)).isEqualTo(100);
+    }
+
+    @Test
+    public void getResizedDimension_withCenterCrop_shouldFillBounds() {
+        assertThat(MoPubImageRequest.getResizedDimension(300, 100, 1200, 600,
+                ScaleType.CENTER_CROP)).isEqualTo(300);
+        assertThat(MoPubImageRequest.getResizedDimension(100, 300, 600, 1200,
+                ScaleType.CENTER_CROP)).isEqualTo(150);
+    }
+
+    @Test
+    public void getResizedDimension_withoutBounds_shouldReturnActualSize() {
+        assertThat(MoPubImageRequest.getResizedDimension(0, 0, 1200, 600,
+                ScaleType.CENTER_INSIDE)).isEqualTo(1200);
+    }
+
+    @Test
+    public void parseNetworkResponse_shouldNotExceedMaxWidthOrMaxHeight() {
+        // Robolectric decodes any image data as 100x100, which no power of two fits into 30x20
+        subject = new MoPubImageRequest(activity, URL, 30, 20, ScaleType.CENTER_INSIDE,
+                mockListener, mockErrorListener);
+
+        final Response<Bitmap> response = subject.parseNetworkResponse(
+                new NetworkResponse("image data".getBytes()));
+
+        assertThat(response.isSuccess()).isTrue();
+        assertThat(response.result.getWidth()).isLessThanOrEqualTo(30);
+        assertThat(response.result.getHeight()).isLessThanOrEqualTo(20);
+    }
+
+    @Test
+    public void getDiskCachedResponse_withImageNotOnDisk_shouldReturnNull() {
+        assertThat(subject.getDiskCachedResponse()).isNull();
+    }
+
+    @Test
+    public void getDiskCachedResponse_withImageOnDisk_shouldReturnImageData() throws Exception {
+        final byte[] data = "image data".getBytes();
+        CacheService.initializeDiskCache(activity);
+        CacheService.putToDiskCache(MoPubImageRequest.getDiskCacheKey(URL),
+                MoPubImageRequest.toDiskCacheEntry(data, System.currentTimeMillis() + 60000));
+
+        final HttpResponse response = subject.getDiskCachedResponse();
+
+        assertThat(response.getStatusCode()).isEqualTo(200);
+        assertThat(response.getContentLength()).isEqualTo(data.length);
+        final InputStream content = response.getContent();
+        final byte[] read = new byte[data.length];
+        assertThat(content.read(read)).isEqualTo(data.length);
+        assertThat(read).isEqualTo(data);
+    }
+
+    @Test
+    public void getDiskCachedResponse_withExpiredImageOnDisk_shouldRemoveItAndReturnNull() {
+        final String key = MoPubImageRequest.getDiskCacheKey(URL);
+        CacheService.initializeDiskCache(activity);
+        CacheService.putToDiskCache(key, MoPubImageRequest.toDiskCacheEntry(
+                "image data".getBytes(), System.currentTimeMillis() - 1));
+
+        assertThat(subject.getDiskCachedResponse()).isNull();
+        assertThat(CacheService.containsKeyDiskCache(key)).isFalse();
+    }
+}
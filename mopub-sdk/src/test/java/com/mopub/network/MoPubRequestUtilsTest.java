@@ -3,12 +3,14 @@ package com.mopub.network;
 import android.app.Activity;
 import android.content.Context;
 
+import com.mopub.common.ClientMetadata;
 import com.mopub.common.Constants;
 import com.mopub.common.test.support.SdkTestRunner;
 import com.mopub.mobileads.BuildConfig;
 import com.mopub.volley.Request;
 
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.Robolectric;
@@ -142,4 +144,87 @@ public class MoPubRequestUtilsTest {
 
         assertThat(result).isNull();
     }
+
+    @Test
+    public void convertQueryToMap_withGeneratedUrl_shouldReturnGeneratedParams() {
+        final String url = "https://ads.mopub.com/m/ad?query1=abc&query2=def%2520ghi";
+        final Map<String, String> generatedParams = new HashMap<>();
+        generatedParams.put("query1", "abc");
+        generatedParams.put("query2", "def%20ghi");
+
+        final Map<String, String> result =
+                MoPubRequestUtils.convertQueryToMap(context, url, generatedParams);
+
+        assertThat(result).isEqualTo(generatedParams);
+        assertThat(result).isNotSameAs(generatedParams);
+    }
+
+    @Test
+    public void convertQueryToMap_withGeneratedUrl_shouldReplaceTemplates() {
+        final String url = "https://ads.mopub.com/m/ad?dnt="
+                + PlayServicesUrlRewriter.DO_NOT_TRACK_TEMPLATE;
+        final Map<String, String> generatedParams = new HashMap<>();
+        generatedParams.put("dnt", PlayServicesUrlRewriter.DO_NOT_TRACK_TEMPLATE);
+        ClientMetadata.getInstance(context);
+
+        final Map<String, String> result =
+                MoPubRequestUtils.convertQueryToMap(context, url, generatedParams);
+
+        assertThat(result.get("dnt")).isIn("0", "1");
+    }
+
+    @Test
+    public void convertQueryToMap_withGeneratedParams_withNonMoPubUrl_shouldParseUrl() {
+        final String url = "https://not.mopub.com/?query1=abc";
+        final Map<String, String> generatedParams = new HashMap<>();
+        generatedParams.put("other", "value");
+
+        final Map<String, String> result =
+                MoPubRequestUtils.convertQueryToMap(context, url, generatedParams);
+
+        assertThat(result).hasSize(1);
+        assertThat(result.get("query1")).isEqualTo("abc");
+    }
+
+    /**
+     * Compares building a POST body from a generator's parameters with parsing them back out of
+     * the url. Run manually; timings under Robolectric are only meaningful relative to each other.
+     */
+    @Ignore("Benchmark")
+    @Test
+    public void benchmark_generatedParamsVersusParsedUrl() {
+        final StringBuilder urlBuilder = new StringBuilder("https://ads.mopub.com/m/ad?id=adunit");
+        final Map<String, String> generatedParams = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            urlBuilder.append("&key").append(i).append("=value%20").append(i);
+            generatedParams.put("key" + i, "value " + i);
+        }
+        final String url = urlBuilder.toString();
+        final String parsedUrl = url + "&parsed=1";
+
+        final int iterations = 2000;
+        for (int i = 0; i < iterations / 10; i++) {
+            MoPubRequestUtils.generateBodyFromParams(
+                    MoPubRequestUtils.convertQueryToMap(context, url, generatedParams), url);
+            MoPubRequestUtils.generateBodyFromParams(
+                    MoPubRequestUtils.convertQueryToMap(context, parsedUrl), parsedUrl);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            MoPubRequestUtils.generateBodyFromParams(
+                    MoPubRequestUtils.convertQueryToMap(context, parsedUrl), parsedUrl);
+        }
+        final long parsedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            MoPubRequestUtils.generateBodyFromParams(
+                    MoPubRequestUtils.convertQueryToMap(context, url, generatedParams), url);
+        }
+        final long generatedNanos = System.nanoTime() - start;
+
+        System.out.println("Parsed url:       " + parsedNanos / iterations + " ns/body");
+        System.out.println("Generated params: " + generatedNanos / iterations + " ns/body");
+    }
 }
@@ -66,4 +66,37 @@ public class NetworkingTest {
 
         assertThat(userAgent).isEqualTo("some cached user agent");
     }
+
+    @Test
+    public void getSslSocketFactory_shouldReturnSameInstance() {
+        assertThat(Networking.getSslSocketFactory()).isSameAs(Networking.getSslSocketFactory());
+        assertThat(Networking.getSslSocketFactory()).isInstanceOf(CustomSSLSocketFactory.class);
+    }
+
+    @Test
+    public void getConnectionPoolMetrics_shouldCountReusedConnectionsAndHandshakeTime() {
+        final ConnectionPoolMetrics metrics = Networking.getConnectionPoolMetrics();
+
+        metrics.onRequest();
+        metrics.onRequest();
+        metrics.onRequest();
+        metrics.onNewConnection();
+        metrics.onHandshakeCompleted(100);
+        metrics.onNewConnection();
+        metrics.onHandshakeCompleted(200);
+
+        assertThat(metrics.getRequestCount()).isEqualTo(3);
+        assertThat(metrics.getNewConnectionCount()).isEqualTo(2);
+        assertThat(metrics.getReusedConnectionCount()).isEqualTo(1);
+        assertThat(metrics.getAverageHandshakeTimeMs()).isEqualTo(150);
+    }
+
+    @Test
+    public void clearForTesting_shouldResetConnectionPoolMetrics() {
+        Networking.getConnectionPoolMetrics().onRequest();
+
+        Networking.clearForTesting();
+
+        assertThat(Networking.getConnectionPoolMetrics().getRequestCount()).isEqualTo(0);
+    }
 }
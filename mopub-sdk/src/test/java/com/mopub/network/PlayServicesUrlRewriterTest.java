@@ -75,6 +75,19 @@ public class PlayServicesUrlRewriterTest {
                 .isEqualToIgnoringCase("https://ads.mopub.com/m/ad?ad_id=abcece&udid="+encodedId+"&dnt=0");
     }
 
+    @Test
+    public void rewriteParamValue_shouldUseAdvertisingIdValueWithoutEncoding() {
+        when(mockPersonalInfoManager.canCollectPersonalInformation()).thenReturn(true);
+
+        MoPubIdentifier identifier = ClientMetadata.getInstance().getMoPubIdentifier();
+        AdvertisingId adId = identifier.getAdvertisingInfo();
+
+        assertThat(subject.rewriteParamValue(PlayServicesUrlRewriter.UDID_TEMPLATE))
+                .isEqualTo(adId.getIdWithPrefix(true));
+        assertThat(subject.rewriteParamValue(PlayServicesUrlRewriter.DO_NOT_TRACK_TEMPLATE))
+                .isEqualTo("0");
+    }
+
     @Test
     public void rewriteUrl_noTemplates_shouldReturnIdentical() throws Exception {
         assertThat(subject.rewriteUrl("https://ads.mopub.com/m/ad")).isEqualTo("https://ads.mopub.com/m/ad");
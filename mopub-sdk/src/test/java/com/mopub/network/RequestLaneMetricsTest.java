@@ -0,0 +1,109 @@
+package com.mopub.network;
+
+import android.app.Activity;
+import android.os.SystemClock;
+
+import com.mopub.common.AdFormat;
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.common.privacy.SyncRequest;
+import com.mopub.mobileads.BuildConfig;
+import com.mopub.volley.NetworkResponse;
+import com.mopub.volley.Request;
+import com.mopub.volley.Response;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class RequestLaneMetricsTest {
+
+    @Mock private MultiAdRequest.Listener mockAdListener;
+
+    private Activity activity;
+    private RequestLaneMetrics subject;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(Activity.class).create().get();
+        subject = new RequestLaneMetrics();
+    }
+
+    @Test
+    public void requestLaneOf_shouldMatchRequestType() {
+        assertThat(RequestLane.of(createAdRequest())).isEqualTo(RequestLane.AD_REQUEST);
+        assertThat(RequestLane.of(createTrackingRequest())).isEqualTo(RequestLane.TRACKING);
+        assertThat(RequestLane.of(new SyncRequest(activity, "https://host/sync", null)))
+                .isEqualTo(RequestLane.BACKGROUND);
+    }
+
+    @Test
+    public void requestLaneOf_withDefaultPriorityRequestThatIsNotTracking_shouldReturnOther() {
+        final Request<Void> request = new Request<Void>(Request.Method.GET, "https://host/other",
+                null) {
+            @Override
+            protected Response<Void> parseNetworkResponse(final NetworkResponse response) {
+                return null;
+            }
+
+            @Override
+            protected void deliverResponse(final Void response) {
+            }
+        };
+
+        assertThat(request.getPriority()).isEqualTo(RequestLane.TRACKING.getPriority());
+        assertThat(RequestLane.of(request)).isEqualTo(RequestLane.OTHER);
+    }
+
+    @Test
+    public void onRequestQueued_shouldIncreaseQueueDepthOfLane() {
+        subject.onRequestQueued(createAdRequest());
+        subject.onRequestQueued(createTrackingRequest());
+        subject.onRequestQueued(createTrackingRequest());
+
+        assertThat(subject.getQueueDepth(RequestLane.AD_REQUEST)).isEqualTo(1);
+        assertThat(subject.getQueueDepth(RequestLane.TRACKING)).isEqualTo(2);
+        assertThat(subject.getQueueDepth(RequestLane.BACKGROUND)).isEqualTo(0);
+    }
+
+    @Test
+    public void onRequestStarted_shouldRecordWaitTime() {
+        final TrackingRequest request = createTrackingRequest();
+        subject.onRequestQueued(request);
+        SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + 300);
+
+        subject.onRequestStarted(request);
+        // retries of the same request are not counted again
+        subject.onRequestStarted(request);
+
+        assertThat(subject.getQueueDepth(RequestLane.TRACKING)).isEqualTo(0);
+        assertThat(subject.getStartedCount(RequestLane.TRACKING)).isEqualTo(1);
+        assertThat(subject.getAverageWaitTimeMs(RequestLane.TRACKING)).isEqualTo(300);
+    }
+
+    @Test
+    public void onRequestFinished_withoutStart_shouldLeaveLaneWithoutWaitTime() {
+        final MultiAdRequest request = createAdRequest();
+        subject.onRequestQueued(request);
+
+        subject.onRequestFinished(request);
+
+        assertThat(subject.getQueueDepth(RequestLane.AD_REQUEST)).isEqualTo(0);
+        assertThat(subject.getStartedCount(RequestLane.AD_REQUEST)).isEqualTo(0);
+    }
+
+    private MultiAdRequest createAdRequest() {
+        return new MultiAdRequest("https://host/ad", AdFormat.BANNER, "adUnitId", activity,
+                mockAdListener);
+    }
+
+    private TrackingRequest createTrackingRequest() {
+        return new TrackingRequest(activity, "https://host/tracking", null);
+    }
+}
@@ -0,0 +1,229 @@
+package com.mopub.network;
+
+import android.app.Activity;
+import android.os.SystemClock;
+
+import com.mopub.common.test.support.SdkTestRunner;
+import com.mopub.mobileads.BuildConfig;
+import com.mopub.volley.NoConnectionError;
+import com.mopub.volley.Request;
+import com.mopub.volley.TimeoutError;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.mopub.common.VolleyRequestMatcher.isUrl;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SdkTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TrackingDispatcherTest {
+
+    @Mock private MoPubRequestQueue mockRequestQueue;
+    private Activity context;
+    private TrackingDispatcher subject;
+
+    @Before
+    public void setUp() {
+        context = Robolectric.buildActivity(Activity.class).create().get();
+        Networking.setRequestQueueForTesting(mockRequestQueue);
+        subject = new TrackingDispatcher(context);
+    }
+
+    @Test
+    public void dispatch_shouldAddTrackingRequest() {
+        subject.dispatch("https://host/impression");
+
+        verify(mockRequestQueue).add(argThat(isUrl("https://host/impression")));
+    }
+
+    @Test
+    public void dispatch_withEmptyUrl_shouldNotAddRequest() {
+        subject.dispatch("");
+        subject.dispatch(null);
+
+        verify(mockRequestQueue, never()).add(any(Request.class));
+    }
+
+    @Test
+    public void dispatch_withSameUrlInsideDedupWindow_shouldAddRequestOnce() {
+        subject.dispatch("https://host/impression");
+        subject.dispatch("https://host/impression");
+
+        verify(mockRequestQueue, times(1)).add(argThat(isUrl("https://host/impression")));
+    }
+
+    @Test
+    public void dispatch_withSameUrlAfterDedupWindow_shouldAddRequestAgain() {
+        subject.dispatch("https://host/impression");
+        SystemClock.setCurrentTimeMillis(
+                SystemClock.uptimeMillis() + TrackingDispatcher.DEDUP_WINDOW_MS);
+        subject.dispatch("https://host/impression");
+
+        verify(mockRequestQueue, times(2)).add(argThat(isUrl("https://host/impression")));
+    }
+
+    @Test
+    public void dispatch_withMoreRequestsThanHostLimit_shouldWaitForRequestToFinish() {
+        for (int i = 0; i <= TrackingDispatcher.MAX_REQUESTS_PER_HOST; i++) {
+            subject.dispatch("https://host/" + i);
+        }
+        subject.dispatch("https://otherhost/0");
+
+        final List<TrackingRequest> requests = captureAddedRequests(
+                TrackingDispatcher.MAX_REQUESTS_PER_HOST + 1);
+        assertThat(requests.get(TrackingDispatcher.MAX_REQUESTS_PER_HOST).getUrl())
+                .isEqualTo("https://otherhost/0");
+
+        requests.get(0).deliverResponse(null);
+
+        verify(mockRequestQueue).add(argThat(
+                isUrl("https://host/" + TrackingDispatcher.MAX_REQUESTS_PER_HOST)));
+    }
+
+    @Test
+    public void onErrorResponse_withNoConnectionError_shouldRetryAfterBackoff() {
+        subject.dispatch("https://host/impression");
+        final TrackingRequest request = captureAddedRequests(1).get(0);
+
+        request.deliverError(new NoConnectionError());
+        verify(mockRequestQueue, times(1)).add(any(Request.class));
+
+        Robolectric.getForegroundThreadScheduler().advanceToLastPostedRunnable();
+
+        verify(mockRequestQueue, times(2)).add(argThat(isUrl("https://host/impression")));
+    }
+
+    @Test
+    public void onErrorResponse_withNoConnectionError_shouldReleaseHostSlotWhileWaiting() {
+        for (int i = 0; i <= TrackingDispatcher.MAX_REQUESTS_PER_HOST; i++) {
+            subject.dispatch("https://host/" + i);
+        }
+        final List<TrackingRequest> requests = captureAddedRequests(
+                TrackingDispatcher.MAX_REQUESTS_PER_HOST);
+
+        requests.get(0).deliverError(new NoConnectionError());
+
+        verify(mockRequestQueue).add(argThat(
+                isUrl("https://host/" + TrackingDispatcher.MAX_REQUESTS_PER_HOST)));
+        verify(mockRequestQueue, times(1)).add(argThat(isUrl("https://host/0")));
+    }
+
+    @Test
+    public void onErrorResponse_withTimeoutError_shouldNotRetry() {
+        subject.dispatch("https://host/impression");
+        final TrackingRequest request = captureAddedRequests(1).get(0);
+
+        request.deliverError(new TimeoutError());
+        Robolectric.getForegroundThreadScheduler().advanceToLastPostedRunnable();
+
+        verify(mockRequestQueue, times(1)).add(any(Request.class));
+    }
+
+    @Test
+    public void flushRetries_shouldSendRetriesRightAway() {
+        subject.dispatch("https://host/impression");
+        captureAddedRequests(1).get(0).deliverError(new NoConnectionError());
+
+        subject.flushRetries();
+
+        verify(mockRequestQueue, times(2)).add(argThat(isUrl("https://host/impression")));
+
+        // The backoff no longer sends it a third time
+        Robolectric.getForegroundThreadScheduler().advanceToLastPostedRunnable();
+
+        verify(mockRequestQueue, times(2)).add(argThat(isUrl("https://host/impression")));
+    }
+
+    @Test
+    public void readJournal_shouldReturnUrlsAddedAndNotSent() throws Exception {
+        final long now = 1000000L;
+        final File journalFile = writeJournal("A " + (now - 3) + " https://host/1\n"
+                + "A " + (now - 2) + " https://host/2\n"
+                + "A " + (now - 1) + " https://host/1\n"
+                + "S https://host/1\n"
+                + "S https://host/2\n"
+                + "A " + now + " https://host/3\n"
+                + "A " + now + " https://ho");
+
+        final List<TrackingDispatcher.JournalRecord> records =
+                TrackingDispatcher.readJournal(journalFile, now);
+
+        assertThat(getUrls(records)).containsExactly("https://host/1", "https://host/3");
+        assertThat(records.get(0).createdAtMillis).isEqualTo(now - 1);
+    }
+
+    @Test
+    public void readJournal_shouldDropRecordsOlderThanMaxAge() throws Exception {
+        final long now = TrackingDispatcher.MAX_JOURNAL_AGE_MS * 2;
+        final File journalFile = writeJournal(
+                "A " + (now - TrackingDispatcher.MAX_JOURNAL_AGE_MS - 1) + " https://host/old\n"
+                + "A " + (now - TrackingDispatcher.MAX_JOURNAL_AGE_MS) + " https://host/new\n");
+
+        assertThat(getUrls(TrackingDispatcher.readJournal(journalFile, now)))
+                .containsExactly("https://host/new");
+    }
+
+    @Test
+    public void readJournal_withRecordsWithoutTime_shouldSkipThem() throws Exception {
+        final File journalFile = writeJournal("A https://host/1\n"
+                + "A 10 https://host/2\n");
+
+        assertThat(getUrls(TrackingDispatcher.readJournal(journalFile, 10)))
+                .containsExactly("https://host/2");
+    }
+
+    @Test
+    public void readJournal_withMissingFile_shouldReturnEmptyList() {
+        assertThat(TrackingDispatcher.readJournal(new File(context.getFilesDir(), "missing"),
+                System.currentTimeMillis())).isEmpty();
+    }
+
+    @Test
+    public void clearForTesting_shouldForgetRecentUrls() {
+        TrackingDispatcher.getInstance(context).dispatch("https://host/impression");
+        TrackingDispatcher.clearForTesting();
+
+        TrackingDispatcher.getInstance(context).dispatch("https://host/impression");
+
+        verify(mockRequestQueue, times(2)).add(argThat(isUrl("https://host/impression")));
+    }
+
+    private File writeJournal(final String journal) throws Exception {
+        final File journalFile = new File(context.getFilesDir(), "test-journal");
+        final FileOutputStream outputStream = new FileOutputStream(journalFile);
+        outputStream.write(journal.getBytes("UTF-8"));
+        outputStream.close();
+        return journalFile;
+    }
+
+    private static List<String> getUrls(final List<TrackingDispatcher.JournalRecord> records) {
+        final List<String> urls = new ArrayList<String>();
+        for (final TrackingDispatcher.JournalRecord record : records) {
+            urls.add(record.url);
+        }
+        return urls;
+    }
+
+    private List<TrackingRequest> captureAddedRequests(final int count) {
+        final ArgumentCaptor<TrackingRequest> captor =
+                ArgumentCaptor.forClass(TrackingRequest.class);
+        verify(mockRequestQueue, times(count)).add(captor.capture());
+        return captor.getAllValues();
+    }
+}
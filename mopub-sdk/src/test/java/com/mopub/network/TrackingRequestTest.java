@@ -39,6 +39,8 @@ public class TrackingRequestTest {
         context = (Context) Robolectric.buildActivity(Activity.class).create().get();
         url = "testUrl";
         Networking.setRequestQueueForTesting(mockRequestQueue);
+        // Tracking URLs go through the dispatcher, which drops URLs it sent a moment ago
+        TrackingDispatcher.clearForTesting();
     }
 
     @Test